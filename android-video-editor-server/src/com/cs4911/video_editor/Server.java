@@ -1,178 +1,584 @@
 package com.cs4911.video_editor;
 
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.avro.AvroRemoteException;
 import org.apache.avro.ipc.NettyServer;
-import org.apache.avro.ipc.specific.SpecificResponder;
+import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.jboss.netty.handler.execution.ExecutionHandler;
+import org.jboss.netty.handler.execution.OrderedMemoryAwareThreadPoolExecutor;
 import org.opencv.core.Mat;
-import org.opencv.core.MatOfByte;
-import org.opencv.highgui.Highgui;
 
-import com.cs4911.video_editor.effects.IdentityEffect;
+import com.cs4911.video_editor.codec.DeltaDecoder;
+import com.cs4911.video_editor.codec.FrameCodec;
+import com.cs4911.video_editor.codec.FrameCodecFactory;
+import com.cs4911.video_editor.metrics.Counter;
+import com.cs4911.video_editor.metrics.Gauge;
+import com.cs4911.video_editor.metrics.Histogram;
+import com.cs4911.video_editor.metrics.MetricsRegistry;
+import com.cs4911.video_editor.pipeline.EffectProfiler;
 import com.cs4911.video_editor.pipeline.EffectTask;
+import com.cs4911.video_editor.pipeline.FrameEnvelope;
 import com.cs4911.video_editor.pipeline.FrameProcessor;
 import com.cs4911.video_editor.pipeline.LocalEffectTask;
+import com.cs4911.video_editor.pipeline.PipelineCompiler;
+import com.cs4911.video_editor.session.LoadMonitor;
+import com.cs4911.video_editor.session.Session;
+import com.cs4911.video_editor.session.SessionManager;
+import com.cs4911.video_editor.session.SessionResponder;
+import com.cs4911.video_editor.testproto.EffectDescriptor;
+import com.cs4911.video_editor.testproto.FrameData;
+import com.cs4911.video_editor.testproto.InvalidPipelineError;
+import com.cs4911.video_editor.testproto.InvalidSessionError;
+import com.cs4911.video_editor.testproto.ServerLoad;
 import com.cs4911.video_editor.testproto.TestProtocol;
 import com.cs4911.video_editor.effects.*;
 
 public class Server {
 	private static NettyServer server;
-	final static int port = 20001;
+	public final static int port = 20001;
+	// Number of threads that run requests, which bounds how many clients can wait in receiveFrames.
+	final static int rpcThreads = 32;
+	// Number of pipeline replicas the frames of each session are spread over.
+	final static int numPipelines = Integer.getInteger("pipelines", Runtime.getRuntime().availableProcessors());
+	// Number of threads that apply effects, shared by the pipelines of all sessions.
+	final static int workerThreads = Integer.getInteger("workers", Runtime.getRuntime().availableProcessors());
+	// How long a session may go without requests before it is closed.
+	final static long sessionTimeoutMs = 30000;
+	// How often addFrames checks whether frames it waits for were dropped.
+	final static long batchPollMs = 100;
+	
+	// Number of compiled pipelines kept for sessions that set the same effects.
+	final static int maxCompiledPipelines = 64;
+	// Largest payload probeDownload sends back.
+	final static int maxProbeBytes = 4 << 20;
+	// Where the measured costs of the effects are kept between runs, and how often they are saved.
+	final static File profileFile = new File(System.getProperty("profiles", "effect-profiles.txt"));
+	final static long profileSaveMs = 60000;
+	// The rate at which clients show processed frames, and how many display intervals
+	// after it arrived a frame may take before the effects it has not reached are skipped.
+	// Off unless targetFps is set: the frames of a batch all arrive at once, so the
+	// later ones would miss the deadline while waiting for the earlier ones.
+	final static int targetFps = Integer.getInteger("targetFps", 0);
+	final static int maxLatencyFrames = Integer.getInteger("maxLatencyFrames", FrameProcessor.DEFAULT_MAX_LATENCY_FRAMES);
+	// How often a snapshot of the metrics is printed, or 0 to not print them.
+	final static long metricsLogMs = Long.getLong("metrics.logMs", 10000);
+	
+	private final PipelineCompiler pipelineCompiler = new PipelineCompiler(maxCompiledPipelines);
+	// Effect stages are short tasks that are signaled by their queues, so run them in FIFO order.
+	private final ForkJoinPool effectExecutor = new ForkJoinPool(workerThreads, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+	private final SessionManager sessionManager = new SessionManager(numPipelines, effectExecutor, sessionTimeoutMs);
+	private final LoadMonitor loadMonitor = new LoadMonitor(effectExecutor, sessionManager);
+	private final EffectProfiler effectProfiler = new EffectProfiler(createCpuClock());
+	
+	private final MetricsRegistry metrics = MetricsRegistry.getDefault();
+	private final Histogram decodeTime = metrics.histogram("codec.decode");
+	private final Histogram encodeTime = metrics.histogram("codec.encode");
+	// From when a frame is decoded to when it has been processed and encoded again.
+	private final Histogram frameLatency = metrics.histogram("frame.latency");
+	private final Counter framesReceived = metrics.counter("frames.received");
+	private final Counter framesReturned = metrics.counter("frames.returned");
+	// Frames that were only the tiles that changed and could not be rebuilt.
+	private final Counter framesUndecodable = metrics.counter("frames.undecodable");
 	
 	public class TestProtocolImpl implements TestProtocol {
-		FrameProcessor frameProcessor;
 		
-		void StartFrameProcessor() {
-			frameProcessor.start();
+		/**
+		 * Returns the session of the client that sent the request being answered.
+		 * @return the client's session
+		 * @throws InvalidSessionError if the session was closed for being idle
+		 */
+		private Session session() throws InvalidSessionError {
+			Session session = sessionManager.getSession(SessionResponder.getConnection());
+			if (session == null) {
+				throw InvalidSessionError.newBuilder().setMessage$("Session closed for being idle").build();
+			}
+			return session;
+		}
+		
+		/**
+		 * Returns the frame processor of the client that sent the request being answered.
+		 * @return the client's frame processor
+		 * @throws InvalidSessionError if the session was closed for being idle
+		 */
+		private FrameProcessor frameProcessor() throws InvalidSessionError {
+			return session().getFrameProcessor();
 		}
 		
-		public TestProtocolImpl() {
-			System.out.println("Starting server side frame processor ");
-			frameProcessor = new FrameProcessor(new EffectTask[]{new LocalEffectTask(new IdentityEffect())});
-			StartFrameProcessor();
+		@Override
+		public long getSessionId() throws AvroRemoteException {
+			return sessionManager.startSession(SessionResponder.getConnection()).getId();
+		}
+
+		@Override
+		public Void joinSession(long sessionId) throws AvroRemoteException {
+			if (!sessionManager.joinSession(SessionResponder.getConnection(), sessionId)) {
+				throw InvalidSessionError.newBuilder().setMessage$("Unknown session: " + sessionId).build();
+			}
+			return null;
 		}
 		
+		@Override
+		public CharSequence negotiateCodec(List<CharSequence> codecs, int quality)
+				throws AvroRemoteException {
+			String name = FrameCodecFactory.chooseCodec(codecs);
+			session().setCodec(FrameCodecFactory.createCodec(name, quality));
+			return name;
+		}
+
+		@Override
+		public Void setDeltaUpload(boolean enabled) throws AvroRemoteException {
+			session().setDeltaDecoder(enabled ? new DeltaDecoder() : null);
+			return null;
+		}
+
+		@Override
+		public long ping(long timestamp) throws AvroRemoteException {
+			return timestamp;
+		}
+
+		@Override
+		public int probeUpload(ByteBuffer payload) throws AvroRemoteException {
+			return payload.remaining();
+		}
+
+		@Override
+		public ByteBuffer probeDownload(int size) throws AvroRemoteException {
+			return ByteBuffer.allocate(Math.max(0, Math.min(size, maxProbeBytes)));
+		}
+
+		@Override
+		public ServerLoad getServerLoad() throws AvroRemoteException {
+			return loadMonitor.getServerLoad();
+		}
+
 		@Override
 		public Void addBlurEffect() throws AvroRemoteException {
-			System.out.println("Applying Blur Effect");
-			frameProcessor.addEffect(new LocalEffectTask(new BlurEffect()));
-			StartFrameProcessor();
+			frameProcessor().addEffect(new LocalEffectTask(new BlurEffect()));
 			return null;
 		}
 
 		@Override
 		public Void addColorSaturationEffect() throws AvroRemoteException {
-			frameProcessor.addEffect(new LocalEffectTask(new ColorSaturationEffect()));
-			StartFrameProcessor();
+			frameProcessor().addEffect(new LocalEffectTask(new ColorSaturationEffect()));
 			return null;
 		}
 
 		@Override
 		public Void addDrawingEffect() throws AvroRemoteException {
-			frameProcessor.addEffect(new LocalEffectTask(new DrawingEffect()));
+			frameProcessor().addEffect(new LocalEffectTask(new DrawingEffect()));
 			return null;
 		}
 
 		@Override
 		public Void addEdgeDetectionEffect() throws AvroRemoteException {
-			frameProcessor.addEffect(new LocalEffectTask(new EdgeDetectionEffect()));
+			frameProcessor().addEffect(new LocalEffectTask(new EdgeDetectionEffect()));
 			return null;
 		}
 
 		@Override
 		public Void addGradientMagnitudeEffect() throws AvroRemoteException {
-			frameProcessor.addEffect(new LocalEffectTask(new GradientMagnitudeEffect()));
+			frameProcessor().addEffect(new LocalEffectTask(new GradientMagnitudeEffect()));
 			return null;
 		}
 
 		@Override
 		public Void addGrayscaleEffect() throws AvroRemoteException {
-			frameProcessor.addEffect(new LocalEffectTask(new GrayscaleEffect()));
+			frameProcessor().addEffect(new LocalEffectTask(new GrayscaleEffect()));
 			return null;
 		}
 
 		@Override
 		public Void addHorizontalFlipEffect() throws AvroRemoteException {
-			frameProcessor.addEffect(new LocalEffectTask(new HorizontalFlipEffect()));
+			frameProcessor().addEffect(new LocalEffectTask(new HorizontalFlipEffect()));
 			return null;
 		}
 
 		@Override
 		public Void addHoughCircleEffect() throws AvroRemoteException {
-			frameProcessor.addEffect(new LocalEffectTask(new HoughCircleEffect()));
+			frameProcessor().addEffect(new LocalEffectTask(new HoughCircleEffect()));
 			return null;
 		}
 
 		@Override
 		public Void addHoughLineEffect() throws AvroRemoteException {
-			frameProcessor.addEffect(new LocalEffectTask(new HoughLineEffect()));
+			frameProcessor().addEffect(new LocalEffectTask(new HoughLineEffect()));
 			return null;
 		}
 
 		@Override
 		public Void addIdentityEffect() throws AvroRemoteException {
-			frameProcessor.addEffect(new LocalEffectTask(new IdentityEffect()));
+			frameProcessor().addEffect(new LocalEffectTask(new IdentityEffect()));
 			return null;
 		}
 
 		@Override
 		public Void addMotionHistoryEffect() throws AvroRemoteException {
-			frameProcessor.addEffect(new LocalEffectTask(new MotionHistoryEffect()));
+			frameProcessor().addEffect(new LocalEffectTask(new MotionHistoryEffect()));
 			return null;
 		}
 
 		@Override
 		public Void addNegativeEffect() throws AvroRemoteException {
-			frameProcessor.addEffect(new LocalEffectTask(new NegativeEffect()));
+			frameProcessor().addEffect(new LocalEffectTask(new NegativeEffect()));
 			return null;
 		}
 
 		@Override
 		public Void addSeamCarveEffect() throws AvroRemoteException {
-			frameProcessor.addEffect(new LocalEffectTask(new SeamCarveEffect()));
+			frameProcessor().addEffect(new LocalEffectTask(new SeamCarveEffect()));
 			return null;
 		}
 
 		@Override
 		public Void addSepiaEffect() throws AvroRemoteException {
-			frameProcessor.addEffect(new LocalEffectTask(new SepiaEffect()));
+			frameProcessor().addEffect(new LocalEffectTask(new SepiaEffect()));
 			return null;
 		}
 
 		@Override
 		public Void addVerticalEffect() throws AvroRemoteException {
-			frameProcessor.addEffect(new LocalEffectTask(new VerticalFlipEffect()));
+			frameProcessor().addEffect(new LocalEffectTask(new VerticalFlipEffect()));
 			return null;
 		}
 
 		@Override
 		public Void addXrayEffect() throws AvroRemoteException {
-			frameProcessor.addEffect(new LocalEffectTask(new XrayEffect()));
+			frameProcessor().addEffect(new LocalEffectTask(new XrayEffect()));
 			return null;
 		}
 
 		@Override
 		public Void clearEffects() throws AvroRemoteException {
-			System.out.println("Clearling all effects");
-			frameProcessor.clearEffects();
+			frameProcessor().clearEffects();
 			return null;
 		}
 
 		@Override
-		public List<ByteBuffer> addFrames(List<ByteBuffer> frames)
+		public Void setPipeline(List<EffectDescriptor> effects)
 				throws AvroRemoteException {
-			int numRemaining = 0;
+			// Build every effect before touching the pipeline, so an unknown
+			// effect leaves the current pipeline as it is.
+			List<Effect> pipeline = new ArrayList<Effect>();
+			for (EffectDescriptor descriptor : effects) {
+				Map<String, Double> parameters = new HashMap<String, Double>();
+				for (Map.Entry<CharSequence, Double> parameter : descriptor.getParameters().entrySet()) {
+					parameters.put(parameter.getKey().toString(), parameter.getValue());
+				}
+				try {
+					pipeline.add(EffectFactory.createEffect(descriptor.getName().toString(), parameters));
+				} catch (IllegalArgumentException e) {
+					throw InvalidPipelineError.newBuilder().setMessage$(e.getMessage()).build();
+				}
+			}
+			
+			Effect[] compiled = pipelineCompiler.compile(pipeline);
+			EffectTask[] effectTasks = new EffectTask[compiled.length];
+			for (int i = 0; i < compiled.length; i++) {
+				effectTasks[i] = new LocalEffectTask(compiled[i]);
+			}
+			
+			frameProcessor().setEffects(effectTasks);
+			return null;
+		}
+
+		@Override
+		public List<FrameData> addFrames(List<FrameData> frames)
+				throws AvroRemoteException {
+			Session session = session();
+			FrameCodec codec = session.getCodec();
+			DeltaDecoder deltaDecoder = session.getDeltaDecoder();
+			List<FrameEnvelope> received = new ArrayList<FrameEnvelope>();
+			List<FrameEnvelope> batch = new ArrayList<FrameEnvelope>();
+			// Frames dropped on the way will never come back, so they are
+			// answered with a marker instead of waited for.
+			Map<FrameEnvelope, FrameData> results = new IdentityHashMap<FrameEnvelope, FrameData>();
+			for (FrameData data: frames) {
+				FrameEnvelope frame = decodeFrame(codec, deltaDecoder, data);
+				received.add(frame);
+				if (frame.isDropped()) {
+					results.put(frame, undecodableFrame(frame));
+				} else {
+					batch.add(frame);
+				}
+			}
+			BlockingQueue<FrameEnvelope> processed = session.addBatch(batch);
+			
+			try {
+				while (results.size() < received.size() && !session.isClosed()) {
+					FrameEnvelope frame = processed.poll(batchPollMs, TimeUnit.MILLISECONDS);
+					if (frame != null) {
+						results.put(frame, encodeFrame(codec, frame));
+					}
+					for (FrameEnvelope batchFrame : batch) {
+						if (batchFrame.isDropped() && !results.containsKey(batchFrame)) {
+							session.forgetFrame(batchFrame);
+							results.put(batchFrame, droppedFrame(batchFrame));
+						}
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
 			
-			for (ByteBuffer buf: frames) {
-				++numRemaining;
-				MatOfByte m = new MatOfByte(buf.array());
-				Mat frame = Highgui.imdecode(m, 0);
-				frameProcessor.addFrame(frame);
+			List<FrameData> processedFrames = new ArrayList<FrameData>();
+			for (FrameEnvelope frame : received) {
+				FrameData result = results.get(frame);
+				if (result == null) {
+					// The session was closed before the frame was processed.
+					session.forgetFrame(frame);
+					result = droppedFrame(frame);
+				}
+				processedFrames.add(result);
 			}
+			return processedFrames;
+		}
+
+		@Override
+		public void sendFrame(FrameData frame) {
+			Session session = sessionManager.getSession(SessionResponder.getConnection());
+			if (session == null) {
+				// A one-way request cannot raise the error; receiveFrames does.
+				return;
+			}
+			FrameEnvelope decoded = decodeFrame(session.getCodec(), session.getDeltaDecoder(), frame);
+			if (decoded.isDropped()) {
+				session.rejectFrame(decoded);
+			} else {
+				session.getFrameProcessor().addFrame(decoded);
+			}
+		}
+
+		@Override
+		public List<FrameData> receiveFrames(int maxFrames, int timeoutMs)
+				throws AvroRemoteException {
+			Session session = session();
+			FrameCodec codec = session.getCodec();
+			List<FrameData> processedFrames = new ArrayList<FrameData>();
 			
-			List<ByteBuffer> processedFrames = new ArrayList<ByteBuffer>();
-			while (numRemaining > 0) {
-				Mat newFrame = frameProcessor.getFrame();
-				MatOfByte m = new MatOfByte();
-				Highgui.imencode(".png", newFrame, m);
-				processedFrames.add(ByteBuffer.wrap(m.toArray()));
-				--numRemaining;
+			// Wait for the first frame only, then hand back whatever else is already done.
+			FrameEnvelope frame = session.pollFrame(timeoutMs, TimeUnit.MILLISECONDS);
+			while (frame != null) {
+				processedFrames.add(frame.isDropped() ? undecodableFrame(frame) : encodeFrame(codec, frame));
+				if (processedFrames.size() >= maxFrames) {
+					break;
+				}
+				frame = session.pollFrame(0, TimeUnit.MILLISECONDS);
 			}
 			
 			return processedFrames;
 		}
+		
+		/**
+		 * Decodes a frame received from a client.
+		 * @param codec the codec the client's frames are encoded with
+		 * @param deltaDecoder the DeltaDecoder of the client, or null if it sends whole frames
+		 * @param data the encoded frame and its metadata
+		 * @return the decoded frame, or a frame marked as dropped with no image
+		 *         if it held only the tiles that changed and could not be rebuilt
+		 */
+		private FrameEnvelope decodeFrame(FrameCodec codec, DeltaDecoder deltaDecoder, FrameData data) {
+			long start = System.nanoTime();
+			// The buffer may be a slice of a larger array, so only its remaining bytes are the frame.
+			ByteBuffer buffer = data.getData().duplicate();
+			byte[] bytes = new byte[buffer.remaining()];
+			buffer.get(bytes);
+			Mat mat;
+			try {
+				mat = deltaDecoder != null ? deltaDecoder.decode(bytes) : codec.decode(bytes);
+			} catch (IllegalArgumentException e) {
+				// A delta before it was lost, so the client has to send a keyframe.
+				framesUndecodable.increment();
+				FrameEnvelope frame = new FrameEnvelope(null, data.getSequenceNumber(), data.getCaptureTimestamp());
+				frame.markDropped();
+				return frame;
+			}
+			long decodeNanos = System.nanoTime() - start;
+			decodeTime.record(decodeNanos);
+			framesReceived.increment();
+			FrameEnvelope frame = new FrameEnvelope(mat, data.getSequenceNumber(), data.getCaptureTimestamp());
+			frame.setDecodeNanos(decodeNanos);
+			return frame;
+		}
+		
+		/**
+		 * Returns the marker sent back for a frame that could not be decoded:
+		 * the frame's metadata with no data, asking for a keyframe.
+		 * @param frame the frame that could not be decoded
+		 * @return the marker for the frame
+		 */
+		private FrameData undecodableFrame(FrameEnvelope frame) {
+			return FrameData.newBuilder(droppedFrame(frame)).setKeyframeNeeded(true).build();
+		}
+		
+		/**
+		 * Returns the marker sent back for a frame of a batch that was dropped:
+		 * the frame's metadata with no data.
+		 * @param frame the dropped frame
+		 * @return the marker for the frame
+		 */
+		private FrameData droppedFrame(FrameEnvelope frame) {
+			return FrameData.newBuilder()
+					.setSequenceNumber(frame.getSequenceNumber())
+					.setCaptureTimestamp(frame.getCaptureTimestamp())
+					.setPipelineEpoch(frame.getPipelineEpoch())
+					.setStageTimestamps(new ArrayList<Long>())
+					.setData(ByteBuffer.allocate(0))
+					.build();
+		}
+		
+		/**
+		 * Encodes a processed frame to send back to a client and recycles it.
+		 * The stage and codec timestamps are sent relative to when the frame
+		 * arrived, so that the client can trace it without the clocks agreeing.
+		 * @param codec the codec the client's frames are encoded with
+		 * @param frame the processed frame
+		 * @return the encoded frame and its metadata
+		 */
+		private FrameData encodeFrame(FrameCodec codec, FrameEnvelope frame) {
+			long start = System.nanoTime();
+			byte[] data = codec.encode(frame.getMat());
+			// the frame can now be written into by the last stage again
+			frame.recycle();
+			long end = System.nanoTime();
+			encodeTime.record(end - start);
+			frameLatency.record(end - frame.getArrivalTime());
+			framesReturned.increment();
+			
+			List<Long> stageTimestamps = new ArrayList<Long>();
+			for (int i = 0; i < frame.getNumStages(); i++) {
+				stageTimestamps.add(frame.getStageStart(i) - frame.getArrivalTime());
+				stageTimestamps.add(frame.getStageEnd(i) - frame.getArrivalTime());
+			}
+			List<Long> codecTimestamps = new ArrayList<Long>();
+			codecTimestamps.add(-frame.getDecodeNanos());
+			codecTimestamps.add(0L);
+			codecTimestamps.add(start - frame.getArrivalTime());
+			codecTimestamps.add(end - frame.getArrivalTime());
+			
+			return FrameData.newBuilder()
+					.setSequenceNumber(frame.getSequenceNumber())
+					.setCaptureTimestamp(frame.getCaptureTimestamp())
+					.setPipelineEpoch(frame.getPipelineEpoch())
+					.setStageTimestamps(stageTimestamps)
+					.setData(ByteBuffer.wrap(data))
+					.setCodecTimestamps(codecTimestamps)
+					.build();
+		}
+	}
+	
+	/**
+	 * Returns a clock for the CPU time of the current thread, if the JVM can measure it.
+	 * @return the clock, or null if CPU time cannot be measured
+	 */
+	private static EffectProfiler.CpuClock createCpuClock() {
+		final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (!threads.isCurrentThreadCpuTimeSupported()) {
+			return null;
+		}
+		return new EffectProfiler.CpuClock() {
+			@Override
+			public long threadCpuTimeNanos() {
+				return threads.getCurrentThreadCpuTime();
+			}
+		};
+	}
+
+	/**
+	 * Loads the costs of the effects measured in earlier runs, measures
+	 * them in every session from now on, and saves them every profileSaveMs
+	 * and when the server shuts down.
+	 */
+	private void startProfiling() {
+		try {
+			effectProfiler.load(profileFile);
+		} catch (IOException e) {
+			System.err.println("Could not load effect profiles: " + e.getMessage());
+		}
+		sessionManager.setEffectProfiler(effectProfiler);
+		final Runnable save = new Runnable() {
+			@Override
+			public void run() {
+				try {
+					effectProfiler.save(profileFile);
+				} catch (IOException e) {
+					System.err.println("Could not save effect profiles: " + e.getMessage());
+				}
+			}
+		};
+		Executors.newSingleThreadScheduledExecutor().scheduleWithFixedDelay(save, profileSaveMs, profileSaveMs, TimeUnit.MILLISECONDS);
+		Runtime.getRuntime().addShutdownHook(new Thread(save, "EffectProfileSaver"));
+	}
+	
+	/**
+	 * Adds gauges for the load of the server to the metrics, shows
+	 * the metrics over JMX and prints them every metricsLogMs.
+	 */
+	private void startMetrics() {
+		metrics.register(new Gauge("sessions") {
+			@Override
+			public double getValue() {
+				return sessionManager.getNumSessions();
+			}
+		});
+		metrics.register(new Gauge("frames.queued") {
+			@Override
+			public double getValue() {
+				return sessionManager.getQueuedFrames();
+			}
+		});
+		metrics.register(new Gauge("frames.dropped") {
+			@Override
+			public double getValue() {
+				return sessionManager.getDroppedFrames();
+			}
+		});
+		metrics.register(new Gauge("frames.skipped") {
+			@Override
+			public double getValue() {
+				return sessionManager.getSkippedFrames();
+			}
+		});
+		metrics.register(new Gauge("workers.utilization") {
+			@Override
+			public double getValue() {
+				return loadMonitor.getWorkerUtilization();
+			}
+		});
+		metrics.exportToJmx();
+		if (metricsLogMs > 0) {
+			metrics.startLogging(metricsLogMs);
+		}
 	}
 	
 	public void InitServer() throws UnknownHostException {
+		sessionManager.setDeadline(targetFps, maxLatencyFrames);
+		startProfiling();
+		startMetrics();
 		InetSocketAddress socketAddr = new InetSocketAddress(port);
 		while (true) {
-			server = new NettyServer(new SpecificResponder(TestProtocol.class,
-					new TestProtocolImpl()), socketAddr);
+			// Requests are handed to a thread pool that keeps each connection's
+			// requests in order, so a client waiting in receiveFrames does not
+			// hold up frames other connections are sending.
+			server = new NettyServer(new SessionResponder(TestProtocol.class,
+					new TestProtocolImpl()), socketAddr,
+					new NioServerSocketChannelFactory(Executors.newCachedThreadPool(), Executors.newCachedThreadPool()),
+					new ExecutionHandler(new OrderedMemoryAwareThreadPoolExecutor(rpcThreads, 0, 0)));
 			
 			try {
 				server.getPort();
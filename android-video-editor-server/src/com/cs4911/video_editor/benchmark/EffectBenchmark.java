@@ -0,0 +1,222 @@
+package com.cs4911.video_editor.benchmark;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import com.cs4911.video_editor.effects.Effect;
+import com.cs4911.video_editor.effects.EffectFactory;
+import com.cs4911.video_editor.effects.ScratchBuffers;
+
+/**
+ * Measures how fast each effect runs at 480p, 720p and 1080p and how much
+ * it allocates, so that optimizations and regressions can be measured.
+ * Effects are applied the way a LocalEffectTask applies them, into an
+ * output matrix and scratch buffers reused from frame to frame, to a
+ * sequence of synthetic camera frames: noisy RGBA frames with straight
+ * edges and round objects that move a little from one frame to the next,
+ * so that the Hough effects find lines and circles and the motion history
+ * sees motion.
+ *
+ * Each effect is warmed up, then timed over several iterations. Prints the
+ * frames per second of the fastest and the slowest iteration, the bytes the
+ * effect allocates on the Java heap per frame, the number of times the
+ * output matrix was reallocated per frame, and the number of garbage
+ * collections. OpenCV allocates the pixels outside the Java heap, which
+ * is why reallocations of the output are counted separately.
+ *
+ * Usage: EffectBenchmark [effect ...]
+ * Needs opencv_java on java.library.path.
+ */
+public class EffectBenchmark {
+
+	// Every effect a pipeline can be made of, by the names EffectFactory knows them by.
+	private static final String[] EFFECTS = {
+		"BlurEffect", "ColorSaturationEffect", "DrawingEffect", "EdgeDetectionEffect",
+		"GradientMagnitudeEffect", "GrayscaleEffect", "HorizontalFlipEffect", "HoughCircleEffect",
+		"HoughLineEffect", "IdentityEffect", "MotionHistoryEffect", "NegativeEffect",
+		"SeamCarveEffect", "SepiaEffect", "VerticalFlipEffect", "XrayEffect"
+	};
+	private static final int[][] RESOLUTIONS = {{640, 480}, {1280, 720}, {1920, 1080}};
+	// Distinct frames cycled through, so stateful effects see a moving scene.
+	private static final int NUM_FRAMES = 16;
+	private static final long WARMUP_MS = 2000;
+	private static final long ITERATION_MS = 1000;
+	private static final int ITERATIONS = 5;
+	// Slow effects are still applied this many times per iteration.
+	private static final int MIN_FRAMES_PER_ITERATION = 3;
+
+	public static void main(String[] args) {
+		System.loadLibrary("opencv_java");
+		List<String> effects = args.length > 0 ? Arrays.asList(args) : Arrays.asList(EFFECTS);
+		System.out.println(Runtime.getRuntime().availableProcessors() + " processors, " + ITERATIONS + " iterations of "
+				+ ITERATION_MS + " ms after " + WARMUP_MS + " ms of warmup");
+		for (int[] resolution : RESOLUTIONS) {
+			int width = resolution[0], height = resolution[1];
+			System.out.println(width + "x" + height + ":");
+			System.out.println(String.format("  %-24s %9s %9s %12s %10s %5s", "", "fps min", "fps max", "heap B/frame", "reallocs", "GCs"));
+			Mat[] frames = createFrames(width, height);
+			for (String name : effects) {
+				run(EffectFactory.createEffect(name, new HashMap<String, Double>()), frames);
+			}
+			for (Mat frame : frames) {
+				frame.release();
+			}
+		}
+	}
+
+	/**
+	 * Warms up the given effect on the frames, then times it and prints the results.
+	 */
+	private static void run(Effect effect, Mat[] frames) {
+		Mat src = new Mat();
+		Mat dst = new Mat();
+		ScratchBuffers scratch = new ScratchBuffers();
+		Measurement warmup = new Measurement();
+		measure(effect, frames, src, dst, scratch, WARMUP_MS, warmup);
+
+		double minFps = Double.MAX_VALUE, maxFps = 0;
+		Measurement total = new Measurement();
+		long gcBefore = countCollections();
+		for (int i = 0; i < ITERATIONS; i++) {
+			Measurement iteration = new Measurement();
+			measure(effect, frames, src, dst, scratch, ITERATION_MS, iteration);
+			double fps = iteration.frames * 1e9 / iteration.nanos;
+			minFps = Math.min(minFps, fps);
+			maxFps = Math.max(maxFps, fps);
+			total.add(iteration);
+		}
+		long collections = countCollections() - gcBefore;
+		String heapBytes = total.allocatedBytes >= 0 ? String.format("%12.0f", total.allocatedBytes / (double) total.frames) : String.format("%12s", "n/a");
+		System.out.println(String.format("  %-24s %9.1f %9.1f %s %10.2f %5d", effect.getName(), minFps, maxFps, heapBytes,
+				total.reallocations / (double) total.frames, collections));
+		src.release();
+		dst.release();
+		scratch.release();
+	}
+
+	/**
+	 * Applies the effect to the frames in turn for at least the given time,
+	 * timing only applyTo, since an effect may draw on its input and so
+	 * needs a fresh copy of the frame every time.
+	 */
+	private static void measure(Effect effect, Mat[] frames, Mat src, Mat dst, ScratchBuffers scratch, long durationMs, Measurement measurement) {
+		long allocatedBefore = allocatedBytes();
+		long end = System.nanoTime() + durationMs * 1000000;
+		int frame = 0;
+		while (System.nanoTime() < end || measurement.frames < MIN_FRAMES_PER_ITERATION) {
+			frames[frame++ % frames.length].copyTo(src);
+			long dataBefore = dst.dataAddr();
+			long start = System.nanoTime();
+			Mat result = effect.applyTo(src, dst, scratch);
+			measurement.nanos += System.nanoTime() - start;
+			measurement.frames++;
+			if (result == dst && dst.dataAddr() != dataBefore) {
+				measurement.reallocations++;
+			}
+		}
+		long allocatedAfter = allocatedBytes();
+		measurement.allocatedBytes = allocatedBefore >= 0 ? allocatedAfter - allocatedBefore : -1;
+	}
+
+	/**
+	 * Creates frames that look somewhat like what a camera sees: a textured
+	 * background with some noise, rectangles and lines for straight edges,
+	 * and discs, all shifting a little from one frame to the next.
+	 * @param width the width of the frames
+	 * @param height the height of the frames
+	 * @return NUM_FRAMES RGBA frames
+	 */
+	static Mat[] createFrames(int width, int height) {
+		Mat[] frames = new Mat[NUM_FRAMES];
+		Mat rgb = new Mat(height, width, CvType.CV_8UC3);
+		int scale = Math.min(width, height);
+		for (int i = 0; i < NUM_FRAMES; i++) {
+			// The same scene every time, only moved.
+			Random random = new Random(4911);
+			int shift = i * scale / 100;
+			Core.randn(rgb, 120, 30);
+			Imgproc.GaussianBlur(rgb, rgb, new Size(7, 7), 0);
+			for (int k = 0; k < 8; k++) {
+				int x = random.nextInt(width) + shift, y = random.nextInt(height);
+				int w = scale / 8 + random.nextInt(scale / 4), h = scale / 8 + random.nextInt(scale / 4);
+				Core.rectangle(rgb, new Point(x, y), new Point(x + w, y + h), randomColor(random), 2 + random.nextInt(4));
+			}
+			for (int k = 0; k < 6; k++) {
+				Core.line(rgb, new Point(random.nextInt(width), random.nextInt(height)),
+						new Point(random.nextInt(width), random.nextInt(height)), randomColor(random), 3);
+			}
+			for (int k = 0; k < 5; k++) {
+				Point center = new Point(random.nextInt(width) - shift, random.nextInt(height) + shift / 2);
+				Core.circle(rgb, center, scale / 20 + random.nextInt(scale / 10), randomColor(random), -1);
+			}
+			// Camera noise on top of the sharp edges.
+			Mat noise = new Mat(height, width, CvType.CV_16SC3);
+			Core.randn(noise, 0, 6);
+			Core.add(rgb, noise, rgb, new Mat(), CvType.CV_8U);
+			noise.release();
+			frames[i] = new Mat();
+			Imgproc.cvtColor(rgb, frames[i], Imgproc.COLOR_RGB2RGBA);
+		}
+		rgb.release();
+		return frames;
+	}
+
+	private static Scalar randomColor(Random random) {
+		return new Scalar(random.nextInt(256), random.nextInt(256), random.nextInt(256));
+	}
+
+	/**
+	 * Returns the bytes allocated on the Java heap by the current thread so far.
+	 * @return the number of bytes, or -1 if the JVM does not count them
+	 */
+	private static long allocatedBytes() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean) threads;
+			if (counter.isThreadAllocatedMemorySupported() && counter.isThreadAllocatedMemoryEnabled()) {
+				return counter.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+		return -1;
+	}
+
+	private static long countCollections() {
+		long count = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += Math.max(0, gc.getCollectionCount());
+		}
+		return count;
+	}
+
+	/**
+	 * What was measured while applying an effect.
+	 */
+	private static class Measurement {
+		long frames;
+		long nanos;
+		long reallocations;
+		long allocatedBytes;
+
+		void add(Measurement measurement) {
+			frames += measurement.frames;
+			nanos += measurement.nanos;
+			reallocations += measurement.reallocations;
+			if (allocatedBytes >= 0) {
+				allocatedBytes = measurement.allocatedBytes >= 0 ? allocatedBytes + measurement.allocatedBytes : -1;
+			}
+		}
+	}
+}
@@ -0,0 +1,362 @@
+package com.cs4911.video_editor.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.avro.ipc.NettyTransceiver;
+import org.apache.avro.ipc.specific.SpecificRequestor;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.highgui.Highgui;
+import org.opencv.imgproc.Imgproc;
+
+import com.cs4911.video_editor.Server;
+import com.cs4911.video_editor.codec.FrameCodec;
+import com.cs4911.video_editor.codec.FrameCodecFactory;
+import com.cs4911.video_editor.effects.Effect;
+import com.cs4911.video_editor.effects.EffectFactory;
+import com.cs4911.video_editor.testproto.EffectDescriptor;
+import com.cs4911.video_editor.testproto.FrameData;
+import com.cs4911.video_editor.testproto.TestProtocol;
+
+/**
+ * Measures offloading end to end without a phone: starts a Server on
+ * loopback, or uses a running one, and sends it frames from this JVM over
+ * TestProtocol the way a CloudClient does. Every frame is timed from before
+ * it is encoded until its processed version has been decoded, so the RPC
+ * overhead, both codecs and the server's pipeline are all measured together.
+ * Prints the frames per second and the 50th, 99th and 99.9th percentile of
+ * the latency, after leaving out the first frames while things warm up.
+ *
+ * Frames are sent in batches with addFrames, one batch at a time, or, in
+ * stream mode, one at a time with sendFrame while another connection fetches
+ * them with receiveFrames, with up to a window of frames in flight. Frames
+ * the server drops are counted as lost once they are LOST_AFTER_MS overdue.
+ *
+ * The frames are synthetic, as in EffectBenchmark, or recorded: the images
+ * in a directory, in name order, such as the frames of a clip extracted
+ * with ffmpeg. The VideoCapture of this OpenCV cannot open files.
+ *
+ * Settings are system properties:
+ *   effects  comma separated effect names, as EffectFactory knows them (GrayscaleEffect)
+ *   codec    the codec frames are sent with (jpeg)
+ *   quality  the JPEG quality (90)
+ *   mode     batch or stream (batch)
+ *   batch    frames per addFrames request (1)
+ *   window   frames in flight in stream mode (4)
+ *   frames   frames to measure (1000)
+ *   warmup   frames sent first and not measured (100)
+ *   width, height  the size frames are scaled to (640, 480)
+ *   recorded a directory of images to send instead of synthetic frames
+ *   server   the host of a running server, instead of starting one here
+ *
+ * Usage: java -Dcodec=raw+snappy -Dbatch=4 ... LoopbackBenchmark
+ * Needs opencv_java on java.library.path.
+ */
+public class LoopbackBenchmark {
+
+	private static final String MODE_BATCH = "batch";
+	private static final String MODE_STREAM = "stream";
+	// Frames in stream mode that have not come back by then are taken to be dropped.
+	private static final long LOST_AFTER_MS = 2000;
+	private static final int RECEIVE_TIMEOUT_MS = 100;
+
+	private final TestProtocol client;
+	private final FrameCodec codec;
+	// A codec of its own for the processed frames, since in stream mode they are decoded on another thread.
+	private final FrameCodec decoder;
+	private final Mat[] frames;
+	private int nextFrame;
+	private long nextSequenceNumber;
+
+	private long bytesUp, bytesDown;
+	private long lostFrames;
+
+	/**
+	 * Creates a LoopbackBenchmark that sends the given frames over the given connection.
+	 */
+	private LoopbackBenchmark(TestProtocol client, String codecName, int quality, Mat[] frames) {
+		this.client = client;
+		this.codec = FrameCodecFactory.createCodec(codecName, quality);
+		this.decoder = FrameCodecFactory.createCodec(codecName, quality);
+		this.frames = frames;
+	}
+
+	public static void main(String[] args) throws Exception {
+		System.loadLibrary("opencv_java");
+		String effects = System.getProperty("effects", "GrayscaleEffect");
+		String codecName = System.getProperty("codec", FrameCodecFactory.JPEG);
+		int quality = Integer.getInteger("quality", FrameCodecFactory.DEFAULT_JPEG_QUALITY);
+		String mode = System.getProperty("mode", MODE_BATCH);
+		int batch = Integer.getInteger("batch", 1);
+		int window = Integer.getInteger("window", 4);
+		int numFrames = Integer.getInteger("frames", 1000);
+		int warmup = Integer.getInteger("warmup", 100);
+		int width = Integer.getInteger("width", 640);
+		int height = Integer.getInteger("height", 480);
+		String recorded = System.getProperty("recorded");
+		String host = System.getProperty("server");
+
+		if (host == null) {
+			Server server = new Server();
+			server.InitServer();
+			server.StartServer();
+			host = "127.0.0.1";
+		}
+		Mat[] frames = recorded != null ? loadFrames(new File(recorded), width, height) : EffectBenchmark.createFrames(width, height);
+		if (frames.length == 0) {
+			System.err.println("No frames in " + recorded);
+			System.exit(1);
+		}
+
+		NettyTransceiver transceiver = new NettyTransceiver(new InetSocketAddress(host, Server.port));
+		TestProtocol client = SpecificRequestor.getClient(TestProtocol.class, transceiver);
+		long sessionId = client.getSessionId();
+		String chosen = client.negotiateCodec(Arrays.<CharSequence>asList(codecName), quality).toString();
+		if (!chosen.equals(codecName)) {
+			System.err.println("The server does not support " + codecName + ", using " + chosen);
+		}
+		client.setPipeline(describe(effects));
+		LoopbackBenchmark benchmark = new LoopbackBenchmark(client, chosen, quality, frames);
+
+		System.out.println(host + ", " + frames.length + (recorded != null ? " recorded" : " synthetic") + " frames of "
+				+ width + "x" + height + ", " + effects + ", " + chosen
+				+ (mode.equals(MODE_STREAM) ? ", streamed with " + window + " in flight" : ", batches of " + batch));
+		long[] latencies;
+		long elapsed;
+		if (mode.equals(MODE_STREAM)) {
+			NettyTransceiver streamTransceiver = new NettyTransceiver(new InetSocketAddress(host, Server.port));
+			TestProtocol streamClient = SpecificRequestor.getClient(TestProtocol.class, streamTransceiver);
+			streamClient.joinSession(sessionId);
+			benchmark.runStream(streamClient, warmup, window);
+			long start = System.nanoTime();
+			latencies = benchmark.runStream(streamClient, numFrames, window);
+			elapsed = System.nanoTime() - start;
+			streamTransceiver.close();
+		} else {
+			benchmark.runBatches(warmup, batch);
+			long start = System.nanoTime();
+			latencies = benchmark.runBatches(numFrames, batch);
+			elapsed = System.nanoTime() - start;
+		}
+		transceiver.close();
+		benchmark.print(latencies, elapsed);
+		// The server's threads would keep the JVM running.
+		System.exit(0);
+	}
+
+	/**
+	 * Sends numFrames frames in batches, one batch at a time.
+	 * @return the latencies of the frames that came back, in nanoseconds
+	 */
+	private long[] runBatches(int numFrames, int batch) throws IOException {
+		resetCounters();
+		List<Long> latencies = new ArrayList<Long>();
+		Map<Long, Long> sent = new HashMap<Long, Long>();
+		for (int sentFrames = 0; sentFrames < numFrames; ) {
+			List<FrameData> request = new ArrayList<FrameData>();
+			for (int i = 0; i < batch && sentFrames < numFrames; i++, sentFrames++) {
+				long start = System.nanoTime();
+				FrameData data = encodeNext();
+				sent.put(data.getSequenceNumber(), start);
+				request.add(data);
+			}
+			for (FrameData data : client.addFrames(request)) {
+				if (!data.getData().hasRemaining()) {
+					// Dropped by the server, so counted as lost below.
+					continue;
+				}
+				Long start = sent.remove(data.getSequenceNumber());
+				decode(data);
+				if (start != null) {
+					latencies.add(System.nanoTime() - start);
+				}
+			}
+			lostFrames += sent.size();
+			sent.clear();
+		}
+		return toArray(latencies);
+	}
+
+	/**
+	 * Streams numFrames frames with up to window of them in flight, fetching
+	 * them on the other connection as they are done.
+	 * @return the latencies of the frames that came back, in nanoseconds
+	 */
+	private long[] runStream(final TestProtocol streamClient, int numFrames, final int window) throws Exception {
+		resetCounters();
+		final List<Long> latencies = new ArrayList<Long>();
+		final Map<Long, Long> sent = new ConcurrentHashMap<Long, Long>();
+		final Semaphore inFlight = new Semaphore(window);
+		final AtomicLong remaining = new AtomicLong(numFrames);
+		final Exception[] failure = new Exception[1];
+		Thread receiver = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					while (remaining.get() > 0) {
+						for (FrameData data : streamClient.receiveFrames(window, RECEIVE_TIMEOUT_MS)) {
+							Long start = sent.remove(data.getSequenceNumber());
+							decode(data);
+							if (start != null) {
+								latencies.add(System.nanoTime() - start);
+								remaining.decrementAndGet();
+								inFlight.release();
+							}
+						}
+						long overdue = System.nanoTime() - LOST_AFTER_MS * 1000000;
+						for (Iterator<Long> i = sent.values().iterator(); i.hasNext();) {
+							if (i.next() < overdue) {
+								i.remove();
+								lostFrames++;
+								remaining.decrementAndGet();
+								inFlight.release();
+							}
+						}
+					}
+				} catch (Exception e) {
+					failure[0] = e;
+					remaining.set(0);
+					inFlight.release(window);
+				}
+			}
+		}, "LoopbackReceiver");
+		receiver.start();
+		for (int i = 0; i < numFrames && failure[0] == null; i++) {
+			inFlight.acquire();
+			long start = System.nanoTime();
+			FrameData data = encodeNext();
+			sent.put(data.getSequenceNumber(), start);
+			client.sendFrame(data);
+		}
+		receiver.join();
+		if (failure[0] != null) {
+			throw failure[0];
+		}
+		return toArray(latencies);
+	}
+
+	/**
+	 * Encodes the next frame, cycling through the frames.
+	 */
+	private FrameData encodeNext() {
+		byte[] data = codec.encode(frames[nextFrame++ % frames.length]);
+		bytesUp += data.length;
+		return FrameData.newBuilder()
+				.setSequenceNumber(nextSequenceNumber++)
+				.setCaptureTimestamp(System.currentTimeMillis())
+				.setPipelineEpoch(0)
+				.setStageTimestamps(new ArrayList<Long>())
+				.setData(ByteBuffer.wrap(data))
+				.build();
+	}
+
+	/**
+	 * Decodes a processed frame the way a client would before showing it.
+	 */
+	private void decode(FrameData data) {
+		ByteBuffer buffer = data.getData().duplicate();
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+		bytesDown += bytes.length;
+		decoder.decode(bytes).release();
+	}
+
+	private void resetCounters() {
+		bytesUp = 0;
+		bytesDown = 0;
+		lostFrames = 0;
+	}
+
+	private void print(long[] latencies, long elapsed) {
+		Arrays.sort(latencies);
+		int received = latencies.length;
+		System.out.println(String.format("  %d frames in %.2f s: %.1f fps, %d lost", received, elapsed / 1e9,
+				received * 1e9 / elapsed, lostFrames));
+		if (received > 0) {
+			System.out.println(String.format("  latency p50 %.1f ms, p99 %.1f ms, p99.9 %.1f ms, max %.1f ms",
+					percentile(latencies, 0.5), percentile(latencies, 0.99), percentile(latencies, 0.999),
+					latencies[received - 1] / 1e6));
+			long sentFrames = received + lostFrames;
+			System.out.println(String.format("  %.1f kB up, %.1f kB down per frame", bytesUp / 1000.0 / sentFrames,
+					bytesDown / 1000.0 / received));
+		}
+	}
+
+	/**
+	 * Returns the latency below which the given fraction of the sorted latencies are.
+	 * @return the latency in milliseconds
+	 */
+	private static double percentile(long[] sorted, double fraction) {
+		int index = (int) Math.ceil(fraction * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6;
+	}
+
+	private static long[] toArray(List<Long> values) {
+		long[] array = new long[values.size()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = values.get(i);
+		}
+		return array;
+	}
+
+	/**
+	 * Describes the effects with the given names, with their default settings.
+	 */
+	private static List<EffectDescriptor> describe(String names) {
+		List<EffectDescriptor> descriptors = new ArrayList<EffectDescriptor>();
+		for (String name : names.split(",")) {
+			if (name.trim().length() == 0) {
+				continue;
+			}
+			Effect effect = EffectFactory.createEffect(name.trim(), new HashMap<String, Double>());
+			Map<CharSequence, Double> parameters = new HashMap<CharSequence, Double>();
+			for (Map.Entry<String, Double> parameter : effect.getParameters().entrySet()) {
+				parameters.put(parameter.getKey(), parameter.getValue());
+			}
+			descriptors.add(EffectDescriptor.newBuilder().setName(effect.getName()).setParameters(parameters).build());
+		}
+		return descriptors;
+	}
+
+	/**
+	 * Loads the images in a directory, in name order, as recorded frames.
+	 * They are scaled to the given size and converted to RGBA, as the camera
+	 * gives them. Files that are not images are skipped.
+	 */
+	private static Mat[] loadFrames(File directory, int width, int height) {
+		List<Mat> loaded = new ArrayList<Mat>();
+		File[] files = directory.listFiles();
+		if (files != null) {
+			Arrays.sort(files);
+			for (File file : files) {
+				Mat image = Highgui.imread(file.getPath());
+				if (!image.empty()) {
+					loaded.add(toCameraFrame(image, width, height));
+				}
+				image.release();
+			}
+		}
+		return loaded.toArray(new Mat[loaded.size()]);
+	}
+
+	private static Mat toCameraFrame(Mat bgr, int width, int height) {
+		Mat scaled = new Mat();
+		Imgproc.resize(bgr, scaled, new Size(width, height));
+		Mat frame = new Mat();
+		Imgproc.cvtColor(scaled, frame, Imgproc.COLOR_BGR2RGBA);
+		scaled.release();
+		return frame;
+	}
+}
@@ -0,0 +1,214 @@
+package com.cs4911.video_editor.benchmark;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import com.cs4911.video_editor.pipeline.MpscRingBuffer;
+import com.cs4911.video_editor.pipeline.SpscRingBuffer;
+import com.cs4911.video_editor.pipeline.WaitStrategy;
+
+/**
+ * Compares the ring buffers with the LinkedBlockingQueues they replaced.
+ * Passes items down a chain of stages, each a thread taking from one
+ * queue and putting into the next, the way a pipeline run with a thread
+ * per effect does, and has several threads add items to one queue the
+ * way request threads add frames. Prints the time per item and hop and
+ * the number of garbage collections during each run.
+ *
+ * Usage: QueueBenchmark [items] [hops] [producers]
+ */
+public class QueueBenchmark {
+
+	private static final int STAGE_CAPACITY = 2;
+	private static final int INPUT_CAPACITY = 20;
+	private static final int RUNS = 5;
+
+	/**
+	 * Creates the queues that are compared.
+	 */
+	private interface QueueFactory {
+		BlockingQueue<Object> create(int capacity);
+	}
+
+	public static void main(String[] args) throws Exception {
+		int items = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int hops = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		int producers = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+		System.out.println(Runtime.getRuntime().availableProcessors() + " processors, "
+				+ items + " items, " + hops + " hops, " + producers + " producers");
+
+		System.out.println("Chain of stages:");
+		runChain("LinkedBlockingQueue", new QueueFactory() {
+			@Override
+			public BlockingQueue<Object> create(int capacity) {
+				return new LinkedBlockingQueue<Object>(capacity);
+			}
+		}, items, hops);
+		for (final WaitStrategy waitStrategy : WaitStrategy.values()) {
+			if (waitStrategy == WaitStrategy.BUSY_SPIN && Runtime.getRuntime().availableProcessors() <= hops) {
+				// Spinning stages that outnumber the processors only starve each other.
+				System.out.println(String.format("  %-28s skipped, needs more than %d processors", "SpscRingBuffer " + waitStrategy, hops));
+				continue;
+			}
+			runChain("SpscRingBuffer " + waitStrategy, new QueueFactory() {
+				@Override
+				public BlockingQueue<Object> create(int capacity) {
+					return new SpscRingBuffer<Object>(capacity, waitStrategy);
+				}
+			}, items, hops);
+		}
+
+		System.out.println("Many producers, one consumer:");
+		runFanIn("LinkedBlockingQueue", new QueueFactory() {
+			@Override
+			public BlockingQueue<Object> create(int capacity) {
+				return new LinkedBlockingQueue<Object>(capacity);
+			}
+		}, items, producers);
+		runFanIn("MpscRingBuffer PARKING", new QueueFactory() {
+			@Override
+			public BlockingQueue<Object> create(int capacity) {
+				return new MpscRingBuffer<Object>(capacity, WaitStrategy.PARKING);
+			}
+		}, items, producers);
+	}
+
+	/**
+	 * Times items passing through a chain of hops queues, and prints the best of a few runs.
+	 */
+	private static void runChain(String name, QueueFactory factory, final int items, int hops) throws InterruptedException {
+		long best = Long.MAX_VALUE;
+		long collections = 0;
+		for (int run = 0; run < RUNS; run++) {
+			final List<BlockingQueue<Object>> queues = new ArrayList<BlockingQueue<Object>>();
+			for (int i = 0; i < hops; i++) {
+				queues.add(factory.create(STAGE_CAPACITY));
+			}
+			List<Thread> threads = new ArrayList<Thread>();
+			threads.add(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					Object item = new Object();
+					try {
+						for (int i = 0; i < items; i++) {
+							queues.get(0).put(item);
+						}
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+			}));
+			for (int i = 0; i < hops - 1; i++) {
+				final BlockingQueue<Object> in = queues.get(i), out = queues.get(i + 1);
+				threads.add(new Thread(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							for (int i = 0; i < items; i++) {
+								out.put(in.take());
+							}
+						} catch (InterruptedException e) {
+							return;
+						}
+					}
+				}));
+			}
+			final BlockingQueue<Object> last = queues.get(hops - 1);
+			threads.add(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						for (int i = 0; i < items; i++) {
+							last.take();
+						}
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+			}));
+			long gcBefore = countCollections();
+			long nanos = time(threads);
+			if (nanos < best) {
+				best = nanos;
+				collections = countCollections() - gcBefore;
+			}
+		}
+		print(name, best / ((double) items * hops), "ns/item/hop", collections);
+	}
+
+	/**
+	 * Times producers threads together adding items to one queue that
+	 * one thread takes from, and prints the best of a few runs.
+	 */
+	private static void runFanIn(String name, QueueFactory factory, int items, int producers) throws InterruptedException {
+		long best = Long.MAX_VALUE;
+		long collections = 0;
+		final int itemsPerProducer = items / producers;
+		final int total = itemsPerProducer * producers;
+		for (int run = 0; run < RUNS; run++) {
+			final BlockingQueue<Object> queue = factory.create(INPUT_CAPACITY);
+			List<Thread> threads = new ArrayList<Thread>();
+			for (int p = 0; p < producers; p++) {
+				threads.add(new Thread(new Runnable() {
+					@Override
+					public void run() {
+						Object item = new Object();
+						try {
+							for (int i = 0; i < itemsPerProducer; i++) {
+								queue.put(item);
+							}
+						} catch (InterruptedException e) {
+							return;
+						}
+					}
+				}));
+			}
+			threads.add(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						for (int i = 0; i < total; i++) {
+							queue.take();
+						}
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+			}));
+			long gcBefore = countCollections();
+			long nanos = time(threads);
+			if (nanos < best) {
+				best = nanos;
+				collections = countCollections() - gcBefore;
+			}
+		}
+		print(name, best / (double) total, "ns/item", collections);
+	}
+
+	private static long time(List<Thread> threads) throws InterruptedException {
+		long start = System.nanoTime();
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		return System.nanoTime() - start;
+	}
+
+	private static long countCollections() {
+		long count = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += Math.max(0, gc.getCollectionCount());
+		}
+		return count;
+	}
+
+	private static void print(String name, double nanos, String unit, long collections) {
+		System.out.println(String.format("  %-28s %10.1f %-12s %4d GCs", name, nanos, unit, collections));
+	}
+}
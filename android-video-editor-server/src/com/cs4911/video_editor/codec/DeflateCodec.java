@@ -0,0 +1,90 @@
+package com.cs4911.video_editor.codec;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.opencv.core.Mat;
+
+/**
+ * Sends frames the way RawCodec does, compressed with Deflate at its
+ * fastest level. Lossless like PNG, but skips PNG's per-row filtering,
+ * which is where most of its encoding time goes.
+ */
+public class DeflateCodec implements FrameCodec {
+
+	private final RawCodec rawCodec = new RawCodec();
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.codec.FrameCodec#getName()
+	 */
+	@Override
+	public String getName() {
+		return FrameCodecFactory.RAW_DEFLATE;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.codec.FrameCodec#encode(org.opencv.core.Mat)
+	 */
+	@Override
+	public byte[] encode(Mat frame) {
+		return deflate(rawCodec.encode(frame));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.codec.FrameCodec#decode(byte[])
+	 */
+	@Override
+	public Mat decode(byte[] data) {
+		return rawCodec.decode(inflate(data));
+	}
+
+	/**
+	 * Compresses data with Deflate at its fastest level.
+	 * @param data the data to compress
+	 * @return the compressed data
+	 */
+	static byte[] deflate(byte[] data) {
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		deflater.setInput(data);
+		deflater.finish();
+		ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2);
+		byte[] buffer = new byte[64 * 1024];
+		while (!deflater.finished()) {
+			out.write(buffer, 0, deflater.deflate(buffer));
+		}
+		deflater.end();
+		return out.toByteArray();
+	}
+
+	/**
+	 * Uncompresses data compressed with deflate.
+	 * @param data the compressed data
+	 * @return the uncompressed data
+	 * @throws IllegalArgumentException if the data is truncated or corrupt
+	 */
+	static byte[] inflate(byte[] data) {
+		Inflater inflater = new Inflater();
+		inflater.setInput(data);
+		ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 2);
+		byte[] buffer = new byte[64 * 1024];
+		try {
+			while (!inflater.finished()) {
+				int n = inflater.inflate(buffer);
+				if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					throw new IllegalArgumentException("Deflated data is truncated");
+				}
+				out.write(buffer, 0, n);
+			}
+		} catch (DataFormatException e) {
+			throw new IllegalArgumentException("Deflated data is corrupt: " + e.getMessage());
+		} finally {
+			inflater.end();
+		}
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,31 @@
+package com.cs4911.video_editor.codec;
+
+import org.opencv.core.Mat;
+
+/**
+ * Turns frames into bytes to send between the device and the server, and back.
+ */
+public interface FrameCodec {
+
+	/**
+	 * Returns the name the client and server use for this codec
+	 * when they agree on how to encode frames.
+	 * @return the name of this codec
+	 */
+	public String getName();
+
+	/**
+	 * Encodes a frame.
+	 * @param frame the frame to encode
+	 * @return the encoded frame
+	 */
+	public byte[] encode(Mat frame);
+
+	/**
+	 * Decodes a frame encoded with this codec.
+	 * @param data the encoded frame
+	 * @return the decoded frame
+	 * @throws IllegalArgumentException if the data is not a frame encoded with this codec
+	 */
+	public Mat decode(byte[] data);
+}
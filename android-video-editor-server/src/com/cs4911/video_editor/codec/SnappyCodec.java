@@ -0,0 +1,50 @@
+package com.cs4911.video_editor.codec;
+
+import java.io.IOException;
+
+import org.opencv.core.Mat;
+import org.xerial.snappy.Snappy;
+
+/**
+ * Sends frames the way RawCodec does, compressed with Snappy, which
+ * compresses less than Deflate but is several times faster.
+ */
+public class SnappyCodec implements FrameCodec {
+
+	private final RawCodec rawCodec = new RawCodec();
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.codec.FrameCodec#getName()
+	 */
+	@Override
+	public String getName() {
+		return FrameCodecFactory.RAW_SNAPPY;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.codec.FrameCodec#encode(org.opencv.core.Mat)
+	 */
+	@Override
+	public byte[] encode(Mat frame) {
+		try {
+			return Snappy.compress(rawCodec.encode(frame));
+		} catch (IOException e) {
+			throw new IllegalStateException("Snappy failed to compress a frame", e);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.codec.FrameCodec#decode(byte[])
+	 */
+	@Override
+	public Mat decode(byte[] data) {
+		try {
+			return rawCodec.decode(Snappy.uncompress(data));
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Snappy frame is corrupt: " + e.getMessage());
+		}
+	}
+}
@@ -1,5 +1,7 @@
 package com.cs4911.video_editor.effects;
 
+import java.util.Map;
+
 import org.opencv.core.Mat;
 import org.opencv.imgproc.Imgproc;
 /**
@@ -10,18 +12,48 @@ import org.opencv.imgproc.Imgproc;
  */
 public class EdgeDetectionEffect extends Effect {
 	
+	double threshold1;
+	double threshold2;
+
+	/**
+	 * creates an edge detection effect with Canny thresholds of 80 and 100
+	 */
+	public EdgeDetectionEffect() {
+		this(80, 100);
+	}
+
+	/**
+	 * creates an edge detection effect with the given Canny thresholds
+	 * @param threshold1 the lower threshold of the hysteresis procedure
+	 * @param threshold2 the upper threshold of the hysteresis procedure
+	 */
+	public EdgeDetectionEffect(double threshold1, double threshold2) {
+		this.threshold1 = threshold1;
+		this.threshold2 = threshold2;
+	}
+
 	/**
 	 * the function that applies the edge detection effect 
-	 * @param A matrix of the current frame in the pipeline
-	 * @return A matrix of the frame after the effect has been applied
+	 * @param src matrix of the current frame in the pipeline
+	 * @param dst matrix to write the frame into after the effect has been applied
+	 * @param scratch intermediate matrices kept from the previous frame
+	 * @return the matrix holding the result
 	 */
 	@Override
-	public Mat applyTo(Mat frame) {
-		Mat newFrame = new Mat();
-		Imgproc.Canny(frame, newFrame, 80, 100);
-		Imgproc.cvtColor(newFrame, newFrame, Imgproc.COLOR_GRAY2BGRA, 4);
+	public Mat applyTo(Mat src, Mat dst, ScratchBuffers scratch) {
+		Mat edges = scratch.get(0);
+		Imgproc.Canny(src, edges, threshold1, threshold2);
+		Imgproc.cvtColor(edges, dst, Imgproc.COLOR_GRAY2BGRA, 4);
 		
-		return newFrame;
+		return dst;
+	}
+
+	@Override
+	public Map<String, Double> getParameters() {
+		Map<String, Double> parameters = super.getParameters();
+		parameters.put("threshold1", threshold1);
+		parameters.put("threshold2", threshold2);
+		return parameters;
 	}
 
 	public String toString() {
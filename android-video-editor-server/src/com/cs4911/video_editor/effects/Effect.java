@@ -1,7 +1,9 @@
 package com.cs4911.video_editor.effects;
 
 import java.io.Serializable;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.opencv.core.Mat;
 
@@ -15,11 +17,67 @@ public abstract class Effect implements Serializable {
 	private static final long serialVersionUID = -72404756670729731L;
 	
 	/**
-	 * standard applyTo matrix that all effects overload 
+	 * applies this effect to a frame in a new matrix. kept for callers
+	 * that do not hold on to buffers; it allocates on every call, so
+	 * pipelines use applyTo(Mat, Mat, ScratchBuffers) instead.
 	 * @param A matrix of the current frame in the pipeline
 	 * @return A matrix of the frame after the effect has been applied
 	 */
 	public Mat applyTo(Mat matrix) {
-		return matrix;
+		return applyTo(matrix, new Mat(), new ScratchBuffers());
+	}
+
+	/**
+	 * standard applyTo that all effects overload. the result is written into
+	 * dst, and intermediate results into scratch, both of which the caller
+	 * reuses for the next frame. an effect may also draw on src and return
+	 * it instead of dst. by default the frame is left as it is.
+	 * @param src matrix of the current frame in the pipeline
+	 * @param dst matrix to write the frame into after the effect has been applied
+	 * @param scratch intermediate matrices kept from the previous frame
+	 * @return the matrix holding the result, either dst or src
+	 */
+	public Mat applyTo(Mat src, Mat dst, ScratchBuffers scratch) {
+		return src;
+	}
+
+	/**
+	 * returns an Effect that can be applied to frames alongside this one,
+	 * for example by another pipeline replica. effects that keep no state
+	 * between frames can safely be shared, so by default this returns itself.
+	 * @return an Effect equivalent to this one
+	 */
+	public Effect copy() {
+		return this;
+	}
+
+	/**
+	 * returns whether this effect keeps state from one frame to the next,
+	 * so that every frame has to go through the same instance, in order.
+	 * copies of such an effect each see only some of the frames, so they
+	 * are not spread over pipeline replicas. false by default.
+	 * @return true if the result for a frame depends on the frames before it
+	 */
+	public boolean isStateful() {
+		return false;
+	}
+
+	/**
+	 * returns the name that identifies this kind of effect, for example
+	 * when the pipeline is described to the server.
+	 * @return the name of this effect
+	 */
+	public String getName() {
+		return getClass().getSimpleName();
+	}
+
+	/**
+	 * returns the settings of this effect by name, so that an equivalent
+	 * effect can be created with EffectFactory. effects without settings
+	 * return an empty map.
+	 * @return a new map from parameter name to value
+	 */
+	public Map<String, Double> getParameters() {
+		return new HashMap<String, Double>();
 	}
 }
@@ -12,15 +12,16 @@ public class HorizontalFlipEffect extends Effect {
 
 	/**
 	 * the function that does the axis flip to mirror the matrix
-	 * @param A matrix of the current frame in the pipeline
-	 * @return A matrix of the frame after the effect has been applied
+	 * @param src matrix of the current frame in the pipeline
+	 * @param dst matrix to write the frame into after the effect has been applied
+	 * @param scratch intermediate matrices kept from the previous frame
+	 * @return the matrix holding the result
 	 */
 	@Override
-	public Mat applyTo(Mat frame) {
-		Mat newFrame = new Mat();
-		Core.flip(frame, newFrame, 1);
+	public Mat applyTo(Mat src, Mat dst, ScratchBuffers scratch) {
+		Core.flip(src, dst, 1);
 		
-		return newFrame;
+		return dst;
 	}
 
 	public String toString() {
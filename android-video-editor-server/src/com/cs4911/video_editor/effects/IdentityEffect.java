@@ -12,12 +12,14 @@ public class IdentityEffect extends Effect {
 
 	/**
 	 * this function does nothing to the input matrix.
-	 * @param A matrix of the current frame in the pipeline
-	 * @return A matrix of the frame after the effect has been applied
+	 * @param src matrix of the current frame in the pipeline
+	 * @param dst matrix to write the frame into after the effect has been applied
+	 * @param scratch intermediate matrices kept from the previous frame
+	 * @return the matrix holding the result, which is src
 	 */
 	@Override
-	public Mat applyTo(Mat frame) {
-		return frame;
+	public Mat applyTo(Mat src, Mat dst, ScratchBuffers scratch) {
+		return src;
 	}
 
 	public String toString() {
@@ -18,11 +18,14 @@ public class MotionHistoryEffect extends Effect {
 	
 	/**
 	 * this is the function that when applied causes more recent motions to be evaluated higher than older ones.
-	 * @param A matrix of the current frame in the pipeline
-	 * @return A matrix of the frame after the effect has been applied
+	 * @param src matrix of the current frame in the pipeline
+	 * @param dst matrix to write the frame into after the effect has been applied
+	 * @param scratch intermediate matrices kept from the previous frame
+	 * @return the matrix holding the result
 	 */
 	@Override
-	public Mat applyTo(Mat frame) {
+	public Mat applyTo(Mat src, Mat dst, ScratchBuffers scratch) {
+		Mat frame = src;
 		if(greyImage == null || movingAverage == null || difference == null || temp == null) {
 			greyImage = new Mat( frame.size(), CvType.CV_8UC1);
 			movingAverage = new Mat(frame.size(), CvType.CV_32FC1);
@@ -35,9 +38,27 @@ public class MotionHistoryEffect extends Effect {
 			Core.absdiff(greyImage, temp, difference);
 		}
 		
-		Mat newFrame = new Mat();
-		Imgproc.cvtColor(difference, newFrame, Imgproc.COLOR_GRAY2RGBA);
-		return newFrame;
+		Imgproc.cvtColor(difference, dst, Imgproc.COLOR_GRAY2RGBA);
+		return dst;
+	}
+
+	/**
+	 * the motion history is built up from the frames seen so far, so every copy
+	 * starts with its own empty history.
+	 * @return a new MotionHistoryEffect
+	 */
+	@Override
+	public Effect copy() {
+		return new MotionHistoryEffect();
+	}
+
+	/**
+	 * the result for a frame depends on the frames before it.
+	 * @return true
+	 */
+	@Override
+	public boolean isStateful() {
+		return true;
 	}
 
 	public String toString() {
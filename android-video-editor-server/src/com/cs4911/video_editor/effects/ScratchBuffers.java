@@ -0,0 +1,42 @@
+package com.cs4911.video_editor.effects;
+
+import java.util.ArrayList;
+
+import org.opencv.core.Mat;
+
+/**
+ * @author Senior design team
+ * @version 1.0
+ * intermediate matrices an effect can reuse from one frame to the next.
+ * OpenCV functions only reallocate their output when its size or type
+ * changes, so once the resolution settles an effect writing into these
+ * does not allocate. each EffectTask owns its own, so they are never
+ * used by two threads at once.
+ */
+public class ScratchBuffers {
+
+	private final ArrayList<Mat> mats = new ArrayList<Mat>();
+
+	/**
+	 * returns the scratch matrix with the given index, creating an empty
+	 * one the first time it is asked for.
+	 * @param index the number of the scratch matrix
+	 * @return the scratch matrix, holding whatever was last written to it
+	 */
+	public Mat get(int index) {
+		while (mats.size() <= index) {
+			mats.add(new Mat());
+		}
+		return mats.get(index);
+	}
+
+	/**
+	 * frees the native memory of all scratch matrices.
+	 */
+	public void release() {
+		for (Mat mat : mats) {
+			mat.release();
+		}
+		mats.clear();
+	}
+}
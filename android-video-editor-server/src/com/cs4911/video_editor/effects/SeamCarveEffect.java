@@ -3,6 +3,7 @@ package com.cs4911.video_editor.effects;
 import org.opencv.core.Core;
 import org.opencv.core.CvType;
 import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
 import org.opencv.core.Size;
 import org.opencv.imgproc.Imgproc;
 /**
@@ -16,19 +17,23 @@ public class SeamCarveEffect extends Effect {
 	/**
 	 * the function that applies the seam carving
 	 * At the moment it finds 10 least significant seams to remove
-	 * @param A matrix of the current frame in the pipeline
-	 * @return A matrix of the frame after the effect has been applied
+	 * The frame shrinks by a column with every seam, so only the intermediate matrices are reused.
+	 * @param src matrix of the current frame in the pipeline
+	 * @param dst matrix to write the frame into after the effect has been applied
+	 * @param scratch intermediate matrices kept from the previous frame
+	 * @return the matrix holding the result
 	 */
 	@Override
-	public Mat applyTo(Mat frame) {
+	public Mat applyTo(Mat src, Mat dst, ScratchBuffers scratch) {
+		Mat frame = src;
 
-		Mat newFrame = frame.clone();
+		Mat newFrame = frame;
 		for(int i = 0; i < 10; i++) {
 			//Gradient Magnitude for intensity of image.
-			Mat gradientMagnitude = computeGradientMagnitude(newFrame);
+			Mat gradientMagnitude = computeGradientMagnitude(newFrame, scratch);
 			
 			//Use DP to create the real energy map that is used for path calculation.  Strictly using vertical paths for testing simplicity.
-			Mat pathIntensityMat = computePathIntensityMat(gradientMagnitude);
+			Mat pathIntensityMat = computePathIntensityMat(gradientMagnitude, scratch.get(4));
 			
 			if(pathIntensityMat == null) return frame;
 			
@@ -43,15 +48,18 @@ public class SeamCarveEffect extends Effect {
 	 * The first step of the seam carving is to compute  the gradient magnitude of the image
 	 * to get the x and y gradients we use the sobel operator on an un-blurred image
 	 * @param A matrix of the current frame sent in
+	 * @param scratch intermediate matrices, the first four of which are used here
 	 * @return A matrix of the frame after the gradient magnitude is computed 
 	 */
-	private Mat computeGradientMagnitude(Mat frame) {
-		Mat grayScale = new Mat();
+	private Mat computeGradientMagnitude(Mat frame, ScratchBuffers scratch) {
+		Mat grayScale = scratch.get(0);
 		Imgproc.cvtColor(frame, grayScale, Imgproc.COLOR_RGBA2GRAY);
 		
-		Mat drv = new Mat(grayScale.size(), CvType.CV_16SC1);
-		Mat drv32f = new Mat(grayScale.size(), CvType.CV_32FC1);
-		Mat mag = Mat.zeros(grayScale.size(), CvType.CV_32FC1);
+		Mat drv = scratch.get(1);
+		Mat drv32f = scratch.get(2);
+		Mat mag = scratch.get(3);
+		mag.create(grayScale.size(), CvType.CV_32FC1);
+		mag.setTo(new Scalar(0));
 
 		Imgproc.Sobel(grayScale, drv, CvType.CV_16SC1, 1, 0);
 		drv.convertTo(drv32f, CvType.CV_32FC1);
@@ -70,10 +78,11 @@ public class SeamCarveEffect extends Effect {
 	 * Computes paths of intensity for the given energy map.  The path intensity is given by the bottom row in the matrix.
 	 * 
 	 * @param rawEnergyMap the matrix contains the raw energy data from the original image
+	 * @param pathIntensityMap the matrix to write the path intensities into
 	 * @return a matrix that contains the path intensities of the given input.
 	 */
-	private Mat computePathIntensityMat(Mat rawEnergyMap) {
-		Mat pathIntensityMap = new Mat(rawEnergyMap.size(), CvType.CV_32FC1);
+	private Mat computePathIntensityMat(Mat rawEnergyMap, Mat pathIntensityMap) {
+		pathIntensityMap.create(rawEnergyMap.size(), CvType.CV_32FC1);
 		
 		//Log.i(TAG, rawEnergyMap.size() + " " + rawEnergyMap.type() + " " + rawEnergyMap.channels() + " " + pathIntensityMap.size() + " " + pathIntensityMap.type() + " " + pathIntensityMap.channels());
 		
@@ -12,22 +12,43 @@ import org.opencv.imgproc.Imgproc;
  * class that generates an xray image when called
  *  
  */
-public class XrayEffect extends Effect {
+public class XrayEffect extends Effect implements ColorMatrixEffect {
 
 	/**
 	 * similar to getting the negative but grayscale reduces color variation 
-	 * @param A matrix of the current frame in the pipeline
-	 * @return A matrix of the frame after the effect has been applied
+	 * @param src matrix of the current frame in the pipeline
+	 * @param dst matrix to write the frame into after the effect has been applied
+	 * @param scratch intermediate matrices kept from the previous frame
+	 * @return the matrix holding the result
 	 */
 	@Override
-	public Mat applyTo(Mat frame) {
-		Mat newFrame = new Mat(frame.size(), frame.type());
-		Imgproc.cvtColor(frame, newFrame, Imgproc.COLOR_RGBA2GRAY);
-		Imgproc.cvtColor(newFrame, newFrame, Imgproc.COLOR_GRAY2RGBA);
-		Imgproc.cvtColor(frame, newFrame, Imgproc.COLOR_RGBA2RGB);
-		Core.bitwise_not(newFrame, newFrame);
+	public Mat applyTo(Mat src, Mat dst, ScratchBuffers scratch) {
+		Mat gray = scratch.get(0);
+		Imgproc.cvtColor(src, gray, Imgproc.COLOR_RGBA2GRAY);
+		Imgproc.cvtColor(gray, dst, Imgproc.COLOR_GRAY2RGBA);
+		Imgproc.cvtColor(src, dst, Imgproc.COLOR_RGBA2RGB);
+		Core.bitwise_not(dst, dst);
 		
-		return newFrame;
+		return dst;
+	}
+
+	/**
+	 * the grayscale image is overwritten before it is used, so like the
+	 * negative this drops the alpha channel and inverts the other channels.
+	 * @param channels the number of channels of the frame
+	 * @return the color matrix, or null unless the frame has 4 channels
+	 */
+	@Override
+	public double[][] getColorMatrix(int channels) {
+		if (channels != 4) {
+			return null;
+		}
+		double[][] matrix = new double[3][5];
+		for (int i = 0; i < 3; i++) {
+			matrix[i][i] = -1;
+			matrix[i][4] = 255;
+		}
+		return matrix;
 	}
 
 	public String toString() {
@@ -0,0 +1,52 @@
+package com.cs4911.video_editor.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts events, such as frames received, without locking.
+ */
+public class Counter implements CounterMXBean {
+
+	private final String name;
+	private final AtomicLong count = new AtomicLong();
+
+	/**
+	 * Creates a Counter at 0.
+	 * @param name the name it is registered and logged under
+	 */
+	public Counter(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Returns the name this Counter is registered and logged under.
+	 * @return the name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Counts one event.
+	 */
+	public void increment() {
+		count.incrementAndGet();
+	}
+
+	/**
+	 * Counts the given number of events.
+	 * @param n the number of events
+	 */
+	public void add(long n) {
+		count.addAndGet(n);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.metrics.CounterMXBean#getCount()
+	 */
+	@Override
+	public long getCount() {
+		return count.get();
+	}
+}
@@ -0,0 +1,13 @@
+package com.cs4911.video_editor.metrics;
+
+/**
+ * The attributes of a Counter shown over JMX.
+ */
+public interface CounterMXBean {
+
+	/**
+	 * Returns the number of events counted since the server started.
+	 * @return the count
+	 */
+	long getCount();
+}
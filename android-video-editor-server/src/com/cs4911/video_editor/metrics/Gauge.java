@@ -0,0 +1,34 @@
+package com.cs4911.video_editor.metrics;
+
+/**
+ * A value that is read when it is asked for, such as the number of frames
+ * queued, rather than kept up to date as it changes. Subclasses say how to
+ * read it.
+ */
+public abstract class Gauge implements GaugeMXBean {
+
+	private final String name;
+
+	/**
+	 * Creates a Gauge.
+	 * @param name the name it is registered and logged under
+	 */
+	public Gauge(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Returns the name this Gauge is registered and logged under.
+	 * @return the name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.metrics.GaugeMXBean#getValue()
+	 */
+	@Override
+	public abstract double getValue();
+}
@@ -0,0 +1,13 @@
+package com.cs4911.video_editor.metrics;
+
+/**
+ * The attributes of a Gauge shown over JMX.
+ */
+public interface GaugeMXBean {
+
+	/**
+	 * Returns the value now.
+	 * @return the value
+	 */
+	double getValue();
+}
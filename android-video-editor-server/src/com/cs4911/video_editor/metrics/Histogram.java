@@ -0,0 +1,214 @@
+package com.cs4911.video_editor.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts durations in buckets whose width grows with the duration, so that
+ * percentiles can be read with a precision of about 3% over any range
+ * without keeping the samples. Durations below 16 ns have a bucket each;
+ * above that, every power of two is split into 16 buckets.
+ *
+ * Recording a duration is an increment of a few atomic counters, with no
+ * locks and no allocation, so it can be done for every frame. Readers see
+ * the counts as they are at that moment, which may be a sample or two
+ * ahead of or behind the sum and maximum.
+ */
+public class Histogram implements HistogramMXBean {
+
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int NUM_BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private final String name;
+	private final AtomicLongArray buckets = new AtomicLongArray(NUM_BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Creates an empty Histogram.
+	 * @param name the name it is registered and logged under
+	 */
+	public Histogram(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Returns the name this Histogram is registered and logged under.
+	 * @return the name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Records a duration.
+	 * @param nanos the duration in nanoseconds; negative durations count as 0
+	 */
+	public void record(long nanos) {
+		nanos = Math.max(0, nanos);
+		buckets.incrementAndGet(bucket(nanos));
+		count.incrementAndGet();
+		sum.addAndGet(nanos);
+		long current = max.get();
+		while (nanos > current && !max.compareAndSet(current, nanos)) {
+			current = max.get();
+		}
+	}
+
+	/**
+	 * Returns a copy of the counts as they are now.
+	 * @return a snapshot of this Histogram
+	 */
+	public Snapshot snapshot() {
+		long[] counts = new long[NUM_BUCKETS];
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			counts[i] = buckets.get(i);
+		}
+		return new Snapshot(counts, count.get(), sum.get(), max.get());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.metrics.HistogramMXBean#getCount()
+	 */
+	@Override
+	public long getCount() {
+		return count.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.metrics.HistogramMXBean#getMeanMs()
+	 */
+	@Override
+	public double getMeanMs() {
+		return snapshot().getMeanMs();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.metrics.HistogramMXBean#getMaxMs()
+	 */
+	@Override
+	public double getMaxMs() {
+		return max.get() / 1e6;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.metrics.HistogramMXBean#get50thPercentileMs()
+	 */
+	@Override
+	public double get50thPercentileMs() {
+		return snapshot().getPercentileMs(0.5);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.metrics.HistogramMXBean#get99thPercentileMs()
+	 */
+	@Override
+	public double get99thPercentileMs() {
+		return snapshot().getPercentileMs(0.99);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.metrics.HistogramMXBean#get999thPercentileMs()
+	 */
+	@Override
+	public double get999thPercentileMs() {
+		return snapshot().getPercentileMs(0.999);
+	}
+
+	private static int bucket(long nanos) {
+		if (nanos < SUB_BUCKETS) {
+			return (int) nanos;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+	}
+
+	/**
+	 * Returns the duration in the middle of a bucket.
+	 */
+	private static double bucketMiddle(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+		int subBucket = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+		long lower = (long) (SUB_BUCKETS + subBucket) << shift;
+		return lower + (1L << shift) / 2.0;
+	}
+
+	/**
+	 * The counts of a Histogram at one moment.
+	 */
+	public static class Snapshot {
+		private final long[] counts;
+		private final long count, sum, max;
+
+		private Snapshot(long[] counts, long count, long sum, long max) {
+			this.counts = counts;
+			this.count = count;
+			this.sum = sum;
+			this.max = max;
+		}
+
+		/**
+		 * Returns the durations recorded since an earlier snapshot of the
+		 * same Histogram. The maximum is that of all durations, since the
+		 * maximum of the later ones alone is not known.
+		 * @param earlier the earlier snapshot
+		 * @return a snapshot of the durations recorded in between
+		 */
+		public Snapshot since(Snapshot earlier) {
+			long[] difference = new long[counts.length];
+			for (int i = 0; i < counts.length; i++) {
+				difference[i] = counts[i] - earlier.counts[i];
+			}
+			return new Snapshot(difference, count - earlier.count, sum - earlier.sum, max);
+		}
+
+		/**
+		 * Returns the number of durations recorded.
+		 * @return the count
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * Returns the mean of the durations recorded.
+		 * @return the mean in milliseconds, or 0 if there are none
+		 */
+		public double getMeanMs() {
+			return count > 0 ? sum / 1e6 / count : 0;
+		}
+
+		/**
+		 * Returns the duration below which the given fraction of the durations are.
+		 * @param fraction the fraction, from 0 to 1
+		 * @return the duration in milliseconds, or 0 if there are none
+		 */
+		public double getPercentileMs(double fraction) {
+			long total = 0;
+			for (long bucketCount : counts) {
+				total += bucketCount;
+			}
+			long rank = (long) Math.ceil(fraction * total);
+			long seen = 0;
+			for (int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+				if (seen >= rank && counts[i] > 0) {
+					return Math.min(bucketMiddle(i), max) / 1e6;
+				}
+			}
+			return 0;
+		}
+	}
+}
@@ -0,0 +1,44 @@
+package com.cs4911.video_editor.metrics;
+
+/**
+ * The attributes of a Histogram shown over JMX, over all the durations it
+ * has recorded since the server started.
+ */
+public interface HistogramMXBean {
+
+	/**
+	 * Returns the number of durations recorded.
+	 * @return the count
+	 */
+	long getCount();
+
+	/**
+	 * Returns the mean of the durations recorded.
+	 * @return the mean in milliseconds
+	 */
+	double getMeanMs();
+
+	/**
+	 * Returns the longest duration recorded.
+	 * @return the maximum in milliseconds
+	 */
+	double getMaxMs();
+
+	/**
+	 * Returns the median of the durations recorded.
+	 * @return the 50th percentile in milliseconds
+	 */
+	double get50thPercentileMs();
+
+	/**
+	 * Returns the duration that 99% of those recorded are below.
+	 * @return the 99th percentile in milliseconds
+	 */
+	double get99thPercentileMs();
+
+	/**
+	 * Returns the duration that 99.9% of those recorded are below.
+	 * @return the 99.9th percentile in milliseconds
+	 */
+	double get999thPercentileMs();
+}
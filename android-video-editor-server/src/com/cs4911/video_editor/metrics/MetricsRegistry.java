@@ -0,0 +1,189 @@
+package com.cs4911.video_editor.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Keeps the server's metrics by name: histograms of durations, counters of
+ * events and gauges read when asked for. Each is shown over JMX, under
+ * com.cs4911.video_editor with its type and name, as soon as it is created
+ * once the registry has been exported, and a snapshot of all of them can be
+ * printed every so often. The snapshots show the durations recorded since
+ * the one before, and the JMX attributes those since the server started.
+ *
+ * Looking a metric up by name takes a map lookup, so code that records
+ * something for every frame looks it up once and keeps it. There is one
+ * registry for the whole server, like the JMX server it is exported to.
+ */
+public class MetricsRegistry {
+
+	private static final String DOMAIN = "com.cs4911.video_editor";
+	private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+
+	private final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<String, Histogram>();
+	private final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<String, Counter>();
+	private final ConcurrentMap<String, Gauge> gauges = new ConcurrentHashMap<String, Gauge>();
+	private volatile MBeanServer mBeanServer;
+	private ScheduledExecutorService logger;
+	// The histograms at the last snapshot printed, to print only what came after.
+	private final Map<String, Histogram.Snapshot> lastLogged = new HashMap<String, Histogram.Snapshot>();
+
+	/**
+	 * Returns the registry of the server.
+	 * @return the registry
+	 */
+	public static MetricsRegistry getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * Returns the Histogram with the given name, creating it if there is none.
+	 * @param name the name of the histogram
+	 * @return the histogram
+	 */
+	public Histogram histogram(String name) {
+		Histogram histogram = histograms.get(name);
+		if (histogram == null) {
+			Histogram created = new Histogram(name);
+			histogram = histograms.putIfAbsent(name, created);
+			if (histogram == null) {
+				histogram = created;
+				export("Histogram", name, histogram);
+			}
+		}
+		return histogram;
+	}
+
+	/**
+	 * Returns the Counter with the given name, creating it if there is none.
+	 * @param name the name of the counter
+	 * @return the counter
+	 */
+	public Counter counter(String name) {
+		Counter counter = counters.get(name);
+		if (counter == null) {
+			Counter created = new Counter(name);
+			counter = counters.putIfAbsent(name, created);
+			if (counter == null) {
+				counter = created;
+				export("Counter", name, counter);
+			}
+		}
+		return counter;
+	}
+
+	/**
+	 * Adds a Gauge, replacing any with the same name.
+	 * @param gauge the gauge
+	 */
+	public void register(Gauge gauge) {
+		gauges.put(gauge.getName(), gauge);
+		export("Gauge", gauge.getName(), gauge);
+	}
+
+	/**
+	 * Shows every metric over JMX, those created so far and those created from now on.
+	 */
+	public synchronized void exportToJmx() {
+		if (mBeanServer != null) {
+			return;
+		}
+		mBeanServer = ManagementFactory.getPlatformMBeanServer();
+		for (Histogram histogram : histograms.values()) {
+			export("Histogram", histogram.getName(), histogram);
+		}
+		for (Counter counter : counters.values()) {
+			export("Counter", counter.getName(), counter);
+		}
+		for (Gauge gauge : gauges.values()) {
+			export("Gauge", gauge.getName(), gauge);
+		}
+	}
+
+	/**
+	 * Prints a snapshot of the metrics every periodMs, if anything was recorded.
+	 * @param periodMs the time between snapshots in milliseconds
+	 */
+	public synchronized void startLogging(long periodMs) {
+		if (logger != null) {
+			return;
+		}
+		logger = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "MetricsLogger");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		logger.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				String snapshot = snapshot();
+				if (snapshot.length() > 0) {
+					System.out.print(snapshot);
+				}
+			}
+		}, periodMs, periodMs, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Returns the durations recorded since the last snapshot, with the
+	 * counters and gauges as they are now. Histograms with nothing new are
+	 * left out, and nothing is returned if no histogram has anything new.
+	 * @return the snapshot, a line per metric
+	 */
+	public synchronized String snapshot() {
+		StringBuilder builder = new StringBuilder();
+		for (Histogram histogram : histograms.values()) {
+			Histogram.Snapshot now = histogram.snapshot();
+			Histogram.Snapshot last = lastLogged.put(histogram.getName(), now);
+			Histogram.Snapshot recent = last != null ? now.since(last) : now;
+			if (recent.getCount() > 0) {
+				builder.append(String.format("  %-32s %8d  mean %8.2f  p50 %8.2f  p99 %8.2f  p99.9 %8.2f ms%n",
+						histogram.getName(), recent.getCount(), recent.getMeanMs(), recent.getPercentileMs(0.5),
+						recent.getPercentileMs(0.99), recent.getPercentileMs(0.999)));
+			}
+		}
+		if (builder.length() == 0) {
+			return "";
+		}
+		for (Counter counter : counters.values()) {
+			builder.append(String.format("  %-32s %8d%n", counter.getName(), counter.getCount()));
+		}
+		for (Gauge gauge : gauges.values()) {
+			builder.append(String.format("  %-32s %8.2f%n", gauge.getName(), gauge.getValue()));
+		}
+		return "Metrics:" + String.format("%n") + builder;
+	}
+
+	/**
+	 * Registers a metric with the JMX server, if the metrics are exported.
+	 * One that cannot be registered is only left out of JMX.
+	 */
+	private void export(String type, String name, Object metric) {
+		MBeanServer server = mBeanServer;
+		if (server == null) {
+			return;
+		}
+		try {
+			ObjectName objectName = new ObjectName(DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name));
+			if (!server.isRegistered(objectName)) {
+				server.registerMBean(metric, objectName);
+			}
+		} catch (JMException e) {
+			System.err.println("Could not export " + name + " over JMX: " + e.getMessage());
+		}
+	}
+}
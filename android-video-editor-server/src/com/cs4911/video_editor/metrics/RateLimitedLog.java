@@ -0,0 +1,82 @@
+package com.cs4911.video_editor.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Prints a message at most once per interval, for events that can happen
+ * for every frame or every client. The messages that are not printed are
+ * only counted, and the count is printed with the next message, so the
+ * log shows how often it happened without being flooded; a Counter in the
+ * MetricsRegistry keeps the exact number.
+ */
+public class RateLimitedLog {
+
+	// How long a message is printed at most once if not given otherwise.
+	public static final long DEFAULT_INTERVAL_MS = Long.getLong("log.intervalMs", 10000);
+
+	private final long intervalNanos;
+	// When the next message may be printed, by System.nanoTime().
+	private final AtomicLong nextLogNanos;
+	private final AtomicLong suppressed = new AtomicLong();
+
+	/**
+	 * Creates a RateLimitedLog that prints a message at most once per DEFAULT_INTERVAL_MS.
+	 */
+	public RateLimitedLog() {
+		this(DEFAULT_INTERVAL_MS);
+	}
+
+	/**
+	 * Creates a RateLimitedLog that prints a message at most once per intervalMs.
+	 * @param intervalMs the least time between two messages in milliseconds
+	 */
+	public RateLimitedLog(long intervalMs) {
+		intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMs);
+		nextLogNanos = new AtomicLong(System.nanoTime());
+	}
+
+	/**
+	 * Prints the message if none was printed for the interval, and
+	 * otherwise only counts it.
+	 * @param message the message
+	 * @return true if the message was printed
+	 */
+	public boolean log(String message) {
+		return log(message, null);
+	}
+
+	/**
+	 * Prints the message with the exception if none was printed for the
+	 * interval, and otherwise only counts it.
+	 * @param message the message
+	 * @param e the exception that caused it, or null
+	 * @return true if the message was printed
+	 */
+	public boolean log(String message, Throwable e) {
+		long now = System.nanoTime();
+		long next = nextLogNanos.get();
+		if (now - next < 0 || !nextLogNanos.compareAndSet(next, now + intervalNanos)) {
+			suppressed.incrementAndGet();
+			return false;
+		}
+		StringBuilder builder = new StringBuilder(message);
+		if (e != null) {
+			builder.append(": ").append(e);
+		}
+		long numSuppressed = suppressed.getAndSet(0);
+		if (numSuppressed > 0) {
+			builder.append(" (").append(numSuppressed).append(" more since the last)");
+		}
+		System.err.println(builder);
+		return true;
+	}
+
+	/**
+	 * Returns how many messages were not printed since the last one that was.
+	 * @return the number of messages not printed
+	 */
+	public long getSuppressed() {
+		return suppressed.get();
+	}
+}
@@ -0,0 +1,353 @@
+package com.cs4911.video_editor.pipeline;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.math.stat.regression.SimpleRegression;
+
+/**
+ * Measures what applying each effect costs at each resolution, in wall time
+ * and in CPU time of the thread that applied it, and estimates from that
+ * what it costs at any resolution, so that the effects can be placed before
+ * any frame has gone through them.
+ *
+ * For every effect, the time at the resolutions it has been applied at is
+ * fitted as a fixed time plus a time per pixel by least squares. A
+ * resolution that has been measured is estimated by its own average, and
+ * an effect measured at a single resolution is taken to cost the same per
+ * pixel at the others. The averages weigh all samples alike at first and
+ * then follow changes, such as the device getting hot and slowing down.
+ *
+ * The profiles can be saved to a file and loaded again, so they survive
+ * restarts. Reading the CPU time of a thread differs between Android and
+ * other JVMs, so it is left to a CpuClock. Nothing else here depends on
+ * Android, so it can be checked on any JVM.
+ */
+public class EffectProfiler {
+
+	/**
+	 * Reads the CPU time used by the current thread.
+	 */
+	public interface CpuClock {
+
+		/**
+		 * Returns the CPU time the current thread has used so far.
+		 * @return the CPU time in nanoseconds
+		 */
+		long threadCpuTimeNanos();
+	}
+
+	// Weight of a new sample once the averages have this many samples' worth, about the last 20.
+	private static final double SMOOTHING = 0.05;
+	private static final String HEADER = "# effect\twidth\theight\tsamples\twallMs\tcpuMs";
+
+	private final CpuClock cpuClock;
+	// Profiles by effect, then by resolution.
+	private final Map<String, Map<Long, Profile>> profiles = new TreeMap<String, Map<Long, Profile>>();
+	// Cost models by effect, fitted when first needed after the effect's profiles changed.
+	private final Map<String, CostModel> models = new HashMap<String, CostModel>();
+
+	/**
+	 * Creates an EffectProfiler that measures only wall time.
+	 */
+	public EffectProfiler() {
+		this(null);
+	}
+
+	/**
+	 * Creates an EffectProfiler.
+	 * @param cpuClock the clock for the CPU time of the thread applying an effect, or null to measure only wall time
+	 */
+	public EffectProfiler(CpuClock cpuClock) {
+		this.cpuClock = cpuClock;
+	}
+
+	/**
+	 * Returns the CPU time used by the current thread, to be passed back to
+	 * record once the effect has been applied.
+	 * @return the CPU time in nanoseconds, or -1 if it cannot be measured
+	 */
+	public long threadCpuTimeNanos() {
+		return cpuClock != null ? cpuClock.threadCpuTimeNanos() : -1;
+	}
+
+	/**
+	 * Records what applying an effect to a frame cost.
+	 * @param effect the name of the effect
+	 * @param width the width of the frame in pixels
+	 * @param height the height of the frame in pixels
+	 * @param wallNanos the wall time the effect took
+	 * @param cpuNanos the CPU time the effect took, or negative if not measured
+	 */
+	public synchronized void record(String effect, int width, int height, long wallNanos, long cpuNanos) {
+		if (width <= 0 || height <= 0 || wallNanos < 0) {
+			return;
+		}
+		Map<Long, Profile> resolutions = profiles.get(effect);
+		if (resolutions == null) {
+			resolutions = new TreeMap<Long, Profile>();
+			profiles.put(effect, resolutions);
+		}
+		Long key = resolution(width, height);
+		Profile profile = resolutions.get(key);
+		if (profile == null) {
+			profile = new Profile(width, height);
+			resolutions.put(key, profile);
+		}
+		profile.add(wallNanos / 1e6, cpuNanos >= 0 ? cpuNanos / 1e6 : -1);
+		models.remove(effect);
+	}
+
+	/**
+	 * Returns how long applying an effect to a frame of the given size is expected to take.
+	 * @param effect the name of the effect
+	 * @param width the width of the frame in pixels
+	 * @param height the height of the frame in pixels
+	 * @return the wall time in milliseconds, or -1 if the effect has not been measured
+	 */
+	public synchronized double estimateWallMs(String effect, int width, int height) {
+		Profile profile = getProfile(effect, width, height);
+		if (profile != null) {
+			return profile.wallMs;
+		}
+		CostModel model = getModel(effect);
+		return model != null ? model.wall.estimate((long) width * height) : -1;
+	}
+
+	/**
+	 * Returns how much CPU time applying an effect to a frame of the given size is expected to take.
+	 * @param effect the name of the effect
+	 * @param width the width of the frame in pixels
+	 * @param height the height of the frame in pixels
+	 * @return the CPU time in milliseconds, or -1 if it has not been measured for the effect
+	 */
+	public synchronized double estimateCpuMs(String effect, int width, int height) {
+		Profile profile = getProfile(effect, width, height);
+		if (profile != null && profile.cpuMs >= 0) {
+			return profile.cpuMs;
+		}
+		CostModel model = getModel(effect);
+		return model != null && model.cpu != null ? model.cpu.estimate((long) width * height) : -1;
+	}
+
+	/**
+	 * Returns the number of times an effect has been measured at any resolution.
+	 * @param effect the name of the effect
+	 * @return the number of samples
+	 */
+	public synchronized long getNumSamples(String effect) {
+		long samples = 0;
+		Map<Long, Profile> resolutions = profiles.get(effect);
+		if (resolutions != null) {
+			for (Profile profile : resolutions.values()) {
+				samples += profile.samples;
+			}
+		}
+		return samples;
+	}
+
+	/**
+	 * Loads the profiles saved to a file, replacing those measured at the
+	 * same resolutions. Lines that cannot be read are skipped.
+	 * @param file the file the profiles were saved to; nothing is loaded if it does not exist
+	 * @throws IOException if the file exists but cannot be read
+	 */
+	public synchronized void load(File file) throws IOException {
+		if (!file.exists()) {
+			return;
+		}
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.startsWith("#") || line.trim().length() == 0) {
+					continue;
+				}
+				String[] fields = line.split("\t");
+				if (fields.length != 6) {
+					continue;
+				}
+				try {
+					Profile profile = new Profile(Integer.parseInt(fields[1]), Integer.parseInt(fields[2]));
+					profile.samples = Long.parseLong(fields[3]);
+					profile.wallMs = Double.parseDouble(fields[4]);
+					profile.cpuMs = Double.parseDouble(fields[5]);
+					Map<Long, Profile> resolutions = profiles.get(fields[0]);
+					if (resolutions == null) {
+						resolutions = new TreeMap<Long, Profile>();
+						profiles.put(fields[0], resolutions);
+					}
+					resolutions.put(resolution(profile.width, profile.height), profile);
+					models.remove(fields[0]);
+				} catch (NumberFormatException e) {
+					// Skip it rather than lose the rest.
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Saves the profiles to a file, one line per effect and resolution. The
+	 * file is written next to it first and then renamed, so that it is never
+	 * left half written.
+	 * @param file the file to save the profiles to
+	 * @throws IOException if the file cannot be written
+	 */
+	public synchronized void save(File file) throws IOException {
+		File temp = new File(file.getPath() + ".tmp");
+		BufferedWriter writer = new BufferedWriter(new FileWriter(temp));
+		try {
+			writer.write(HEADER);
+			writer.newLine();
+			for (Map.Entry<String, Map<Long, Profile>> entry : profiles.entrySet()) {
+				for (Profile profile : entry.getValue().values()) {
+					writer.write(entry.getKey() + "\t" + profile.width + "\t" + profile.height + "\t" + profile.samples
+							+ "\t" + profile.wallMs + "\t" + profile.cpuMs);
+					writer.newLine();
+				}
+			}
+		} finally {
+			writer.close();
+		}
+		// Renaming over an existing file fails on some platforms.
+		if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file))) {
+			throw new IOException("Could not replace " + file);
+		}
+	}
+
+	private Profile getProfile(String effect, int width, int height) {
+		Map<Long, Profile> resolutions = profiles.get(effect);
+		return resolutions != null ? resolutions.get(resolution(width, height)) : null;
+	}
+
+	private CostModel getModel(String effect) {
+		CostModel model = models.get(effect);
+		if (model == null) {
+			Map<Long, Profile> resolutions = profiles.get(effect);
+			if (resolutions == null || resolutions.isEmpty()) {
+				return null;
+			}
+			List<Profile> measured = new ArrayList<Profile>(resolutions.values());
+			model = new CostModel(fit(measured, false), fit(measured, true));
+			models.put(effect, model);
+		}
+		return model;
+	}
+
+	/**
+	 * Fits the time taken to the number of pixels over the given resolutions.
+	 * If there is only one, or the fit makes no sense, such as a time that
+	 * falls as frames grow, the time is taken to be proportional to the pixels.
+	 * @param measured the profiles of an effect
+	 * @param cpu whether to fit the CPU time rather than the wall time
+	 * @return the fitted line, or null if there are no measurements
+	 */
+	private static Line fit(List<Profile> measured, boolean cpu) {
+		SimpleRegression regression = new SimpleRegression();
+		double totalMs = 0, totalPixels = 0;
+		for (Profile profile : measured) {
+			double ms = cpu ? profile.cpuMs : profile.wallMs;
+			if (ms < 0) {
+				continue;
+			}
+			double pixels = (double) profile.width * profile.height;
+			regression.addData(pixels, ms);
+			totalMs += ms * profile.samples;
+			totalPixels += pixels * profile.samples;
+		}
+		if (totalPixels <= 0) {
+			return null;
+		}
+		if (regression.getN() >= 2) {
+			double slope = regression.getSlope();
+			double intercept = regression.getIntercept();
+			if (slope > 0 && intercept >= 0) {
+				return new Line(intercept, slope);
+			}
+		}
+		return new Line(0, totalMs / totalPixels);
+	}
+
+	private static Long resolution(int width, int height) {
+		return Long.valueOf(((long) width << 32) | (height & 0xffffffffL));
+	}
+
+	/**
+	 * What an effect cost at one resolution.
+	 */
+	private static class Profile {
+		final int width, height;
+		long samples;
+		double wallMs;
+		double cpuMs = -1;
+
+		Profile(int width, int height) {
+			this.width = width;
+			this.height = height;
+		}
+
+		void add(double sampleWallMs, double sampleCpuMs) {
+			samples++;
+			double weight = Math.max(1.0 / samples, SMOOTHING);
+			wallMs += weight * (sampleWallMs - wallMs);
+			if (sampleCpuMs >= 0) {
+				cpuMs = cpuMs < 0 ? sampleCpuMs : cpuMs + weight * (sampleCpuMs - cpuMs);
+			}
+		}
+	}
+
+	/**
+	 * A time in milliseconds as a fixed part plus a part per pixel.
+	 */
+	private static class Line {
+		final double fixedMs, msPerPixel;
+
+		Line(double fixedMs, double msPerPixel) {
+			this.fixedMs = fixedMs;
+			this.msPerPixel = msPerPixel;
+		}
+
+		double estimate(long pixels) {
+			return fixedMs + msPerPixel * pixels;
+		}
+	}
+
+	/**
+	 * The fitted wall and CPU time of an effect.
+	 */
+	private static class CostModel {
+		final Line wall, cpu;
+
+		CostModel(Line wall, Line cpu) {
+			this.wall = wall;
+			this.cpu = cpu;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public synchronized String toString() {
+		StringBuilder builder = new StringBuilder();
+		for (Map.Entry<String, Map<Long, Profile>> entry : profiles.entrySet()) {
+			for (Profile profile : entry.getValue().values()) {
+				builder.append(String.format("%s at %dx%d: %.1f ms, %.1f ms CPU (%d samples)%n", entry.getKey(),
+						profile.width, profile.height, profile.wallMs, profile.cpuMs, profile.samples));
+			}
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,208 @@
+package com.cs4911.video_editor.pipeline;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The first task of a pipeline, which hands frames from the pipeline's
+ * input queue to the chain of effect tasks the pipeline has now. When the
+ * effects change, the gate puts END_OF_CHAIN behind the last frame it gave
+ * the old chain, waits until that chain has put out all of its frames, and
+ * only then hands frames to the new chain. Frames in flight are therefore
+ * finished by the effects they started with, and leave the pipeline in the
+ * order they came in.
+ */
+public class EpochGate extends EffectTask {
+
+	/**
+	 * A chain of effect tasks to hand frames to.
+	 */
+	private static class Chain {
+		private final BlockingQueue<FrameEnvelope> inputQueue;
+		private final EffectTask lastTask;
+
+		private Chain(BlockingQueue<FrameEnvelope> inputQueue, EffectTask lastTask) {
+			this.inputQueue = inputQueue;
+			this.lastTask = lastTask;
+		}
+	}
+
+	private final ConcurrentLinkedQueue<Chain> requestedChains = new ConcurrentLinkedQueue<Chain>();
+
+	// Changed only by the thread or stage running the gate, but volatile
+	// because hasWork is called from the threads that signal the stage.
+	private volatile BlockingQueue<FrameEnvelope> chainQueue, retiringQueue;
+	private volatile EffectTask lastTask, retiringTask;
+	private FrameEnvelope heldFrame;
+
+	private volatile boolean stopped;
+
+	/**
+	 * Creates a new EpochGate that takes frames from the given queue.
+	 * It hands them on once it is given a chain with switchTo.
+	 * @param inputQueue the input queue of the pipeline
+	 */
+	public EpochGate(BlockingQueue<FrameEnvelope> inputQueue) {
+		super(null, inputQueue, null);
+	}
+
+	/**
+	 * Makes the gate hand frames to the given chain of effect tasks once
+	 * the chain it hands them to now has finished. Chains switched to one
+	 * after another are each finished in turn.
+	 * @param chainInputQueue the queue the first task of the chain takes frames from
+	 * @param chainLastTask the last task of the chain
+	 */
+	public void switchTo(BlockingQueue<FrameEnvelope> chainInputQueue, EffectTask chainLastTask) {
+		requestedChains.add(new Chain(chainInputQueue, chainLastTask));
+	}
+
+	/**
+	 * Stops the gate without finishing the chain it hands frames to.
+	 * A thread running the gate must also be interrupted.
+	 */
+	public void stop() {
+		stopped = true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Runnable#run()
+	 */
+	@Override
+	public void run() {
+		// The thread is interrupted both to stop it and to make it switch chains
+		// while it waits, so a frame it holds is handed on after an interrupt.
+		while (!stopped) {
+			try {
+				switchChains();
+				if (heldFrame == null) {
+					heldFrame = inputQueue.take();
+				}
+				switchChains();
+				chainQueue.put(heldFrame);
+				heldFrame = null;
+			} catch (InterruptedException e) {
+				// stopped, or woken to switch chains
+			}
+		}
+		finish();
+	}
+
+	/**
+	 * Switches to every requested chain in turn, waiting for each chain
+	 * before it to finish.
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	private void switchChains() throws InterruptedException {
+		while (true) {
+			if (retiringQueue != null) {
+				retiringQueue.put(END_OF_CHAIN);
+				retiringQueue = null;
+			}
+			if (retiringTask != null) {
+				retiringTask.awaitFinished();
+				retiringTask = null;
+			}
+			if (!beginSwitch()) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Starts switching to the next requested chain, if there is one.
+	 * @return false if no chain was requested
+	 */
+	private boolean beginSwitch() {
+		Chain chain = requestedChains.poll();
+		if (chain == null) {
+			return false;
+		}
+		if (chainQueue != null) {
+			retiringQueue = chainQueue;
+			retiringTask = lastTask;
+		}
+		chainQueue = chain.inputQueue;
+		lastTask = chain.lastTask;
+		return true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.pipeline.EffectTask#hasWork()
+	 */
+	@Override
+	public boolean hasWork() {
+		if (stopped) {
+			return false;
+		}
+		if (retiringQueue != null) {
+			return retiringQueue.remainingCapacity() > 0;
+		}
+		if (retiringTask != null) {
+			return retiringTask.isFinished();
+		}
+		if (!requestedChains.isEmpty()) {
+			return true;
+		}
+		BlockingQueue<FrameEnvelope> queue = chainQueue;
+		return queue != null && queue.remainingCapacity() > 0 && !inputQueue.isEmpty();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.pipeline.EffectTask#processNext()
+	 */
+	@Override
+	public boolean processNext() {
+		if (stopped) {
+			return false;
+		}
+		if (retiringQueue != null) {
+			if (!retiringQueue.offer(END_OF_CHAIN)) {
+				return false;
+			}
+			retiringQueue = null;
+			return true;
+		}
+		if (retiringTask != null) {
+			if (!retiringTask.isFinished()) {
+				return false;
+			}
+			retiringTask = null;
+			return true;
+		}
+		if (beginSwitch()) {
+			return true;
+		}
+		if (chainQueue == null || chainQueue.remainingCapacity() == 0) {
+			return false;
+		}
+		FrameEnvelope frame = inputQueue.poll();
+		if (frame == null) {
+			return false;
+		}
+		// The gate is the only task putting frames in the chain's input queue.
+		chainQueue.offer(frame);
+		return true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.pipeline.EffectTask#copy()
+	 */
+	@Override
+	public EffectTask copy() {
+		return new EpochGate(inputQueue);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.pipeline.EffectTask#toString()
+	 */
+	@Override
+	public String toString() {
+		return "EpochGate";
+	}
+}
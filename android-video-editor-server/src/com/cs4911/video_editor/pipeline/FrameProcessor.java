@@ -3,7 +3,10 @@ package com.cs4911.video_editor.pipeline;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.opencv.core.Mat;
 
@@ -16,52 +19,294 @@ import com.cs4911.video_editor.effects.*;
 public class FrameProcessor {
 
 	private static final String TAG = "FrameProcessor";
+	// A deadline to give frames with setDeadline: this many display
+	// intervals at the rate the camera preview is usually shown at.
+	public static final int DEFAULT_TARGET_FPS = 30;
+	public static final int DEFAULT_MAX_LATENCY_FRAMES = 3;
 
-	private BlockingQueue<Mat> unprocessedFrameQueue, processedFrameQueue;
+	private BlockingQueue<FrameEnvelope> unprocessedFrameQueue, processedFrameQueue;
 
 	private HashSet<Pipeline> pipelines;
+
+	// Only used when frames are spread over more than one pipeline.
+	private ArrayList<BlockingQueue<FrameEnvelope>> replicaInputQueues;
+	// Shared by the replicas, so that the reorderer waits on a single queue.
+	private BlockingQueue<FrameEnvelope> replicaOutputQueue;
+	private PriorityBlockingQueue<Long> dispatchedSequences;
+	private Thread dispatcherThread, reordererThread;
+	private FrameDispatcher dispatcher;
+	// Whether the effects include one that keeps state between frames.
+	private boolean stateful;
+	private FrameReorderer reorderer;
+	// Frames discarded by reorderers that have been replaced.
+	private long reorderedStaleFrames;
+
+	// The client keeps its in-flight frames bounded, so frames are only
+	// dropped at the input if it falls behind, and then the stale ones.
+	private final BackpressurePolicy inputPolicy = BackpressurePolicy.dropOldest();
+	private final BackpressurePolicy outputPolicy = BackpressurePolicy.block();
+
+	// How long after it arrived a frame stops being worth processing,
+	// or 0 for never, as it is until setDeadline is called.
+	private volatile long deadlineMs;
+	// Told what applying each effect costs, if set.
+	private EffectProfiler effectProfiler;
 	
 	Mat originalFrame;
 	int numFrames = 0;
+	private AtomicLong nextSequenceNumber = new AtomicLong(0);
+	private Executor executor;
 
 	/**
 	 * Creates a new FrameProcessor with a pipeline with the given effects.
 	 * @param effects the effects that the pipelines in this FrameProcessor should apply
 	 */
 	public FrameProcessor(EffectTask[] effects) {
-		unprocessedFrameQueue = new LinkedBlockingQueue<Mat>(20);
-		processedFrameQueue = new LinkedBlockingQueue<Mat>(20);
+		this(effects, 1);
+	}
+
+	/**
+	 * Creates a new FrameProcessor with numPipelines pipelines with the given effects.
+	 * When there is more than one pipeline, frames are spread over them and
+	 * processed frames are given back in the order in which they were added.
+	 * @param effects the effects that the pipelines in this FrameProcessor should apply
+	 * @param numPipelines the number of pipelines that process frames in parallel
+	 */
+	public FrameProcessor(EffectTask[] effects, int numPipelines) {
+		this(effects, numPipelines, null);
+	}
+
+	/**
+	 * Creates a new FrameProcessor with numPipelines pipelines with the given effects,
+	 * which run as stages on the given Executor instead of on threads of their own.
+	 * @param effects the effects that the pipelines in this FrameProcessor should apply
+	 * @param numPipelines the number of pipelines that process frames in parallel
+	 * @param executor the Executor shared with other FrameProcessors, or null to use a thread per effect
+	 */
+	public FrameProcessor(EffectTask[] effects, int numPipelines, Executor executor) {
+		this.executor = executor;
+		// Frames are added by whichever thread handles the request, but taken
+		// by one stage or dispatcher; processed frames may be taken by several.
+		unprocessedFrameQueue = new MpscRingBuffer<FrameEnvelope>(20);
+		processedFrameQueue = new SignalingQueue<FrameEnvelope>(20);
 		pipelines = new HashSet<Pipeline>();
+		stateful = isStateful(effects);
+		if (numPipelines > 1) {
+			replicaInputQueues = new ArrayList<BlockingQueue<FrameEnvelope>>();
+			replicaOutputQueue = new MpscRingBuffer<FrameEnvelope>(2 * numPipelines);
+			dispatchedSequences = new PriorityBlockingQueue<Long>();
+			createReplicaThreads();
+		}
 		addPipeline(effects);
+		for (int i = 1; i < numPipelines; i++) {
+			addPipeline();
+		}
 	}
 
 	/**
 	 * Adds a frame to be processed by one of the pipelines.
+	 * The frame is given the next sequence number and the current time as its capture time.
 	 * @param frame a frame to be processed
+	 * @return false if the input policy dropped the frame
+	 */
+	public boolean addFrame(Mat frame) {
+		return addFrame(new FrameEnvelope(frame, nextSequenceNumber.getAndIncrement(), System.currentTimeMillis()));
+	}
+
+	/**
+	 * Adds a frame to be processed by one of the pipelines. If too many
+	 * frames are waiting, the input policy decides which frame is dropped.
+	 * @param frame a frame to be processed, with its sequence number and capture time
+	 * @return false if the input policy dropped the frame
+	 */
+	public boolean addFrame(FrameEnvelope frame) {
+		stampDeadline(frame);
+		try {
+			return inputPolicy.offer(unprocessedFrameQueue, frame);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * Gives every frame added from now on a deadline of maxLatencyFrames
+	 * display intervals at targetFps after it arrived. Once a frame has
+	 * missed its deadline, the effects it has not reached yet pass it through
+	 * without being applied, so that late frames do not hold up the ones
+	 * behind them. Until this is called, frames get no deadline.
+	 * @param targetFps the rate at which processed frames are shown, or 0 to give frames no deadline
+	 * @param maxLatencyFrames how many display intervals a frame may take to be processed
+	 */
+	public void setDeadline(int targetFps, int maxLatencyFrames) {
+		deadlineMs = targetFps > 0 ? maxLatencyFrames * 1000L / targetFps : 0;
+	}
+
+	/**
+	 * Returns how long after it arrived a frame stops being worth processing.
+	 * @return the deadline of frames relative to their arrival in milliseconds, or 0 if they have none
+	 */
+	public long getDeadlineMs() {
+		return deadlineMs;
+	}
+
+	/**
+	 * Returns the number of times an effect was not applied to a frame because
+	 * the frame had missed its deadline. A frame is counted once for every
+	 * effect it skipped.
+	 * @return the number of effects skipped
+	 */
+	public long getSkippedFrames() {
+		long skippedFrames = 0;
+		for (Pipeline pipeline : pipelines) {
+			skippedFrames += pipeline.getSkippedFrames();
+		}
+		return skippedFrames;
+	}
+
+	/**
+	 * Gives the frame a deadline based on when it arrived, unless deadlines
+	 * are turned off or it already has one. Its capture time is on the
+	 * clock of the device, which need not agree with the server's.
+	 * @param frame the frame being added
+	 */
+	private void stampDeadline(FrameEnvelope frame) {
+		long deadline = deadlineMs;
+		if (deadline > 0 && frame.getDeadline() == 0) {
+			long arrived = System.currentTimeMillis() - (System.nanoTime() - frame.getArrivalTime()) / 1000000;
+			frame.setDeadline(arrived + deadline);
+		}
+	}
+
+	/**
+	 * Returns the policy for frames added while too many frames are waiting to be processed.
+	 * @return the input policy
+	 */
+	public BackpressurePolicy getInputPolicy() {
+		return inputPolicy;
+	}
+
+	/**
+	 * Returns the policy for processed frames while too many are waiting to be taken.
+	 * @return the output policy
+	 */
+	public BackpressurePolicy getOutputPolicy() {
+		return outputPolicy;
+	}
+
+	/**
+	 * Returns the EffectProfiler told what the effects applied here cost.
+	 * @return the profiler, or null if the costs are not measured
+	 */
+	public EffectProfiler getEffectProfiler() {
+		return effectProfiler;
+	}
+
+	/**
+	 * Sets the EffectProfiler told what the effects applied here cost, for
+	 * every pipeline and every effect from now on.
+	 * @param effectProfiler the profiler, or null to not measure the costs
+	 */
+	public void setEffectProfiler(EffectProfiler effectProfiler) {
+		this.effectProfiler = effectProfiler;
+		for (Pipeline pipeline : pipelines) {
+			pipeline.setProfiler(effectProfiler);
+		}
+	}
+
+	/**
+	 * Returns the number of frames that were added but will never be
+	 * given back: dropped by the input or output policy, lost by an
+	 * effect that failed, or come out of a replica too late to be
+	 * given back in order.
+	 * @return the number of frames dropped
 	 */
-	public void addFrame(Mat frame) {
-		if (!unprocessedFrameQueue.offer(frame))
-			System.err.println("Failed to add frame to unprocessed Q");
+	public long getDroppedFrames() {
+		long droppedFrames = inputPolicy.getDroppedFrames() + outputPolicy.getDroppedFrames();
+		for (Pipeline pipeline : pipelines) {
+			droppedFrames += pipeline.getDroppedFrames();
+		}
+		if (reorderer != null) {
+			droppedFrames += reorderedStaleFrames + reorderer.getStaleFrames();
+		}
+		return droppedFrames;
 	}
 
 	/**
-	 * Returns a processed frame if one is ready.
-	 * If no frame is ready, returns null.
-	 * @return a processed frame
+	 * Returns the number of frames waiting to be processed: added, but
+	 * not taken by the first effect of a pipeline yet.
+	 * @return the number of frames queued
+	 */
+	public int getQueuedFrames() {
+		int queuedFrames = unprocessedFrameQueue.size();
+		if (replicaInputQueues != null) {
+			for (BlockingQueue<FrameEnvelope> queue : replicaInputQueues) {
+				queuedFrames += queue.size();
+			}
+		}
+		return queuedFrames;
+	}
+
+	/**
+	 * Returns a processed frame, waiting for one if none is ready.
+	 * @return a processed frame, or null if interrupted while waiting
 	 */
 	public Mat getFrame() {
-		//return processedFrameQueue.poll();
-		System.out.println("Giving Processed frame : " + processedFrameQueue.size());
-		
-		Mat m = null;
+		FrameEnvelope frame = takeFrame();
+		return frame != null ? frame.getMat() : null;
+	}
+
+	/**
+	 * Returns a processed frame together with its sequence number, capture time,
+	 * stage timestamps and pipeline epoch, waiting for one if none is ready.
+	 * Frames that were dropped on the way are passed over.
+	 * @return a processed frame, or null if interrupted while waiting
+	 */
+	public FrameEnvelope takeFrame() {
 		try {
-			m =  processedFrameQueue.take();
+			FrameEnvelope frame = processedFrameQueue.take();
+			while (frame.isDropped()) {
+				frame = processedFrameQueue.take();
+			}
+			return frame;
 		} catch (InterruptedException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+			Thread.currentThread().interrupt();
+			return null;
+		}
+	}
+
+	/**
+	 * Returns a processed frame, waiting up to the given time for one if none is ready.
+	 * @param timeout how long to wait before giving up
+	 * @param unit the unit of the timeout
+	 * @return a processed frame, or null if none became ready in time
+	 */
+	public FrameEnvelope pollFrame(long timeout, TimeUnit unit) {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		try {
+			FrameEnvelope frame = processedFrameQueue.poll(timeout, unit);
+			while (frame != null && frame.isDropped()) {
+				frame = processedFrameQueue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+			}
+			return frame;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the epoch of the pipelines, which is advanced
+	 * every time their list of effects changes.
+	 * If there are no pipelines, returns 0.
+	 * @return the current pipeline epoch
+	 */
+	public int getEpoch() {
+		if (!pipelines.isEmpty()) {
+			return pipelines.iterator().next().getEpoch();
+		} else {
+			return 0;
 		}
-		
-		return m;
 	}
 
 	/**
@@ -81,9 +326,35 @@ public class FrameProcessor {
 	 * Adds a new effect to the end of all existing pipelines.
 	 * @param effect the effect to add to the pipelines
 	 */
-	public void addEffect(EffectTask effect) {
+	public synchronized void addEffect(EffectTask effect) {
+		setStateful(stateful || effect.isStateful());
+		EffectTask pipelineEffect = effect;
+		for (Pipeline pipeline : pipelines) {
+			pipeline.addEffect(pipelineEffect);
+			pipelineEffect = pipelineEffect.copy();
+		}
+	}
+
+	/**
+	 * Replaces the effects of all pipelines with the given effects in one step.
+	 * Every pipeline gets its own copy of the effect tasks.
+	 * @param effects the effects that the pipelines should apply
+	 */
+	public synchronized void setEffects(EffectTask[] effects) {
+		boolean statefulEffects = isStateful(effects);
+		if (statefulEffects) {
+			setStateful(true);
+		}
+		EffectTask[] pipelineEffects = effects;
 		for (Pipeline pipeline : pipelines) {
-			pipeline.addEffect(effect);
+			pipeline.setEffects(pipelineEffects);
+			pipelineEffects = new EffectTask[effects.length];
+			for (int i = 0; i < effects.length; i++) {
+				pipelineEffects[i] = effects[i].copy();
+			}
+		}
+		if (!statefulEffects) {
+			setStateful(false);
 		}
 	}
 
@@ -91,10 +362,11 @@ public class FrameProcessor {
 	 * Resets all pipelines so that they do not apply
 	 * any effect to frames passing through them.
 	 */
-	public void clearEffects() {
+	public synchronized void clearEffects() {
 		for (Pipeline pipeline : pipelines) {
 			pipeline.clearEffects();
 		}
+		setStateful(false);
 	}
 
 	/**
@@ -104,6 +376,10 @@ public class FrameProcessor {
 		for (Pipeline pipeline : pipelines) {
 			pipeline.start();
 		}
+		if (dispatcherThread != null && dispatcherThread.getState() == Thread.State.NEW) {
+			dispatcherThread.start();
+			reordererThread.start();
+		}
 	}
 
 	/**
@@ -114,6 +390,23 @@ public class FrameProcessor {
 		for (Pipeline pipeline : pipelines) {
 			pipeline.stop();
 		}
+		if (dispatcherThread != null) {
+			dispatcherThread.interrupt();
+			reordererThread.interrupt();
+			// The ring buffers may only be cleared once nothing else takes from them.
+			try {
+				dispatcherThread.join();
+				reordererThread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			createReplicaThreads();
+			for (BlockingQueue<FrameEnvelope> queue : replicaInputQueues) {
+				queue.clear();
+			}
+			replicaOutputQueue.clear();
+			dispatchedSequences.clear();
+		}
 		unprocessedFrameQueue.clear();
 		processedFrameQueue.clear();
 	}
@@ -124,7 +417,12 @@ public class FrameProcessor {
 	 */
 	private void addPipeline() {
 		if (!pipelines.isEmpty()) {
-			pipelines.add(new Pipeline(pipelines.iterator().next()));
+			Pipeline pipeline = pipelines.iterator().next();
+			if (replicaInputQueues != null) {
+				pipelines.add(new Pipeline(pipeline, addReplicaInputQueue(), replicaOutputQueue));
+			} else {
+				pipelines.add(new Pipeline(pipeline));
+			}
 		}
 	}
 
@@ -133,6 +431,66 @@ public class FrameProcessor {
 	 * @param effects the effects that the new pipeline should apply to frames
 	 */
 	private void addPipeline(EffectTask[] effects) {
-		pipelines.add(new Pipeline(unprocessedFrameQueue, processedFrameQueue,effects));
+		if (replicaInputQueues != null) {
+			pipelines.add(new Pipeline(addReplicaInputQueue(), replicaOutputQueue, effects, executor));
+		} else {
+			Pipeline pipeline = new Pipeline(unprocessedFrameQueue, processedFrameQueue, effects, executor);
+			pipeline.setOutputPolicy(outputPolicy);
+			pipelines.add(pipeline);
+		}
+	}
+
+	/**
+	 * Creates the input queue for a new pipeline replica.
+	 * @return the queue the dispatcher hands the replica's frames to
+	 */
+	private BlockingQueue<FrameEnvelope> addReplicaInputQueue() {
+		BlockingQueue<FrameEnvelope> queue = new SpscRingBuffer<FrameEnvelope>(2);
+		replicaInputQueues.add(queue);
+		return queue;
+	}
+
+	/**
+	 * Records whether the effects include one that keeps state between
+	 * frames. Every pipeline has its own copy of such an effect, so while
+	 * there is one, frames all go to the first replica instead of being
+	 * spread over them. Pinning is done before the effects are switched,
+	 * and undone after.
+	 * @param stateful true if an effect keeps state between frames
+	 */
+	private void setStateful(boolean stateful) {
+		this.stateful = stateful;
+		if (dispatcher != null) {
+			dispatcher.setPinned(stateful);
+		}
+	}
+
+	/**
+	 * Returns whether any of the given effects keeps state between frames.
+	 * @param effects the effects that the pipelines apply
+	 * @return true if one of them is stateful
+	 */
+	private static boolean isStateful(EffectTask[] effects) {
+		for (EffectTask effect : effects) {
+			if (effect.isStateful()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Creates the threads that spread frames over the pipeline replicas
+	 * and put the processed frames back in order.
+	 */
+	private void createReplicaThreads() {
+		dispatcher = new FrameDispatcher(unprocessedFrameQueue, replicaInputQueues, dispatchedSequences);
+		dispatcher.setPinned(stateful);
+		dispatcherThread = new Thread(dispatcher);
+		if (reorderer != null) {
+			reorderedStaleFrames += reorderer.getStaleFrames();
+		}
+		reorderer = new FrameReorderer(replicaOutputQueue, dispatchedSequences, processedFrameQueue, outputPolicy);
+		reordererThread = new Thread(reorderer);
 	}
 }
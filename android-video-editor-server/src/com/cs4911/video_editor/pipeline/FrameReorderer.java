@@ -0,0 +1,126 @@
+package com.cs4911.video_editor.pipeline;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A Runnable that collects processed frames from a set of pipeline replicas
+ * and puts them into a single output queue in the order of their sequence
+ * numbers. The FrameDispatcher records the sequence number of every frame
+ * it hands out, so the next frame to give back is the one with the lowest
+ * sequence number still recorded; frames that come out of the replicas
+ * before it wait in a heap until it does.
+ *
+ * Every frame that enters a replica comes out of it, dropped or not, so no
+ * frame is ever given up on after a timeout: a slow frame holds back the
+ * frames behind it, and a dropped one is skipped as soon as it comes out.
+ * A frame that comes out after a frame with a higher sequence number was
+ * given back, because it was added after that frame, is stale and is
+ * discarded rather than given back out of order.
+ */
+public class FrameReorderer implements Runnable {
+
+	private static final Comparator<FrameEnvelope> BY_SEQUENCE_NUMBER = new Comparator<FrameEnvelope>() {
+		@Override
+		public int compare(FrameEnvelope a, FrameEnvelope b) {
+			return a.getSequenceNumber() < b.getSequenceNumber() ? -1
+					: a.getSequenceNumber() == b.getSequenceNumber() ? 0 : 1;
+		}
+	};
+
+	private BlockingQueue<FrameEnvelope> replicaOutputQueue;
+	private PriorityBlockingQueue<Long> dispatchedSequences;
+	private BlockingQueue<FrameEnvelope> processedFrameQueue;
+	private final BackpressurePolicy outputPolicy;
+	// Frames that came out of the replicas before a frame with a lower sequence number.
+	private final PriorityQueue<FrameEnvelope> arrivedFrames = new PriorityQueue<FrameEnvelope>(11, BY_SEQUENCE_NUMBER);
+	private long lastSequenceNumber = Long.MIN_VALUE;
+	private final AtomicLong staleFrames = new AtomicLong();
+
+	/**
+	 * Creates a new FrameReorderer that waits for room in the processedFrameQueue.
+	 * @param replicaOutputQueue the queue all pipeline replicas put their processed frames in
+	 * @param dispatchedSequences the sequence numbers of the frames handed to the replicas
+	 * @param processedFrameQueue the queue to put processed frames in
+	 */
+	public FrameReorderer(BlockingQueue<FrameEnvelope> replicaOutputQueue, PriorityBlockingQueue<Long> dispatchedSequences,
+			BlockingQueue<FrameEnvelope> processedFrameQueue) {
+		this(replicaOutputQueue, dispatchedSequences, processedFrameQueue, BackpressurePolicy.block());
+	}
+
+	/**
+	 * Creates a new FrameReorderer.
+	 * @param replicaOutputQueue the queue all pipeline replicas put their processed frames in
+	 * @param dispatchedSequences the sequence numbers of the frames handed to the replicas
+	 * @param processedFrameQueue the queue to put processed frames in
+	 * @param outputPolicy what to do when the processedFrameQueue is full
+	 */
+	public FrameReorderer(BlockingQueue<FrameEnvelope> replicaOutputQueue, PriorityBlockingQueue<Long> dispatchedSequences,
+			BlockingQueue<FrameEnvelope> processedFrameQueue, BackpressurePolicy outputPolicy) {
+		this.replicaOutputQueue = replicaOutputQueue;
+		this.dispatchedSequences = dispatchedSequences;
+		this.processedFrameQueue = processedFrameQueue;
+		this.outputPolicy = outputPolicy;
+	}
+
+	/**
+	 * Returns the number of frames discarded because a frame with a higher
+	 * sequence number had already been given back when they came out.
+	 * @return the number of stale frames
+	 */
+	public long getStaleFrames() {
+		return staleFrames.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Runnable#run()
+	 */
+	@Override
+	public void run() {
+		while (true) {
+			try {
+				arrivedFrames.add(replicaOutputQueue.take());
+				giveBackArrivedFrames();
+			} catch (InterruptedException e) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Gives back the frames that have arrived, lowest sequence number first,
+	 * for as long as no frame handed out before them is still on its way.
+	 * @throws InterruptedException if interrupted while waiting for room in the processedFrameQueue
+	 */
+	private void giveBackArrivedFrames() throws InterruptedException {
+		FrameEnvelope frame;
+		while ((frame = arrivedFrames.peek()) != null) {
+			Long next = dispatchedSequences.peek();
+			long sequenceNumber = frame.getSequenceNumber();
+			if (next != null && sequenceNumber > next) {
+				// The frame with the next sequence number has not come out yet.
+				return;
+			}
+			arrivedFrames.poll();
+			if (next != null && sequenceNumber == next) {
+				dispatchedSequences.poll();
+			}
+			if (frame.isDropped()) {
+				// Counted where it was dropped.
+				continue;
+			}
+			if (sequenceNumber < lastSequenceNumber) {
+				staleFrames.incrementAndGet();
+				frame.markDropped();
+				frame.recycle();
+				continue;
+			}
+			lastSequenceNumber = sequenceNumber;
+			outputPolicy.offer(processedFrameQueue, frame);
+		}
+	}
+}
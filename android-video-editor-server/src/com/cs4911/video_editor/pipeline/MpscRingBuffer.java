@@ -0,0 +1,150 @@
+package com.cs4911.video_editor.pipeline;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A RingBuffer that any number of threads may put to, with a single
+ * consumer, for the queue that frames are added to. Producers claim a
+ * slot with a compare-and-set on the tail; every slot carries a sequence
+ * number telling whether it is free for the position being claimed or
+ * filled for the position being taken. Elements are taken with a
+ * compare-and-set on the head as well, so that a producer whose
+ * BackpressurePolicy drops the oldest frame can poll one to make room
+ * while the consumer takes; only the consumer may block in take.
+ */
+public class MpscRingBuffer<E> extends RingBuffer<E> {
+
+	private final AtomicReferenceArray<E> slots;
+	private final AtomicLongArray sequences;
+	// Position of the next slot to take from, shared by the consumer and evicting producers.
+	private final AtomicLong head = new AtomicLong();
+	// Position of the next slot to claim, shared by the producers.
+	private final AtomicLong tail = new AtomicLong();
+
+	/**
+	 * Creates a new MpscRingBuffer whose blocking methods park while waiting.
+	 * @param capacity the number of elements the ring buffer can hold, at least 2
+	 */
+	public MpscRingBuffer(int capacity) {
+		this(capacity, WaitStrategy.PARKING);
+	}
+
+	/**
+	 * Creates a new MpscRingBuffer.
+	 * @param capacity the number of elements the ring buffer can hold, at least 2
+	 * @param waitStrategy how threads wait when the ring buffer is empty or full
+	 */
+	public MpscRingBuffer(int capacity, WaitStrategy waitStrategy) {
+		super(capacity, waitStrategy);
+		if (capacity < 2) {
+			// With one slot, filled for a position reads the same as free for the next.
+			throw new IllegalArgumentException("capacity must be at least 2");
+		}
+		slots = new AtomicReferenceArray<E>(capacity);
+		sequences = new AtomicLongArray(capacity);
+		for (int i = 0; i < capacity; i++) {
+			sequences.set(i, i);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.pipeline.RingBuffer#enqueue(java.lang.Object)
+	 */
+	@Override
+	protected boolean enqueue(E e) {
+		while (true) {
+			long t = tail.get();
+			int index = (int) (t % capacity);
+			long sequence = sequences.get(index);
+			if (sequence == t) {
+				// The slot is free for this position; claim it.
+				if (tail.compareAndSet(t, t + 1)) {
+					slots.lazySet(index, e);
+					sequences.set(index, t + 1);
+					return true;
+				}
+			} else if (sequence < t) {
+				// The consumer has not taken the element from the last lap yet.
+				return false;
+			}
+			// Another producer claimed the position first; try the next one.
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.pipeline.RingBuffer#dequeue()
+	 */
+	@Override
+	protected E dequeue() {
+		while (true) {
+			long h = head.get();
+			int index = (int) (h % capacity);
+			long sequence = sequences.get(index);
+			if (sequence == h + 1) {
+				// The slot is filled for this position; take it.
+				if (head.compareAndSet(h, h + 1)) {
+					E e = slots.get(index);
+					slots.lazySet(index, null);
+					// Frees the slot for the producer one lap later.
+					sequences.set(index, h + capacity);
+					return e;
+				}
+			} else if (sequence < h + 1) {
+				// Empty, or claimed by a producer that has not filled it yet.
+				return null;
+			}
+			// Another thread took the element first; try the next one.
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.Queue#peek()
+	 */
+	@Override
+	public E peek() {
+		long h = head.get();
+		int index = (int) (h % capacity);
+		if (sequences.get(index) != h + 1) {
+			return null;
+		}
+		return slots.get(index);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.AbstractCollection#size()
+	 */
+	@Override
+	public int size() {
+		// Claimed slots count even before they are filled.
+		long h = head.get();
+		long size = tail.get() - h;
+		return (int) Math.max(0, Math.min(size, capacity));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.pipeline.RingBuffer#snapshot()
+	 */
+	@Override
+	protected ArrayList<E> snapshot() {
+		ArrayList<E> elements = new ArrayList<E>(capacity);
+		long t = tail.get();
+		for (long p = head.get(); p < t; p++) {
+			int index = (int) (p % capacity);
+			if (sequences.get(index) == p + 1) {
+				E e = slots.get(index);
+				if (e != null) {
+					elements.add(e);
+				}
+			}
+		}
+		return elements;
+	}
+}
@@ -0,0 +1,138 @@
+package com.cs4911.video_editor.pipeline;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.cs4911.video_editor.effects.ColorMatrixEffect;
+import com.cs4911.video_editor.effects.Effect;
+import com.cs4911.video_editor.effects.FusedColorEffect;
+
+/**
+ * Turns a list of effects into the effects a pipeline should run, merging
+ * every run of consecutive color matrix effects into one FusedColorEffect,
+ * so that the run takes one stage and one pass over the frame instead of
+ * one of each per effect. Compiled plans are kept by the names and
+ * parameters of the effects, so sessions with the same pipeline share them.
+ */
+public class PipelineCompiler {
+
+	private final Map<String, Effect[]> plans;
+	private long hits, misses;
+
+	/**
+	 * Creates a new PipelineCompiler.
+	 * @param maxPlans the most compiled plans to keep; the least recently used are dropped
+	 */
+	public PipelineCompiler(final int maxPlans) {
+		plans = new LinkedHashMap<String, Effect[]>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Effect[]> eldest) {
+				return size() > maxPlans;
+			}
+		};
+	}
+
+	/**
+	 * Compiles a list of effects, or reuses the plan compiled for an equal list.
+	 * Effects that keep state between frames are copied, so the returned effects
+	 * can be given to a pipeline without being shared with another session.
+	 * @param effects the effects in the order they should be applied
+	 * @return the effects a pipeline should apply instead
+	 */
+	public Effect[] compile(List<Effect> effects) {
+		String key = describe(effects);
+		Effect[] plan;
+		synchronized (plans) {
+			plan = plans.get(key);
+			if (plan != null) {
+				hits++;
+			} else {
+				misses++;
+			}
+		}
+		if (plan == null) {
+			plan = fuse(effects);
+			synchronized (plans) {
+				plans.put(key, plan);
+			}
+		}
+
+		Effect[] copies = new Effect[plan.length];
+		for (int i = 0; i < plan.length; i++) {
+			copies[i] = plan[i].copy();
+		}
+		return copies;
+	}
+
+	/**
+	 * Returns how many compiles reused a kept plan.
+	 * @return the number of plan cache hits
+	 */
+	public long getHits() {
+		synchronized (plans) {
+			return hits;
+		}
+	}
+
+	/**
+	 * Returns how many compiles had to build a new plan.
+	 * @return the number of plan cache misses
+	 */
+	public long getMisses() {
+		synchronized (plans) {
+			return misses;
+		}
+	}
+
+	/**
+	 * Merges every run of two or more consecutive color matrix effects.
+	 * @param effects the effects in the order they should be applied
+	 * @return the effects with each run replaced by a FusedColorEffect
+	 */
+	private static Effect[] fuse(List<Effect> effects) {
+		List<Effect> plan = new ArrayList<Effect>();
+		List<Effect> run = new ArrayList<Effect>();
+		for (Effect effect : effects) {
+			if (effect instanceof ColorMatrixEffect) {
+				run.add(effect);
+			} else {
+				endRun(run, plan);
+				plan.add(effect);
+			}
+		}
+		endRun(run, plan);
+		return plan.toArray(new Effect[plan.size()]);
+	}
+
+	/**
+	 * Adds a run of color matrix effects to a plan, merged if there is more than one.
+	 * @param run the run, which is emptied
+	 * @param plan the plan to add the run to
+	 */
+	private static void endRun(List<Effect> run, List<Effect> plan) {
+		if (run.size() > 1) {
+			plan.add(new FusedColorEffect(run));
+		} else {
+			plan.addAll(run);
+		}
+		run.clear();
+	}
+
+	/**
+	 * Describes a list of effects by their names and parameters.
+	 * @param effects the effects
+	 * @return a string that is equal for equal lists of effects
+	 */
+	private static String describe(List<Effect> effects) {
+		StringBuilder key = new StringBuilder();
+		for (Effect effect : effects) {
+			key.append(effect.getName()).append(new TreeMap<String, Double>(effect.getParameters())).append(';');
+		}
+		return key.toString();
+	}
+}
@@ -0,0 +1,316 @@
+package com.cs4911.video_editor.pipeline;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded StageQueue that keeps its elements in a preallocated array of
+ * slots, so handing on an element neither allocates nor takes a lock.
+ * Subclasses decide how many threads may put or poll at the same time;
+ * only one thread at a time may wait to take. The blocking methods wait
+ * as told by a WaitStrategy.
+ */
+public abstract class RingBuffer<E> extends AbstractQueue<E> implements StageQueue<E> {
+
+	protected final int capacity;
+	private final WaitStrategy waitStrategy;
+
+	private volatile EffectStage consumer;
+	private final List<EffectStage> producers = new CopyOnWriteArrayList<EffectStage>();
+	private volatile Thread waitingConsumer, waitingProducer;
+
+	/**
+	 * Creates a new RingBuffer.
+	 * @param capacity the number of elements the ring buffer can hold
+	 * @param waitStrategy how threads wait when the ring buffer is empty or full
+	 */
+	protected RingBuffer(int capacity, WaitStrategy waitStrategy) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("capacity must be positive");
+		}
+		this.capacity = capacity;
+		this.waitStrategy = waitStrategy;
+	}
+
+	/**
+	 * Returns the number of elements this ring buffer can hold.
+	 * @return the capacity
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Returns how threads wait when this ring buffer is empty or full.
+	 * @return the wait strategy
+	 */
+	public WaitStrategy getWaitStrategy() {
+		return waitStrategy;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.pipeline.StageQueue#setConsumer(com.cs4911.video_editor.pipeline.EffectStage)
+	 */
+	@Override
+	public void setConsumer(EffectStage consumer) {
+		this.consumer = consumer;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.pipeline.StageQueue#addProducer(com.cs4911.video_editor.pipeline.EffectStage)
+	 */
+	@Override
+	public void addProducer(EffectStage producer) {
+		producers.add(producer);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.pipeline.StageQueue#removeProducer(com.cs4911.video_editor.pipeline.EffectStage)
+	 */
+	@Override
+	public void removeProducer(EffectStage producer) {
+		producers.remove(producer);
+	}
+
+	/**
+	 * Puts the element in the next free slot.
+	 * @param e the element to add, not null
+	 * @return false if the ring buffer is full
+	 */
+	protected abstract boolean enqueue(E e);
+
+	/**
+	 * Takes the element from the oldest filled slot.
+	 * Only called by one thread at a time, unless the subclass says otherwise.
+	 * @return the oldest element, or null if the ring buffer is empty
+	 */
+	protected abstract E dequeue();
+
+	/**
+	 * Returns the element in the oldest filled slot without taking it.
+	 * @return the oldest element, or null if the ring buffer is empty
+	 */
+	public abstract E peek();
+
+	/**
+	 * Returns the elements in the ring buffer, oldest first. Elements
+	 * added or removed while the copy is made may be missed.
+	 * @return a copy of the elements
+	 */
+	protected abstract ArrayList<E> snapshot();
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.Queue#offer(java.lang.Object)
+	 */
+	@Override
+	public boolean offer(E e) {
+		if (e == null) {
+			throw new NullPointerException();
+		}
+		if (!enqueue(e)) {
+			return false;
+		}
+		afterEnqueue();
+		return true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.Queue#poll()
+	 */
+	@Override
+	public E poll() {
+		E e = dequeue();
+		if (e != null) {
+			afterDequeue();
+		}
+		return e;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.concurrent.BlockingQueue#put(java.lang.Object)
+	 */
+	@Override
+	public void put(E e) throws InterruptedException {
+		offer(e, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.concurrent.BlockingQueue#offer(java.lang.Object, long, java.util.concurrent.TimeUnit)
+	 */
+	@Override
+	public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+		if (offer(e)) {
+			return true;
+		}
+		long nanos = unit.toNanos(timeout);
+		long deadline = System.nanoTime() + nanos;
+		waitingProducer = Thread.currentThread();
+		try {
+			for (int attempt = 0; ; attempt++) {
+				// Registered as waiting before checking again, so a take in between wakes us.
+				if (offer(e)) {
+					return true;
+				}
+				if (Thread.interrupted()) {
+					throw new InterruptedException();
+				}
+				long nanosLeft = nanos == Long.MAX_VALUE ? Long.MAX_VALUE : deadline - System.nanoTime();
+				if (nanosLeft <= 0) {
+					return false;
+				}
+				waitStrategy.idle(attempt, nanosLeft);
+			}
+		} finally {
+			waitingProducer = null;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.concurrent.BlockingQueue#take()
+	 */
+	@Override
+	public E take() throws InterruptedException {
+		return poll(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.concurrent.BlockingQueue#poll(long, java.util.concurrent.TimeUnit)
+	 */
+	@Override
+	public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+		E e = poll();
+		if (e != null) {
+			return e;
+		}
+		long nanos = unit.toNanos(timeout);
+		long deadline = System.nanoTime() + nanos;
+		waitingConsumer = Thread.currentThread();
+		try {
+			for (int attempt = 0; ; attempt++) {
+				// Registered as waiting before checking again, so a put in between wakes us.
+				e = poll();
+				if (e != null) {
+					return e;
+				}
+				if (Thread.interrupted()) {
+					throw new InterruptedException();
+				}
+				long nanosLeft = nanos == Long.MAX_VALUE ? Long.MAX_VALUE : deadline - System.nanoTime();
+				if (nanosLeft <= 0) {
+					return null;
+				}
+				waitStrategy.idle(attempt, nanosLeft);
+			}
+		} finally {
+			waitingConsumer = null;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.concurrent.BlockingQueue#remainingCapacity()
+	 */
+	@Override
+	public int remainingCapacity() {
+		return capacity - size();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.concurrent.BlockingQueue#drainTo(java.util.Collection)
+	 */
+	@Override
+	public int drainTo(Collection<? super E> c) {
+		return drainTo(c, Integer.MAX_VALUE);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.concurrent.BlockingQueue#drainTo(java.util.Collection, int)
+	 */
+	@Override
+	public int drainTo(Collection<? super E> c, int maxElements) {
+		if (c == this) {
+			throw new IllegalArgumentException();
+		}
+		int drained = 0;
+		E e;
+		while (drained < maxElements && (e = poll()) != null) {
+			c.add(e);
+			drained++;
+		}
+		return drained;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.AbstractQueue#clear()
+	 */
+	@Override
+	public void clear() {
+		while (poll() != null) {
+		}
+	}
+
+	/**
+	 * Returns an iterator over a copy of the elements, oldest first.
+	 * Elements cannot be removed through it.
+	 * @return an iterator over the elements
+	 */
+	@Override
+	public Iterator<E> iterator() {
+		final Iterator<E> iterator = snapshot().iterator();
+		return new Iterator<E>() {
+			@Override
+			public boolean hasNext() {
+				return iterator.hasNext();
+			}
+
+			@Override
+			public E next() {
+				return iterator.next();
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	private void afterEnqueue() {
+		Thread thread = waitingConsumer;
+		if (thread != null) {
+			LockSupport.unpark(thread);
+		}
+		EffectStage stage = consumer;
+		if (stage != null) {
+			stage.signal();
+		}
+	}
+
+	private void afterDequeue() {
+		Thread thread = waitingProducer;
+		if (thread != null) {
+			LockSupport.unpark(thread);
+		}
+		for (EffectStage stage : producers) {
+			stage.signal();
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package com.cs4911.video_editor.pipeline;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A RingBuffer with a single producer and a single consumer, for the
+ * link between two pipeline stages. Each side only writes its own
+ * position, so no compare-and-set is needed either.
+ */
+public class SpscRingBuffer<E> extends RingBuffer<E> {
+
+	private final AtomicReferenceArray<E> slots;
+	// Position of the next slot to take from, written only by the consumer.
+	private final AtomicLong head = new AtomicLong();
+	// Position of the next slot to put in, written only by the producer.
+	private final AtomicLong tail = new AtomicLong();
+
+	// Each side's last view of the other side's position, so that it
+	// only reads the other side's cache line when it seems to be stuck.
+	private long headCache, tailCache;
+
+	/**
+	 * Creates a new SpscRingBuffer whose blocking methods park while waiting.
+	 * @param capacity the number of elements the ring buffer can hold
+	 */
+	public SpscRingBuffer(int capacity) {
+		this(capacity, WaitStrategy.PARKING);
+	}
+
+	/**
+	 * Creates a new SpscRingBuffer.
+	 * @param capacity the number of elements the ring buffer can hold
+	 * @param waitStrategy how threads wait when the ring buffer is empty or full
+	 */
+	public SpscRingBuffer(int capacity, WaitStrategy waitStrategy) {
+		super(capacity, waitStrategy);
+		slots = new AtomicReferenceArray<E>(capacity);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.pipeline.RingBuffer#enqueue(java.lang.Object)
+	 */
+	@Override
+	protected boolean enqueue(E e) {
+		long t = tail.get();
+		if (t - headCache >= capacity) {
+			headCache = head.get();
+			if (t - headCache >= capacity) {
+				return false;
+			}
+		}
+		slots.lazySet((int) (t % capacity), e);
+		// Publishes the slot, which was written before it.
+		tail.lazySet(t + 1);
+		return true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.pipeline.RingBuffer#dequeue()
+	 */
+	@Override
+	protected E dequeue() {
+		long h = head.get();
+		if (h >= tailCache) {
+			tailCache = tail.get();
+			if (h >= tailCache) {
+				return null;
+			}
+		}
+		int index = (int) (h % capacity);
+		E e = slots.get(index);
+		slots.lazySet(index, null);
+		head.lazySet(h + 1);
+		return e;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.Queue#peek()
+	 */
+	@Override
+	public E peek() {
+		long h = head.get();
+		if (h >= tail.get()) {
+			return null;
+		}
+		return slots.get((int) (h % capacity));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.AbstractCollection#size()
+	 */
+	@Override
+	public int size() {
+		// Read head first, so that a take in between cannot make the size negative.
+		long h = head.get();
+		long size = tail.get() - h;
+		return (int) Math.max(0, Math.min(size, capacity));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.pipeline.RingBuffer#snapshot()
+	 */
+	@Override
+	protected ArrayList<E> snapshot() {
+		ArrayList<E> elements = new ArrayList<E>(capacity);
+		long t = tail.get();
+		for (long p = head.get(); p < t; p++) {
+			E e = slots.get((int) (p % capacity));
+			if (e != null) {
+				elements.add(e);
+			}
+		}
+		return elements;
+	}
+}
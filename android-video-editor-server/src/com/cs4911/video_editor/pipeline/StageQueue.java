@@ -0,0 +1,32 @@
+package com.cs4911.video_editor.pipeline;
+
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A BlockingQueue that tells the EffectStage reading from it when an
+ * element is added, and the EffectStage writing to it when an element is
+ * removed, so that stages run on an Executor only when they have work
+ * instead of each holding a thread that blocks on its queues.
+ */
+public interface StageQueue<E> extends BlockingQueue<E> {
+
+	/**
+	 * Sets the EffectStage that takes elements from this queue.
+	 * @param consumer the stage to signal when an element is added, or null for none
+	 */
+	public void setConsumer(EffectStage consumer);
+
+	/**
+	 * Adds an EffectStage that puts elements in this queue. While a
+	 * pipeline's effects change, the last stages of the old and the
+	 * new effects both put in its output queue.
+	 * @param producer a stage to signal when room is made
+	 */
+	public void addProducer(EffectStage producer);
+
+	/**
+	 * Removes an EffectStage added with addProducer.
+	 * @param producer a stage that no longer puts elements in this queue
+	 */
+	public void removeProducer(EffectStage producer);
+}
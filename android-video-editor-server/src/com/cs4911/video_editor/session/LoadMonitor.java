@@ -0,0 +1,91 @@
+package com.cs4911.video_editor.session;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import com.cs4911.video_editor.testproto.ServerLoad;
+
+/**
+ * Keeps track of how busy the server is, so that clients can ask before
+ * choosing it. The share of worker threads that are busy is sampled every
+ * SAMPLE_MS and averaged, since at any one moment it is mostly all or none.
+ */
+public class LoadMonitor {
+
+	private static final long SAMPLE_MS = 100;
+	// Weight of a new sample; with a sample every 100 ms, about the last second counts.
+	private static final double SMOOTHING = 0.1;
+
+	private final ForkJoinPool workers;
+	private final SessionManager sessionManager;
+	private final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+	private final ScheduledExecutorService sampler;
+
+	private volatile double workerUtilization;
+
+	/**
+	 * Creates a new LoadMonitor and starts sampling.
+	 * @param workers the pool of threads that apply effects
+	 * @param sessionManager the sessions whose frames are counted
+	 */
+	public LoadMonitor(ForkJoinPool workers, SessionManager sessionManager) {
+		this.workers = workers;
+		this.sessionManager = sessionManager;
+		sampler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "LoadMonitor");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		sampler.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				sample();
+			}
+		}, SAMPLE_MS, SAMPLE_MS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Returns the share of the worker threads that were busy lately.
+	 * @return the worker utilization, from 0 to 1
+	 */
+	public double getWorkerUtilization() {
+		return workerUtilization;
+	}
+
+	/**
+	 * Returns how busy the server is now.
+	 * @return the load of the server
+	 */
+	public ServerLoad getServerLoad() {
+		double loadAverage = os.getSystemLoadAverage();
+		return ServerLoad.newBuilder()
+				.setSessions(sessionManager.getNumSessions())
+				.setQueuedFrames(sessionManager.getQueuedFrames())
+				.setWorkerThreads(workers.getParallelism())
+				.setWorkerUtilization(workerUtilization)
+				.setCpuLoad(loadAverage >= 0 ? loadAverage / os.getAvailableProcessors() : -1)
+				.setDroppedFrames(sessionManager.getDroppedFrames())
+				.setSkippedFrames(sessionManager.getSkippedFrames())
+				.build();
+	}
+
+	/**
+	 * Stops sampling.
+	 */
+	public void close() {
+		sampler.shutdownNow();
+	}
+
+	private void sample() {
+		double busy = Math.min(1, workers.getActiveThreadCount() / (double) workers.getParallelism());
+		workerUtilization += SMOOTHING * (busy - workerUtilization);
+	}
+}
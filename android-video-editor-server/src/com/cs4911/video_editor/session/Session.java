@@ -0,0 +1,229 @@
+package com.cs4911.video_editor.session;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.cs4911.video_editor.codec.DeltaDecoder;
+import com.cs4911.video_editor.codec.FrameCodec;
+import com.cs4911.video_editor.codec.PngCodec;
+import com.cs4911.video_editor.effects.IdentityEffect;
+import com.cs4911.video_editor.pipeline.EffectTask;
+import com.cs4911.video_editor.pipeline.FrameEnvelope;
+import com.cs4911.video_editor.pipeline.FrameProcessor;
+import com.cs4911.video_editor.pipeline.LocalEffectTask;
+
+/**
+ * The state the server keeps for one client: its own pipelines and
+ * frame queues. All connections of the client share the same Session.
+ *
+ * Processed frames are routed by a thread of the Session: frames of a
+ * batch go back to the request that added the batch, so that batches sent
+ * over different connections at the same time each get their own frames,
+ * and streamed frames wait to be fetched with pollFrame().
+ */
+public class Session {
+
+	private final long id;
+	private final FrameProcessor frameProcessor;
+	private volatile FrameCodec codec = new PngCodec();
+	private volatile DeltaDecoder deltaDecoder;
+	private volatile long lastActive;
+	private volatile boolean closed;
+
+	// The queue of the batch each frame belongs to, until it has been processed or dropped.
+	private final ConcurrentMap<FrameEnvelope, BlockingQueue<FrameEnvelope>> batchFrames =
+			new ConcurrentHashMap<FrameEnvelope, BlockingQueue<FrameEnvelope>>();
+	// Processed frames that were streamed, bounded like the FrameProcessor's own queue.
+	private final BlockingQueue<FrameEnvelope> streamedFrames = new LinkedBlockingQueue<FrameEnvelope>(20);
+	private final Thread routerThread;
+
+	/**
+	 * Creates a new Session and starts its FrameProcessor,
+	 * which applies no effect until the client sets its pipeline.
+	 * @param id the id the client uses to join this Session from other connections
+	 * @param numPipelines the number of pipelines that process the client's frames in parallel
+	 * @param executor the Executor that runs the effects of all sessions
+	 */
+	public Session(long id, int numPipelines, Executor executor) {
+		this.id = id;
+		frameProcessor = new FrameProcessor(new EffectTask[]{new LocalEffectTask(new IdentityEffect())}, numPipelines, executor);
+		frameProcessor.start();
+		routerThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				routeFrames();
+			}
+		}, "FrameRouter-" + id);
+		routerThread.setDaemon(true);
+		routerThread.start();
+		touch();
+	}
+
+	/**
+	 * Returns the id of this Session.
+	 * @return this Session's id
+	 */
+	public long getId() {
+		return id;
+	}
+
+	/**
+	 * Returns the FrameProcessor that processes this client's frames.
+	 * @return this Session's FrameProcessor
+	 */
+	public FrameProcessor getFrameProcessor() {
+		return frameProcessor;
+	}
+
+	/**
+	 * Returns the codec this client's frames are encoded with.
+	 * @return this Session's codec
+	 */
+	public FrameCodec getCodec() {
+		return codec;
+	}
+
+	/**
+	 * Sets the codec this client's frames are encoded with.
+	 * @param codec the codec agreed on with the client
+	 */
+	public void setCodec(FrameCodec codec) {
+		this.codec = codec;
+	}
+
+	/**
+	 * Returns the DeltaDecoder that rebuilds this client's frames
+	 * when it sends only the tiles that changed.
+	 * @return this Session's DeltaDecoder, or null if the client sends whole frames
+	 */
+	public DeltaDecoder getDeltaDecoder() {
+		return deltaDecoder;
+	}
+
+	/**
+	 * Sets the DeltaDecoder that rebuilds this client's frames.
+	 * @param deltaDecoder a new DeltaDecoder, or null if the client sends whole frames
+	 */
+	public void setDeltaDecoder(DeltaDecoder deltaDecoder) {
+		this.deltaDecoder = deltaDecoder;
+	}
+
+	/**
+	 * Adds a batch of frames to be processed. The processed frames of the
+	 * batch are put in the returned queue, in order, instead of being
+	 * handed to pollFrame(). Frames that are dropped on the way are marked
+	 * as such and never put in the queue, and have to be given up on with
+	 * forgetFrame().
+	 * @param frames the frames of the batch
+	 * @return the queue the processed frames of the batch are put in
+	 */
+	public BlockingQueue<FrameEnvelope> addBatch(List<FrameEnvelope> frames) {
+		BlockingQueue<FrameEnvelope> processedFrames = new LinkedBlockingQueue<FrameEnvelope>();
+		for (FrameEnvelope frame : frames) {
+			// Claimed before it is added, as it may be processed straight away.
+			batchFrames.put(frame, processedFrames);
+			frameProcessor.addFrame(frame);
+		}
+		return processedFrames;
+	}
+
+	/**
+	 * Stops routing a frame of a batch that will not be processed.
+	 * @param frame a frame added with addBatch()
+	 */
+	public void forgetFrame(FrameEnvelope frame) {
+		batchFrames.remove(frame);
+	}
+
+	/**
+	 * Hands back a streamed frame that could not be decoded, so that
+	 * pollFrame() returns it, marked as dropped, and the client learns that
+	 * it has to send its next frame whole. If too many frames are waiting,
+	 * it is left out; the frames after it cannot be decoded either.
+	 * @param frame the frame that could not be decoded
+	 */
+	public void rejectFrame(FrameEnvelope frame) {
+		frame.markDropped();
+		streamedFrames.offer(frame);
+	}
+
+	/**
+	 * Returns a processed frame that was streamed, waiting up to the given
+	 * time for one if none is ready.
+	 * @param timeout how long to wait before giving up
+	 * @param unit the unit of the timeout
+	 * @return a processed frame, a frame that could not be decoded, or null if none became ready in time
+	 * @see #rejectFrame(FrameEnvelope)
+	 */
+	public FrameEnvelope pollFrame(long timeout, TimeUnit unit) {
+		try {
+			return streamedFrames.poll(timeout, unit);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+	}
+
+	/**
+	 * Hands every processed frame to the batch it belongs to, or to the
+	 * streamed frames if it belongs to none, until this Session is closed.
+	 */
+	private void routeFrames() {
+		try {
+			FrameEnvelope frame;
+			while ((frame = frameProcessor.takeFrame()) != null) {
+				BlockingQueue<FrameEnvelope> processedFrames = batchFrames.remove(frame);
+				if (processedFrames != null) {
+					processedFrames.add(frame);
+				} else {
+					streamedFrames.put(frame);
+				}
+			}
+		} catch (InterruptedException e) {
+			// closed
+		}
+	}
+
+	/**
+	 * Marks this Session as used just now.
+	 */
+	public void touch() {
+		lastActive = System.currentTimeMillis();
+	}
+
+	/**
+	 * Returns when a request for this Session was last handled.
+	 * @return the time this Session was last used, in milliseconds
+	 */
+	public long getLastActive() {
+		return lastActive;
+	}
+
+	/**
+	 * Returns whether this Session has been closed.
+	 * @return true if this Session no longer processes frames
+	 */
+	public boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * Stops this Session's FrameProcessor and drops the frames still queued in it.
+	 */
+	public void close() {
+		closed = true;
+		routerThread.interrupt();
+		try {
+			routerThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		frameProcessor.stop();
+		streamedFrames.clear();
+	}
+}
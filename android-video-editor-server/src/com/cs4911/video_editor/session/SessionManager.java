@@ -0,0 +1,261 @@
+package com.cs4911.video_editor.session;
+
+import java.security.SecureRandom;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.avro.ipc.Transceiver;
+
+import com.cs4911.video_editor.metrics.Counter;
+import com.cs4911.video_editor.metrics.MetricsRegistry;
+import com.cs4911.video_editor.metrics.RateLimitedLog;
+import com.cs4911.video_editor.pipeline.EffectProfiler;
+import com.cs4911.video_editor.pipeline.FrameProcessor;
+
+/**
+ * Keeps one Session per client. A connection gets a new Session the first
+ * time it makes a request, unless it joins the Session of another connection.
+ * Sessions that have not been used for a while are closed, since the server
+ * is not told when a connection goes away. A connection whose Session was
+ * closed gets no Session until it starts a new one, so that it does not go
+ * on with one that has none of the settings it made.
+ */
+public class SessionManager {
+
+	private final Map<Long, Session> sessions = new ConcurrentHashMap<Long, Session>();
+	private final Map<Transceiver, Session> connections = new ConcurrentHashMap<Transceiver, Session>();
+	// Connections whose Session was closed, until they start a new one. Weak,
+	// so that connections that went away are forgotten.
+	private final Map<Transceiver, Boolean> expiredConnections =
+			Collections.synchronizedMap(new WeakHashMap<Transceiver, Boolean>());
+	private final SecureRandom random = new SecureRandom();
+	private final Counter sessionsOpened = MetricsRegistry.getDefault().counter("sessions.opened");
+	private final Counter sessionsClosed = MetricsRegistry.getDefault().counter("sessions.closedIdle");
+	// So that many clients coming and going do not flood the log.
+	private final RateLimitedLog openLog = new RateLimitedLog();
+	private final RateLimitedLog closeLog = new RateLimitedLog();
+
+	private final int numPipelines;
+	private final Executor executor;
+	private final long sessionTimeoutMs;
+	private final ScheduledExecutorService reaper;
+	private volatile EffectProfiler effectProfiler;
+	// Frames dropped, and effects skipped, by sessions that have been closed.
+	private final AtomicLong closedDroppedFrames = new AtomicLong();
+	private final AtomicLong closedSkippedFrames = new AtomicLong();
+	// The deadline given to the frames of sessions opened from now on, none by default.
+	private volatile int targetFps;
+	private volatile int maxLatencyFrames = FrameProcessor.DEFAULT_MAX_LATENCY_FRAMES;
+
+	/**
+	 * Creates a new SessionManager.
+	 * @param numPipelines the number of pipelines each Session spreads its frames over
+	 * @param executor the Executor that runs the effects of all sessions
+	 * @param sessionTimeoutMs how long a Session may go unused before it is closed, in milliseconds
+	 */
+	public SessionManager(int numPipelines, Executor executor, long sessionTimeoutMs) {
+		this.numPipelines = numPipelines;
+		this.executor = executor;
+		this.sessionTimeoutMs = sessionTimeoutMs;
+		reaper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "SessionReaper");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		reaper.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				closeIdleSessions();
+			}
+		}, sessionTimeoutMs, sessionTimeoutMs / 2, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Sets the EffectProfiler told what the effects of the sessions opened
+	 * from now on cost.
+	 * @param effectProfiler the profiler, or null to not measure the costs
+	 */
+	public void setEffectProfiler(EffectProfiler effectProfiler) {
+		this.effectProfiler = effectProfiler;
+	}
+
+	/**
+	 * Sets the deadline of the frames of the sessions opened from now on.
+	 * @param targetFps the rate at which the clients show processed frames, or 0 to give frames no deadline
+	 * @param maxLatencyFrames how many display intervals a frame may take to be processed
+	 * @see FrameProcessor#setDeadline(int, int)
+	 */
+	public void setDeadline(int targetFps, int maxLatencyFrames) {
+		this.targetFps = targetFps;
+		this.maxLatencyFrames = maxLatencyFrames;
+	}
+
+	/**
+	 * Returns the Session of the given connection, opening a new one
+	 * if the connection has never had one.
+	 * @param connection the connection a request came in on
+	 * @return the Session of the connection, or null if it was closed
+	 * @see #startSession(Transceiver)
+	 */
+	public Session getSession(Transceiver connection) {
+		Session session = connections.get(connection);
+		if (session == null && !expiredConnections.containsKey(connection)) {
+			return startSession(connection);
+		}
+		if (session == null || session.isClosed()) {
+			return null;
+		}
+		session.touch();
+		return session;
+	}
+
+	/**
+	 * Returns the Session of the given connection, opening a new one
+	 * if the connection has none or its Session was closed.
+	 * @param connection the connection a request came in on
+	 * @return the Session of the connection
+	 */
+	public Session startSession(Transceiver connection) {
+		Session session = connections.get(connection);
+		if (session == null || session.isClosed()) {
+			session = openSession();
+			connections.put(connection, session);
+			expiredConnections.remove(connection);
+		}
+		session.touch();
+		return session;
+	}
+
+	/**
+	 * Moves the given connection to an existing Session.
+	 * @param connection the connection a request came in on
+	 * @param sessionId the id of the Session to join
+	 * @return true if the connection joined the Session, false if there is no such Session
+	 */
+	public boolean joinSession(Transceiver connection, long sessionId) {
+		Session session = sessions.get(sessionId);
+		if (session == null || session.isClosed()) {
+			return false;
+		}
+		connections.put(connection, session);
+		expiredConnections.remove(connection);
+		session.touch();
+		return true;
+	}
+
+	/**
+	 * Returns the number of open sessions.
+	 * @return the number of open sessions
+	 */
+	public int getNumSessions() {
+		return sessions.size();
+	}
+
+	/**
+	 * Returns the number of frames waiting to be processed in all open sessions.
+	 * @return the number of frames queued
+	 */
+	public int getQueuedFrames() {
+		int queuedFrames = 0;
+		for (Session session : sessions.values()) {
+			queuedFrames += session.getFrameProcessor().getQueuedFrames();
+		}
+		return queuedFrames;
+	}
+
+	/**
+	 * Returns the number of frames dropped by all sessions, including those
+	 * that have been closed, since the SessionManager was created.
+	 * @return the number of frames dropped
+	 */
+	public long getDroppedFrames() {
+		long droppedFrames = closedDroppedFrames.get();
+		for (Session session : sessions.values()) {
+			droppedFrames += session.getFrameProcessor().getDroppedFrames();
+		}
+		return droppedFrames;
+	}
+
+	/**
+	 * Returns the number of effects all sessions, including those that have
+	 * been closed, did not apply to frames that had missed their deadline.
+	 * @return the number of effects skipped
+	 */
+	public long getSkippedFrames() {
+		long skippedFrames = closedSkippedFrames.get();
+		for (Session session : sessions.values()) {
+			skippedFrames += session.getFrameProcessor().getSkippedFrames();
+		}
+		return skippedFrames;
+	}
+
+	/**
+	 * Closes all sessions and stops looking for idle ones.
+	 */
+	public void close() {
+		reaper.shutdownNow();
+		for (Session session : sessions.values()) {
+			session.close();
+		}
+		sessions.clear();
+		connections.clear();
+		expiredConnections.clear();
+	}
+
+	/**
+	 * Opens a new Session with an id that is hard to guess,
+	 * so a client cannot join the Session of another client.
+	 * @return the new Session
+	 */
+	private synchronized Session openSession() {
+		long id = random.nextLong();
+		while (sessions.containsKey(id)) {
+			id = random.nextLong();
+		}
+		Session session = new Session(id, numPipelines, executor);
+		session.getFrameProcessor().setEffectProfiler(effectProfiler);
+		session.getFrameProcessor().setDeadline(targetFps, maxLatencyFrames);
+		sessions.put(id, session);
+		sessionsOpened.increment();
+		openLog.log("Opened session " + id + ", " + sessions.size() + " open");
+		return session;
+	}
+
+	/**
+	 * Closes the sessions that have not been used for longer than the
+	 * session timeout, and marks the connections that belonged to them.
+	 */
+	private void closeIdleSessions() {
+		long now = System.currentTimeMillis();
+		for (Iterator<Session> i = sessions.values().iterator(); i.hasNext();) {
+			Session session = i.next();
+			if (now - session.getLastActive() > sessionTimeoutMs) {
+				i.remove();
+				session.close();
+				closedDroppedFrames.addAndGet(session.getFrameProcessor().getDroppedFrames());
+				closedSkippedFrames.addAndGet(session.getFrameProcessor().getSkippedFrames());
+				sessionsClosed.increment();
+				closeLog.log("Closed idle session " + session.getId() + ", " + sessions.size() + " open");
+			}
+		}
+		for (Iterator<Map.Entry<Transceiver, Session>> i = connections.entrySet().iterator(); i.hasNext();) {
+			Map.Entry<Transceiver, Session> connection = i.next();
+			if (connection.getValue().isClosed()) {
+				expiredConnections.put(connection.getKey(), Boolean.TRUE);
+				i.remove();
+			}
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package com.cs4911.video_editor.session;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.apache.avro.ipc.Transceiver;
+import org.apache.avro.ipc.specific.SpecificResponder;
+
+/**
+ * A SpecificResponder that remembers the connection each request came in
+ * on while it is being answered, so the protocol implementation can look up
+ * the Session of the client that sent it.
+ */
+public class SessionResponder extends SpecificResponder {
+
+	private static final ThreadLocal<Transceiver> CONNECTION = new ThreadLocal<Transceiver>();
+
+	/**
+	 * Creates a new SessionResponder.
+	 * @param iface the protocol interface
+	 * @param impl the implementation of the protocol
+	 */
+	public SessionResponder(Class<?> iface, Object impl) {
+		super(iface, impl);
+	}
+
+	/**
+	 * Returns the connection of the request being answered by the current thread.
+	 * @return the connection the request came in on, or null outside a request
+	 */
+	public static Transceiver getConnection() {
+		return CONNECTION.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.avro.ipc.Responder#respond(java.util.List, org.apache.avro.ipc.Transceiver)
+	 */
+	@Override
+	public List<ByteBuffer> respond(List<ByteBuffer> buffers, Transceiver connection) throws IOException {
+		CONNECTION.set(connection);
+		try {
+			return super.respond(buffers, connection);
+		} finally {
+			CONNECTION.remove();
+		}
+	}
+}
@@ -0,0 +1,170 @@
+/**
+ * Autogenerated by Avro
+ * 
+ * DO NOT EDIT DIRECTLY
+ */
+package com.cs4911.video_editor.testproto;  
+@SuppressWarnings("all")
+public class EffectDescriptor extends org.apache.avro.specific.SpecificRecordBase implements org.apache.avro.specific.SpecificRecord {
+  public static final org.apache.avro.Schema SCHEMA$ = new org.apache.avro.Schema.Parser().parse("{\"type\":\"record\",\"name\":\"EffectDescriptor\",\"namespace\":\"com.cs4911.video_editor.testproto\",\"fields\":[{\"name\":\"name\",\"type\":\"string\"},{\"name\":\"parameters\",\"type\":{\"type\":\"map\",\"values\":\"double\"}}]}");
+  @Deprecated public java.lang.CharSequence name;
+  @Deprecated public java.util.Map<java.lang.CharSequence,java.lang.Double> parameters;
+  public org.apache.avro.Schema getSchema() { return SCHEMA$; }
+  // Used by DatumWriter.  Applications should not call. 
+  public java.lang.Object get(int field$) {
+    switch (field$) {
+    case 0: return name;
+    case 1: return parameters;
+    default: throw new org.apache.avro.AvroRuntimeException("Bad index");
+    }
+  }
+  // Used by DatumReader.  Applications should not call. 
+  @SuppressWarnings(value="unchecked")
+  public void put(int field$, java.lang.Object value$) {
+    switch (field$) {
+    case 0: name = (java.lang.CharSequence)value$; break;
+    case 1: parameters = (java.util.Map<java.lang.CharSequence,java.lang.Double>)value$; break;
+    default: throw new org.apache.avro.AvroRuntimeException("Bad index");
+    }
+  }
+
+  /**
+   * Gets the value of the 'name' field.
+   */
+  public java.lang.CharSequence getName() {
+    return name;
+  }
+
+  /**
+   * Sets the value of the 'name' field.
+   * @param value the value to set.
+   */
+  public void setName(java.lang.CharSequence value) {
+    this.name = value;
+  }
+
+  /**
+   * Gets the value of the 'parameters' field.
+   */
+  public java.util.Map<java.lang.CharSequence,java.lang.Double> getParameters() {
+    return parameters;
+  }
+
+  /**
+   * Sets the value of the 'parameters' field.
+   * @param value the value to set.
+   */
+  public void setParameters(java.util.Map<java.lang.CharSequence,java.lang.Double> value) {
+    this.parameters = value;
+  }
+
+  /** Creates a new EffectDescriptor RecordBuilder */
+  public static com.cs4911.video_editor.testproto.EffectDescriptor.Builder newBuilder() {
+    return new com.cs4911.video_editor.testproto.EffectDescriptor.Builder();
+  }
+  
+  /** Creates a new EffectDescriptor RecordBuilder by copying an existing Builder */
+  public static com.cs4911.video_editor.testproto.EffectDescriptor.Builder newBuilder(com.cs4911.video_editor.testproto.EffectDescriptor.Builder other) {
+    return new com.cs4911.video_editor.testproto.EffectDescriptor.Builder(other);
+  }
+  
+  /** Creates a new EffectDescriptor RecordBuilder by copying an existing EffectDescriptor instance */
+  public static com.cs4911.video_editor.testproto.EffectDescriptor.Builder newBuilder(com.cs4911.video_editor.testproto.EffectDescriptor other) {
+    return new com.cs4911.video_editor.testproto.EffectDescriptor.Builder(other);
+  }
+  
+  /**
+   * RecordBuilder for EffectDescriptor instances.
+   */
+  public static class Builder extends org.apache.avro.specific.SpecificRecordBuilderBase<EffectDescriptor>
+    implements org.apache.avro.data.RecordBuilder<EffectDescriptor> {
+
+    private java.lang.CharSequence name;
+    private java.util.Map<java.lang.CharSequence,java.lang.Double> parameters;
+
+    /** Creates a new Builder */
+    private Builder() {
+      super(com.cs4911.video_editor.testproto.EffectDescriptor.SCHEMA$);
+    }
+    
+    /** Creates a Builder by copying an existing Builder */
+    private Builder(com.cs4911.video_editor.testproto.EffectDescriptor.Builder other) {
+      super(other);
+    }
+    
+    /** Creates a Builder by copying an existing EffectDescriptor instance */
+    private Builder(com.cs4911.video_editor.testproto.EffectDescriptor other) {
+            super(com.cs4911.video_editor.testproto.EffectDescriptor.SCHEMA$);
+      if (isValidValue(fields()[0], other.name)) {
+        this.name = (java.lang.CharSequence) data().deepCopy(fields()[0].schema(), other.name);
+        fieldSetFlags()[0] = true;
+      }
+      if (isValidValue(fields()[1], other.parameters)) {
+        this.parameters = (java.util.Map<java.lang.CharSequence,java.lang.Double>) data().deepCopy(fields()[1].schema(), other.parameters);
+        fieldSetFlags()[1] = true;
+      }
+    }
+
+    /** Gets the value of the 'name' field */
+    public java.lang.CharSequence getName() {
+      return name;
+    }
+    
+    /** Sets the value of the 'name' field */
+    public com.cs4911.video_editor.testproto.EffectDescriptor.Builder setName(java.lang.CharSequence value) {
+      validate(fields()[0], value);
+      this.name = value;
+      fieldSetFlags()[0] = true;
+      return this; 
+    }
+    
+    /** Checks whether the 'name' field has been set */
+    public boolean hasName() {
+      return fieldSetFlags()[0];
+    }
+    
+    /** Clears the value of the 'name' field */
+    public com.cs4911.video_editor.testproto.EffectDescriptor.Builder clearName() {
+      name = null;
+      fieldSetFlags()[0] = false;
+      return this;
+    }
+
+    /** Gets the value of the 'parameters' field */
+    public java.util.Map<java.lang.CharSequence,java.lang.Double> getParameters() {
+      return parameters;
+    }
+    
+    /** Sets the value of the 'parameters' field */
+    public com.cs4911.video_editor.testproto.EffectDescriptor.Builder setParameters(java.util.Map<java.lang.CharSequence,java.lang.Double> value) {
+      validate(fields()[1], value);
+      this.parameters = value;
+      fieldSetFlags()[1] = true;
+      return this; 
+    }
+    
+    /** Checks whether the 'parameters' field has been set */
+    public boolean hasParameters() {
+      return fieldSetFlags()[1];
+    }
+    
+    /** Clears the value of the 'parameters' field */
+    public com.cs4911.video_editor.testproto.EffectDescriptor.Builder clearParameters() {
+      parameters = null;
+      fieldSetFlags()[1] = false;
+      return this;
+    }
+
+    @Override
+    public EffectDescriptor build() {
+      try {
+        EffectDescriptor record = new EffectDescriptor();
+        record.name = fieldSetFlags()[0] ? this.name : (java.lang.CharSequence) defaultValue(fields()[0]);
+        record.parameters = fieldSetFlags()[1] ? this.parameters : (java.util.Map<java.lang.CharSequence,java.lang.Double>) defaultValue(fields()[1]);
+        return record;
+      } catch (Exception e) {
+        throw new org.apache.avro.AvroRuntimeException(e);
+      }
+    }
+  }
+}
@@ -0,0 +1,411 @@
+/**
+ * Autogenerated by Avro
+ * 
+ * DO NOT EDIT DIRECTLY
+ */
+package com.cs4911.video_editor.testproto;  
+@SuppressWarnings("all")
+public class FrameData extends org.apache.avro.specific.SpecificRecordBase implements org.apache.avro.specific.SpecificRecord {
+  public static final org.apache.avro.Schema SCHEMA$ = new org.apache.avro.Schema.Parser().parse("{\"type\":\"record\",\"name\":\"FrameData\",\"namespace\":\"com.cs4911.video_editor.testproto\",\"fields\":[{\"name\":\"sequenceNumber\",\"type\":\"long\"},{\"name\":\"captureTimestamp\",\"type\":\"long\"},{\"name\":\"pipelineEpoch\",\"type\":\"int\"},{\"name\":\"stageTimestamps\",\"type\":{\"type\":\"array\",\"items\":\"long\"}},{\"name\":\"data\",\"type\":\"bytes\"},{\"name\":\"codecTimestamps\",\"type\":{\"type\":\"array\",\"items\":\"long\"},\"default\":[]},{\"name\":\"keyframeNeeded\",\"type\":\"boolean\",\"default\":false}]}");
+  @Deprecated public long sequenceNumber;
+  @Deprecated public long captureTimestamp;
+  @Deprecated public int pipelineEpoch;
+  @Deprecated public java.util.List<java.lang.Long> stageTimestamps;
+  @Deprecated public java.nio.ByteBuffer data;
+  @Deprecated public java.util.List<java.lang.Long> codecTimestamps;
+  @Deprecated public boolean keyframeNeeded;
+  public org.apache.avro.Schema getSchema() { return SCHEMA$; }
+  // Used by DatumWriter.  Applications should not call. 
+  public java.lang.Object get(int field$) {
+    switch (field$) {
+    case 0: return sequenceNumber;
+    case 1: return captureTimestamp;
+    case 2: return pipelineEpoch;
+    case 3: return stageTimestamps;
+    case 4: return data;
+    case 5: return codecTimestamps;
+    case 6: return keyframeNeeded;
+    default: throw new org.apache.avro.AvroRuntimeException("Bad index");
+    }
+  }
+  // Used by DatumReader.  Applications should not call. 
+  @SuppressWarnings(value="unchecked")
+  public void put(int field$, java.lang.Object value$) {
+    switch (field$) {
+    case 0: sequenceNumber = (java.lang.Long)value$; break;
+    case 1: captureTimestamp = (java.lang.Long)value$; break;
+    case 2: pipelineEpoch = (java.lang.Integer)value$; break;
+    case 3: stageTimestamps = (java.util.List<java.lang.Long>)value$; break;
+    case 4: data = (java.nio.ByteBuffer)value$; break;
+    case 5: codecTimestamps = (java.util.List<java.lang.Long>)value$; break;
+    case 6: keyframeNeeded = (java.lang.Boolean)value$; break;
+    default: throw new org.apache.avro.AvroRuntimeException("Bad index");
+    }
+  }
+
+  /**
+   * Gets the value of the 'sequenceNumber' field.
+   */
+  public java.lang.Long getSequenceNumber() {
+    return sequenceNumber;
+  }
+
+  /**
+   * Sets the value of the 'sequenceNumber' field.
+   * @param value the value to set.
+   */
+  public void setSequenceNumber(java.lang.Long value) {
+    this.sequenceNumber = value;
+  }
+
+  /**
+   * Gets the value of the 'captureTimestamp' field.
+   */
+  public java.lang.Long getCaptureTimestamp() {
+    return captureTimestamp;
+  }
+
+  /**
+   * Sets the value of the 'captureTimestamp' field.
+   * @param value the value to set.
+   */
+  public void setCaptureTimestamp(java.lang.Long value) {
+    this.captureTimestamp = value;
+  }
+
+  /**
+   * Gets the value of the 'pipelineEpoch' field.
+   */
+  public java.lang.Integer getPipelineEpoch() {
+    return pipelineEpoch;
+  }
+
+  /**
+   * Sets the value of the 'pipelineEpoch' field.
+   * @param value the value to set.
+   */
+  public void setPipelineEpoch(java.lang.Integer value) {
+    this.pipelineEpoch = value;
+  }
+
+  /**
+   * Gets the value of the 'stageTimestamps' field.
+   */
+  public java.util.List<java.lang.Long> getStageTimestamps() {
+    return stageTimestamps;
+  }
+
+  /**
+   * Sets the value of the 'stageTimestamps' field.
+   * @param value the value to set.
+   */
+  public void setStageTimestamps(java.util.List<java.lang.Long> value) {
+    this.stageTimestamps = value;
+  }
+
+  /**
+   * Gets the value of the 'data' field.
+   */
+  public java.nio.ByteBuffer getData() {
+    return data;
+  }
+
+  /**
+   * Sets the value of the 'data' field.
+   * @param value the value to set.
+   */
+  public void setData(java.nio.ByteBuffer value) {
+    this.data = value;
+  }
+
+  /**
+   * Gets the value of the 'codecTimestamps' field.
+   */
+  public java.util.List<java.lang.Long> getCodecTimestamps() {
+    return codecTimestamps;
+  }
+
+  /**
+   * Sets the value of the 'codecTimestamps' field.
+   * @param value the value to set.
+   */
+  public void setCodecTimestamps(java.util.List<java.lang.Long> value) {
+    this.codecTimestamps = value;
+  }
+
+  /**
+   * Gets the value of the 'keyframeNeeded' field.
+   */
+  public java.lang.Boolean getKeyframeNeeded() {
+    return keyframeNeeded;
+  }
+
+  /**
+   * Sets the value of the 'keyframeNeeded' field.
+   * @param value the value to set.
+   */
+  public void setKeyframeNeeded(java.lang.Boolean value) {
+    this.keyframeNeeded = value;
+  }
+
+  /** Creates a new FrameData RecordBuilder */
+  public static com.cs4911.video_editor.testproto.FrameData.Builder newBuilder() {
+    return new com.cs4911.video_editor.testproto.FrameData.Builder();
+  }
+  
+  /** Creates a new FrameData RecordBuilder by copying an existing Builder */
+  public static com.cs4911.video_editor.testproto.FrameData.Builder newBuilder(com.cs4911.video_editor.testproto.FrameData.Builder other) {
+    return new com.cs4911.video_editor.testproto.FrameData.Builder(other);
+  }
+  
+  /** Creates a new FrameData RecordBuilder by copying an existing FrameData instance */
+  public static com.cs4911.video_editor.testproto.FrameData.Builder newBuilder(com.cs4911.video_editor.testproto.FrameData other) {
+    return new com.cs4911.video_editor.testproto.FrameData.Builder(other);
+  }
+  
+  /**
+   * RecordBuilder for FrameData instances.
+   */
+  public static class Builder extends org.apache.avro.specific.SpecificRecordBuilderBase<FrameData>
+    implements org.apache.avro.data.RecordBuilder<FrameData> {
+
+    private long sequenceNumber;
+    private long captureTimestamp;
+    private int pipelineEpoch;
+    private java.util.List<java.lang.Long> stageTimestamps;
+    private java.nio.ByteBuffer data;
+    private java.util.List<java.lang.Long> codecTimestamps;
+    private boolean keyframeNeeded;
+
+    /** Creates a new Builder */
+    private Builder() {
+      super(com.cs4911.video_editor.testproto.FrameData.SCHEMA$);
+    }
+    
+    /** Creates a Builder by copying an existing Builder */
+    private Builder(com.cs4911.video_editor.testproto.FrameData.Builder other) {
+      super(other);
+    }
+    
+    /** Creates a Builder by copying an existing FrameData instance */
+    private Builder(com.cs4911.video_editor.testproto.FrameData other) {
+            super(com.cs4911.video_editor.testproto.FrameData.SCHEMA$);
+      if (isValidValue(fields()[0], other.sequenceNumber)) {
+        this.sequenceNumber = (java.lang.Long) data().deepCopy(fields()[0].schema(), other.sequenceNumber);
+        fieldSetFlags()[0] = true;
+      }
+      if (isValidValue(fields()[1], other.captureTimestamp)) {
+        this.captureTimestamp = (java.lang.Long) data().deepCopy(fields()[1].schema(), other.captureTimestamp);
+        fieldSetFlags()[1] = true;
+      }
+      if (isValidValue(fields()[2], other.pipelineEpoch)) {
+        this.pipelineEpoch = (java.lang.Integer) data().deepCopy(fields()[2].schema(), other.pipelineEpoch);
+        fieldSetFlags()[2] = true;
+      }
+      if (isValidValue(fields()[3], other.stageTimestamps)) {
+        this.stageTimestamps = (java.util.List<java.lang.Long>) data().deepCopy(fields()[3].schema(), other.stageTimestamps);
+        fieldSetFlags()[3] = true;
+      }
+      if (isValidValue(fields()[4], other.data)) {
+        this.data = (java.nio.ByteBuffer) data().deepCopy(fields()[4].schema(), other.data);
+        fieldSetFlags()[4] = true;
+      }
+      if (isValidValue(fields()[5], other.codecTimestamps)) {
+        this.codecTimestamps = (java.util.List<java.lang.Long>) data().deepCopy(fields()[5].schema(), other.codecTimestamps);
+        fieldSetFlags()[5] = true;
+      }
+      if (isValidValue(fields()[6], other.keyframeNeeded)) {
+        this.keyframeNeeded = (java.lang.Boolean) data().deepCopy(fields()[6].schema(), other.keyframeNeeded);
+        fieldSetFlags()[6] = true;
+      }
+    }
+
+    /** Gets the value of the 'sequenceNumber' field */
+    public java.lang.Long getSequenceNumber() {
+      return sequenceNumber;
+    }
+    
+    /** Sets the value of the 'sequenceNumber' field */
+    public com.cs4911.video_editor.testproto.FrameData.Builder setSequenceNumber(long value) {
+      validate(fields()[0], value);
+      this.sequenceNumber = value;
+      fieldSetFlags()[0] = true;
+      return this; 
+    }
+    
+    /** Checks whether the 'sequenceNumber' field has been set */
+    public boolean hasSequenceNumber() {
+      return fieldSetFlags()[0];
+    }
+    
+    /** Clears the value of the 'sequenceNumber' field */
+    public com.cs4911.video_editor.testproto.FrameData.Builder clearSequenceNumber() {
+      fieldSetFlags()[0] = false;
+      return this;
+    }
+
+    /** Gets the value of the 'captureTimestamp' field */
+    public java.lang.Long getCaptureTimestamp() {
+      return captureTimestamp;
+    }
+    
+    /** Sets the value of the 'captureTimestamp' field */
+    public com.cs4911.video_editor.testproto.FrameData.Builder setCaptureTimestamp(long value) {
+      validate(fields()[1], value);
+      this.captureTimestamp = value;
+      fieldSetFlags()[1] = true;
+      return this; 
+    }
+    
+    /** Checks whether the 'captureTimestamp' field has been set */
+    public boolean hasCaptureTimestamp() {
+      return fieldSetFlags()[1];
+    }
+    
+    /** Clears the value of the 'captureTimestamp' field */
+    public com.cs4911.video_editor.testproto.FrameData.Builder clearCaptureTimestamp() {
+      fieldSetFlags()[1] = false;
+      return this;
+    }
+
+    /** Gets the value of the 'pipelineEpoch' field */
+    public java.lang.Integer getPipelineEpoch() {
+      return pipelineEpoch;
+    }
+    
+    /** Sets the value of the 'pipelineEpoch' field */
+    public com.cs4911.video_editor.testproto.FrameData.Builder setPipelineEpoch(int value) {
+      validate(fields()[2], value);
+      this.pipelineEpoch = value;
+      fieldSetFlags()[2] = true;
+      return this; 
+    }
+    
+    /** Checks whether the 'pipelineEpoch' field has been set */
+    public boolean hasPipelineEpoch() {
+      return fieldSetFlags()[2];
+    }
+    
+    /** Clears the value of the 'pipelineEpoch' field */
+    public com.cs4911.video_editor.testproto.FrameData.Builder clearPipelineEpoch() {
+      fieldSetFlags()[2] = false;
+      return this;
+    }
+
+    /** Gets the value of the 'stageTimestamps' field */
+    public java.util.List<java.lang.Long> getStageTimestamps() {
+      return stageTimestamps;
+    }
+    
+    /** Sets the value of the 'stageTimestamps' field */
+    public com.cs4911.video_editor.testproto.FrameData.Builder setStageTimestamps(java.util.List<java.lang.Long> value) {
+      validate(fields()[3], value);
+      this.stageTimestamps = value;
+      fieldSetFlags()[3] = true;
+      return this; 
+    }
+    
+    /** Checks whether the 'stageTimestamps' field has been set */
+    public boolean hasStageTimestamps() {
+      return fieldSetFlags()[3];
+    }
+    
+    /** Clears the value of the 'stageTimestamps' field */
+    public com.cs4911.video_editor.testproto.FrameData.Builder clearStageTimestamps() {
+      stageTimestamps = null;
+      fieldSetFlags()[3] = false;
+      return this;
+    }
+
+    /** Gets the value of the 'data' field */
+    public java.nio.ByteBuffer getData() {
+      return data;
+    }
+    
+    /** Sets the value of the 'data' field */
+    public com.cs4911.video_editor.testproto.FrameData.Builder setData(java.nio.ByteBuffer value) {
+      validate(fields()[4], value);
+      this.data = value;
+      fieldSetFlags()[4] = true;
+      return this; 
+    }
+    
+    /** Checks whether the 'data' field has been set */
+    public boolean hasData() {
+      return fieldSetFlags()[4];
+    }
+    
+    /** Clears the value of the 'data' field */
+    public com.cs4911.video_editor.testproto.FrameData.Builder clearData() {
+      data = null;
+      fieldSetFlags()[4] = false;
+      return this;
+    }
+
+    /** Gets the value of the 'codecTimestamps' field */
+    public java.util.List<java.lang.Long> getCodecTimestamps() {
+      return codecTimestamps;
+    }
+    
+    /** Sets the value of the 'codecTimestamps' field */
+    public com.cs4911.video_editor.testproto.FrameData.Builder setCodecTimestamps(java.util.List<java.lang.Long> value) {
+      validate(fields()[5], value);
+      this.codecTimestamps = value;
+      fieldSetFlags()[5] = true;
+      return this; 
+    }
+    
+    /** Checks whether the 'codecTimestamps' field has been set */
+    public boolean hasCodecTimestamps() {
+      return fieldSetFlags()[5];
+    }
+    
+    /** Clears the value of the 'codecTimestamps' field */
+    public com.cs4911.video_editor.testproto.FrameData.Builder clearCodecTimestamps() {
+      codecTimestamps = null;
+      fieldSetFlags()[5] = false;
+      return this;
+    }
+
+    /** Gets the value of the 'keyframeNeeded' field */
+    public java.lang.Boolean getKeyframeNeeded() {
+      return keyframeNeeded;
+    }
+    
+    /** Sets the value of the 'keyframeNeeded' field */
+    public com.cs4911.video_editor.testproto.FrameData.Builder setKeyframeNeeded(boolean value) {
+      validate(fields()[6], value);
+      this.keyframeNeeded = value;
+      fieldSetFlags()[6] = true;
+      return this; 
+    }
+    
+    /** Checks whether the 'keyframeNeeded' field has been set */
+    public boolean hasKeyframeNeeded() {
+      return fieldSetFlags()[6];
+    }
+    
+    /** Clears the value of the 'keyframeNeeded' field */
+    public com.cs4911.video_editor.testproto.FrameData.Builder clearKeyframeNeeded() {
+      fieldSetFlags()[6] = false;
+      return this;
+    }
+
+    @Override
+    public FrameData build() {
+      try {
+        FrameData record = new FrameData();
+        record.sequenceNumber = fieldSetFlags()[0] ? this.sequenceNumber : (java.lang.Long) defaultValue(fields()[0]);
+        record.captureTimestamp = fieldSetFlags()[1] ? this.captureTimestamp : (java.lang.Long) defaultValue(fields()[1]);
+        record.pipelineEpoch = fieldSetFlags()[2] ? this.pipelineEpoch : (java.lang.Integer) defaultValue(fields()[2]);
+        record.stageTimestamps = fieldSetFlags()[3] ? this.stageTimestamps : (java.util.List<java.lang.Long>) defaultValue(fields()[3]);
+        record.data = fieldSetFlags()[4] ? this.data : (java.nio.ByteBuffer) defaultValue(fields()[4]);
+        record.codecTimestamps = fieldSetFlags()[5] ? this.codecTimestamps : (java.util.List<java.lang.Long>) defaultValue(fields()[5]);
+        record.keyframeNeeded = fieldSetFlags()[6] ? this.keyframeNeeded : (java.lang.Boolean) defaultValue(fields()[6]);
+        return record;
+      } catch (Exception e) {
+        throw new org.apache.avro.AvroRuntimeException(e);
+      }
+    }
+  }
+}
@@ -0,0 +1,162 @@
+/**
+ * Autogenerated by Avro
+ * 
+ * DO NOT EDIT DIRECTLY
+ */
+package com.cs4911.video_editor.testproto;  
+@SuppressWarnings("all")
+public class InvalidPipelineError extends org.apache.avro.specific.SpecificExceptionBase implements org.apache.avro.specific.SpecificRecord {
+  public static final org.apache.avro.Schema SCHEMA$ = new org.apache.avro.Schema.Parser().parse("{\"type\":\"error\",\"name\":\"InvalidPipelineError\",\"namespace\":\"com.cs4911.video_editor.testproto\",\"fields\":[{\"name\":\"message\",\"type\":\"string\"}]}");
+  @Deprecated public java.lang.CharSequence message$;
+
+  public InvalidPipelineError() {
+    super();
+  }
+  
+  public InvalidPipelineError(Object value) {
+    super(value);
+  }
+
+  public InvalidPipelineError(Throwable cause) {
+    super(cause);
+  }
+
+  public InvalidPipelineError(Object value, Throwable cause) {
+    super(value, cause);
+  }
+
+  public org.apache.avro.Schema getSchema() { return SCHEMA$; }
+  // Used by DatumWriter.  Applications should not call. 
+  public java.lang.Object get(int field$) {
+    switch (field$) {
+    case 0: return message$;
+    default: throw new org.apache.avro.AvroRuntimeException("Bad index");
+    }
+  }
+  // Used by DatumReader.  Applications should not call. 
+  @SuppressWarnings(value="unchecked")
+  public void put(int field$, java.lang.Object value$) {
+    switch (field$) {
+    case 0: message$ = (java.lang.CharSequence)value$; break;
+    default: throw new org.apache.avro.AvroRuntimeException("Bad index");
+    }
+  }
+
+  /**
+   * Gets the value of the 'message$' field.
+   */
+  public java.lang.CharSequence getMessage$() {
+    return message$;
+  }
+
+  /**
+   * Sets the value of the 'message$' field.
+   * @param value the value to set.
+   */
+  public void setMessage$(java.lang.CharSequence value) {
+    this.message$ = value;
+  }
+
+  /** Creates a new InvalidPipelineError RecordBuilder */
+  public static com.cs4911.video_editor.testproto.InvalidPipelineError.Builder newBuilder() {
+    return new com.cs4911.video_editor.testproto.InvalidPipelineError.Builder();
+  }
+  
+  /** Creates a new InvalidPipelineError RecordBuilder by copying an existing Builder */
+  public static com.cs4911.video_editor.testproto.InvalidPipelineError.Builder newBuilder(com.cs4911.video_editor.testproto.InvalidPipelineError.Builder other) {
+    return new com.cs4911.video_editor.testproto.InvalidPipelineError.Builder(other);
+  }
+  
+  /** Creates a new InvalidPipelineError RecordBuilder by copying an existing InvalidPipelineError instance */
+  public static com.cs4911.video_editor.testproto.InvalidPipelineError.Builder newBuilder(com.cs4911.video_editor.testproto.InvalidPipelineError other) {
+    return new com.cs4911.video_editor.testproto.InvalidPipelineError.Builder(other);
+  }
+  
+  /**
+   * RecordBuilder for InvalidPipelineError instances.
+   */
+  public static class Builder extends org.apache.avro.specific.SpecificErrorBuilderBase<InvalidPipelineError>
+    implements org.apache.avro.data.ErrorBuilder<InvalidPipelineError> {
+
+    private java.lang.CharSequence message$;
+
+    /** Creates a new Builder */
+    private Builder() {
+      super(com.cs4911.video_editor.testproto.InvalidPipelineError.SCHEMA$);
+    }
+    
+    /** Creates a Builder by copying an existing Builder */
+    private Builder(com.cs4911.video_editor.testproto.InvalidPipelineError.Builder other) {
+      super(other);
+    }
+    
+    /** Creates a Builder by copying an existing InvalidPipelineError instance */
+    private Builder(com.cs4911.video_editor.testproto.InvalidPipelineError other) {
+      super(other);
+      if (isValidValue(fields()[0], other.message$)) {
+        this.message$ = (java.lang.CharSequence) data().deepCopy(fields()[0].schema(), other.message$);
+        fieldSetFlags()[0] = true;
+      }
+    }
+
+    @Override
+    public com.cs4911.video_editor.testproto.InvalidPipelineError.Builder setValue(Object value) {
+      super.setValue(value);
+      return this;
+    }
+    
+    @Override
+    public com.cs4911.video_editor.testproto.InvalidPipelineError.Builder clearValue() {
+      super.clearValue();
+      return this;
+    }
+
+    @Override
+    public com.cs4911.video_editor.testproto.InvalidPipelineError.Builder setCause(Throwable cause) {
+      super.setCause(cause);
+      return this;
+    }
+    
+    @Override
+    public com.cs4911.video_editor.testproto.InvalidPipelineError.Builder clearCause() {
+      super.clearCause();
+      return this;
+    }
+
+    /** Gets the value of the 'message$' field */
+    public java.lang.CharSequence getMessage$() {
+      return message$;
+    }
+    
+    /** Sets the value of the 'message$' field */
+    public com.cs4911.video_editor.testproto.InvalidPipelineError.Builder setMessage$(java.lang.CharSequence value) {
+      validate(fields()[0], value);
+      this.message$ = value;
+      fieldSetFlags()[0] = true;
+      return this; 
+    }
+    
+    /** Checks whether the 'message$' field has been set */
+    public boolean hasMessage$() {
+      return fieldSetFlags()[0];
+    }
+    
+    /** Clears the value of the 'message$' field */
+    public com.cs4911.video_editor.testproto.InvalidPipelineError.Builder clearMessage$() {
+      message$ = null;
+      fieldSetFlags()[0] = false;
+      return this;
+    }
+
+    @Override
+    public InvalidPipelineError build() {
+      try {
+        InvalidPipelineError record = new InvalidPipelineError(getValue(), getCause());
+        record.message$ = fieldSetFlags()[0] ? this.message$ : (java.lang.CharSequence) defaultValue(fields()[0]);
+        return record;
+      } catch (Exception e) {
+        throw new org.apache.avro.AvroRuntimeException(e);
+      }
+    }
+  }
+}
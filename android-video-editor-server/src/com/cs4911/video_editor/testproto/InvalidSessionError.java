@@ -0,0 +1,162 @@
+/**
+ * Autogenerated by Avro
+ * 
+ * DO NOT EDIT DIRECTLY
+ */
+package com.cs4911.video_editor.testproto;  
+@SuppressWarnings("all")
+public class InvalidSessionError extends org.apache.avro.specific.SpecificExceptionBase implements org.apache.avro.specific.SpecificRecord {
+  public static final org.apache.avro.Schema SCHEMA$ = new org.apache.avro.Schema.Parser().parse("{\"type\":\"error\",\"name\":\"InvalidSessionError\",\"namespace\":\"com.cs4911.video_editor.testproto\",\"fields\":[{\"name\":\"message\",\"type\":\"string\"}]}");
+  @Deprecated public java.lang.CharSequence message$;
+
+  public InvalidSessionError() {
+    super();
+  }
+  
+  public InvalidSessionError(Object value) {
+    super(value);
+  }
+
+  public InvalidSessionError(Throwable cause) {
+    super(cause);
+  }
+
+  public InvalidSessionError(Object value, Throwable cause) {
+    super(value, cause);
+  }
+
+  public org.apache.avro.Schema getSchema() { return SCHEMA$; }
+  // Used by DatumWriter.  Applications should not call. 
+  public java.lang.Object get(int field$) {
+    switch (field$) {
+    case 0: return message$;
+    default: throw new org.apache.avro.AvroRuntimeException("Bad index");
+    }
+  }
+  // Used by DatumReader.  Applications should not call. 
+  @SuppressWarnings(value="unchecked")
+  public void put(int field$, java.lang.Object value$) {
+    switch (field$) {
+    case 0: message$ = (java.lang.CharSequence)value$; break;
+    default: throw new org.apache.avro.AvroRuntimeException("Bad index");
+    }
+  }
+
+  /**
+   * Gets the value of the 'message$' field.
+   */
+  public java.lang.CharSequence getMessage$() {
+    return message$;
+  }
+
+  /**
+   * Sets the value of the 'message$' field.
+   * @param value the value to set.
+   */
+  public void setMessage$(java.lang.CharSequence value) {
+    this.message$ = value;
+  }
+
+  /** Creates a new InvalidSessionError RecordBuilder */
+  public static com.cs4911.video_editor.testproto.InvalidSessionError.Builder newBuilder() {
+    return new com.cs4911.video_editor.testproto.InvalidSessionError.Builder();
+  }
+  
+  /** Creates a new InvalidSessionError RecordBuilder by copying an existing Builder */
+  public static com.cs4911.video_editor.testproto.InvalidSessionError.Builder newBuilder(com.cs4911.video_editor.testproto.InvalidSessionError.Builder other) {
+    return new com.cs4911.video_editor.testproto.InvalidSessionError.Builder(other);
+  }
+  
+  /** Creates a new InvalidSessionError RecordBuilder by copying an existing InvalidSessionError instance */
+  public static com.cs4911.video_editor.testproto.InvalidSessionError.Builder newBuilder(com.cs4911.video_editor.testproto.InvalidSessionError other) {
+    return new com.cs4911.video_editor.testproto.InvalidSessionError.Builder(other);
+  }
+  
+  /**
+   * RecordBuilder for InvalidSessionError instances.
+   */
+  public static class Builder extends org.apache.avro.specific.SpecificErrorBuilderBase<InvalidSessionError>
+    implements org.apache.avro.data.ErrorBuilder<InvalidSessionError> {
+
+    private java.lang.CharSequence message$;
+
+    /** Creates a new Builder */
+    private Builder() {
+      super(com.cs4911.video_editor.testproto.InvalidSessionError.SCHEMA$);
+    }
+    
+    /** Creates a Builder by copying an existing Builder */
+    private Builder(com.cs4911.video_editor.testproto.InvalidSessionError.Builder other) {
+      super(other);
+    }
+    
+    /** Creates a Builder by copying an existing InvalidSessionError instance */
+    private Builder(com.cs4911.video_editor.testproto.InvalidSessionError other) {
+      super(other);
+      if (isValidValue(fields()[0], other.message$)) {
+        this.message$ = (java.lang.CharSequence) data().deepCopy(fields()[0].schema(), other.message$);
+        fieldSetFlags()[0] = true;
+      }
+    }
+
+    @Override
+    public com.cs4911.video_editor.testproto.InvalidSessionError.Builder setValue(Object value) {
+      super.setValue(value);
+      return this;
+    }
+    
+    @Override
+    public com.cs4911.video_editor.testproto.InvalidSessionError.Builder clearValue() {
+      super.clearValue();
+      return this;
+    }
+
+    @Override
+    public com.cs4911.video_editor.testproto.InvalidSessionError.Builder setCause(Throwable cause) {
+      super.setCause(cause);
+      return this;
+    }
+    
+    @Override
+    public com.cs4911.video_editor.testproto.InvalidSessionError.Builder clearCause() {
+      super.clearCause();
+      return this;
+    }
+
+    /** Gets the value of the 'message$' field */
+    public java.lang.CharSequence getMessage$() {
+      return message$;
+    }
+    
+    /** Sets the value of the 'message$' field */
+    public com.cs4911.video_editor.testproto.InvalidSessionError.Builder setMessage$(java.lang.CharSequence value) {
+      validate(fields()[0], value);
+      this.message$ = value;
+      fieldSetFlags()[0] = true;
+      return this; 
+    }
+    
+    /** Checks whether the 'message$' field has been set */
+    public boolean hasMessage$() {
+      return fieldSetFlags()[0];
+    }
+    
+    /** Clears the value of the 'message$' field */
+    public com.cs4911.video_editor.testproto.InvalidSessionError.Builder clearMessage$() {
+      message$ = null;
+      fieldSetFlags()[0] = false;
+      return this;
+    }
+
+    @Override
+    public InvalidSessionError build() {
+      try {
+        InvalidSessionError record = new InvalidSessionError(getValue(), getCause());
+        record.message$ = fieldSetFlags()[0] ? this.message$ : (java.lang.CharSequence) defaultValue(fields()[0]);
+        return record;
+      } catch (Exception e) {
+        throw new org.apache.avro.AvroRuntimeException(e);
+      }
+    }
+  }
+}
@@ -0,0 +1,408 @@
+/**
+ * Autogenerated by Avro
+ * 
+ * DO NOT EDIT DIRECTLY
+ */
+package com.cs4911.video_editor.testproto;  
+@SuppressWarnings("all")
+public class ServerLoad extends org.apache.avro.specific.SpecificRecordBase implements org.apache.avro.specific.SpecificRecord {
+  public static final org.apache.avro.Schema SCHEMA$ = new org.apache.avro.Schema.Parser().parse("{\"type\":\"record\",\"name\":\"ServerLoad\",\"namespace\":\"com.cs4911.video_editor.testproto\",\"fields\":[{\"name\":\"sessions\",\"type\":\"int\"},{\"name\":\"queuedFrames\",\"type\":\"int\"},{\"name\":\"workerThreads\",\"type\":\"int\"},{\"name\":\"workerUtilization\",\"type\":\"double\"},{\"name\":\"cpuLoad\",\"type\":\"double\"},{\"name\":\"droppedFrames\",\"type\":\"long\",\"default\":0},{\"name\":\"skippedFrames\",\"type\":\"long\",\"default\":0}]}");
+  @Deprecated public int sessions;
+  @Deprecated public int queuedFrames;
+  @Deprecated public int workerThreads;
+  @Deprecated public double workerUtilization;
+  @Deprecated public double cpuLoad;
+  @Deprecated public long droppedFrames;
+  @Deprecated public long skippedFrames;
+  public org.apache.avro.Schema getSchema() { return SCHEMA$; }
+  // Used by DatumWriter.  Applications should not call. 
+  public java.lang.Object get(int field$) {
+    switch (field$) {
+    case 0: return sessions;
+    case 1: return queuedFrames;
+    case 2: return workerThreads;
+    case 3: return workerUtilization;
+    case 4: return cpuLoad;
+    case 5: return droppedFrames;
+    case 6: return skippedFrames;
+    default: throw new org.apache.avro.AvroRuntimeException("Bad index");
+    }
+  }
+  // Used by DatumReader.  Applications should not call. 
+  @SuppressWarnings(value="unchecked")
+  public void put(int field$, java.lang.Object value$) {
+    switch (field$) {
+    case 0: sessions = (java.lang.Integer)value$; break;
+    case 1: queuedFrames = (java.lang.Integer)value$; break;
+    case 2: workerThreads = (java.lang.Integer)value$; break;
+    case 3: workerUtilization = (java.lang.Double)value$; break;
+    case 4: cpuLoad = (java.lang.Double)value$; break;
+    case 5: droppedFrames = (java.lang.Long)value$; break;
+    case 6: skippedFrames = (java.lang.Long)value$; break;
+    default: throw new org.apache.avro.AvroRuntimeException("Bad index");
+    }
+  }
+
+  /**
+   * Gets the value of the 'sessions' field.
+   */
+  public java.lang.Integer getSessions() {
+    return sessions;
+  }
+
+  /**
+   * Sets the value of the 'sessions' field.
+   * @param value the value to set.
+   */
+  public void setSessions(java.lang.Integer value) {
+    this.sessions = value;
+  }
+
+  /**
+   * Gets the value of the 'queuedFrames' field.
+   */
+  public java.lang.Integer getQueuedFrames() {
+    return queuedFrames;
+  }
+
+  /**
+   * Sets the value of the 'queuedFrames' field.
+   * @param value the value to set.
+   */
+  public void setQueuedFrames(java.lang.Integer value) {
+    this.queuedFrames = value;
+  }
+
+  /**
+   * Gets the value of the 'workerThreads' field.
+   */
+  public java.lang.Integer getWorkerThreads() {
+    return workerThreads;
+  }
+
+  /**
+   * Sets the value of the 'workerThreads' field.
+   * @param value the value to set.
+   */
+  public void setWorkerThreads(java.lang.Integer value) {
+    this.workerThreads = value;
+  }
+
+  /**
+   * Gets the value of the 'workerUtilization' field.
+   */
+  public java.lang.Double getWorkerUtilization() {
+    return workerUtilization;
+  }
+
+  /**
+   * Sets the value of the 'workerUtilization' field.
+   * @param value the value to set.
+   */
+  public void setWorkerUtilization(java.lang.Double value) {
+    this.workerUtilization = value;
+  }
+
+  /**
+   * Gets the value of the 'cpuLoad' field.
+   */
+  public java.lang.Double getCpuLoad() {
+    return cpuLoad;
+  }
+
+  /**
+   * Sets the value of the 'cpuLoad' field.
+   * @param value the value to set.
+   */
+  public void setCpuLoad(java.lang.Double value) {
+    this.cpuLoad = value;
+  }
+
+  /**
+   * Gets the value of the 'droppedFrames' field.
+   */
+  public java.lang.Long getDroppedFrames() {
+    return droppedFrames;
+  }
+
+  /**
+   * Sets the value of the 'droppedFrames' field.
+   * @param value the value to set.
+   */
+  public void setDroppedFrames(java.lang.Long value) {
+    this.droppedFrames = value;
+  }
+
+  /**
+   * Gets the value of the 'skippedFrames' field.
+   */
+  public java.lang.Long getSkippedFrames() {
+    return skippedFrames;
+  }
+
+  /**
+   * Sets the value of the 'skippedFrames' field.
+   * @param value the value to set.
+   */
+  public void setSkippedFrames(java.lang.Long value) {
+    this.skippedFrames = value;
+  }
+
+  /** Creates a new ServerLoad RecordBuilder */
+  public static com.cs4911.video_editor.testproto.ServerLoad.Builder newBuilder() {
+    return new com.cs4911.video_editor.testproto.ServerLoad.Builder();
+  }
+  
+  /** Creates a new ServerLoad RecordBuilder by copying an existing Builder */
+  public static com.cs4911.video_editor.testproto.ServerLoad.Builder newBuilder(com.cs4911.video_editor.testproto.ServerLoad.Builder other) {
+    return new com.cs4911.video_editor.testproto.ServerLoad.Builder(other);
+  }
+  
+  /** Creates a new ServerLoad RecordBuilder by copying an existing ServerLoad instance */
+  public static com.cs4911.video_editor.testproto.ServerLoad.Builder newBuilder(com.cs4911.video_editor.testproto.ServerLoad other) {
+    return new com.cs4911.video_editor.testproto.ServerLoad.Builder(other);
+  }
+  
+  /**
+   * RecordBuilder for ServerLoad instances.
+   */
+  public static class Builder extends org.apache.avro.specific.SpecificRecordBuilderBase<ServerLoad>
+    implements org.apache.avro.data.RecordBuilder<ServerLoad> {
+
+    private int sessions;
+    private int queuedFrames;
+    private int workerThreads;
+    private double workerUtilization;
+    private double cpuLoad;
+    private long droppedFrames;
+    private long skippedFrames;
+
+    /** Creates a new Builder */
+    private Builder() {
+      super(com.cs4911.video_editor.testproto.ServerLoad.SCHEMA$);
+    }
+    
+    /** Creates a Builder by copying an existing Builder */
+    private Builder(com.cs4911.video_editor.testproto.ServerLoad.Builder other) {
+      super(other);
+    }
+    
+    /** Creates a Builder by copying an existing ServerLoad instance */
+    private Builder(com.cs4911.video_editor.testproto.ServerLoad other) {
+            super(com.cs4911.video_editor.testproto.ServerLoad.SCHEMA$);
+      if (isValidValue(fields()[0], other.sessions)) {
+        this.sessions = (java.lang.Integer) data().deepCopy(fields()[0].schema(), other.sessions);
+        fieldSetFlags()[0] = true;
+      }
+      if (isValidValue(fields()[1], other.queuedFrames)) {
+        this.queuedFrames = (java.lang.Integer) data().deepCopy(fields()[1].schema(), other.queuedFrames);
+        fieldSetFlags()[1] = true;
+      }
+      if (isValidValue(fields()[2], other.workerThreads)) {
+        this.workerThreads = (java.lang.Integer) data().deepCopy(fields()[2].schema(), other.workerThreads);
+        fieldSetFlags()[2] = true;
+      }
+      if (isValidValue(fields()[3], other.workerUtilization)) {
+        this.workerUtilization = (java.lang.Double) data().deepCopy(fields()[3].schema(), other.workerUtilization);
+        fieldSetFlags()[3] = true;
+      }
+      if (isValidValue(fields()[4], other.cpuLoad)) {
+        this.cpuLoad = (java.lang.Double) data().deepCopy(fields()[4].schema(), other.cpuLoad);
+        fieldSetFlags()[4] = true;
+      }
+      if (isValidValue(fields()[5], other.droppedFrames)) {
+        this.droppedFrames = (java.lang.Long) data().deepCopy(fields()[5].schema(), other.droppedFrames);
+        fieldSetFlags()[5] = true;
+      }
+      if (isValidValue(fields()[6], other.skippedFrames)) {
+        this.skippedFrames = (java.lang.Long) data().deepCopy(fields()[6].schema(), other.skippedFrames);
+        fieldSetFlags()[6] = true;
+      }
+    }
+
+    /** Gets the value of the 'sessions' field */
+    public java.lang.Integer getSessions() {
+      return sessions;
+    }
+    
+    /** Sets the value of the 'sessions' field */
+    public com.cs4911.video_editor.testproto.ServerLoad.Builder setSessions(int value) {
+      validate(fields()[0], value);
+      this.sessions = value;
+      fieldSetFlags()[0] = true;
+      return this; 
+    }
+    
+    /** Checks whether the 'sessions' field has been set */
+    public boolean hasSessions() {
+      return fieldSetFlags()[0];
+    }
+    
+    /** Clears the value of the 'sessions' field */
+    public com.cs4911.video_editor.testproto.ServerLoad.Builder clearSessions() {
+      fieldSetFlags()[0] = false;
+      return this;
+    }
+
+    /** Gets the value of the 'queuedFrames' field */
+    public java.lang.Integer getQueuedFrames() {
+      return queuedFrames;
+    }
+    
+    /** Sets the value of the 'queuedFrames' field */
+    public com.cs4911.video_editor.testproto.ServerLoad.Builder setQueuedFrames(int value) {
+      validate(fields()[1], value);
+      this.queuedFrames = value;
+      fieldSetFlags()[1] = true;
+      return this; 
+    }
+    
+    /** Checks whether the 'queuedFrames' field has been set */
+    public boolean hasQueuedFrames() {
+      return fieldSetFlags()[1];
+    }
+    
+    /** Clears the value of the 'queuedFrames' field */
+    public com.cs4911.video_editor.testproto.ServerLoad.Builder clearQueuedFrames() {
+      fieldSetFlags()[1] = false;
+      return this;
+    }
+
+    /** Gets the value of the 'workerThreads' field */
+    public java.lang.Integer getWorkerThreads() {
+      return workerThreads;
+    }
+    
+    /** Sets the value of the 'workerThreads' field */
+    public com.cs4911.video_editor.testproto.ServerLoad.Builder setWorkerThreads(int value) {
+      validate(fields()[2], value);
+      this.workerThreads = value;
+      fieldSetFlags()[2] = true;
+      return this; 
+    }
+    
+    /** Checks whether the 'workerThreads' field has been set */
+    public boolean hasWorkerThreads() {
+      return fieldSetFlags()[2];
+    }
+    
+    /** Clears the value of the 'workerThreads' field */
+    public com.cs4911.video_editor.testproto.ServerLoad.Builder clearWorkerThreads() {
+      fieldSetFlags()[2] = false;
+      return this;
+    }
+
+    /** Gets the value of the 'workerUtilization' field */
+    public java.lang.Double getWorkerUtilization() {
+      return workerUtilization;
+    }
+    
+    /** Sets the value of the 'workerUtilization' field */
+    public com.cs4911.video_editor.testproto.ServerLoad.Builder setWorkerUtilization(double value) {
+      validate(fields()[3], value);
+      this.workerUtilization = value;
+      fieldSetFlags()[3] = true;
+      return this; 
+    }
+    
+    /** Checks whether the 'workerUtilization' field has been set */
+    public boolean hasWorkerUtilization() {
+      return fieldSetFlags()[3];
+    }
+    
+    /** Clears the value of the 'workerUtilization' field */
+    public com.cs4911.video_editor.testproto.ServerLoad.Builder clearWorkerUtilization() {
+      fieldSetFlags()[3] = false;
+      return this;
+    }
+
+    /** Gets the value of the 'cpuLoad' field */
+    public java.lang.Double getCpuLoad() {
+      return cpuLoad;
+    }
+    
+    /** Sets the value of the 'cpuLoad' field */
+    public com.cs4911.video_editor.testproto.ServerLoad.Builder setCpuLoad(double value) {
+      validate(fields()[4], value);
+      this.cpuLoad = value;
+      fieldSetFlags()[4] = true;
+      return this; 
+    }
+    
+    /** Checks whether the 'cpuLoad' field has been set */
+    public boolean hasCpuLoad() {
+      return fieldSetFlags()[4];
+    }
+    
+    /** Clears the value of the 'cpuLoad' field */
+    public com.cs4911.video_editor.testproto.ServerLoad.Builder clearCpuLoad() {
+      fieldSetFlags()[4] = false;
+      return this;
+    }
+
+    /** Gets the value of the 'droppedFrames' field */
+    public java.lang.Long getDroppedFrames() {
+      return droppedFrames;
+    }
+    
+    /** Sets the value of the 'droppedFrames' field */
+    public com.cs4911.video_editor.testproto.ServerLoad.Builder setDroppedFrames(long value) {
+      validate(fields()[5], value);
+      this.droppedFrames = value;
+      fieldSetFlags()[5] = true;
+      return this; 
+    }
+    
+    /** Checks whether the 'droppedFrames' field has been set */
+    public boolean hasDroppedFrames() {
+      return fieldSetFlags()[5];
+    }
+    
+    /** Clears the value of the 'droppedFrames' field */
+    public com.cs4911.video_editor.testproto.ServerLoad.Builder clearDroppedFrames() {
+      fieldSetFlags()[5] = false;
+      return this;
+    }
+
+    /** Gets the value of the 'skippedFrames' field */
+    public java.lang.Long getSkippedFrames() {
+      return skippedFrames;
+    }
+    
+    /** Sets the value of the 'skippedFrames' field */
+    public com.cs4911.video_editor.testproto.ServerLoad.Builder setSkippedFrames(long value) {
+      validate(fields()[6], value);
+      this.skippedFrames = value;
+      fieldSetFlags()[6] = true;
+      return this; 
+    }
+    
+    /** Checks whether the 'skippedFrames' field has been set */
+    public boolean hasSkippedFrames() {
+      return fieldSetFlags()[6];
+    }
+    
+    /** Clears the value of the 'skippedFrames' field */
+    public com.cs4911.video_editor.testproto.ServerLoad.Builder clearSkippedFrames() {
+      fieldSetFlags()[6] = false;
+      return this;
+    }
+
+    @Override
+    public ServerLoad build() {
+      try {
+        ServerLoad record = new ServerLoad();
+        record.sessions = fieldSetFlags()[0] ? this.sessions : (java.lang.Integer) defaultValue(fields()[0]);
+        record.queuedFrames = fieldSetFlags()[1] ? this.queuedFrames : (java.lang.Integer) defaultValue(fields()[1]);
+        record.workerThreads = fieldSetFlags()[2] ? this.workerThreads : (java.lang.Integer) defaultValue(fields()[2]);
+        record.workerUtilization = fieldSetFlags()[3] ? this.workerUtilization : (java.lang.Double) defaultValue(fields()[3]);
+        record.cpuLoad = fieldSetFlags()[4] ? this.cpuLoad : (java.lang.Double) defaultValue(fields()[4]);
+        record.droppedFrames = fieldSetFlags()[5] ? this.droppedFrames : (java.lang.Long) defaultValue(fields()[5]);
+        record.skippedFrames = fieldSetFlags()[6] ? this.skippedFrames : (java.lang.Long) defaultValue(fields()[6]);
+        return record;
+      } catch (Exception e) {
+        throw new org.apache.avro.AvroRuntimeException(e);
+      }
+    }
+  }
+}
@@ -7,29 +7,48 @@ package com.cs4911.video_editor.testproto;
 
 @SuppressWarnings("all")
 public interface TestProtocol {
-  public static final org.apache.avro.Protocol PROTOCOL = org.apache.avro.Protocol.parse("{\"protocol\":\"TestProtocol\",\"namespace\":\"com.cs4911.video_editor.testproto\",\"types\":[],\"messages\":{\"addBlurEffect\":{\"request\":[],\"response\":\"null\"},\"addColorSaturationEffect\":{\"request\":[],\"response\":\"null\"},\"addDrawingEffect\":{\"request\":[],\"response\":\"null\"},\"addEdgeDetectionEffect\":{\"request\":[],\"response\":\"null\"},\"addGradientMagnitudeEffect\":{\"request\":[],\"response\":\"null\"},\"addGrayscaleEffect\":{\"request\":[],\"response\":\"null\"},\"addHorizontalFlipEffect\":{\"request\":[],\"response\":\"null\"},\"addHoughCircleEffect\":{\"request\":[],\"response\":\"null\"},\"addHoughLineEffect\":{\"request\":[],\"response\":\"null\"},\"addIdentityEffect\":{\"request\":[],\"response\":\"null\"},\"addMotionHistoryEffect\":{\"request\":[],\"response\":\"null\"},\"addNegativeEffect\":{\"request\":[],\"response\":\"null\"},\"addSeamCarveEffect\":{\"request\":[],\"response\":\"null\"},\"addSepiaEffect\":{\"request\":[],\"response\":\"null\"},\"addVerticalEffect\":{\"request\":[],\"response\":\"null\"},\"addXrayEffect\":{\"request\":[],\"response\":\"null\"},\"clearEffects\":{\"request\":[],\"response\":\"null\"},\"addFrames\":{\"request\":[{\"name\":\"frames\",\"type\":{\"type\":\"array\",\"items\":\"bytes\"}}],\"response\":{\"type\":\"array\",\"items\":\"bytes\"}}}}");
-  java.lang.Void addBlurEffect() throws org.apache.avro.AvroRemoteException;
-  java.lang.Void addColorSaturationEffect() throws org.apache.avro.AvroRemoteException;
-  java.lang.Void addDrawingEffect() throws org.apache.avro.AvroRemoteException;
-  java.lang.Void addEdgeDetectionEffect() throws org.apache.avro.AvroRemoteException;
-  java.lang.Void addGradientMagnitudeEffect() throws org.apache.avro.AvroRemoteException;
-  java.lang.Void addGrayscaleEffect() throws org.apache.avro.AvroRemoteException;
-  java.lang.Void addHorizontalFlipEffect() throws org.apache.avro.AvroRemoteException;
-  java.lang.Void addHoughCircleEffect() throws org.apache.avro.AvroRemoteException;
-  java.lang.Void addHoughLineEffect() throws org.apache.avro.AvroRemoteException;
-  java.lang.Void addIdentityEffect() throws org.apache.avro.AvroRemoteException;
-  java.lang.Void addMotionHistoryEffect() throws org.apache.avro.AvroRemoteException;
-  java.lang.Void addNegativeEffect() throws org.apache.avro.AvroRemoteException;
-  java.lang.Void addSeamCarveEffect() throws org.apache.avro.AvroRemoteException;
-  java.lang.Void addSepiaEffect() throws org.apache.avro.AvroRemoteException;
-  java.lang.Void addVerticalEffect() throws org.apache.avro.AvroRemoteException;
-  java.lang.Void addXrayEffect() throws org.apache.avro.AvroRemoteException;
-  java.lang.Void clearEffects() throws org.apache.avro.AvroRemoteException;
-  java.util.List<java.nio.ByteBuffer> addFrames(java.util.List<java.nio.ByteBuffer> frames) throws org.apache.avro.AvroRemoteException;
+  public static final org.apache.avro.Protocol PROTOCOL = org.apache.avro.Protocol.parse("{\"protocol\":\"TestProtocol\",\"namespace\":\"com.cs4911.video_editor.testproto\",\"types\":[{\"type\":\"record\",\"name\":\"FrameData\",\"fields\":[{\"name\":\"sequenceNumber\",\"type\":\"long\"},{\"name\":\"captureTimestamp\",\"type\":\"long\"},{\"name\":\"pipelineEpoch\",\"type\":\"int\"},{\"name\":\"stageTimestamps\",\"type\":{\"type\":\"array\",\"items\":\"long\"}},{\"name\":\"data\",\"type\":\"bytes\"},{\"name\":\"codecTimestamps\",\"type\":{\"type\":\"array\",\"items\":\"long\"},\"default\":[]},{\"name\":\"keyframeNeeded\",\"type\":\"boolean\",\"default\":false}]},{\"type\":\"record\",\"name\":\"EffectDescriptor\",\"fields\":[{\"name\":\"name\",\"type\":\"string\"},{\"name\":\"parameters\",\"type\":{\"type\":\"map\",\"values\":\"double\"}}]},{\"type\":\"record\",\"name\":\"ServerLoad\",\"fields\":[{\"name\":\"sessions\",\"type\":\"int\"},{\"name\":\"queuedFrames\",\"type\":\"int\"},{\"name\":\"workerThreads\",\"type\":\"int\"},{\"name\":\"workerUtilization\",\"type\":\"double\"},{\"name\":\"cpuLoad\",\"type\":\"double\"},{\"name\":\"droppedFrames\",\"type\":\"long\",\"default\":0},{\"name\":\"skippedFrames\",\"type\":\"long\",\"default\":0}]},{\"type\":\"error\",\"name\":\"InvalidPipelineError\",\"fields\":[{\"name\":\"message\",\"type\":\"string\"}]},{\"type\":\"error\",\"name\":\"InvalidSessionError\",\"fields\":[{\"name\":\"message\",\"type\":\"string\"}]}],\"messages\":{\"getSessionId\":{\"request\":[],\"response\":\"long\"},\"joinSession\":{\"request\":[{\"name\":\"sessionId\",\"type\":\"long\"}],\"response\":\"null\",\"errors\":[\"InvalidSessionError\"]},\"negotiateCodec\":{\"request\":[{\"name\":\"codecs\",\"type\":{\"type\":\"array\",\"items\":\"string\"}},{\"name\":\"quality\",\"type\":\"int\"}],\"response\":\"string\",\"errors\":[\"InvalidSessionError\"]},\"setDeltaUpload\":{\"request\":[{\"name\":\"enabled\",\"type\":\"boolean\"}],\"response\":\"null\",\"errors\":[\"InvalidSessionError\"]},\"ping\":{\"request\":[{\"name\":\"timestamp\",\"type\":\"long\"}],\"response\":\"long\"},\"probeUpload\":{\"request\":[{\"name\":\"payload\",\"type\":\"bytes\"}],\"response\":\"int\"},\"probeDownload\":{\"request\":[{\"name\":\"size\",\"type\":\"int\"}],\"response\":\"bytes\"},\"getServerLoad\":{\"request\":[],\"response\":\"ServerLoad\"},\"addBlurEffect\":{\"request\":[],\"response\":\"null\",\"errors\":[\"InvalidSessionError\"]},\"addColorSaturationEffect\":{\"request\":[],\"response\":\"null\",\"errors\":[\"InvalidSessionError\"]},\"addDrawingEffect\":{\"request\":[],\"response\":\"null\",\"errors\":[\"InvalidSessionError\"]},\"addEdgeDetectionEffect\":{\"request\":[],\"response\":\"null\",\"errors\":[\"InvalidSessionError\"]},\"addGradientMagnitudeEffect\":{\"request\":[],\"response\":\"null\",\"errors\":[\"InvalidSessionError\"]},\"addGrayscaleEffect\":{\"request\":[],\"response\":\"null\",\"errors\":[\"InvalidSessionError\"]},\"addHorizontalFlipEffect\":{\"request\":[],\"response\":\"null\",\"errors\":[\"InvalidSessionError\"]},\"addHoughCircleEffect\":{\"request\":[],\"response\":\"null\",\"errors\":[\"InvalidSessionError\"]},\"addHoughLineEffect\":{\"request\":[],\"response\":\"null\",\"errors\":[\"InvalidSessionError\"]},\"addIdentityEffect\":{\"request\":[],\"response\":\"null\",\"errors\":[\"InvalidSessionError\"]},\"addMotionHistoryEffect\":{\"request\":[],\"response\":\"null\",\"errors\":[\"InvalidSessionError\"]},\"addNegativeEffect\":{\"request\":[],\"response\":\"null\",\"errors\":[\"InvalidSessionError\"]},\"addSeamCarveEffect\":{\"request\":[],\"response\":\"null\",\"errors\":[\"InvalidSessionError\"]},\"addSepiaEffect\":{\"request\":[],\"response\":\"null\",\"errors\":[\"InvalidSessionError\"]},\"addVerticalEffect\":{\"request\":[],\"response\":\"null\",\"errors\":[\"InvalidSessionError\"]},\"addXrayEffect\":{\"request\":[],\"response\":\"null\",\"errors\":[\"InvalidSessionError\"]},\"clearEffects\":{\"request\":[],\"response\":\"null\",\"errors\":[\"InvalidSessionError\"]},\"setPipeline\":{\"request\":[{\"name\":\"effects\",\"type\":{\"type\":\"array\",\"items\":\"EffectDescriptor\"}}],\"response\":\"null\",\"errors\":[\"InvalidPipelineError\",\"InvalidSessionError\"]},\"addFrames\":{\"request\":[{\"name\":\"frames\",\"type\":{\"type\":\"array\",\"items\":\"FrameData\"}}],\"response\":{\"type\":\"array\",\"items\":\"FrameData\"},\"errors\":[\"InvalidSessionError\"]},\"sendFrame\":{\"request\":[{\"name\":\"frame\",\"type\":\"FrameData\"}],\"response\":\"null\",\"one-way\":true},\"receiveFrames\":{\"request\":[{\"name\":\"maxFrames\",\"type\":\"int\"},{\"name\":\"timeoutMs\",\"type\":\"int\"}],\"response\":{\"type\":\"array\",\"items\":\"FrameData\"},\"errors\":[\"InvalidSessionError\"]}}}");
+  long getSessionId() throws org.apache.avro.AvroRemoteException;
+  java.lang.Void joinSession(long sessionId) throws org.apache.avro.AvroRemoteException, com.cs4911.video_editor.testproto.InvalidSessionError;
+  java.lang.CharSequence negotiateCodec(java.util.List<java.lang.CharSequence> codecs, int quality) throws org.apache.avro.AvroRemoteException, com.cs4911.video_editor.testproto.InvalidSessionError;
+  java.lang.Void setDeltaUpload(boolean enabled) throws org.apache.avro.AvroRemoteException, com.cs4911.video_editor.testproto.InvalidSessionError;
+  long ping(long timestamp) throws org.apache.avro.AvroRemoteException;
+  int probeUpload(java.nio.ByteBuffer payload) throws org.apache.avro.AvroRemoteException;
+  java.nio.ByteBuffer probeDownload(int size) throws org.apache.avro.AvroRemoteException;
+  com.cs4911.video_editor.testproto.ServerLoad getServerLoad() throws org.apache.avro.AvroRemoteException;
+  java.lang.Void addBlurEffect() throws org.apache.avro.AvroRemoteException, com.cs4911.video_editor.testproto.InvalidSessionError;
+  java.lang.Void addColorSaturationEffect() throws org.apache.avro.AvroRemoteException, com.cs4911.video_editor.testproto.InvalidSessionError;
+  java.lang.Void addDrawingEffect() throws org.apache.avro.AvroRemoteException, com.cs4911.video_editor.testproto.InvalidSessionError;
+  java.lang.Void addEdgeDetectionEffect() throws org.apache.avro.AvroRemoteException, com.cs4911.video_editor.testproto.InvalidSessionError;
+  java.lang.Void addGradientMagnitudeEffect() throws org.apache.avro.AvroRemoteException, com.cs4911.video_editor.testproto.InvalidSessionError;
+  java.lang.Void addGrayscaleEffect() throws org.apache.avro.AvroRemoteException, com.cs4911.video_editor.testproto.InvalidSessionError;
+  java.lang.Void addHorizontalFlipEffect() throws org.apache.avro.AvroRemoteException, com.cs4911.video_editor.testproto.InvalidSessionError;
+  java.lang.Void addHoughCircleEffect() throws org.apache.avro.AvroRemoteException, com.cs4911.video_editor.testproto.InvalidSessionError;
+  java.lang.Void addHoughLineEffect() throws org.apache.avro.AvroRemoteException, com.cs4911.video_editor.testproto.InvalidSessionError;
+  java.lang.Void addIdentityEffect() throws org.apache.avro.AvroRemoteException, com.cs4911.video_editor.testproto.InvalidSessionError;
+  java.lang.Void addMotionHistoryEffect() throws org.apache.avro.AvroRemoteException, com.cs4911.video_editor.testproto.InvalidSessionError;
+  java.lang.Void addNegativeEffect() throws org.apache.avro.AvroRemoteException, com.cs4911.video_editor.testproto.InvalidSessionError;
+  java.lang.Void addSeamCarveEffect() throws org.apache.avro.AvroRemoteException, com.cs4911.video_editor.testproto.InvalidSessionError;
+  java.lang.Void addSepiaEffect() throws org.apache.avro.AvroRemoteException, com.cs4911.video_editor.testproto.InvalidSessionError;
+  java.lang.Void addVerticalEffect() throws org.apache.avro.AvroRemoteException, com.cs4911.video_editor.testproto.InvalidSessionError;
+  java.lang.Void addXrayEffect() throws org.apache.avro.AvroRemoteException, com.cs4911.video_editor.testproto.InvalidSessionError;
+  java.lang.Void clearEffects() throws org.apache.avro.AvroRemoteException, com.cs4911.video_editor.testproto.InvalidSessionError;
+  java.lang.Void setPipeline(java.util.List<com.cs4911.video_editor.testproto.EffectDescriptor> effects) throws org.apache.avro.AvroRemoteException, com.cs4911.video_editor.testproto.InvalidPipelineError, com.cs4911.video_editor.testproto.InvalidSessionError;
+  java.util.List<com.cs4911.video_editor.testproto.FrameData> addFrames(java.util.List<com.cs4911.video_editor.testproto.FrameData> frames) throws org.apache.avro.AvroRemoteException, com.cs4911.video_editor.testproto.InvalidSessionError;
+  void sendFrame(com.cs4911.video_editor.testproto.FrameData frame);
+  java.util.List<com.cs4911.video_editor.testproto.FrameData> receiveFrames(int maxFrames, int timeoutMs) throws org.apache.avro.AvroRemoteException, com.cs4911.video_editor.testproto.InvalidSessionError;
 
   @SuppressWarnings("all")
   public interface Callback extends TestProtocol {
     public static final org.apache.avro.Protocol PROTOCOL = com.cs4911.video_editor.testproto.TestProtocol.PROTOCOL;
+    void getSessionId(org.apache.avro.ipc.Callback<java.lang.Long> callback) throws java.io.IOException;
+    void joinSession(long sessionId, org.apache.avro.ipc.Callback<java.lang.Void> callback) throws java.io.IOException;
+    void negotiateCodec(java.util.List<java.lang.CharSequence> codecs, int quality, org.apache.avro.ipc.Callback<java.lang.CharSequence> callback) throws java.io.IOException;
+    void setDeltaUpload(boolean enabled, org.apache.avro.ipc.Callback<java.lang.Void> callback) throws java.io.IOException;
+    void ping(long timestamp, org.apache.avro.ipc.Callback<java.lang.Long> callback) throws java.io.IOException;
+    void probeUpload(java.nio.ByteBuffer payload, org.apache.avro.ipc.Callback<java.lang.Integer> callback) throws java.io.IOException;
+    void probeDownload(int size, org.apache.avro.ipc.Callback<java.nio.ByteBuffer> callback) throws java.io.IOException;
+    void getServerLoad(org.apache.avro.ipc.Callback<com.cs4911.video_editor.testproto.ServerLoad> callback) throws java.io.IOException;
     void addBlurEffect(org.apache.avro.ipc.Callback<java.lang.Void> callback) throws java.io.IOException;
     void addColorSaturationEffect(org.apache.avro.ipc.Callback<java.lang.Void> callback) throws java.io.IOException;
     void addDrawingEffect(org.apache.avro.ipc.Callback<java.lang.Void> callback) throws java.io.IOException;
@@ -47,6 +66,8 @@ public interface TestProtocol {
     void addVerticalEffect(org.apache.avro.ipc.Callback<java.lang.Void> callback) throws java.io.IOException;
     void addXrayEffect(org.apache.avro.ipc.Callback<java.lang.Void> callback) throws java.io.IOException;
     void clearEffects(org.apache.avro.ipc.Callback<java.lang.Void> callback) throws java.io.IOException;
-    void addFrames(java.util.List<java.nio.ByteBuffer> frames, org.apache.avro.ipc.Callback<java.util.List<java.nio.ByteBuffer>> callback) throws java.io.IOException;
+    void setPipeline(java.util.List<com.cs4911.video_editor.testproto.EffectDescriptor> effects, org.apache.avro.ipc.Callback<java.lang.Void> callback) throws java.io.IOException;
+    void addFrames(java.util.List<com.cs4911.video_editor.testproto.FrameData> frames, org.apache.avro.ipc.Callback<java.util.List<com.cs4911.video_editor.testproto.FrameData>> callback) throws java.io.IOException;
+    void receiveFrames(int maxFrames, int timeoutMs, org.apache.avro.ipc.Callback<java.util.List<com.cs4911.video_editor.testproto.FrameData>> callback) throws java.io.IOException;
   }
 }
\ No newline at end of file
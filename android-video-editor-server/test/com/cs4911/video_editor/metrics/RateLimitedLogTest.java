@@ -0,0 +1,30 @@
+package com.cs4911.video_editor.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Checks that a RateLimitedLog prints the first message at once, only
+ * counts the ones that come before the interval is over, and prints the
+ * next one after it.
+ */
+public class RateLimitedLogTest {
+
+	private static final long INTERVAL_MS = 50;
+
+	@Test
+	public void printsOncePerInterval() throws InterruptedException {
+		RateLimitedLog log = new RateLimitedLog(INTERVAL_MS);
+		assertTrue(log.log("first"));
+		assertFalse(log.log("second"));
+		assertFalse(log.log("third", new RuntimeException()));
+		assertEquals(2, log.getSuppressed());
+
+		Thread.sleep(2 * INTERVAL_MS);
+		assertTrue(log.log("fourth"));
+		assertEquals(0, log.getSuppressed());
+	}
+}
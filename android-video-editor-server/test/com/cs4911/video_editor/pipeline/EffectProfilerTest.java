@@ -0,0 +1,151 @@
+package com.cs4911.video_editor.pipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that an EffectProfiler averages what each effect cost at each
+ * resolution, fits the rest to a fixed time plus a time per pixel, and
+ * gets the same profiles back from a file it saved them to.
+ */
+public class EffectProfilerTest {
+
+	private static final double DELTA = 1e-6;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final EffectProfiler profiler = new EffectProfiler();
+
+	@Test
+	public void averagesMeasuredResolution() {
+		assertEquals(-1, profiler.estimateWallMs("sepia", 640, 480), 0);
+		record("sepia", 640, 480, 10, 20, 30);
+		assertEquals(20, profiler.estimateWallMs("sepia", 640, 480), DELTA);
+		assertEquals(3, profiler.getNumSamples("sepia"));
+		assertEquals(-1, profiler.estimateWallMs("gray", 640, 480), 0);
+	}
+
+	@Test
+	public void followsChangingCost() {
+		for (int i = 0; i < 100; i++) {
+			record("sepia", 640, 480, 10);
+		}
+		// The device got hot.
+		for (int i = 0; i < 100; i++) {
+			record("sepia", 640, 480, 20);
+		}
+		assertEquals(20, profiler.estimateWallMs("sepia", 640, 480), 0.1);
+	}
+
+	@Test
+	public void fitsFixedAndPerPixelTime() {
+		// 2 ms plus 10 ms per million pixels.
+		record("sepia", 320, 240, 2 + 0.768);
+		record("sepia", 640, 480, 2 + 3.072);
+		record("sepia", 1280, 720, 2 + 9.216);
+		assertEquals(2 + 20.736, profiler.estimateWallMs("sepia", 1920, 1080), 1e-3);
+		assertEquals(2 + 0.1, profiler.estimateWallMs("sepia", 100, 100), 1e-3);
+	}
+
+	@Test
+	public void scalesSingleResolutionByPixels() {
+		record("sepia", 640, 480, 10);
+		assertEquals(40, profiler.estimateWallMs("sepia", 1280, 960), DELTA);
+	}
+
+	@Test
+	public void scalesByPixelsWhenFitMakesNoSense() {
+		// Faster on larger frames, which can only be noise.
+		record("sepia", 320, 240, 10);
+		record("sepia", 640, 480, 5);
+		assertEquals(15.0 / (76800 + 307200) * 1228800, profiler.estimateWallMs("sepia", 1280, 960), DELTA);
+	}
+
+	@Test
+	public void measuresCpuTimeWithClock() {
+		assertEquals(-1, profiler.threadCpuTimeNanos());
+		EffectProfiler cpuProfiler = new EffectProfiler(new EffectProfiler.CpuClock() {
+			@Override
+			public long threadCpuTimeNanos() {
+				return 42;
+			}
+		});
+		assertEquals(42, cpuProfiler.threadCpuTimeNanos());
+
+		cpuProfiler.record("sepia", 640, 480, 10000000, -1);
+		assertEquals(-1, cpuProfiler.estimateCpuMs("sepia", 640, 480), 0);
+		cpuProfiler.record("sepia", 640, 480, 10000000, 4000000);
+		assertEquals(4, cpuProfiler.estimateCpuMs("sepia", 640, 480), DELTA);
+		assertEquals(16, cpuProfiler.estimateCpuMs("sepia", 1280, 960), DELTA);
+	}
+
+	@Test
+	public void ignoresEmptyFrames() {
+		profiler.record("sepia", 0, 480, 10000000, -1);
+		profiler.record("sepia", 640, 480, -1, -1);
+		assertEquals(0, profiler.getNumSamples("sepia"));
+	}
+
+	@Test
+	public void savesAndLoadsProfiles() throws IOException {
+		record("sepia", 320, 240, 3, 4);
+		record("sepia", 640, 480, 7);
+		record("gray", 640, 480, 1);
+		profiler.record("gray", 1280, 720, 2000000, 1500000);
+		File file = new File(folder.getRoot(), "profiles.txt");
+		profiler.save(file);
+		// Saving again replaces the file.
+		profiler.save(file);
+		assertFalse(new File(file.getPath() + ".tmp").exists());
+
+		EffectProfiler loaded = new EffectProfiler();
+		loaded.load(file);
+		assertEquals(3, loaded.getNumSamples("sepia"));
+		assertEquals(2, loaded.getNumSamples("gray"));
+		for (String effect : new String[] {"sepia", "gray"}) {
+			for (int[] size : new int[][] {{320, 240}, {640, 480}, {1280, 720}, {1920, 1080}}) {
+				assertEquals(profiler.estimateWallMs(effect, size[0], size[1]),
+						loaded.estimateWallMs(effect, size[0], size[1]), DELTA);
+				assertEquals(profiler.estimateCpuMs(effect, size[0], size[1]),
+						loaded.estimateCpuMs(effect, size[0], size[1]), DELTA);
+			}
+		}
+	}
+
+	@Test
+	public void skipsLinesItCannotRead() throws IOException {
+		profiler.load(new File(folder.getRoot(), "missing.txt"));
+		assertEquals(0, profiler.getNumSamples("sepia"));
+
+		File file = folder.newFile("profiles.txt");
+		FileWriter writer = new FileWriter(file);
+		writer.write("# effect\twidth\theight\tsamples\twallMs\tcpuMs\n");
+		writer.write("sepia\t640\t480\n");
+		writer.write("sepia\t640\tabc\t5\t10.0\t-1.0\n");
+		writer.write("\n");
+		writer.write("sepia\t320\t240\t5\t2.5\t-1.0\n");
+		writer.close();
+		profiler.load(file);
+		assertEquals(5, profiler.getNumSamples("sepia"));
+		assertEquals(2.5, profiler.estimateWallMs("sepia", 320, 240), DELTA);
+		assertEquals(-1, profiler.estimateCpuMs("sepia", 320, 240), 0);
+	}
+
+	/**
+	 * Records that an effect took the given wall times, without the CPU time.
+	 */
+	private void record(String effect, int width, int height, double... wallMs) {
+		for (double ms : wallMs) {
+			profiler.record(effect, width, height, Math.round(ms * 1e6), -1);
+		}
+	}
+}
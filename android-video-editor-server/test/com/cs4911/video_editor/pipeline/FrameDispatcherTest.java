@@ -0,0 +1,85 @@
+package com.cs4911.video_editor.pipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that a FrameDispatcher spreads frames over the replicas, and
+ * sends them all to the first one while it is pinned.
+ */
+public class FrameDispatcherTest {
+
+	private BlockingQueue<FrameEnvelope> unprocessedFrameQueue;
+	private List<BlockingQueue<FrameEnvelope>> replicaQueues;
+	private PriorityBlockingQueue<Long> dispatchedSequences;
+	private FrameDispatcher dispatcher;
+	private Thread dispatcherThread;
+
+	@Before
+	public void setUp() {
+		unprocessedFrameQueue = new LinkedBlockingQueue<FrameEnvelope>();
+		replicaQueues = new ArrayList<BlockingQueue<FrameEnvelope>>();
+		for (int i = 0; i < 3; i++) {
+			replicaQueues.add(new LinkedBlockingQueue<FrameEnvelope>());
+		}
+		dispatchedSequences = new PriorityBlockingQueue<Long>();
+		dispatcher = new FrameDispatcher(unprocessedFrameQueue, replicaQueues, dispatchedSequences);
+	}
+
+	@After
+	public void tearDown() throws InterruptedException {
+		dispatcherThread.interrupt();
+		dispatcherThread.join();
+	}
+
+	@Test
+	public void spreadsFramesOverReplicas() throws InterruptedException {
+		start();
+		addFrames(6);
+		for (BlockingQueue<FrameEnvelope> queue : replicaQueues) {
+			assertEquals(2, queue.size());
+		}
+		assertEquals(6, dispatchedSequences.size());
+	}
+
+	@Test
+	public void sendsEveryFrameToFirstReplicaWhilePinned() throws InterruptedException {
+		dispatcher.setPinned(true);
+		start();
+		addFrames(6);
+		assertEquals(6, replicaQueues.get(0).size());
+		assertTrue(replicaQueues.get(1).isEmpty());
+		assertTrue(replicaQueues.get(2).isEmpty());
+		for (int i = 0; i < 6; i++) {
+			assertEquals(i, replicaQueues.get(0).take().getSequenceNumber());
+		}
+	}
+
+	private void start() {
+		dispatcherThread = new Thread(dispatcher);
+		dispatcherThread.start();
+	}
+
+	private void addFrames(int numFrames) throws InterruptedException {
+		for (int i = 0; i < numFrames; i++) {
+			unprocessedFrameQueue.put(new FrameEnvelope(null, i, 0));
+		}
+		long giveUp = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (dispatchedSequences.size() < numFrames && System.nanoTime() < giveUp) {
+			Thread.sleep(1);
+		}
+		// The last frame is recorded just before it is handed out.
+		Thread.sleep(20);
+	}
+}
@@ -0,0 +1,178 @@
+package com.cs4911.video_editor.pipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that a FrameReorderer gives frames back in the order of their
+ * sequence numbers however the replicas finish them, skips dropped frames
+ * without waiting and discards frames that come out too late.
+ */
+public class FrameReordererTest {
+
+	private BlockingQueue<FrameEnvelope> replicaOutputQueue;
+	private PriorityBlockingQueue<Long> dispatchedSequences;
+	private BlockingQueue<FrameEnvelope> processedFrameQueue;
+	private FrameReorderer reorderer;
+	private Thread reordererThread;
+
+	@Before
+	public void setUp() {
+		replicaOutputQueue = new MpscRingBuffer<FrameEnvelope>(8);
+		dispatchedSequences = new PriorityBlockingQueue<Long>();
+		processedFrameQueue = new LinkedBlockingQueue<FrameEnvelope>();
+		reorderer = new FrameReorderer(replicaOutputQueue, dispatchedSequences, processedFrameQueue);
+		reordererThread = new Thread(reorderer);
+		reordererThread.start();
+	}
+
+	@After
+	public void tearDown() throws InterruptedException {
+		reordererThread.interrupt();
+		reordererThread.join();
+	}
+
+	@Test
+	public void givesBackFramesInSequenceOrder() throws InterruptedException {
+		dispatch(0, 1, 2, 3);
+		replicaOutputQueue.put(frame(2));
+		replicaOutputQueue.put(frame(1));
+		replicaOutputQueue.put(frame(3));
+		assertNull(processedFrameQueue.poll(50, TimeUnit.MILLISECONDS));
+		replicaOutputQueue.put(frame(0));
+		assertEquals(0, take().getSequenceNumber());
+		assertEquals(1, take().getSequenceNumber());
+		assertEquals(2, take().getSequenceNumber());
+		assertEquals(3, take().getSequenceNumber());
+	}
+
+	@Test
+	public void waitsForSlowFrameInsteadOfGivingUpOnIt() throws InterruptedException {
+		dispatch(0, 1, 2);
+		replicaOutputQueue.put(frame(1));
+		replicaOutputQueue.put(frame(2));
+		// Longer than any effect should take, but the frame is still on its way.
+		Thread.sleep(700);
+		replicaOutputQueue.put(frame(0));
+		assertEquals(0, take().getSequenceNumber());
+		assertEquals(1, take().getSequenceNumber());
+		assertEquals(2, take().getSequenceNumber());
+		assertEquals(0, reorderer.getStaleFrames());
+	}
+
+	@Test
+	public void skipsDroppedFrameAtOnce() throws InterruptedException {
+		dispatch(0, 1, 2);
+		FrameEnvelope dropped = frame(1);
+		dropped.markDropped();
+		replicaOutputQueue.put(frame(2));
+		replicaOutputQueue.put(dropped);
+		replicaOutputQueue.put(frame(0));
+		assertEquals(0, take().getSequenceNumber());
+		assertEquals(2, processedFrameQueue.poll(100, TimeUnit.MILLISECONDS).getSequenceNumber());
+		assertNull(processedFrameQueue.poll(50, TimeUnit.MILLISECONDS));
+		assertTrue(dispatchedSequences.isEmpty());
+	}
+
+	@Test
+	public void discardsFrameOlderThanOneGivenBack() throws InterruptedException {
+		dispatch(5);
+		replicaOutputQueue.put(frame(5));
+		assertEquals(5, take().getSequenceNumber());
+
+		// Added after frame 5 had been given back.
+		dispatch(3, 6);
+		FrameEnvelope stale = frame(3);
+		replicaOutputQueue.put(stale);
+		replicaOutputQueue.put(frame(6));
+		assertEquals(6, take().getSequenceNumber());
+		assertNull(processedFrameQueue.poll(50, TimeUnit.MILLISECONDS));
+		assertEquals(1, reorderer.getStaleFrames());
+		assertTrue(stale.isDropped());
+	}
+
+	@Test
+	public void keepsOrderAcrossReplicasThatDropAndDelayFrames() throws InterruptedException {
+		final int numFrames = 2000;
+		final int numReplicas = 3;
+		BlockingQueue<FrameEnvelope> unprocessedFrameQueue = new MpscRingBuffer<FrameEnvelope>(4);
+		List<BlockingQueue<FrameEnvelope>> replicaInputQueues = new ArrayList<BlockingQueue<FrameEnvelope>>();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < numReplicas; i++) {
+			final BlockingQueue<FrameEnvelope> input = new SpscRingBuffer<FrameEnvelope>(2);
+			final Random random = new Random(i);
+			replicaInputQueues.add(input);
+			// Stands in for a pipeline: slow now and then, and drops every seventh frame.
+			threads.add(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						while (true) {
+							FrameEnvelope frame = input.take();
+							if (random.nextInt(50) == 0) {
+								Thread.sleep(random.nextInt(5));
+							}
+							if (frame.getSequenceNumber() % 7 == 3) {
+								frame.markDropped();
+							}
+							replicaOutputQueue.put(frame);
+						}
+					} catch (InterruptedException e) {
+						// stopped
+					}
+				}
+			}));
+		}
+		threads.add(new Thread(new FrameDispatcher(unprocessedFrameQueue, replicaInputQueues, dispatchedSequences)));
+		for (Thread thread : threads) {
+			thread.start();
+		}
+
+		for (int i = 0; i < numFrames; i++) {
+			unprocessedFrameQueue.put(frame(i));
+		}
+		for (int i = 0; i < numFrames; i++) {
+			if (i % 7 != 3) {
+				assertEquals(i, take().getSequenceNumber());
+			}
+		}
+		assertNull(processedFrameQueue.poll(50, TimeUnit.MILLISECONDS));
+		assertEquals(0, reorderer.getStaleFrames());
+
+		for (Thread thread : threads) {
+			thread.interrupt();
+			thread.join();
+		}
+	}
+
+	private void dispatch(long... sequenceNumbers) {
+		for (long sequenceNumber : sequenceNumbers) {
+			dispatchedSequences.add(sequenceNumber);
+		}
+	}
+
+	private FrameEnvelope take() throws InterruptedException {
+		FrameEnvelope frame = processedFrameQueue.poll(5, TimeUnit.SECONDS);
+		if (frame == null) {
+			throw new AssertionError("No frame was given back");
+		}
+		return frame;
+	}
+
+	private static FrameEnvelope frame(long sequenceNumber) {
+		return new FrameEnvelope(null, sequenceNumber, 0);
+	}
+}
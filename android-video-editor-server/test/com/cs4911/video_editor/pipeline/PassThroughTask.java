@@ -0,0 +1,143 @@
+package com.cs4911.video_editor.pipeline;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.cs4911.video_editor.effects.IdentityEffect;
+
+/**
+ * An EffectTask that leaves frames as they are and so needs no OpenCV,
+ * for running pipelines in tests. It stamps every frame with its stage and
+ * epoch like LocalEffectTask does, and counts the frames that reach it
+ * after going through a stage of another epoch. It can also fail on some
+ * frames, which are then dropped as LocalEffectTask drops them.
+ */
+public class PassThroughTask extends EffectTask {
+
+	private final AtomicLong mixedFrames;
+	private final int failEvery;
+
+	// A processed frame that could not be handed on yet when run by an EffectStage.
+	private volatile FrameEnvelope pendingFrame;
+
+	/**
+	 * Creates a PassThroughTask that never fails.
+	 * @param mixedFrames the counter of frames that went through stages of different epochs
+	 */
+	public PassThroughTask(AtomicLong mixedFrames) {
+		this(mixedFrames, 0);
+	}
+
+	/**
+	 * Creates a PassThroughTask that fails on every failEvery-th frame.
+	 * @param mixedFrames the counter of frames that went through stages of different epochs
+	 * @param failEvery fail on frames whose sequence number is a multiple of this, or 0 for none
+	 */
+	public PassThroughTask(AtomicLong mixedFrames, int failEvery) {
+		super(new IdentityEffect());
+		this.mixedFrames = mixedFrames;
+		this.failEvery = failEvery;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.pipeline.EffectTask#copy()
+	 */
+	@Override
+	public EffectTask copy() {
+		return new PassThroughTask(mixedFrames, failEvery);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Runnable#run()
+	 */
+	@Override
+	public void run() {
+		try {
+			while (true) {
+				FrameEnvelope frame = inputQueue.take();
+				if (frame == END_OF_CHAIN) {
+					if (!lastStage) {
+						outputQueue.put(frame);
+					}
+					break;
+				}
+				process(frame);
+				handOn(frame);
+			}
+		} catch (InterruptedException e) {
+			// stopped
+		}
+		finish();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.pipeline.EffectTask#hasWork()
+	 */
+	@Override
+	public boolean hasWork() {
+		if (isFinished() || !canHandOn()) {
+			return false;
+		}
+		return pendingFrame != null || !inputQueue.isEmpty();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.pipeline.EffectTask#processNext()
+	 */
+	@Override
+	public boolean processNext() {
+		if (isFinished()) {
+			return false;
+		}
+		if (pendingFrame != null) {
+			FrameEnvelope frame = pendingFrame;
+			if (!tryHandOn(frame)) {
+				return false;
+			}
+			pendingFrame = null;
+			if (frame == END_OF_CHAIN) {
+				finish();
+			}
+			return true;
+		}
+		if (!canHandOn()) {
+			return false;
+		}
+		FrameEnvelope frame = inputQueue.poll();
+		if (frame == null) {
+			return false;
+		}
+		if (frame == END_OF_CHAIN) {
+			if (lastStage || outputQueue.offer(frame)) {
+				finish();
+			} else {
+				pendingFrame = frame;
+			}
+			return true;
+		}
+		process(frame);
+		if (!tryHandOn(frame)) {
+			pendingFrame = frame;
+		}
+		return true;
+	}
+
+	private void process(FrameEnvelope frame) {
+		if (frame.isDropped()) {
+			return;
+		}
+		if (failEvery > 0 && frame.getSequenceNumber() % failEvery == 0) {
+			dropFrame(frame);
+			return;
+		}
+		if (frame.getNumStages() > 0 && frame.getPipelineEpoch() != pipelineEpoch) {
+			mixedFrames.incrementAndGet();
+		}
+		long now = System.nanoTime();
+		frame.recordStage(now, now);
+		frame.setPipelineEpoch(pipelineEpoch);
+	}
+}
@@ -0,0 +1,170 @@
+package com.cs4911.video_editor.pipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.cs4911.video_editor.effects.Effect;
+
+/**
+ * Checks that a Pipeline whose effects change over and over while frames
+ * go through it neither drops nor duplicates a frame, keeps them in order,
+ * and has every frame processed entirely by the effects of one epoch,
+ * whether it runs its effects on threads or on an Executor, and that
+ * effects that stay when others are added, removed or moved keep their state.
+ */
+public class PipelineEpochTest {
+
+	private static final int NUM_FRAMES = 3000;
+	// How many frames are taken from the pipeline between two changes of its effects.
+	private static final int FRAMES_PER_SWITCH = 50;
+
+	private final AtomicLong mixedFrames = new AtomicLong();
+	private Pipeline pipeline;
+	private ExecutorService executor;
+
+	@After
+	public void tearDown() {
+		if (pipeline != null) {
+			pipeline.stop();
+		}
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void switchesEpochsBetweenFramesOnThreads() throws InterruptedException {
+		BlockingQueue<FrameEnvelope> unprocessedFrameQueue = new MpscRingBuffer<FrameEnvelope>(20);
+		BlockingQueue<FrameEnvelope> processedFrameQueue = new MpscRingBuffer<FrameEnvelope>(20);
+		pipeline = new Pipeline(unprocessedFrameQueue, processedFrameQueue, chain(2));
+		run(unprocessedFrameQueue, processedFrameQueue);
+	}
+
+	@Test
+	public void switchesEpochsBetweenFramesOnExecutor() throws InterruptedException {
+		BlockingQueue<FrameEnvelope> unprocessedFrameQueue = new MpscRingBuffer<FrameEnvelope>(20);
+		BlockingQueue<FrameEnvelope> processedFrameQueue = new MpscRingBuffer<FrameEnvelope>(20);
+		executor = Executors.newFixedThreadPool(2);
+		pipeline = new Pipeline(unprocessedFrameQueue, processedFrameQueue, chain(2), executor);
+		run(unprocessedFrameQueue, processedFrameQueue);
+	}
+
+	@Test
+	public void keepsEffectsThatStayWhenEffectsAreEdited() {
+		Effect first = new StatefulEffect();
+		Effect second = new StatefulEffect();
+		pipeline = new Pipeline(new MpscRingBuffer<FrameEnvelope>(20), new MpscRingBuffer<FrameEnvelope>(20),
+				new EffectTask[] {new LocalEffectTask(first)});
+		pipeline.addEffect(new LocalEffectTask(second));
+		assertSame(first, pipeline.getEffects().get(0));
+		assertSame(second, pipeline.getEffects().get(1));
+
+		pipeline.moveEffect(1, 0);
+		assertSame(second, pipeline.getEffects().get(0));
+		assertSame(first, pipeline.getEffects().get(1));
+
+		pipeline.removeEffect(0);
+		assertEquals(1, pipeline.getEffects().size());
+		assertSame(first, pipeline.getEffects().get(0));
+	}
+
+	/**
+	 * Adds NUM_FRAMES frames to the pipeline while its effects are replaced
+	 * by chains of different lengths, and checks the frames that come out.
+	 */
+	private void run(final BlockingQueue<FrameEnvelope> unprocessedFrameQueue,
+			BlockingQueue<FrameEnvelope> processedFrameQueue) throws InterruptedException {
+		// The number of stages of the chain of every epoch.
+		Map<Integer, Integer> chainLengths = new HashMap<Integer, Integer>();
+		chainLengths.put(pipeline.getEpoch(), 2);
+		pipeline.start();
+
+		Thread producer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					for (int i = 0; i < NUM_FRAMES; i++) {
+						unprocessedFrameQueue.put(new FrameEnvelope(null, i, 0));
+					}
+				} catch (InterruptedException e) {
+					// stopped
+				}
+			}
+		});
+		List<FrameEnvelope> processed = new ArrayList<FrameEnvelope>();
+		producer.start();
+		for (int i = 0; processed.size() < NUM_FRAMES; i++) {
+			// Changed while frames are on their way through the effects before.
+			int length = 1 + i % 4;
+			pipeline.setEffects(chain(length));
+			chainLengths.put(pipeline.getEpoch(), length);
+			for (int j = 0; j < FRAMES_PER_SWITCH && processed.size() < NUM_FRAMES; j++) {
+				FrameEnvelope frame = processedFrameQueue.poll(5, TimeUnit.SECONDS);
+				assertNotNull("Only " + processed.size() + " frames came out", frame);
+				processed.add(frame);
+			}
+		}
+		producer.join();
+		assertNull(processedFrameQueue.poll(50, TimeUnit.MILLISECONDS));
+
+		// In order, so none is missing or there twice.
+		Set<Integer> epochsSeen = new HashSet<Integer>();
+		for (int i = 0; i < NUM_FRAMES; i++) {
+			FrameEnvelope frame = processed.get(i);
+			assertEquals(i, frame.getSequenceNumber());
+			assertFalse(frame.isDropped());
+			Integer length = chainLengths.get(frame.getPipelineEpoch());
+			assertNotNull("Frame " + i + " of unknown epoch " + frame.getPipelineEpoch(), length);
+			assertEquals("Stages of frame " + i, (int) length, frame.getNumStages());
+			epochsSeen.add(frame.getPipelineEpoch());
+		}
+		assertEquals(0, mixedFrames.get());
+		assertTrue("Frames went through only " + epochsSeen.size() + " epochs", epochsSeen.size() > 2);
+		assertEquals(0, pipeline.getDroppedFrames());
+	}
+
+	/**
+	 * An effect that would start over if it were copied.
+	 */
+	private static class StatefulEffect extends Effect {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public Effect copy() {
+			return new StatefulEffect();
+		}
+
+		@Override
+		public boolean isStateful() {
+			return true;
+		}
+	}
+
+	private EffectTask[] chain(int length) {
+		EffectTask[] effects = new EffectTask[length];
+		for (int i = 0; i < length; i++) {
+			effects[i] = new PassThroughTask(mixedFrames);
+		}
+		return effects;
+	}
+}
@@ -0,0 +1,280 @@
+package com.cs4911.video_editor.pipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+/**
+ * Checks that the ring buffers hand on every frame exactly once and in the
+ * order each producer put them, with every WaitStrategy and under every
+ * BackpressurePolicy, and that the frames a policy drops are neither lost
+ * track of nor also handed on, even while producers evict frames from an
+ * MpscRingBuffer as its consumer takes them.
+ */
+public class RingBufferTest {
+
+	private static final int FRAMES_PER_PRODUCER = 3000;
+	// Spinning threads hand over only when the scheduler stops them, which can take long on few cores.
+	private static final int SPINNING_FRAMES_PER_PRODUCER = 200;
+
+	@Test
+	public void spscHandsOnEveryFrameInOrderWithEveryWaitStrategy() throws InterruptedException {
+		for (WaitStrategy waitStrategy : WaitStrategy.values()) {
+			BackpressurePolicy policy = BackpressurePolicy.block();
+			run(new SpscRingBuffer<FrameEnvelope>(4, waitStrategy), 1, framesPerProducer(waitStrategy), policy, false);
+			assertEquals(waitStrategy.toString(), 0, policy.getDroppedFrames());
+		}
+	}
+
+	@Test
+	public void mpscHandsOnEveryFrameInOrderWithEveryWaitStrategy() throws InterruptedException {
+		for (WaitStrategy waitStrategy : WaitStrategy.values()) {
+			BackpressurePolicy policy = BackpressurePolicy.block();
+			run(new MpscRingBuffer<FrameEnvelope>(4, waitStrategy), 4, framesPerProducer(waitStrategy), policy, false);
+			assertEquals(waitStrategy.toString(), 0, policy.getDroppedFrames());
+		}
+	}
+
+	@Test
+	public void blockedProducersAllGetThroughOneWaitingSlot() throws InterruptedException {
+		// Only the last producer to start waiting is woken by a take; the others wake on their own.
+		BackpressurePolicy policy = BackpressurePolicy.block();
+		run(new MpscRingBuffer<FrameEnvelope>(2), 8, FRAMES_PER_PRODUCER, policy, true);
+		assertEquals(0, policy.getDroppedFrames());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void mpscNeedsTwoSlots() {
+		new MpscRingBuffer<FrameEnvelope>(1);
+	}
+
+	@Test
+	public void dropsNewestFramesWhenFull() throws InterruptedException {
+		BackpressurePolicy policy = BackpressurePolicy.dropNewest();
+		run(new SpscRingBuffer<FrameEnvelope>(4), 1, FRAMES_PER_PRODUCER, policy, true);
+		assertTrue(policy.getDroppedFrames() > 0);
+
+		policy = BackpressurePolicy.dropNewest();
+		run(new MpscRingBuffer<FrameEnvelope>(4), 4, FRAMES_PER_PRODUCER, policy, true);
+		assertTrue(policy.getDroppedFrames() > 0);
+	}
+
+	@Test
+	public void dropsFramesNotMadeRoomForInTime() throws InterruptedException {
+		run(new SpscRingBuffer<FrameEnvelope>(4), 1, FRAMES_PER_PRODUCER, BackpressurePolicy.block(1), true);
+		run(new MpscRingBuffer<FrameEnvelope>(4), 4, FRAMES_PER_PRODUCER, BackpressurePolicy.block(1), true);
+	}
+
+	@Test
+	public void evictsOldestFramesWhileConsumerTakes() throws InterruptedException {
+		BackpressurePolicy policy = BackpressurePolicy.dropOldest();
+		run(new MpscRingBuffer<FrameEnvelope>(2), 4, FRAMES_PER_PRODUCER, policy, false);
+		policy = BackpressurePolicy.dropOldest();
+		run(new MpscRingBuffer<FrameEnvelope>(4), 4, FRAMES_PER_PRODUCER, policy, true);
+		assertTrue(policy.getDroppedFrames() > 0);
+	}
+
+	@Test
+	public void wakesWaitingConsumer() throws InterruptedException {
+		for (final WaitStrategy waitStrategy : WaitStrategy.values()) {
+			for (final BlockingQueue<FrameEnvelope> queue : newRingBuffers(2, waitStrategy)) {
+				final FrameEnvelope frame = new FrameEnvelope(null, 0, 0);
+				Thread producer = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							Thread.sleep(20);
+							queue.put(frame);
+						} catch (InterruptedException e) {
+							// stopped
+						}
+					}
+				});
+				producer.start();
+				assertSame(frame, queue.poll(5, TimeUnit.SECONDS));
+				producer.join();
+			}
+		}
+	}
+
+	@Test
+	public void wakesWaitingProducer() throws InterruptedException {
+		for (final WaitStrategy waitStrategy : WaitStrategy.values()) {
+			for (final BlockingQueue<FrameEnvelope> queue : newRingBuffers(2, waitStrategy)) {
+				FrameEnvelope first = new FrameEnvelope(null, 0, 0);
+				final FrameEnvelope second = new FrameEnvelope(null, 1, 0);
+				queue.put(first);
+				queue.put(new FrameEnvelope(null, 2, 0));
+				Thread producer = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							queue.put(second);
+						} catch (InterruptedException e) {
+							// stopped
+						}
+					}
+				});
+				producer.start();
+				Thread.sleep(20);
+				assertSame(first, queue.take());
+				producer.join(5000);
+				assertFalse("Producer still waiting", producer.isAlive());
+				queue.take();
+				assertSame(second, queue.poll());
+			}
+		}
+	}
+
+	@Test
+	public void givesUpWaitingAfterTimeoutOrInterrupt() throws InterruptedException {
+		for (BlockingQueue<FrameEnvelope> queue : newRingBuffers(2, WaitStrategy.PARKING)) {
+			long start = System.nanoTime();
+			assertNull(queue.poll(20, TimeUnit.MILLISECONDS));
+			assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+
+			queue.put(new FrameEnvelope(null, 0, 0));
+			queue.put(new FrameEnvelope(null, 1, 0));
+			start = System.nanoTime();
+			assertFalse(queue.offer(new FrameEnvelope(null, 2, 0), 20, TimeUnit.MILLISECONDS));
+			assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+			assertEquals(2, queue.size());
+			assertEquals(0, queue.remainingCapacity());
+
+			Thread.currentThread().interrupt();
+			try {
+				queue.put(new FrameEnvelope(null, 3, 0));
+				fail("put was not interrupted");
+			} catch (InterruptedException e) {
+				// expected
+			}
+			queue.clear();
+			Thread.currentThread().interrupt();
+			try {
+				queue.take();
+				fail("take was not interrupted");
+			} catch (InterruptedException e) {
+				// expected
+			}
+		}
+	}
+
+	/**
+	 * Has the given number of producers each hand the given number of frames
+	 * on to the queue under the policy while one consumer takes them, and
+	 * checks that every frame was either handed on once or dropped, that
+	 * each producer's frames came out in order, and that the policy counted
+	 * every frame it dropped.
+	 * @param slowConsumer whether the consumer stops now and then, so the queue fills up
+	 */
+	private static void run(final BlockingQueue<FrameEnvelope> queue, int numProducers, final int framesPerProducer,
+			final BackpressurePolicy policy, final boolean slowConsumer) throws InterruptedException {
+		final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+		final List<FrameEnvelope> frames = new ArrayList<FrameEnvelope>();
+		List<Thread> producers = new ArrayList<Thread>();
+		for (int p = 0; p < numProducers; p++) {
+			final List<FrameEnvelope> own = new ArrayList<FrameEnvelope>();
+			for (int i = 0; i < framesPerProducer; i++) {
+				own.add(new FrameEnvelope(null, p * framesPerProducer + i, 0));
+			}
+			frames.addAll(own);
+			producers.add(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						for (FrameEnvelope frame : own) {
+							policy.offer(queue, frame);
+						}
+					} catch (Throwable t) {
+						failures.add(t);
+					}
+				}
+			}));
+		}
+		final List<FrameEnvelope> taken = new ArrayList<FrameEnvelope>();
+		final AtomicBoolean producersDone = new AtomicBoolean();
+		Thread consumer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					while (true) {
+						// Read first, so that nothing put before it was set can be missed.
+						boolean done = producersDone.get();
+						FrameEnvelope frame = queue.poll(1, TimeUnit.MILLISECONDS);
+						if (frame != null) {
+							taken.add(frame);
+							if (slowConsumer && taken.size() % 50 == 0) {
+								Thread.sleep(2);
+							}
+						} else if (done) {
+							break;
+						}
+					}
+				} catch (Throwable t) {
+					failures.add(t);
+				}
+			}
+		});
+		consumer.start();
+		for (Thread producer : producers) {
+			producer.start();
+		}
+		for (Thread producer : producers) {
+			producer.join();
+		}
+		producersDone.set(true);
+		consumer.join();
+
+		String name = queue.getClass().getSimpleName() + " " + policy + " " + ((RingBuffer<?>) queue).getWaitStrategy();
+		assertTrue(name + ": " + failures, failures.isEmpty());
+		assertTrue(name, queue.isEmpty());
+		Set<FrameEnvelope> seen = Collections.newSetFromMap(new IdentityHashMap<FrameEnvelope, Boolean>());
+		long[] lastTaken = new long[numProducers];
+		for (int p = 0; p < numProducers; p++) {
+			lastTaken[p] = -1;
+		}
+		for (FrameEnvelope frame : taken) {
+			assertTrue(name + ": frame handed on twice", seen.add(frame));
+			assertFalse(name + ": dropped frame handed on", frame.isDropped());
+			int producer = (int) (frame.getSequenceNumber() / framesPerProducer);
+			assertTrue(name + ": frames out of order", frame.getSequenceNumber() > lastTaken[producer]);
+			lastTaken[producer] = frame.getSequenceNumber();
+		}
+		long dropped = 0;
+		for (FrameEnvelope frame : frames) {
+			if (frame.isDropped()) {
+				dropped++;
+			} else {
+				assertTrue(name + ": frame lost", seen.contains(frame));
+			}
+		}
+		assertEquals(name, frames.size(), policy.getOfferedFrames());
+		assertEquals(name, dropped, policy.getDroppedFrames());
+		assertEquals(name, frames.size(), taken.size() + dropped);
+	}
+
+	private static int framesPerProducer(WaitStrategy waitStrategy) {
+		return waitStrategy == WaitStrategy.PARKING ? FRAMES_PER_PRODUCER : SPINNING_FRAMES_PER_PRODUCER;
+	}
+
+	private static List<BlockingQueue<FrameEnvelope>> newRingBuffers(int capacity, WaitStrategy waitStrategy) {
+		List<BlockingQueue<FrameEnvelope>> queues = new ArrayList<BlockingQueue<FrameEnvelope>>();
+		queues.add(new SpscRingBuffer<FrameEnvelope>(capacity, waitStrategy));
+		queues.add(new MpscRingBuffer<FrameEnvelope>(capacity, waitStrategy));
+		return queues;
+	}
+}
@@ -0,0 +1,101 @@
+package com.cs4911.video_editor.session;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.apache.avro.ipc.Transceiver;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Checks that a SessionManager gives each connection its own Session or
+ * the one it joined, and that a connection whose Session was closed for
+ * being idle gets none until it starts a new one.
+ */
+public class SessionManagerTest {
+
+	private static final long TIMEOUT_MS = 100;
+
+	private final SessionManager sessionManager = new SessionManager(1, null, TIMEOUT_MS);
+
+	@After
+	public void tearDown() {
+		sessionManager.close();
+	}
+
+	@Test
+	public void sharesJoinedSession() {
+		Transceiver first = new Connection();
+		Transceiver second = new Connection();
+		Session session = sessionManager.getSession(first);
+		assertSame(session, sessionManager.getSession(first));
+		assertNotSame(session, sessionManager.getSession(second));
+		assertEquals(2, sessionManager.getNumSessions());
+
+		assertTrue(sessionManager.joinSession(second, session.getId()));
+		assertSame(session, sessionManager.getSession(second));
+		assertFalse(sessionManager.joinSession(second, session.getId() + 1));
+	}
+
+	@Test
+	public void givesNoSessionAfterIdleTimeoutUntilStarted() throws InterruptedException {
+		Transceiver first = new Connection();
+		Transceiver second = new Connection();
+		Session session = sessionManager.getSession(first);
+		sessionManager.joinSession(second, session.getId());
+		awaitClosed(session);
+
+		// Neither connection goes on with a new Session by accident.
+		assertNull(sessionManager.getSession(first));
+		assertNull(sessionManager.getSession(second));
+		assertNull(sessionManager.getSession(first));
+		assertFalse(sessionManager.joinSession(second, session.getId()));
+
+		Session restarted = sessionManager.startSession(first);
+		assertNotSame(session, restarted);
+		assertFalse(restarted.isClosed());
+		assertSame(restarted, sessionManager.getSession(first));
+		assertSame(restarted, sessionManager.startSession(first));
+		assertNull(sessionManager.getSession(second));
+		assertTrue(sessionManager.joinSession(second, restarted.getId()));
+		assertSame(restarted, sessionManager.getSession(second));
+	}
+
+	private void awaitClosed(Session session) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 20 * TIMEOUT_MS;
+		while (!session.isClosed() || sessionManager.getNumSessions() > 0) {
+			assertTrue("Session was not closed", System.currentTimeMillis() < deadline);
+			Thread.sleep(10);
+		}
+		// The connections are forgotten after the Session is closed.
+		Thread.sleep(TIMEOUT_MS);
+	}
+
+	/**
+	 * A connection that is only used to tell clients apart.
+	 */
+	private static class Connection extends Transceiver {
+
+		@Override
+		public String getRemoteName() {
+			return "test";
+		}
+
+		@Override
+		public List<ByteBuffer> readBuffers() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void writeBuffers(List<ByteBuffer> buffers) {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
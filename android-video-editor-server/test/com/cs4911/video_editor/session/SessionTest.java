@@ -0,0 +1,171 @@
+package com.cs4911.video_editor.session;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.cs4911.video_editor.pipeline.EffectTask;
+import com.cs4911.video_editor.pipeline.FrameEnvelope;
+import com.cs4911.video_editor.pipeline.PassThroughTask;
+
+/**
+ * Checks that a Session gives every batch back its own frames, however
+ * many batches are added at the same time and whatever is streamed
+ * alongside them, and that the frames it does not give back are dropped.
+ */
+public class SessionTest {
+
+	private static final int FAIL_EVERY = 5;
+
+	private Session session;
+	private final AtomicLong mixedFrames = new AtomicLong();
+	private final AtomicLong nextSequenceNumber = new AtomicLong();
+
+	@Before
+	public void setUp() {
+		session = new Session(1, 3, null);
+		session.getFrameProcessor().setEffects(new EffectTask[] {
+				new PassThroughTask(mixedFrames, FAIL_EVERY), new PassThroughTask(mixedFrames)});
+	}
+
+	@After
+	public void tearDown() {
+		session.close();
+	}
+
+	@Test
+	public void givesBatchBackItsFramesAndDropsFailedOnes() throws InterruptedException {
+		List<FrameEnvelope> batch = new ArrayList<FrameEnvelope>();
+		for (int i = 0; i < 10; i++) {
+			batch.add(newFrame());
+		}
+		List<FrameEnvelope> processed = awaitBatch(batch, session.addBatch(batch));
+		for (FrameEnvelope frame : batch) {
+			boolean failed = frame.getSequenceNumber() % FAIL_EVERY == 0;
+			assertEquals(failed, frame.isDropped());
+			assertEquals(!failed, processed.contains(frame));
+		}
+		assertNull(session.pollFrame(50, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void keepsConcurrentBatchesAndStreamedFramesApart() throws InterruptedException {
+		final int numBatches = 200;
+		final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+		List<Thread> connections = new ArrayList<Thread>();
+		for (int c = 0; c < 3; c++) {
+			// Stands in for a connection sending batches, like Server.addFrames.
+			connections.add(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						for (int b = 0; b < numBatches; b++) {
+							List<FrameEnvelope> batch = new ArrayList<FrameEnvelope>();
+							for (int i = 0; i < 4; i++) {
+								batch.add(newFrame());
+							}
+							awaitBatch(batch, session.addBatch(batch));
+						}
+					} catch (Throwable t) {
+						failures.add(t);
+					}
+				}
+			}));
+		}
+		final Set<FrameEnvelope> streamed = Collections.synchronizedSet(
+				Collections.newSetFromMap(new IdentityHashMap<FrameEnvelope, Boolean>()));
+		Thread streamer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				for (int i = 0; i < numBatches; i++) {
+					FrameEnvelope frame = newFrame();
+					streamed.add(frame);
+					session.getFrameProcessor().addFrame(frame);
+				}
+			}
+		});
+		final List<FrameEnvelope> received = Collections.synchronizedList(new ArrayList<FrameEnvelope>());
+		Thread receiver = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				while (!Thread.currentThread().isInterrupted()) {
+					FrameEnvelope frame = session.pollFrame(10, TimeUnit.MILLISECONDS);
+					if (frame != null) {
+						received.add(frame);
+					}
+				}
+			}
+		});
+		connections.add(streamer);
+		for (Thread thread : connections) {
+			thread.start();
+		}
+		receiver.start();
+		for (Thread thread : connections) {
+			thread.join();
+		}
+		Thread.sleep(200);
+		receiver.interrupt();
+		receiver.join();
+
+		assertTrue(failures.toString(), failures.isEmpty());
+		for (FrameEnvelope frame : received) {
+			assertTrue("Batch frame handed out as streamed", streamed.contains(frame));
+			assertFalse(frame.isDropped());
+		}
+		assertEquals(0, mixedFrames.get());
+	}
+
+	private FrameEnvelope newFrame() {
+		return new FrameEnvelope(null, nextSequenceNumber.getAndIncrement(), System.currentTimeMillis());
+	}
+
+	/**
+	 * Waits until every frame of the batch has come back or been dropped,
+	 * and checks that only frames of the batch come back, and only once.
+	 * @return the frames that came back
+	 */
+	private List<FrameEnvelope> awaitBatch(List<FrameEnvelope> batch, BlockingQueue<FrameEnvelope> queue)
+			throws InterruptedException {
+		Set<FrameEnvelope> own = Collections.newSetFromMap(new IdentityHashMap<FrameEnvelope, Boolean>());
+		own.addAll(batch);
+		List<FrameEnvelope> processed = new ArrayList<FrameEnvelope>();
+		long giveUp = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (true) {
+			int accounted = processed.size();
+			for (FrameEnvelope frame : batch) {
+				if (frame.isDropped()) {
+					session.forgetFrame(frame);
+					accounted++;
+				}
+			}
+			if (accounted == batch.size()) {
+				break;
+			}
+			assertTrue("Batch never came back", System.nanoTime() < giveUp);
+			FrameEnvelope frame = queue.poll(10, TimeUnit.MILLISECONDS);
+			if (frame != null) {
+				assertTrue("Frame of another batch given back", own.contains(frame));
+				assertFalse("Frame given back twice", processed.contains(frame));
+				assertFalse(frame.isDropped());
+				processed.add(frame);
+			}
+		}
+		assertNull(queue.poll());
+		return processed;
+	}
+}
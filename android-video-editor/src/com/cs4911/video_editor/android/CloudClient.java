@@ -4,25 +4,93 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
-import java.util.List;
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 
+import org.apache.avro.AvroRemoteException;
 import org.apache.avro.ipc.NettyTransceiver;
 import org.apache.avro.ipc.specific.SpecificRequestor;
+import org.opencv.core.Mat;
 
+import com.cs4911.video_editor.codec.DeltaEncoder;
+import com.cs4911.video_editor.codec.FrameCodec;
+import com.cs4911.video_editor.codec.FrameCodecFactory;
+import com.cs4911.video_editor.codec.PngCodec;
+import com.cs4911.video_editor.effects.Effect;
+import com.cs4911.video_editor.pipeline.NetworkEstimator;
+import com.cs4911.video_editor.testproto.EffectDescriptor;
+import com.cs4911.video_editor.testproto.FrameData;
+import com.cs4911.video_editor.testproto.InvalidSessionError;
+import com.cs4911.video_editor.testproto.ServerLoad;
 import com.cs4911.video_editor.testproto.TestProtocol;
 
 import android.util.Log;
 
 public class CloudClient implements Runnable {
 	
-	final String serverIP = "143.215.204.52";
+	final static String DEFAULT_SERVER_IP = "143.215.204.52";
+	final String serverIP;
 	final static int port = 20001;
 	NettyTransceiver transceiver;
 	TestProtocol.Callback client;
 	
-	BandwidthMeasurement bandwidth;
+	// A second connection for receiveFrames, so waiting for processed
+	// frames does not hold up the frames being sent on the first one.
+	NettyTransceiver streamTransceiver;
+	TestProtocol.Callback streamClient;
+	
+	// The session both connections use. The server closes it when it goes
+	// unused for a while, and then a new one is started with the same settings.
+	volatile long sessionId;
+	// The effects last given to the server, to set again in a new session.
+	List<EffectDescriptor> pipeline;
+	
+	// Measured by probing the server when connecting.
+	volatile double rttMs, probedUploadBandwidth, probedDownloadBandwidth;
+	volatile boolean connected;
+	// Size of the payload of each bandwidth probe, and how many times to probe.
+	final static int PROBE_BYTES = 64 << 10;
+	final static int PROBE_ROUNDS = 2;
+	
+	// Follows the network from the frames sent, starting from the probes.
+	final NetworkEstimator network = new NetworkEstimator();
+	// Sequence number, send time and size of the frames streamed and not back yet.
+	final ArrayDeque<long[]> streamedFrames = new ArrayDeque<long[]>();
+	// The most streamed frames to remember; older ones were dropped by the server.
+	final static int MAX_STREAMED_FRAMES = 64;
 	
+	// Codecs to ask the server for, best first. Raw frames compressed with
+	// Deflate are lossless and much cheaper to encode than PNG.
+	String[] codecPreference = {FrameCodecFactory.RAW_DEFLATE, FrameCodecFactory.PNG};
+	int jpegQuality = FrameCodecFactory.DEFAULT_JPEG_QUALITY;
+	// PNG until the server has agreed on a codec.
+	volatile FrameCodec codec = new PngCodec();
+	
+	// Whether to upload only the tiles of each frame that changed. Tiles are
+	// 32x32 pixels and sent once their mean changes by more than 2 levels;
+	// every 30th frame is sent whole.
+	boolean useDeltaUpload = true;
+	volatile DeltaEncoder deltaEncoder;
+	
+	/**
+	 * Creates a CloudClient for the default server.
+	 */
+	public CloudClient() {
+		this(DEFAULT_SERVER_IP);
+	}
+
+	/**
+	 * Creates a CloudClient for the given server. It connects when run.
+	 * @param serverIP the address of the server
+	 */
+	public CloudClient(String serverIP) {
+		this.serverIP = serverIP;
+	}
+
 	@Override
 	public void run() {
 		try {
@@ -36,7 +104,6 @@ public class CloudClient implements Runnable {
 	private void InitializeClient() throws IOException {
 		
 		Log.v("CloudClient", "Initializing client");
-		bandwidth = new BandwidthMeasurement(serverIP);
 		
 		InetAddress serverAddr = null;
 		
@@ -44,6 +111,11 @@ public class CloudClient implements Runnable {
 			serverAddr  = InetAddress.getByName(serverIP);
 			transceiver = new NettyTransceiver(new InetSocketAddress(serverAddr, port));
 			client      = SpecificRequestor.getClient(TestProtocol.Callback.class, transceiver);
+			streamTransceiver = new NettyTransceiver(new InetSocketAddress(serverAddr, port));
+			streamClient      = SpecificRequestor.getClient(TestProtocol.Callback.class, streamTransceiver);
+			startSession();
+			probe();
+			connected = true;
 			Log.v("CloudClient", "Connecting to server " + serverIP);
 		} catch (UnknownHostException e) {
 			e.printStackTrace();
@@ -52,6 +124,211 @@ public class CloudClient implements Runnable {
 		}
 	}
 
+	/**
+	 * Starts a session on the server that both connections use, and sets
+	 * it up the way the previous one was: with the same codec, delta upload
+	 * and effects.
+	 * @throws org.apache.avro.AvroRemoteException
+	 */
+	private synchronized void startSession() throws org.apache.avro.AvroRemoteException {
+		long id = client.getSessionId();
+		// Both connections have to use the same session on the server,
+		// so that frames sent on one come back on the other.
+		streamClient.joinSession(id);
+		negotiateCodec();
+		if (useDeltaUpload) {
+			client.setDeltaUpload(true);
+			deltaEncoder = new DeltaEncoder(32, 2.0, 30);
+		}
+		if (pipeline != null) {
+			client.setPipeline(pipeline);
+		}
+		sessionId = id;
+	}
+
+	/**
+	 * Starts a new session after the server closed the given one, unless
+	 * that has been done already.
+	 * @param expiredSessionId the id of the session the server closed
+	 */
+	private synchronized void restartSession(long expiredSessionId) {
+		if (sessionId != expiredSessionId) {
+			return;
+		}
+		Log.i("CloudClient", "Session " + expiredSessionId + " on " + serverIP + " was closed, starting a new one");
+		try {
+			startSession();
+		} catch (AvroRemoteException e) {
+			Log.w("CloudClient", "Could not start a new session on " + serverIP, e);
+		}
+	}
+
+	/**
+	 * Starts a new session on a thread of its own, since the callbacks of
+	 * asynchronous requests must not wait for requests of their own.
+	 * @param expiredSessionId the id of the session the server closed
+	 */
+	private void restartSessionLater(final long expiredSessionId) {
+		new Thread(new Runnable() {
+			@Override
+			public void run() {
+				restartSession(expiredSessionId);
+			}
+		}, "CloudClient-session").start();
+	}
+
+	/**
+	 * Asks the server for the first codec in codecPreference that it
+	 * supports, and encodes frames with it from then on.
+	 * @throws org.apache.avro.AvroRemoteException
+	 */
+	private void negotiateCodec() throws org.apache.avro.AvroRemoteException {
+		List<CharSequence> codecs = new ArrayList<CharSequence>();
+		for (String name : codecPreference) {
+			codecs.add(name);
+		}
+		String name = client.negotiateCodec(codecs, jpegQuality).toString();
+		codec = FrameCodecFactory.createCodec(name, jpegQuality);
+		Log.v("CloudClient", "Encoding frames with " + name);
+	}
+	
+	/**
+	 * Measures the round trip time and the bandwidth in both directions on
+	 * the connection frames are sent on, by timing requests with no payload
+	 * and with PROBE_BYTES of it. The fastest of each is kept, as the others
+	 * waited on something besides the network.
+	 * @throws org.apache.avro.AvroRemoteException
+	 */
+	public void probe() throws org.apache.avro.AvroRemoteException {
+		double pingMs = Double.MAX_VALUE, uploadMs = Double.MAX_VALUE, downloadMs = Double.MAX_VALUE;
+		ByteBuffer payload = ByteBuffer.allocate(PROBE_BYTES);
+		for (int i = 0; i < PROBE_ROUNDS; i++) {
+			long start = System.nanoTime();
+			client.ping(start);
+			pingMs = Math.min(pingMs, (System.nanoTime() - start) / 1e6);
+			start = System.nanoTime();
+			client.probeUpload(payload.duplicate());
+			uploadMs = Math.min(uploadMs, (System.nanoTime() - start) / 1e6);
+			start = System.nanoTime();
+			client.probeDownload(PROBE_BYTES);
+			downloadMs = Math.min(downloadMs, (System.nanoTime() - start) / 1e6);
+		}
+		rttMs = pingMs;
+		probedUploadBandwidth = PROBE_BYTES * 1000 / Math.max(uploadMs - pingMs, 1);
+		probedDownloadBandwidth = PROBE_BYTES * 1000 / Math.max(downloadMs - pingMs, 1);
+		updatePrior();
+		Log.v("CloudClient", "Probed " + serverIP + ": " + network);
+	}
+
+	/**
+	 * Asks the server how busy it is.
+	 * @return the load of the server
+	 * @throws org.apache.avro.AvroRemoteException
+	 */
+	public ServerLoad getServerLoad() throws org.apache.avro.AvroRemoteException {
+		return client.getServerLoad();
+	}
+
+	/**
+	 * Returns whether the connections to the server have been set up.
+	 * @return true if frames can be sent to the server
+	 */
+	public boolean isConnected() {
+		return connected;
+	}
+
+	/**
+	 * Returns the bandwidth towards the server, as estimated from the frames
+	 * sent lately, or as probed when connecting until enough were sent.
+	 * @return the upload bandwidth in bytes per second, or 0 if not measured
+	 */
+	public double getUploadBandwidth() {
+		updatePrior();
+		return network.getUploadBandwidth();
+	}
+
+	/**
+	 * Returns the bandwidth from the server, as estimated from the frames
+	 * received lately, or as probed when connecting until enough were received.
+	 * @return the download bandwidth in bytes per second, or 0 if not measured
+	 */
+	public double getDownloadBandwidth() {
+		updatePrior();
+		return network.getDownloadBandwidth();
+	}
+
+	/**
+	 * Returns the round trip time to the server, as estimated from the frames
+	 * sent lately, or as probed when connecting until enough were sent.
+	 * @return the round trip time in milliseconds
+	 */
+	public double getRtt() {
+		updatePrior();
+		return network.getRtt();
+	}
+
+	/**
+	 * Returns the estimates of the network and the server's processing time.
+	 * @return the estimator fed by the frames sent through this client
+	 */
+	public NetworkEstimator getNetworkEstimator() {
+		updatePrior();
+		return network;
+	}
+
+	/**
+	 * Gives the estimator the results of the probes.
+	 */
+	private void updatePrior() {
+		network.setPrior(probedUploadBandwidth, probedDownloadBandwidth, rttMs);
+	}
+
+	/**
+	 * Returns the codec frames sent to and received from the server are encoded with.
+	 * @return the codec agreed on with the server
+	 */
+	public FrameCodec getCodec() {
+		return codec;
+	}
+
+	/**
+	 * Encodes a frame to send to the server, as the tiles that changed
+	 * if delta upload is on and whole with the agreed codec otherwise.
+	 * Frames must be sent in the order they were encoded.
+	 * @param frame the frame to encode
+	 * @return the encoded frame
+	 */
+	public byte[] encodeFrame(Mat frame) {
+		DeltaEncoder encoder = deltaEncoder;
+		return encoder != null ? encoder.encode(frame) : codec.encode(frame);
+	}
+
+	/**
+	 * Makes the next frame encoded be sent whole, because a frame encoded
+	 * before it did not reach the server or could not be decoded there.
+	 */
+	public void requestKeyframe() {
+		DeltaEncoder encoder = deltaEncoder;
+		if (encoder != null) {
+			encoder.requestKeyframe();
+		}
+	}
+
+	/**
+	 * Asks for a keyframe if the server could not decode one of the given frames.
+	 * @param frames frames that came back from the server
+	 * @return true if one of them asks for a keyframe
+	 */
+	private boolean checkKeyframeNeeded(List<FrameData> frames) {
+		for (FrameData frame : frames) {
+			if (frame.getKeyframeNeeded()) {
+				requestKeyframe();
+				return true;
+			}
+		}
+		return false;
+	}
+	
     public void addBlurEffect() throws org.apache.avro.AvroRemoteException {
     	client.addBlurEffect();
     }
@@ -116,11 +393,145 @@ public class CloudClient implements Runnable {
     	client.addXrayEffect();
     }
 
-    public void addFrames(List<ByteBuffer> frames, org.apache.avro.ipc.Callback<List<ByteBuffer>> callback) throws java.io.IOException {
-    	client.addFrames(frames, callback);
+    public void addFrames(List<FrameData> frames, final org.apache.avro.ipc.Callback<List<FrameData>> callback) throws java.io.IOException {
+    	final long id = sessionId;
+    	long bytes = 0;
+    	for (FrameData frame : frames) {
+    		bytes += frame.getData().remaining();
+    	}
+    	final long bytesUp = bytes;
+    	final long start = System.nanoTime();
+    	try {
+    		client.addFrames(frames, new org.apache.avro.ipc.Callback<List<FrameData>>() {
+    			@Override
+    			public void handleResult(List<FrameData> result) {
+    				checkKeyframeNeeded(result);
+    				recordRoundTrip(result, bytesUp, start);
+    				callback.handleResult(result);
+    			}
+
+    			@Override
+    			public void handleError(Throwable error) {
+    				// Some of the frames may not have reached the server.
+    				requestKeyframe();
+    				if (error instanceof InvalidSessionError) {
+    					restartSessionLater(id);
+    				}
+    				callback.handleError(error);
+    			}
+    		});
+    	} catch (IOException e) {
+    		requestKeyframe();
+    		throw e;
+    	}
     }
 
+    public void sendFrame(FrameData frame) {
+    	synchronized (streamedFrames) {
+    		if (streamedFrames.size() >= MAX_STREAMED_FRAMES) {
+    			streamedFrames.poll();
+    		}
+    		streamedFrames.add(new long[] {frame.getSequenceNumber(), System.nanoTime(), frame.getData().remaining()});
+    	}
+    	client.sendFrame(frame);
+    }
+
+    public List<FrameData> receiveFrames(int maxFrames, int timeoutMs) throws org.apache.avro.AvroRemoteException {
+    	long id = sessionId;
+    	List<FrameData> frames;
+    	try {
+    		frames = streamClient.receiveFrames(maxFrames, timeoutMs);
+    	} catch (InvalidSessionError e) {
+    		// The frames sent to the closed session will not come back.
+    		restartSession(id);
+    		synchronized (streamedFrames) {
+    			streamedFrames.clear();
+    		}
+    		return Collections.emptyList();
+    	}
+    	if (checkKeyframeNeeded(frames)) {
+    		// Streamed frames the server could not decode are simply not shown.
+    		List<FrameData> decoded = new ArrayList<FrameData>();
+    		for (FrameData frame : frames) {
+    			if (!frame.getKeyframeNeeded()) {
+    				decoded.add(frame);
+    			}
+    		}
+    		frames = decoded;
+    	}
+    	for (FrameData frame : frames) {
+    		long[] sent = null;
+    		synchronized (streamedFrames) {
+    			while (!streamedFrames.isEmpty() && streamedFrames.peek()[0] <= frame.getSequenceNumber()) {
+    				sent = streamedFrames.poll();
+    			}
+    		}
+    		if (sent != null && sent[0] == frame.getSequenceNumber()) {
+    			recordRoundTrip(Collections.singletonList(frame), sent[2], sent[1]);
+    		}
+    	}
+    	return frames;
+    }
+
+	/**
+	 * Tells the estimator how long frames sent to the server took to come back.
+	 * @param frames the processed frames, with the server's stage timestamps
+	 * @param bytesUp the number of bytes sent for them
+	 * @param start System.nanoTime() when they were sent
+	 */
+	private void recordRoundTrip(List<FrameData> frames, long bytesUp, long start) {
+		double roundTripMs = (System.nanoTime() - start) / 1e6;
+		long bytesDown = 0;
+		long serverEnd = 0;
+		for (FrameData frame : frames) {
+			bytesDown += frame.getData().remaining();
+			List<Long> timestamps = frame.getStageTimestamps();
+			if (!timestamps.isEmpty()) {
+				serverEnd = Math.max(serverEnd, timestamps.get(timestamps.size() - 1));
+			}
+		}
+		network.recordRoundTrip(frames.size(), bytesUp, bytesDown, roundTripMs, serverEnd / 1e6);
+	}
+
     public void clearEffects() throws org.apache.avro.AvroRemoteException {
-    	client.clearEffects();
+    	setPipeline(new ArrayList<EffectDescriptor>());
     }
+
+    public void setPipeline(List<EffectDescriptor> effects) throws org.apache.avro.AvroRemoteException {
+    	long id = sessionId;
+    	synchronized (this) {
+    		pipeline = effects;
+    	}
+    	try {
+    		client.setPipeline(effects);
+    	} catch (InvalidSessionError e) {
+    		// The new session is given the effects.
+    		restartSession(id);
+    	}
+    }
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return serverIP;
+	}
+
+	/**
+	 * Describes effects the way setPipeline expects them.
+	 * @param effects the effects to describe, in order
+	 * @return a descriptor for every effect, in the same order
+	 */
+	public static List<EffectDescriptor> describe(List<? extends Effect> effects) {
+		List<EffectDescriptor> descriptors = new ArrayList<EffectDescriptor>();
+		for (Effect effect : effects) {
+			descriptors.add(EffectDescriptor.newBuilder()
+					.setName(effect.getName())
+					.setParameters(new HashMap<CharSequence, Double>(effect.getParameters()))
+					.build());
+		}
+		return descriptors;
+	}
 }
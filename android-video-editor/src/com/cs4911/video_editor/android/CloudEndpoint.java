@@ -0,0 +1,126 @@
+package com.cs4911.video_editor.android;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.opencv.core.Mat;
+
+import com.cs4911.video_editor.effects.Effect;
+import com.cs4911.video_editor.pipeline.FrameEnvelope;
+import com.cs4911.video_editor.pipeline.RemoteEndpoint;
+import com.cs4911.video_editor.testproto.FrameData;
+
+/**
+ * A RemoteEndpoint that streams frames to the server through a CloudClient.
+ * The server applies its pipeline to them, so the effects given to
+ * setRemoteEffects replace that pipeline.
+ */
+public class CloudEndpoint implements RemoteEndpoint {
+
+	private final CloudClient cloudClient;
+
+	/**
+	 * Creates a CloudEndpoint.
+	 * @param cloudClient the client connected to the server
+	 */
+	public CloudEndpoint(CloudClient cloudClient) {
+		this.cloudClient = cloudClient;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.pipeline.RemoteEndpoint#isConnected()
+	 */
+	@Override
+	public boolean isConnected() {
+		return cloudClient.isConnected();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.pipeline.RemoteEndpoint#setRemoteEffects(java.util.List)
+	 */
+	@Override
+	public void setRemoteEffects(List<Effect> effects) throws IOException {
+		cloudClient.setPipeline(CloudClient.describe(effects));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.pipeline.RemoteEndpoint#send(com.cs4911.video_editor.pipeline.FrameEnvelope)
+	 */
+	@Override
+	public int send(FrameEnvelope frame) throws IOException {
+		byte[] pixels = cloudClient.encodeFrame(frame.getMat());
+		FrameData data = FrameData.newBuilder()
+				.setSequenceNumber(frame.getSequenceNumber())
+				.setCaptureTimestamp(frame.getCaptureTimestamp())
+				.setPipelineEpoch(frame.getPipelineEpoch())
+				.setStageTimestamps(new ArrayList<Long>())
+				.setData(ByteBuffer.wrap(pixels))
+				.build();
+		cloudClient.sendFrame(data);
+		return pixels.length;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.pipeline.RemoteEndpoint#receive(int, int)
+	 */
+	@Override
+	public List<FrameEnvelope> receive(int maxFrames, int timeoutMs) throws IOException {
+		List<FrameEnvelope> frames = new ArrayList<FrameEnvelope>();
+		for (FrameData data : cloudClient.receiveFrames(maxFrames, timeoutMs)) {
+			ByteBuffer buffer = data.getData().duplicate();
+			byte[] bytes = new byte[buffer.remaining()];
+			buffer.get(bytes);
+			Mat mat = cloudClient.getCodec().decode(bytes);
+			FrameEnvelope frame = new FrameEnvelope(mat, data.getSequenceNumber(), data.getCaptureTimestamp());
+			frame.setPipelineEpoch(data.getPipelineEpoch());
+			List<Long> timestamps = data.getStageTimestamps();
+			for (int i = 0; i + 1 < timestamps.size(); i += 2) {
+				frame.recordStage(timestamps.get(i), timestamps.get(i + 1));
+			}
+			frames.add(frame);
+		}
+		return frames;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.pipeline.RemoteEndpoint#getUploadBandwidth()
+	 */
+	@Override
+	public double getUploadBandwidth() {
+		return cloudClient.getUploadBandwidth();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.pipeline.RemoteEndpoint#getDownloadBandwidth()
+	 */
+	@Override
+	public double getDownloadBandwidth() {
+		return cloudClient.getDownloadBandwidth();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.pipeline.RemoteEndpoint#getRtt()
+	 */
+	@Override
+	public double getRtt() {
+		return cloudClient.getRtt();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return cloudClient.toString();
+	}
+}
@@ -1,19 +1,30 @@
 package com.cs4911.video_editor.android;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import org.opencv.android.CameraBridgeViewBase.CvCameraViewListener;
+import org.opencv.core.Core;
 import org.opencv.core.Mat;
+import org.opencv.core.Point;
 import org.opencv.core.Scalar;
 import org.opencv.imgproc.Imgproc;
 
+import android.os.Debug;
 import android.util.Log;
 
 import com.cs4911.video_editor.effects.Effect;
 import com.cs4911.video_editor.effects.IdentityEffect;
+import com.cs4911.video_editor.pipeline.CutPointOptimizer;
+import com.cs4911.video_editor.pipeline.EffectProfiler;
 import com.cs4911.video_editor.pipeline.EffectTask;
+import com.cs4911.video_editor.pipeline.EndpointPool;
 import com.cs4911.video_editor.pipeline.FrameProcessor;
 import com.cs4911.video_editor.pipeline.LocalEffectTask;
+import com.cs4911.video_editor.pipeline.OffloadDecider;
+import com.cs4911.video_editor.pipeline.RemoteEndpoint;
+import com.cs4911.video_editor.trace.FrameTracer;
 
 /**
  * Is handed the frames from the CameraView. Acts as the edge between the Android and non-Android code.
@@ -21,15 +32,81 @@ import com.cs4911.video_editor.pipeline.LocalEffectTask;
  */
 public class ImageProcessor implements CvCameraViewListener {	
 	private static final String TAG = "ImageProcessor";
+	// Whether to show on the preview how many frames were dropped and how
+	// many effects were skipped because frames missed their deadline, for debugging.
+	private static final boolean SHOW_FRAME_COUNTS = false;
+	// Reads the CPU time of the thread applying an effect, for an EffectProfiler.
+	static final EffectProfiler.CpuClock CPU_CLOCK = new EffectProfiler.CpuClock() {
+		@Override
+		public long threadCpuTimeNanos() {
+			return Debug.threadCpuTimeNanos();
+		}
+	};
 	
 	//The underlying pipeline system for the image processor to pass frames to.
 	FrameProcessor frameProcessor;
 	CloudClient    cloudClient;
 	
 	public ImageProcessor(CloudClient client) {
-		cloudClient = client;
+		this(client != null ? Collections.singletonList(client) : Collections.<CloudClient>emptyList(), true);
+	}
+
+	/**
+	 * Creates an ImageProcessor that can use the given servers in one of two
+	 * ways. With splitEffects, a CutPointOptimizer picks for every frame how
+	 * many of the effects to apply here, and the servers apply the rest,
+	 * spread over all of them. Otherwise an OffloadDecider sends each frame
+	 * whole to the first server while that is expected to be faster than
+	 * applying every effect here.
+	 * @param clients the clients for the servers, possibly none
+	 * @param splitEffects whether to split the effects between the device and the servers
+	 */
+	public ImageProcessor(List<CloudClient> clients, boolean splitEffects) {
+		cloudClient = clients.isEmpty() ? null : clients.get(0);
 		frameProcessor = new FrameProcessor(new EffectTask[]{new LocalEffectTask(new IdentityEffect())});
 		frameProcessor.setCloudClient(cloudClient);
+		if (cloudClient != null && splitEffects) {
+			Log.i(TAG, "Splitting the effects between the device and " + clients.size() + " server(s)");
+			frameProcessor.setSplitExecution(new CutPointOptimizer(), createEndpoint(clients));
+		} else if (cloudClient != null) {
+			Log.i(TAG, "Sending whole frames to " + cloudClient + " while that is faster");
+			frameProcessor.setOffloadDecider(new OffloadDecider());
+		}
+	}
+	
+	/**
+	 * Creates the endpoint for split effects: the server itself if there is
+	 * one, or a pool that spreads frames over them and fails over if there are more.
+	 * @param clients the clients for the servers
+	 * @return the endpoint to send frames to
+	 */
+	private static RemoteEndpoint createEndpoint(List<CloudClient> clients) {
+		if (clients.size() == 1) {
+			return new CloudEndpoint(clients.get(0));
+		}
+		List<RemoteEndpoint> endpoints = new ArrayList<RemoteEndpoint>();
+		for (CloudClient client : clients) {
+			endpoints.add(new CloudEndpoint(client));
+		}
+		return new EndpointPool(endpoints);
+	}
+	
+	/**
+	 * Sets the EffectProfiler told what the effects cost on this device,
+	 * which also tells where to apply them before they have been measured.
+	 * @param profiler the profiler, or null to not measure the costs
+	 */
+	public void setEffectProfiler(EffectProfiler profiler) {
+		frameProcessor.setEffectProfiler(profiler);
+	}
+	
+	/**
+	 * Sets the FrameTracer that writes a trace of every frame displayed,
+	 * to find out what held up the frames when the preview stutters.
+	 * @param tracer the tracer, or null to not trace frames
+	 */
+	public void setFrameTracer(FrameTracer tracer) {
+		frameProcessor.setFrameTracer(tracer);
 	}
 	
 	/**
@@ -50,6 +127,18 @@ public class ImageProcessor implements CvCameraViewListener {
 		}
 	}
 	
+	/**
+	 * Replaces all effects in the underlying pipeline system in one step
+	 * @param effects The effects the pipeline should apply, in order
+	 */
+	public void setEffects(ArrayList<Effect> effects) {
+		EffectTask[] effectTasks = new EffectTask[effects.size()];
+		for(int i = 0; i < effectTasks.length; i++) {
+			effectTasks[i] = new LocalEffectTask(effects.get(i));
+		}
+		frameProcessor.setEffects(effectTasks);
+	}
+	
 	/**
 	 * Clears the pipeline in the underlying pipeline system
 	 */
@@ -97,6 +186,20 @@ public class ImageProcessor implements CvCameraViewListener {
 			newFrame = mat;
 		}
 		
+		if(newFrame != null && SHOW_FRAME_COUNTS) {
+			drawFrameCounts(newFrame);
+		}
+		
 		return newFrame;
 	}
+	
+	/**
+	 * Writes how many frames were dropped and how many effects were skipped
+	 * in the top left corner of a frame about to be displayed.
+	 * @param frame the frame to write on
+	 */
+	private void drawFrameCounts(Mat frame) {
+		String counts = "dropped " + frameProcessor.getDroppedFrames() + "  skipped " + frameProcessor.getSkippedFrames();
+		Core.putText(frame, counts, new Point(10, 30), Core.FONT_HERSHEY_SIMPLEX, 0.8, new Scalar(255, 255, 255, 255), 2);
+	}
 }
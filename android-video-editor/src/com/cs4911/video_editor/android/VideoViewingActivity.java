@@ -1,5 +1,7 @@
 package com.cs4911.video_editor.android;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 
 import org.opencv.android.JavaCameraView;
@@ -14,7 +16,8 @@ import android.view.Window;
 import android.view.WindowManager;
 
 import com.cs4911.video_editor.effects.Effect;
-import com.cs4911.video_editor.pipeline.LocalEffectTask;
+import com.cs4911.video_editor.pipeline.EffectProfiler;
+import com.cs4911.video_editor.trace.FrameTracer;
 
 /**
  * Main Activity where the effects are viewed on screen as being aplied to the camera image.
@@ -23,7 +26,21 @@ public class VideoViewingActivity extends Activity {
 
 	private static final String TAG = "VideoViewingActivity";
 	private static final int EDIT_PIPELINE = 1;
+	// Whether to connect to the servers in SERVER_IPS; the ImageProcessor decides at run
+	// time whether to use them. Off unless SERVER_IPS lists servers that are running.
 	private static boolean useCloud = false;
+	// How the servers are used: with splitEffects, a CutPointOptimizer picks for every
+	// frame how many effects to apply here and the servers apply the rest; without it,
+	// an OffloadDecider sends whole frames to the first server while that is faster.
+	private static boolean splitEffects = true;
+	// The servers to connect to. With more than one, frames are spread over them.
+	private static final String[] SERVER_IPS = {"143.215.204.52"};
+	// The file in the app's files directory where the costs of the effects are kept between runs.
+	private static final String PROFILE_FILE = "effect-profiles.txt";
+	// Whether to add a trace of every frame displayed to TRACE_FILE in the app's files directory,
+	// to be summarized with TraceSummary when the preview stutters.
+	private static boolean traceFrames = false;
+	private static final String TRACE_FILE = "frame-trace.bin";
 	
 	//The view that passes frames to the ImageProcessor from the camera and displays the frames from the pipeline.
 	private JavaCameraView mView;
@@ -39,6 +56,13 @@ public class VideoViewingActivity extends Activity {
 	MenuItem mItemClearPipeline;
 	
 	CloudClient    cloudClient;
+	ArrayList<CloudClient> cloudClients = new ArrayList<CloudClient>();
+	
+	//What the effects have cost on this device, shared by every ImageProcessor.
+	EffectProfiler effectProfiler;
+	
+	//Writes the traces of the frames displayed while the activity is started, if traceFrames is set.
+	FrameTracer frameTracer;
 	/* (non-Javadoc)
 	 * @see android.app.Activity#onCreate(android.os.Bundle)
 	 */
@@ -53,6 +77,13 @@ public class VideoViewingActivity extends Activity {
 		this.getWindow().addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
 		
 		setContentView(R.layout.activity_video_viewing);
+		
+		effectProfiler = new EffectProfiler(ImageProcessor.CPU_CLOCK);
+		try {
+			effectProfiler.load(new File(getFilesDir(), PROFILE_FILE));
+		} catch (IOException e) {
+			Log.w(TAG, "Could not load effect profiles", e);
+		}
 	}
 
 	/* (non-Javadoc)
@@ -66,6 +97,13 @@ public class VideoViewingActivity extends Activity {
 		//Shuts off the camera view so that it doesn't use unneeded resources.
 		mView.disableView();
 		mView.setCvCameraViewListener(null);
+		
+		//Keeps what the effects cost in case the app is not resumed.
+		try {
+			effectProfiler.save(new File(getFilesDir(), PROFILE_FILE));
+		} catch (IOException e) {
+			Log.w(TAG, "Could not save effect profiles", e);
+		}
 	}
 	
 	/* (non-Javadoc)
@@ -90,13 +128,26 @@ public class VideoViewingActivity extends Activity {
 		super.onStart();
 				
 		if (useCloud && cloudClient == null) {
-			cloudClient = new CloudClient();
-			Thread td   = new Thread(cloudClient);
-			td.start();
+			for (String serverIP : SERVER_IPS) {
+				CloudClient client = new CloudClient(serverIP);
+				Thread td   = new Thread(client);
+				td.start();
+				cloudClients.add(client);
+			}
+			cloudClient = cloudClients.get(0);
+		}
+		if (traceFrames && frameTracer == null) {
+			try {
+				frameTracer = new FrameTracer(new File(getFilesDir(), TRACE_FILE));
+			} catch (IOException e) {
+				Log.w(TAG, "Could not open the frame trace", e);
+			}
 		}
 		//Safety checks in case the activity's resources were deallocated.
 		if(imageProcessor == null) {
-			imageProcessor = new ImageProcessor(cloudClient);
+			imageProcessor = new ImageProcessor(cloudClients, splitEffects);
+			imageProcessor.setEffectProfiler(effectProfiler);
+			imageProcessor.setFrameTracer(frameTracer);
 		}
 		
 		mView = (JavaCameraView) this.findViewById(R.id.frameView);
@@ -112,6 +163,12 @@ public class VideoViewingActivity extends Activity {
 		
 		//Problems occur if the same processor is used after the activity stops.
 		imageProcessor = null;
+		
+		//Writes out the traces of the frames displayed so far.
+		if (frameTracer != null) {
+			frameTracer.close();
+			frameTracer = null;
+		}
 	}
 	
 	/* (non-Javadoc)
@@ -182,11 +239,10 @@ public class VideoViewingActivity extends Activity {
 			}
 			
 			//Load the effects in to the new ImageProcessor
-			imageProcessor = new ImageProcessor(cloudClient);
-			imageProcessor.clearPipeline();
-			for(Effect effect : effectList) {
-				imageProcessor.addEffect(new LocalEffectTask(effect));
-			}
+			imageProcessor = new ImageProcessor(cloudClients, splitEffects);
+			imageProcessor.setEffectProfiler(effectProfiler);
+			imageProcessor.setFrameTracer(frameTracer);
+			imageProcessor.setEffects(effectList);
 		}
 	}
 }
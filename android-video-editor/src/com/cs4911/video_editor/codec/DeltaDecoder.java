@@ -0,0 +1,69 @@
+package com.cs4911.video_editor.codec;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+/**
+ * Rebuilds frames encoded by a DeltaEncoder from the tiles that changed,
+ * keeping the previous frame to fill in the rest.
+ */
+public class DeltaDecoder {
+
+	private Mat reference;
+
+	/**
+	 * Decodes a frame encoded by a DeltaEncoder.
+	 * @param data the encoded frame
+	 * @return the rebuilt frame
+	 * @throws IllegalArgumentException if the data is corrupt, or if it only
+	 *         holds changed tiles and there is no matching previous frame
+	 */
+	public synchronized Mat decode(byte[] data) {
+		ByteBuffer buffer = ByteBuffer.wrap(DeflateCodec.inflate(data));
+		try {
+			byte kind = buffer.get();
+			int width = buffer.getInt();
+			int height = buffer.getInt();
+			int type = buffer.getInt();
+			int tileSize = buffer.getInt();
+			int numTiles = buffer.getInt();
+			if (width < 0 || height < 0 || tileSize <= 0 || numTiles < 0
+					|| (CvType.depth(type) != CvType.CV_8U && CvType.depth(type) != CvType.CV_8S)) {
+				throw new IllegalArgumentException("Delta frame has a bad header");
+			}
+
+			if (kind == DeltaEncoder.KEYFRAME) {
+				reference = new Mat(height, width, type);
+			} else if (kind != DeltaEncoder.DELTA) {
+				throw new IllegalArgumentException("Delta frame has an unknown kind: " + kind);
+			} else if (reference == null || reference.cols() != width || reference.rows() != height || reference.type() != type) {
+				throw new IllegalArgumentException("Delta frame does not match the previous frame; waiting for a keyframe");
+			}
+
+			int maxTiles = DeltaEncoder.numTiles(width, height, tileSize);
+			int channels = CvType.channels(type);
+			for (int n = 0; n < numTiles; n++) {
+				int index = buffer.getInt();
+				if (index < 0 || index >= maxTiles) {
+					throw new IllegalArgumentException("Delta frame has a tile out of range: " + index);
+				}
+				Rect rect = DeltaEncoder.tileRect(index, width, height, tileSize);
+				byte[] pixels = new byte[rect.width * rect.height * channels];
+				buffer.get(pixels);
+				reference.submat(rect).put(0, 0, pixels);
+			}
+		} catch (BufferUnderflowException e) {
+			reference = null;
+			throw new IllegalArgumentException("Delta frame is truncated");
+		} catch (IllegalArgumentException e) {
+			reference = null;
+			throw e;
+		}
+		// effects may change the frame they are given, so keep our own copy
+		return reference.clone();
+	}
+}
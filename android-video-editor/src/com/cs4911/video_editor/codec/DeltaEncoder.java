@@ -0,0 +1,146 @@
+package com.cs4911.video_editor.codec;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+
+/**
+ * Encodes frames for upload as the tiles that changed since the previous
+ * frame, so that a DeltaDecoder holding the previous frame can rebuild them.
+ * Every keyframeInterval frames, and whenever the frame size changes, all
+ * tiles are sent instead.
+ *
+ * The previous frame kept here is the one the DeltaDecoder rebuilt, not the
+ * one captured, so tiles that change a little at a time are sent once the
+ * changes add up rather than never. Frames must reach the DeltaDecoder in the
+ * order they were encoded. Only frames with 8-bit channels are supported.
+ */
+public class DeltaEncoder {
+
+	static final byte KEYFRAME = 0;
+	static final byte DELTA = 1;
+	// kind, then width, height, type, tile size and number of tiles, each an int
+	static final int HEADER_SIZE = 21;
+
+	private final int tileSize;
+	private final double threshold;
+	private final int keyframeInterval;
+
+	private Mat reference;
+	private Mat difference = new Mat();
+	private int framesSinceKeyframe;
+
+	/**
+	 * Creates a new DeltaEncoder.
+	 * @param tileSize the width and height of a tile, in pixels
+	 * @param threshold how much the mean of a tile has to change, in levels
+	 *        from 0 to 255, before the tile is sent
+	 * @param keyframeInterval send all tiles once every this many frames
+	 */
+	public DeltaEncoder(int tileSize, double threshold, int keyframeInterval) {
+		this.tileSize = tileSize;
+		this.threshold = threshold;
+		this.keyframeInterval = keyframeInterval;
+	}
+
+	/**
+	 * Encodes the tiles of a frame that changed since the previous frame.
+	 * @param frame the frame to encode
+	 * @return the encoded frame
+	 */
+	public synchronized byte[] encode(Mat frame) {
+		boolean keyframe = reference == null || framesSinceKeyframe >= keyframeInterval - 1
+				|| reference.cols() != frame.cols() || reference.rows() != frame.rows() || reference.type() != frame.type();
+		if (!keyframe) {
+			Core.absdiff(frame, reference, difference);
+		}
+
+		int numTiles = numTiles(frame.cols(), frame.rows(), tileSize);
+		List<Integer> tiles = new ArrayList<Integer>();
+		int size = HEADER_SIZE;
+		for (int i = 0; i < numTiles; i++) {
+			Rect rect = tileRect(i, frame.cols(), frame.rows(), tileSize);
+			if (keyframe || changed(difference.submat(rect))) {
+				tiles.add(i);
+				size += 4 + rect.width * rect.height * (int) frame.elemSize();
+			}
+		}
+
+		ByteBuffer data = ByteBuffer.allocate(size);
+		data.put(keyframe ? KEYFRAME : DELTA);
+		data.putInt(frame.cols()).putInt(frame.rows()).putInt(frame.type()).putInt(tileSize).putInt(tiles.size());
+		for (int i : tiles) {
+			Rect rect = tileRect(i, frame.cols(), frame.rows(), tileSize);
+			Mat tile = frame.submat(rect);
+			byte[] pixels = new byte[rect.width * rect.height * (int) frame.elemSize()];
+			tile.get(0, 0, pixels);
+			data.putInt(i).put(pixels);
+			if (!keyframe) {
+				tile.copyTo(reference.submat(rect));
+			}
+		}
+
+		if (keyframe) {
+			reference = frame.clone();
+			framesSinceKeyframe = 0;
+		} else {
+			framesSinceKeyframe++;
+		}
+		return DeflateCodec.deflate(data.array());
+	}
+
+	/**
+	 * Makes the next frame a keyframe, for instance after the
+	 * DeltaDecoder has lost its previous frame.
+	 */
+	public synchronized void requestKeyframe() {
+		reference = null;
+	}
+
+	/**
+	 * Decides whether a tile changed enough to be sent.
+	 * @param tileDifference the absolute difference between the tile and its previous contents
+	 * @return true if the mean difference over all channels is above the threshold
+	 */
+	private boolean changed(Mat tileDifference) {
+		Scalar mean = Core.mean(tileDifference);
+		int channels = tileDifference.channels();
+		double sum = 0;
+		for (int c = 0; c < channels; c++) {
+			sum += mean.val[c];
+		}
+		return sum / channels > threshold;
+	}
+
+	/**
+	 * Returns the number of tiles a frame is divided into.
+	 * @param width the width of the frame
+	 * @param height the height of the frame
+	 * @param tileSize the width and height of a tile
+	 * @return the number of tiles
+	 */
+	static int numTiles(int width, int height, int tileSize) {
+		return ((width + tileSize - 1) / tileSize) * ((height + tileSize - 1) / tileSize);
+	}
+
+	/**
+	 * Returns the area of a frame covered by a tile. Tiles are numbered row
+	 * by row; those on the right and bottom edges may be smaller.
+	 * @param index the number of the tile
+	 * @param width the width of the frame
+	 * @param height the height of the frame
+	 * @param tileSize the width and height of a tile
+	 * @return the area the tile covers
+	 */
+	static Rect tileRect(int index, int width, int height, int tileSize) {
+		int tileColumns = (width + tileSize - 1) / tileSize;
+		int x = (index % tileColumns) * tileSize;
+		int y = (index / tileColumns) * tileSize;
+		return new Rect(x, y, Math.min(tileSize, width - x), Math.min(tileSize, height - y));
+	}
+}
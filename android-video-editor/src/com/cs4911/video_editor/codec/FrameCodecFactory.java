@@ -0,0 +1,66 @@
+package com.cs4911.video_editor.codec;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Creates frame codecs from the names the client and server use to agree
+ * on one. Both sides always support PNG, so negotiation cannot fail.
+ * "raw+snappy" is only available on the server, since the Snappy
+ * library has no native code for Android.
+ */
+public class FrameCodecFactory {
+
+	public static final String PNG = "png";
+	public static final String JPEG = "jpeg";
+	public static final String RAW = "raw";
+	public static final String RAW_DEFLATE = "raw+deflate";
+
+	public static final int DEFAULT_JPEG_QUALITY = 90;
+
+	private static final List<String> CODECS = Arrays.asList(PNG, JPEG, RAW, RAW_DEFLATE);
+
+	/**
+	 * Returns the names of the codecs that can be created here.
+	 * @return the names of the supported codecs
+	 */
+	public static List<String> getCodecNames() {
+		return CODECS;
+	}
+
+	/**
+	 * Picks the first codec in the given list that can be created here.
+	 * @param names codec names in order of preference
+	 * @return the first supported codec name, or PNG if none is supported
+	 */
+	public static String chooseCodec(List<? extends CharSequence> names) {
+		for (CharSequence name : names) {
+			if (CODECS.contains(name.toString())) {
+				return name.toString();
+			}
+		}
+		return PNG;
+	}
+
+	/**
+	 * Creates the codec with the given name.
+	 * @param name the name of the codec, as returned by FrameCodec.getName()
+	 * @param quality the JPEG quality, from 0 to 100; ignored by other codecs
+	 * @return a new codec
+	 * @throws IllegalArgumentException if there is no codec with the given name
+	 */
+	public static FrameCodec createCodec(String name, int quality) {
+		switch (name) {
+		case PNG:
+			return new PngCodec();
+		case JPEG:
+			return new JpegCodec(quality);
+		case RAW:
+			return new RawCodec();
+		case RAW_DEFLATE:
+			return new DeflateCodec();
+		default:
+			throw new IllegalArgumentException("Unknown codec: " + name);
+		}
+	}
+}
@@ -0,0 +1,60 @@
+package com.cs4911.video_editor.codec;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.MatOfInt;
+import org.opencv.highgui.Highgui;
+
+/**
+ * Encodes frames as JPEG images. Much smaller and faster to encode than
+ * PNG, but lossy, so effects see the compression artifacts.
+ */
+public class JpegCodec implements FrameCodec {
+
+	private final int quality;
+
+	/**
+	 * Creates a new JpegCodec.
+	 * @param quality the JPEG quality, from 0 to 100
+	 */
+	public JpegCodec(int quality) {
+		this.quality = quality;
+	}
+
+	/**
+	 * Returns the JPEG quality frames are encoded with.
+	 * @return the JPEG quality, from 0 to 100
+	 */
+	public int getQuality() {
+		return quality;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.codec.FrameCodec#getName()
+	 */
+	@Override
+	public String getName() {
+		return FrameCodecFactory.JPEG;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.codec.FrameCodec#encode(org.opencv.core.Mat)
+	 */
+	@Override
+	public byte[] encode(Mat frame) {
+		MatOfByte m = new MatOfByte();
+		Highgui.imencode(".jpg", frame, m, new MatOfInt(Highgui.IMWRITE_JPEG_QUALITY, quality));
+		return m.toArray();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.codec.FrameCodec#decode(byte[])
+	 */
+	@Override
+	public Mat decode(byte[] data) {
+		return Highgui.imdecode(new MatOfByte(data), Highgui.IMREAD_UNCHANGED);
+	}
+}
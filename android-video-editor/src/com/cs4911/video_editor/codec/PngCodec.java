@@ -0,0 +1,41 @@
+package com.cs4911.video_editor.codec;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.highgui.Highgui;
+
+/**
+ * Encodes frames as lossless PNG images. Every client and server
+ * supports it, so it is used until another codec has been agreed on.
+ */
+public class PngCodec implements FrameCodec {
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.codec.FrameCodec#getName()
+	 */
+	@Override
+	public String getName() {
+		return FrameCodecFactory.PNG;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.codec.FrameCodec#encode(org.opencv.core.Mat)
+	 */
+	@Override
+	public byte[] encode(Mat frame) {
+		MatOfByte m = new MatOfByte();
+		Highgui.imencode(".png", frame, m);
+		return m.toArray();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.codec.FrameCodec#decode(byte[])
+	 */
+	@Override
+	public Mat decode(byte[] data) {
+		return Highgui.imdecode(new MatOfByte(data), Highgui.IMREAD_UNCHANGED);
+	}
+}
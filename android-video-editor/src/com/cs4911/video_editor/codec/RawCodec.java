@@ -0,0 +1,74 @@
+package com.cs4911.video_editor.codec;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+/**
+ * Sends the pixels of frames as they are, after a header with the width,
+ * height and OpenCV type of the frame. Costs almost nothing to encode,
+ * but frames are large. Only frames with 8-bit channels are supported.
+ */
+public class RawCodec implements FrameCodec {
+
+	// width, height and type, each an int
+	static final int HEADER_SIZE = 12;
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.codec.FrameCodec#getName()
+	 */
+	@Override
+	public String getName() {
+		return FrameCodecFactory.RAW;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.codec.FrameCodec#encode(org.opencv.core.Mat)
+	 */
+	@Override
+	public byte[] encode(Mat frame) {
+		if (!frame.isContinuous()) {
+			frame = frame.clone();
+		}
+		int size = (int) (frame.total() * frame.elemSize());
+		byte[] data = new byte[HEADER_SIZE + size];
+		ByteBuffer.wrap(data).putInt(frame.cols()).putInt(frame.rows()).putInt(frame.type());
+		byte[] pixels = new byte[size];
+		frame.get(0, 0, pixels);
+		System.arraycopy(pixels, 0, data, HEADER_SIZE, size);
+		return data;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.codec.FrameCodec#decode(byte[])
+	 */
+	@Override
+	public Mat decode(byte[] data) {
+		int width, height, type;
+		try {
+			ByteBuffer header = ByteBuffer.wrap(data);
+			width = header.getInt();
+			height = header.getInt();
+			type = header.getInt();
+		} catch (BufferUnderflowException e) {
+			throw new IllegalArgumentException("Raw frame is too short for its header");
+		}
+		if (CvType.depth(type) != CvType.CV_8U && CvType.depth(type) != CvType.CV_8S) {
+			throw new IllegalArgumentException("Raw frame does not have 8-bit channels: " + CvType.typeToString(type));
+		}
+		long size = (long) width * height * CvType.channels(type);
+		if (width < 0 || height < 0 || data.length - HEADER_SIZE != size) {
+			throw new IllegalArgumentException("Raw frame of " + width + "x" + height + " has " + (data.length - HEADER_SIZE) + " bytes of pixels");
+		}
+		byte[] pixels = new byte[(int) size];
+		System.arraycopy(data, HEADER_SIZE, pixels, 0, pixels.length);
+		Mat frame = new Mat(height, width, type);
+		frame.put(0, 0, pixels);
+		return frame;
+	}
+}
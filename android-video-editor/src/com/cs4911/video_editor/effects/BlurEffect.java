@@ -1,5 +1,7 @@
 package com.cs4911.video_editor.effects;
 
+import java.util.Map;
+
 import org.opencv.core.Mat;
 import org.opencv.core.Size;
 import org.opencv.imgproc.Imgproc;
@@ -10,21 +12,46 @@ import org.opencv.imgproc.Imgproc;
  */
 public class BlurEffect extends Effect {
 
+	double kernelSize;
+
+	/**
+	 * creates a blur effect with a 50 by 50 kernel
+	 */
+	public BlurEffect() {
+		this(50);
+	}
+
+	/**
+	 * creates a blur effect with the given kernel size
+	 * @param kernelSize the width and height of the blur kernel in pixels
+	 */
+	public BlurEffect(double kernelSize) {
+		this.kernelSize = kernelSize;
+	}
+
 	/**
 	 * the function that applies the blur
-	 * @param A matrix of the current frame in the pipeline
-	 * @return A matrix of the frame after the effect has been applied
+	 * @param src matrix of the current frame in the pipeline
+	 * @param dst matrix to write the frame into after the effect has been applied
+	 * @param scratch intermediate matrices kept from the previous frame
+	 * @return the matrix holding the result
 	 */
 	@Override
-	public Mat applyTo(Mat frame) {
+	public Mat applyTo(Mat src, Mat dst, ScratchBuffers scratch) {
 		
-		Mat newFrame = new Mat();
-		Size size = new Size(50,50);;
-		Imgproc.blur(frame, newFrame, size);
+		Size size = new Size(kernelSize,kernelSize);
+		Imgproc.blur(src, dst, size);
 		
-		return newFrame;
+		return dst;
 	}
 	
+	@Override
+	public Map<String, Double> getParameters() {
+		Map<String, Double> parameters = super.getParameters();
+		parameters.put("kernelSize", kernelSize);
+		return parameters;
+	}
+
 	public String toString() {
 		return "Blur";
 	}
@@ -0,0 +1,22 @@
+package com.cs4911.video_editor.effects;
+
+/**
+ * @author Senior design team
+ * @version 1.0
+ * an effect that maps the color of every pixel on its own, through an
+ * affine color matrix. runs of such effects can be merged into a single
+ * pass over the frame by a FusedColorEffect.
+ */
+public interface ColorMatrixEffect {
+
+	/**
+	 * returns the color matrix this effect applies to 8-bit frames with the
+	 * given number of channels. it has a row per output channel and a column
+	 * per input channel plus one for a constant, so that
+	 * out[i] = m[i][0]*in[0] + ... + m[i][channels-1]*in[channels-1] + m[i][channels],
+	 * saturated to 0..255.
+	 * @param channels the number of channels of the frame
+	 * @return the color matrix, or null if the effect does not handle frames with that many channels
+	 */
+	public double[][] getColorMatrix(int channels);
+}
@@ -1,6 +1,8 @@
 package com.cs4911.video_editor.effects;
 
+import org.opencv.core.Core;
 import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
 import org.opencv.imgproc.Imgproc;
 /**
  * @author Senior design team
@@ -11,27 +13,25 @@ public class ColorSaturationEffect extends Effect{
 
 	/**
 	 * the function that applies color saturation
-	 * @param A matrix of the current frame in the pipeline
-	 * @return A matrix of the frame after the effect has been applied
+	 * @param src matrix of the current frame in the pipeline
+	 * @param dst matrix to write the frame into after the effect has been applied
+	 * @param scratch intermediate matrices kept from the previous frame
+	 * @return the matrix holding the result
 	 */
 	@Override
-	public Mat applyTo(Mat frame) {
-		Mat newFrame = new Mat();
-		Imgproc.cvtColor(frame, newFrame, Imgproc.COLOR_RGBA2RGB);
-		Imgproc.cvtColor(newFrame, newFrame, Imgproc.COLOR_RGB2HSV);
+	public Mat applyTo(Mat src, Mat dst, ScratchBuffers scratch) {
+		Mat hsv = scratch.get(0);
+		Imgproc.cvtColor(src, hsv, Imgproc.COLOR_RGBA2RGB);
+		Imgproc.cvtColor(hsv, hsv, Imgproc.COLOR_RGB2HSV);
 		
-		byte[] buff = new byte[(int) (newFrame.total()*newFrame.channels())];
-		newFrame.get(0, 0, buff);
+		// set the hue of every pixel to 90, keeping saturation and value
+		Core.multiply(hsv, new Scalar(0, 1, 1), hsv);
+		Core.add(hsv, new Scalar(90, 0, 0), hsv);
 		
-		for(int i = 0; i < newFrame.total()*newFrame.channels(); i += 3) {
-			buff[i] = 90;
-		}
+		Imgproc.cvtColor(hsv, hsv, Imgproc.COLOR_HSV2RGB);
+		Imgproc.cvtColor(hsv, dst, Imgproc.COLOR_RGB2RGBA);
 		
-		newFrame.put(0, 0, buff);
-		Imgproc.cvtColor(newFrame, newFrame, Imgproc.COLOR_HSV2RGB);
-		Imgproc.cvtColor(frame, newFrame, Imgproc.COLOR_RGB2RGBA);
-		
-		return newFrame;
+		return dst;
 	}
 
 	public String toString() {
@@ -1,5 +1,7 @@
 package com.cs4911.video_editor.effects;
 
+import java.util.Map;
+
 import org.opencv.core.Core;
 import org.opencv.core.Mat;
 import org.opencv.core.Size;
@@ -11,31 +13,59 @@ import org.opencv.imgproc.Imgproc;
  */
 public class DrawingEffect extends Effect {
 
-	double sp = 10.0;
-	double sr = 35.0;
+	double sp;
+	double sr;
+
+	/**
+	 * creates a drawing effect with a spatial window radius of 10
+	 * and a color window radius of 35
+	 */
+	public DrawingEffect() {
+		this(10.0, 35.0);
+	}
+
+	/**
+	 * creates a drawing effect with the given mean shift filtering windows
+	 * @param sp the spatial window radius
+	 * @param sr the color window radius
+	 */
+	public DrawingEffect(double sp, double sr) {
+		this.sp = sp;
+		this.sr = sr;
+	}
+
 	@Override
 	/**
 	 * the function that applies a Drawing effect 
-	 * @param A matrix of the current frame in the pipeline
-	 * @return A matrix of the frame after the effect has been applied
+	 * @param src matrix of the current frame in the pipeline
+	 * @param dst matrix to write the frame into after the effect has been applied
+	 * @param scratch intermediate matrices kept from the previous frame
+	 * @return the matrix holding the result
 	 */
-	public Mat applyTo(Mat frame) {
-		Mat newFrame = new Mat();
-		Mat bgr      = new Mat();
-		Mat gray     = new Mat();
-		Mat edges    = new Mat();
-		Mat edgesBgr = new Mat();
+	public Mat applyTo(Mat src, Mat dst, ScratchBuffers scratch) {
+		Mat bgr      = scratch.get(0);
+		Mat gray     = scratch.get(1);
+		Mat edges    = scratch.get(2);
+		Mat edgesBgr = scratch.get(3);
 		
-		Imgproc.cvtColor(frame,bgr,Imgproc.COLOR_BGRA2BGR);
+		Imgproc.cvtColor(src,bgr,Imgproc.COLOR_BGRA2BGR);
 		Imgproc.pyrMeanShiftFiltering(bgr, bgr, sp, sr);
-		Imgproc.cvtColor(frame,gray,Imgproc.COLOR_BGRA2GRAY);
+		Imgproc.cvtColor(src,gray,Imgproc.COLOR_BGRA2GRAY);
 		
 		Imgproc.Canny(gray, edges, 150, 150);
 		
 		Imgproc.cvtColor(edges,edgesBgr,Imgproc.COLOR_GRAY2BGR);
 		Core.subtract(bgr, edgesBgr, bgr);
-		Imgproc.cvtColor(bgr,newFrame,Imgproc.COLOR_BGR2BGRA);
-		return newFrame;
+		Imgproc.cvtColor(bgr,dst,Imgproc.COLOR_BGR2BGRA);
+		return dst;
+	}
+
+	@Override
+	public Map<String, Double> getParameters() {
+		Map<String, Double> parameters = super.getParameters();
+		parameters.put("sp", sp);
+		parameters.put("sr", sr);
+		return parameters;
 	}
 
 	public String toString() {
@@ -0,0 +1,71 @@
+package com.cs4911.video_editor.effects;
+
+import java.util.Map;
+
+/**
+ * @author Senior design team
+ * @version 1.0
+ * creates effects from the name and parameters that describe them,
+ * the reverse of Effect.getName() and Effect.getParameters().
+ */
+public class EffectFactory {
+
+	/**
+	 * creates the effect with the given name and parameters. parameters
+	 * that are missing take the same defaults as the effect's constructor.
+	 * @param name the name of the effect, as returned by Effect.getName()
+	 * @param parameters the settings of the effect, as returned by Effect.getParameters()
+	 * @return a new effect
+	 * @throws IllegalArgumentException if there is no effect with the given name
+	 */
+	public static Effect createEffect(String name, Map<String, Double> parameters) {
+		switch (name) {
+		case "BlurEffect":
+			return new BlurEffect(parameter(parameters, "kernelSize", 50));
+		case "ColorSaturationEffect":
+			return new ColorSaturationEffect();
+		case "DrawingEffect":
+			return new DrawingEffect(parameter(parameters, "sp", 10.0), parameter(parameters, "sr", 35.0));
+		case "EdgeDetectionEffect":
+			return new EdgeDetectionEffect(parameter(parameters, "threshold1", 80), parameter(parameters, "threshold2", 100));
+		case "GradientMagnitudeEffect":
+			return new GradientMagnitudeEffect();
+		case "GrayscaleEffect":
+			return new GrayscaleEffect();
+		case "HorizontalFlipEffect":
+			return new HorizontalFlipEffect();
+		case "HoughCircleEffect":
+			return new HoughCircleEffect();
+		case "HoughLineEffect":
+			return new HoughLineEffect();
+		case "IdentityEffect":
+			return new IdentityEffect();
+		case "MotionHistoryEffect":
+			return new MotionHistoryEffect();
+		case "NegativeEffect":
+			return new NegativeEffect();
+		case "SeamCarveEffect":
+			return new SeamCarveEffect();
+		case "SepiaEffect":
+			return new SepiaEffect();
+		case "VerticalFlipEffect":
+			return new VerticalFlipEffect();
+		case "XrayEffect":
+			return new XrayEffect();
+		default:
+			throw new IllegalArgumentException("Unknown effect: " + name);
+		}
+	}
+
+	/**
+	 * looks up a parameter, falling back to a default when it is not given.
+	 * @param parameters the settings of the effect
+	 * @param name the name of the parameter
+	 * @param defaultValue the value to use when the parameter is missing
+	 * @return the value of the parameter
+	 */
+	private static double parameter(Map<String, Double> parameters, String name, double defaultValue) {
+		Double value = parameters.get(name);
+		return value != null ? value : defaultValue;
+	}
+}
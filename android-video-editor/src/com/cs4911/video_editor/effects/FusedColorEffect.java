@@ -0,0 +1,232 @@
+package com.cs4911.video_editor.effects;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+/**
+ * @author Senior design team
+ * @version 1.0
+ * a run of color matrix effects applied in as few passes over the frame
+ * as possible. the color matrices of the effects are multiplied together,
+ * so a run of them costs about as much as one. a result that could be
+ * saturated before the next effect sees it would come out differently if
+ * merged, so the run is split there and takes one more pass.
+ */
+public class FusedColorEffect extends Effect {
+
+	private static final long serialVersionUID = 2963145718839045512L;
+
+	private final List<Effect> effects;
+
+	// the kernels for each number of input channels, built the first time
+	// a frame with that many channels is seen. null if the run cannot be
+	// merged for frames with that many channels.
+	private transient Map<Integer, List<Mat>> kernels;
+
+	/**
+	 * creates a fused effect that does what the given effects do one after the other
+	 * @param effects effects that all implement ColorMatrixEffect
+	 */
+	public FusedColorEffect(List<Effect> effects) {
+		for (Effect effect : effects) {
+			if (!(effect instanceof ColorMatrixEffect)) {
+				throw new IllegalArgumentException(effect + " is not a color matrix effect");
+			}
+		}
+		this.effects = new ArrayList<Effect>(effects);
+	}
+
+	/**
+	 * returns the effects that were merged.
+	 * @return the effects, in the order they are applied
+	 */
+	public List<Effect> getEffects() {
+		return new ArrayList<Effect>(effects);
+	}
+
+	/**
+	 * names the fused effect after the effects it merged, joined by "+",
+	 * so that each run is measured apart from the others.
+	 * @return the names of the merged effects, in the order they are applied
+	 */
+	@Override
+	public String getName() {
+		StringBuilder name = new StringBuilder();
+		for (Effect effect : effects) {
+			if (name.length() > 0) {
+				name.append('+');
+			}
+			name.append(effect.getName());
+		}
+		return name.toString();
+	}
+
+	/**
+	 * applies the merged color matrices, each in one pass. frames that
+	 * are not 8-bit, or that one of the effects does not handle, are
+	 * passed through the effects one at a time instead.
+	 * @param src matrix of the current frame in the pipeline
+	 * @param dst matrix to write the frame into after the effect has been applied
+	 * @param scratch intermediate matrices kept from the previous frame
+	 * @return the matrix holding the result
+	 */
+	@Override
+	public Mat applyTo(Mat src, Mat dst, ScratchBuffers scratch) {
+		List<Mat> passes = src.depth() == CvType.CV_8U ? kernels(src.channels()) : null;
+		if (passes == null) {
+			Mat frame = src;
+			for (Effect effect : effects) {
+				frame = effect.applyTo(frame);
+			}
+			return frame;
+		}
+
+		// alternate between dst and a scratch matrix so the last pass writes into dst
+		Mat in = src;
+		for (int i = 0; i < passes.size(); i++) {
+			Mat out = (passes.size() - 1 - i) % 2 == 0 ? dst : scratch.get(0);
+			Core.transform(in, out, passes.get(i));
+			in = out;
+		}
+		return dst;
+	}
+
+	/**
+	 * returns the kernels for frames with the given number of channels,
+	 * building them the first time. the same effect can be shared by
+	 * several pipelines, so this is synchronized.
+	 * @param channels the number of channels of the frame
+	 * @return one kernel per pass, or null if the effects cannot be merged
+	 */
+	private synchronized List<Mat> kernels(int channels) {
+		if (kernels == null) {
+			kernels = new HashMap<Integer, List<Mat>>();
+		}
+		if (!kernels.containsKey(channels)) {
+			List<double[][]> matrices = merge(effects, channels);
+			List<Mat> passes = null;
+			if (matrices != null) {
+				passes = new ArrayList<Mat>();
+				for (double[][] matrix : matrices) {
+					Mat kernel = new Mat(matrix.length, matrix[0].length, CvType.CV_32F);
+					for (int i = 0; i < matrix.length; i++) {
+						for (int j = 0; j < matrix[i].length; j++) {
+							kernel.put(i, j, matrix[i][j]);
+						}
+					}
+					passes.add(kernel);
+				}
+			}
+			kernels.put(channels, passes);
+		}
+		return kernels.get(channels);
+	}
+
+	/**
+	 * multiplies the color matrices of a run of effects together, splitting
+	 * the run wherever an effect could give a value outside 0..255.
+	 * @param effects effects that all implement ColorMatrixEffect
+	 * @param channels the number of channels of the frame given to the first effect
+	 * @return one color matrix per pass, or null if an effect does not handle its input
+	 */
+	static List<double[][]> merge(List<Effect> effects, int channels) {
+		List<double[][]> passes = new ArrayList<double[][]>();
+		double[][] pass = null;
+		for (Effect effect : effects) {
+			double[][] matrix = ((ColorMatrixEffect) effect).getColorMatrix(channels);
+			if (matrix == null) {
+				return null;
+			}
+			if (pass == null) {
+				pass = matrix;
+			} else if (staysInRange(pass)) {
+				pass = multiply(matrix, pass);
+			} else {
+				passes.add(pass);
+				pass = matrix;
+			}
+			channels = matrix.length;
+		}
+		if (pass != null) {
+			passes.add(pass);
+		}
+		return passes;
+	}
+
+	/**
+	 * composes two color matrices.
+	 * @param second the color matrix applied last
+	 * @param first the color matrix applied first
+	 * @return a color matrix that does what first and then second do
+	 */
+	static double[][] multiply(double[][] second, double[][] first) {
+		int outputs = second.length;
+		int middle = first.length;
+		int inputs = first[0].length - 1;
+		double[][] product = new double[outputs][inputs + 1];
+		for (int i = 0; i < outputs; i++) {
+			for (int j = 0; j <= inputs; j++) {
+				double value = j == inputs ? second[i][middle] : 0;
+				for (int k = 0; k < middle; k++) {
+					value += second[i][k] * first[k][j];
+				}
+				product[i][j] = value;
+			}
+		}
+		return product;
+	}
+
+	/**
+	 * checks that a color matrix never gives a value outside 0..255 for
+	 * inputs in 0..255, so that saturating its result changes nothing
+	 * and the next color matrix can be merged into it.
+	 * @param matrix the color matrix
+	 * @return true if every output stays in 0..255
+	 */
+	static boolean staysInRange(double[][] matrix) {
+		for (double[] row : matrix) {
+			int inputs = row.length - 1;
+			double low = row[inputs];
+			double high = row[inputs];
+			for (int j = 0; j < inputs; j++) {
+				if (row[j] > 0) {
+					high += row[j] * 255;
+				} else {
+					low += row[j] * 255;
+				}
+			}
+			// values are rounded to whole levels, so a little over does not matter
+			if (low < -0.5 || high > 255.5) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * merged effects keep no state between frames, and the kernels are
+	 * only read once built, so the same effect can be shared.
+	 * @return this effect
+	 */
+	@Override
+	public Effect copy() {
+		return this;
+	}
+
+	public String toString() {
+		StringBuilder name = new StringBuilder();
+		for (Effect effect : effects) {
+			if (name.length() > 0) {
+				name.append(" + ");
+			}
+			name.append(effect);
+		}
+		return name.toString();
+	}
+}
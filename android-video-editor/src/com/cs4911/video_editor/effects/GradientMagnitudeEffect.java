@@ -3,6 +3,7 @@ package com.cs4911.video_editor.effects;
 import org.opencv.core.Core;
 import org.opencv.core.CvType;
 import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
 import org.opencv.imgproc.Imgproc;
 /**
  * @author Senior design team
@@ -14,17 +15,21 @@ public class GradientMagnitudeEffect extends Effect {
 
 	/**
 	 * the function that applies the edge detection effect with the sobel operator
-	 * @param A matrix of the current frame in the pipeline
-	 * @return A matrix of the frame after the effect has been applied
+	 * @param src matrix of the current frame in the pipeline
+	 * @param dst matrix to write the frame into after the effect has been applied
+	 * @param scratch intermediate matrices kept from the previous frame
+	 * @return the matrix holding the result
 	 */
 	@Override
-	public Mat applyTo(Mat frame) {
-		Mat grayScale = new Mat();
-		Imgproc.cvtColor(frame, grayScale, Imgproc.COLOR_RGBA2GRAY);
+	public Mat applyTo(Mat src, Mat dst, ScratchBuffers scratch) {
+		Mat grayScale = scratch.get(0);
+		Imgproc.cvtColor(src, grayScale, Imgproc.COLOR_RGBA2GRAY);
 		
-		Mat drv = new Mat(grayScale.size(), CvType.CV_16SC1);
-		Mat drv32f = new Mat(grayScale.size(), CvType.CV_32FC1);
-		Mat mag = Mat.zeros(grayScale.size(), CvType.CV_32FC1);
+		Mat drv = scratch.get(1);
+		Mat drv32f = scratch.get(2);
+		Mat mag = scratch.get(3);
+		mag.create(grayScale.size(), CvType.CV_32FC1);
+		mag.setTo(new Scalar(0));
 
 		Imgproc.Sobel(grayScale, drv, CvType.CV_16SC1, 1, 0);
 		drv.convertTo(drv32f, CvType.CV_32FC1);
@@ -36,9 +41,9 @@ public class GradientMagnitudeEffect extends Effect {
 
 		Core.sqrt(mag, mag);
 		
-		mag.convertTo(mag, CvType.CV_8U);
-		Imgproc.cvtColor(mag, mag, Imgproc.COLOR_GRAY2RGBA);
-		return mag;
+		mag.convertTo(grayScale, CvType.CV_8U);
+		Imgproc.cvtColor(grayScale, dst, Imgproc.COLOR_GRAY2RGBA);
+		return dst;
 	}
 
 	public String toString() {
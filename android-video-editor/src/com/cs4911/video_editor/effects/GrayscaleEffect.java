@@ -9,20 +9,43 @@ import org.opencv.imgproc.Imgproc;
  * class that reduces the color channels of an image to 1
  *  
  */
-public class GrayscaleEffect extends Effect {
+public class GrayscaleEffect extends Effect implements ColorMatrixEffect {
 
 	/**
 	 * the function that applies a color conversion to grayscale
-	 * @param A matrix of the current frame in the pipeline
-	 * @return A matrix of the frame after the effect has been applied
+	 * @param src matrix of the current frame in the pipeline
+	 * @param dst matrix to write the frame into after the effect has been applied
+	 * @param scratch intermediate matrices kept from the previous frame
+	 * @return the matrix holding the result
 	 */
 	@Override
-	public Mat applyTo(Mat frame) {
-		Mat newFrame = new Mat();
-		Imgproc.cvtColor(frame, newFrame, Imgproc.COLOR_RGBA2GRAY);
-		Imgproc.cvtColor(newFrame, newFrame, Imgproc.COLOR_GRAY2RGBA);
+	public Mat applyTo(Mat src, Mat dst, ScratchBuffers scratch) {
+		Mat gray = scratch.get(0);
+		Imgproc.cvtColor(src, gray, Imgproc.COLOR_RGBA2GRAY);
+		Imgproc.cvtColor(gray, dst, Imgproc.COLOR_GRAY2RGBA);
 		
-		return newFrame;
+		return dst;
+	}
+
+	/**
+	 * the luma of the red, green and blue channels in every color channel,
+	 * with an opaque alpha channel, as cvtColor does.
+	 * @param channels the number of channels of the frame
+	 * @return the color matrix, or null unless the frame has 3 or 4 channels
+	 */
+	@Override
+	public double[][] getColorMatrix(int channels) {
+		if (channels != 3 && channels != 4) {
+			return null;
+		}
+		double[][] matrix = new double[4][channels + 1];
+		for (int i = 0; i < 3; i++) {
+			matrix[i][0] = 0.299;
+			matrix[i][1] = 0.587;
+			matrix[i][2] = 0.114;
+		}
+		matrix[3][channels] = 255;
+		return matrix;
 	}
 
 	public String toString() {
@@ -18,17 +18,21 @@ public class HoughCircleEffect extends Effect {
 	 * the function converts a cv::mat to gray scale then runs a gaussian blur on it to reduce noise. 
 	 * Then runs the canny edge detector to get projective circles in image space
 	 *  then runs the hough circle algorithm to find the most likely circles.
-	 * @param A matrix of the current frame in the pipeline
-	 * @return A matrix of the frame after the effect has been applied
+	 * the circles are drawn on src, which is returned.
+	 * @param src matrix of the current frame in the pipeline
+	 * @param dst matrix to write the frame into after the effect has been applied
+	 * @param scratch intermediate matrices kept from the previous frame
+	 * @return the matrix holding the result
 	 */
 	@Override
-	public Mat applyTo(Mat frame) {
-		Mat newFrame = new Mat();
+	public Mat applyTo(Mat src, Mat dst, ScratchBuffers scratch) {
+		Mat frame = src;
+		Mat newFrame = scratch.get(0);
 		Imgproc.cvtColor( frame, newFrame, Imgproc.COLOR_BGR2GRAY );
 		Imgproc.GaussianBlur( newFrame, newFrame,new Size(9, 9), 2, 2 );
 		Imgproc.Canny(frame, newFrame, 80, 100);
 
-		Mat circles = new Mat();
+		Mat circles = scratch.get(1);
 
 		Imgproc.HoughCircles( newFrame, circles, Imgproc.CV_HOUGH_GRADIENT, 1, newFrame.rows()/8, 200, 100, 0, 0 );
 
@@ -47,9 +51,7 @@ public class HoughCircleEffect extends Effect {
 		}
 
 
-		frame.copyTo(newFrame);
-
-		return newFrame;
+		return frame;
 	}
 	
 	public String toString() {
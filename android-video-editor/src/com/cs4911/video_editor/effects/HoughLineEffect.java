@@ -18,17 +18,21 @@ public class HoughLineEffect extends Effect {
 	 * the function that converts an image to gray scale, gaussian blurs it to reduce noise, then runs the canny edge
 	 * detector to find votes for lines in image space. plotting these lines using euclidian points in hough space reveals
 	 * lines that we can plot on the rgb image 
-	 * @param A matrix of the current frame in the pipeline
-	 * @return A matrix of the frame after the effect has been applied
+	 * the lines are drawn on src, which is returned.
+	 * @param src matrix of the current frame in the pipeline
+	 * @param dst matrix to write the frame into after the effect has been applied
+	 * @param scratch intermediate matrices kept from the previous frame
+	 * @return the matrix holding the result
 	 */
 	@Override
-	public Mat applyTo(Mat frame) {
-		Mat newFrame = new Mat();
+	public Mat applyTo(Mat src, Mat dst, ScratchBuffers scratch) {
+		Mat frame = src;
+		Mat newFrame = scratch.get(0);
 		Imgproc.cvtColor( frame, newFrame, Imgproc.COLOR_BGR2GRAY );
 		Imgproc.GaussianBlur( newFrame, newFrame,new Size(9, 9), 2, 2 );
 		Imgproc.Canny(frame, newFrame, 80, 100);
 
-		Mat lines = new Mat();
+		Mat lines = scratch.get(1);
 
 		Imgproc.HoughLinesP(newFrame, lines, 1, Math.PI/180, 80, 30, 10);
 		//Imgproc.HoughLines(newFrame, lines, 1, Math.PI/180, 100);
@@ -59,9 +63,7 @@ public class HoughLineEffect extends Effect {
 			Core.line( frame, d0, d1, new Scalar(0,0,255), 3);
 		}
 
-		frame.copyTo(newFrame);
-
-		return newFrame;
+		return frame;
 	}
 	
 	public String toString() {
@@ -13,28 +13,62 @@ import org.opencv.imgproc.Imgproc;
  * the sepia effect
  *  
  */
-public class SepiaEffect extends Effect {
+public class SepiaEffect extends Effect implements ColorMatrixEffect {
 
 	float sepia_data[] = {0.272f,  0.534f,  0.131f, 0,0.349f, 0.686f, 0.168f,0,0.393f,0.769f,0.189f,0,0,0,0,1};
+	transient Mat m_sepiaKernel = null;
+	
 	/**
 	 * this function convolves a 4 by 4 kernel across the image getting and old gold tint to the cv::Mat
-	 * @param A matrix of the current frame in the pipeline
-	 * @return A matrix of the frame after the effect has been applied
+	 * @param src matrix of the current frame in the pipeline
+	 * @param dst matrix to write the frame into after the effect has been applied
+	 * @param scratch intermediate matrices kept from the previous frame
+	 * @return the matrix holding the result
 	 */
 	@Override
-	public Mat applyTo(Mat frame) {
-		
-		Mat effect = new Mat();
+	public Mat applyTo(Mat src, Mat dst, ScratchBuffers scratch) {
 		
-		Mat m_sepiaKernel = new Mat(new Size(4,4),CvType.CV_32F);
-		m_sepiaKernel.put(0, 0, sepia_data);
-		Core.transform(frame, effect, m_sepiaKernel);
+		Core.transform(src, dst, sepiaKernel());
 		
-		Imgproc.cvtColor(effect,effect,Imgproc.COLOR_BGRA2RGBA);
-		return effect;
+		Imgproc.cvtColor(dst,dst,Imgproc.COLOR_BGRA2RGBA);
+		return dst;
 		
 	}
 	
+	/**
+	 * builds the sepia kernel the first time it is needed. the same effect
+	 * can be shared by several pipelines, so this is synchronized.
+	 * @return the 4 by 4 sepia kernel
+	 */
+	private synchronized Mat sepiaKernel() {
+		if (m_sepiaKernel == null) {
+			m_sepiaKernel = new Mat(new Size(4,4),CvType.CV_32F);
+			m_sepiaKernel.put(0, 0, sepia_data);
+		}
+		return m_sepiaKernel;
+	}
+	
+	/**
+	 * the sepia kernel with its first and third rows swapped,
+	 * since the result is converted from BGRA to RGBA.
+	 * @param channels the number of channels of the frame
+	 * @return the color matrix, or null unless the frame has 4 channels
+	 */
+	@Override
+	public double[][] getColorMatrix(int channels) {
+		if (channels != 4) {
+			return null;
+		}
+		double[][] matrix = new double[4][5];
+		for (int i = 0; i < 4; i++) {
+			int row = i == 0 ? 2 : i == 2 ? 0 : i;
+			for (int j = 0; j < 4; j++) {
+				matrix[i][j] = sepia_data[row * 4 + j];
+			}
+		}
+		return matrix;
+	}
+
 	public String toString() {
 		return "Sepia";
 	}
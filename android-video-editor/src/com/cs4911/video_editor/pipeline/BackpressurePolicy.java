@@ -0,0 +1,174 @@
+package com.cs4911.video_editor.pipeline;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides what happens when a frame is handed on to a queue that is
+ * full, and counts the frames that were handed on and dropped. Dropped
+ * frames are marked as such and recycled, so their buffers can be used again.
+ */
+public class BackpressurePolicy {
+
+	private final DropPolicy dropPolicy;
+	private final long timeoutMs;
+
+	private final AtomicLong offeredFrames = new AtomicLong();
+	private final AtomicLong droppedFrames = new AtomicLong();
+
+	/**
+	 * Creates a new BackpressurePolicy.
+	 * @param dropPolicy what to do with a frame when the queue is full
+	 * @param timeoutMs how long BLOCK waits for room, or Long.MAX_VALUE to wait for as long as it takes
+	 */
+	public BackpressurePolicy(DropPolicy dropPolicy, long timeoutMs) {
+		if (timeoutMs < 0) {
+			throw new IllegalArgumentException("timeoutMs must not be negative");
+		}
+		this.dropPolicy = dropPolicy;
+		this.timeoutMs = timeoutMs;
+	}
+
+	/**
+	 * Returns a policy that waits for room for as long as it takes, so no frame is dropped.
+	 * @return a new lossless policy
+	 */
+	public static BackpressurePolicy block() {
+		return new BackpressurePolicy(DropPolicy.BLOCK, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Returns a policy that waits for room and drops the frame if none is made in time.
+	 * @param timeoutMs how long to wait for room
+	 * @return a new blocking policy
+	 */
+	public static BackpressurePolicy block(long timeoutMs) {
+		return new BackpressurePolicy(DropPolicy.BLOCK, timeoutMs);
+	}
+
+	/**
+	 * Returns a policy that drops the frame being handed on when the queue is full.
+	 * @return a new drop-newest policy
+	 */
+	public static BackpressurePolicy dropNewest() {
+		return new BackpressurePolicy(DropPolicy.DROP_NEWEST, 0);
+	}
+
+	/**
+	 * Returns a policy that drops the oldest queued frame when the queue is full.
+	 * @return a new drop-oldest policy
+	 */
+	public static BackpressurePolicy dropOldest() {
+		return new BackpressurePolicy(DropPolicy.DROP_OLDEST, 0);
+	}
+
+	/**
+	 * Returns what this policy does with a frame when the queue is full.
+	 * @return the drop policy
+	 */
+	public DropPolicy getDropPolicy() {
+		return dropPolicy;
+	}
+
+	/**
+	 * Returns how long BLOCK waits for room.
+	 * @return the timeout in milliseconds, or Long.MAX_VALUE if it waits for as long as it takes
+	 */
+	public long getTimeoutMs() {
+		return timeoutMs;
+	}
+
+	/**
+	 * Returns whether this policy hands frames on without ever waiting,
+	 * by dropping one when the queue is full.
+	 * @return true unless the policy is BLOCK
+	 */
+	public boolean dropsWhenFull() {
+		return dropPolicy != DropPolicy.BLOCK;
+	}
+
+	/**
+	 * Returns the number of frames handed on under this policy.
+	 * @return the number of frames offered, including the dropped ones
+	 */
+	public long getOfferedFrames() {
+		return offeredFrames.get();
+	}
+
+	/**
+	 * Returns the number of frames this policy has dropped, whether they
+	 * were being handed on or were already queued.
+	 * @return the number of frames dropped
+	 */
+	public long getDroppedFrames() {
+		return droppedFrames.get();
+	}
+
+	/**
+	 * Hands a frame on to the given queue, dropping it or the oldest queued
+	 * frame if the queue is full, as this policy says.
+	 * @param queue the queue to put the frame in
+	 * @param frame the frame to hand on
+	 * @return true if the frame was put in the queue, false if it was dropped
+	 * @throws InterruptedException if interrupted while waiting for room; the frame is dropped
+	 */
+	public boolean offer(BlockingQueue<FrameEnvelope> queue, FrameEnvelope frame) throws InterruptedException {
+		if (frame.isDropped()) {
+			// Counted where it was dropped, and only passed on so that whoever
+			// waits for it learns of that, so it neither waits for room nor takes any.
+			return queue.offer(frame);
+		}
+		offeredFrames.incrementAndGet();
+		switch (dropPolicy) {
+		case DROP_OLDEST:
+			while (!queue.offer(frame)) {
+				// Whoever takes from the queue may have made room in the meantime.
+				FrameEnvelope oldest = queue.poll();
+				if (oldest != null) {
+					drop(oldest);
+				}
+			}
+			return true;
+		case DROP_NEWEST:
+			if (queue.offer(frame)) {
+				return true;
+			}
+			break;
+		default:
+			try {
+				if (timeoutMs == Long.MAX_VALUE) {
+					queue.put(frame);
+					return true;
+				}
+				if (queue.offer(frame, timeoutMs, TimeUnit.MILLISECONDS)) {
+					return true;
+				}
+			} catch (InterruptedException e) {
+				drop(frame);
+				throw e;
+			}
+			break;
+		}
+		drop(frame);
+		return false;
+	}
+
+	private void drop(FrameEnvelope frame) {
+		droppedFrames.incrementAndGet();
+		frame.markDropped();
+		frame.recycle();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		if (dropPolicy == DropPolicy.BLOCK && timeoutMs != Long.MAX_VALUE) {
+			return dropPolicy + "(" + timeoutMs + " ms)";
+		}
+		return dropPolicy.toString();
+	}
+}
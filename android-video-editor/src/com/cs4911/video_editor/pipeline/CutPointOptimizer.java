@@ -0,0 +1,281 @@
+package com.cs4911.video_editor.pipeline;
+
+/**
+ * Decides how many of the effects of a pipeline are applied on the device
+ * before the frame is sent to the server for the rest, by estimating how
+ * long a frame takes for every cut point and picking the fastest. Cut point
+ * 0 sends frames straight to the server, and cut point n, for n effects,
+ * keeps them on the device.
+ *
+ * A frame cut after effect i costs the measured cost of the effects up to
+ * i on the device, the round trip time, the time to upload the output of
+ * effect i and download the result at the measured bandwidth, and the cost
+ * of the remaining effects on the server. The sizes are those of the frames'
+ * pixels, scaled by how much encoding shrank the frames sent. Effects that
+ * make frames smaller, like grayscale, are good places to cut. The server is
+ * assumed to apply effects some number of times as fast as the device, which
+ * is measured once frames come back from it.
+ *
+ * Like the OffloadDecider, which only chooses between cut points 0 and n,
+ * it switches only when another cut point is faster by a margin and keeps
+ * a cut point for a while after every switch. Nothing here depends on
+ * Android, so the decisions can be checked on any JVM.
+ */
+public class CutPointOptimizer {
+
+	// Weight of a new measurement in the running averages.
+	private static final double SMOOTHING = 0.2;
+
+	private final double margin;
+	private final long minDwellMs;
+
+	private boolean cloudAvailable;
+	private double uplinkBytesPerMs, downlinkBytesPerMs, rttMs;
+
+	// Running averages of what is measured; negative until the first measurement.
+	private double[] effectCostMs = new double[0];
+	private double[] outputBytes = new double[0];
+	private double inputBytes = -1;
+	private double uploadRatio = -1;
+	private double serverSpeedup;
+
+	private int cutPoint;
+	private long lastSwitch = Long.MIN_VALUE / 2;
+
+	/**
+	 * Creates a CutPointOptimizer that switches when another cut point is
+	 * 25% faster, at most every 2 seconds, and assumes until it has measured
+	 * it that the server applies the effects 4 times as fast as the device.
+	 */
+	public CutPointOptimizer() {
+		this(0.25, 2000, 4.0);
+	}
+
+	/**
+	 * Creates a CutPointOptimizer.
+	 * @param margin the fraction by which another cut point has to be faster to switch to it
+	 * @param minDwellMs how long to keep a cut point after switching to it
+	 * @param serverSpeedup how many times as fast as the device the server is assumed to apply effects, until measured
+	 */
+	public CutPointOptimizer(double margin, long minDwellMs, double serverSpeedup) {
+		this.margin = margin;
+		this.minDwellMs = minDwellMs;
+		this.serverSpeedup = serverSpeedup;
+	}
+
+	/**
+	 * Sets whether frames can be sent to the server at all. While they
+	 * cannot, all effects are applied on the device.
+	 * @param cloudAvailable true if connected to a server
+	 */
+	public synchronized void setCloudAvailable(boolean cloudAvailable) {
+		this.cloudAvailable = cloudAvailable;
+	}
+
+	/**
+	 * Updates the measured network conditions.
+	 * @param uplinkBytesPerSecond the bandwidth towards the server, or 0 if unknown
+	 * @param downlinkBytesPerSecond the bandwidth from the server, or 0 if unknown
+	 * @param rttMs the round trip time to the server
+	 */
+	public synchronized void setNetwork(double uplinkBytesPerSecond, double downlinkBytesPerSecond, double rttMs) {
+		uplinkBytesPerMs = uplinkBytesPerSecond / 1000;
+		downlinkBytesPerMs = downlinkBytesPerSecond / 1000;
+		this.rttMs = rttMs;
+	}
+
+	/**
+	 * Forgets the costs and sizes of the effects, after the effects have
+	 * changed, and goes back to applying them all on the device to measure
+	 * them. The server's speed relative to the device is kept.
+	 * @param numEffects the number of effects there are now
+	 */
+	public synchronized void effectsChanged(int numEffects) {
+		effectCostMs = new double[numEffects];
+		outputBytes = new double[numEffects];
+		for (int i = 0; i < numEffects; i++) {
+			effectCostMs[i] = -1;
+			outputBytes[i] = -1;
+		}
+		cutPoint = numEffects;
+	}
+
+	/**
+	 * Returns the number of effects this optimizer chooses a cut point for.
+	 * @return the number of effects
+	 */
+	public synchronized int getNumEffects() {
+		return effectCostMs.length;
+	}
+
+	/**
+	 * Sets what an effect is expected to cost on the device before it has
+	 * been measured, such as from a profile kept since an earlier run, so a
+	 * cut point can be chosen at once. Measurements are averaged in from there.
+	 * @param effect the index of the effect
+	 * @param ms the expected cost in milliseconds, or negative if unknown
+	 */
+	public synchronized void setExpectedCost(int effect, double ms) {
+		if (effect >= 0 && effect < effectCostMs.length && effectCostMs[effect] < 0) {
+			effectCostMs[effect] = ms;
+		}
+	}
+
+	/**
+	 * Records the size of the pixels of a frame before any effect is applied.
+	 * @param bytes the size of the frame's pixels
+	 */
+	public synchronized void recordInputSize(long bytes) {
+		inputBytes = average(inputBytes, bytes);
+	}
+
+	/**
+	 * Records how much encoding shrinks the frames sent to the server.
+	 * @param ratio the size of an encoded frame relative to the size of its pixels
+	 */
+	public synchronized void recordUploadRatio(double ratio) {
+		if (ratio > 0) {
+			uploadRatio = average(uploadRatio, ratio);
+		}
+	}
+
+	/**
+	 * Records what a frame cost on its way through a pipeline cut at the given
+	 * point: the time and output size of each effect applied on the device,
+	 * and the output size of the last effect if the rest were applied on the server.
+	 * @param frame a processed frame, with a stage for each effect applied on the
+	 *        device and one more for the server if the cut point is below the number of effects
+	 * @param cutPoint the cut point the frame was processed with
+	 * @param remoteComputeMs how long the server took for the effects after the cut point, or negative if not known
+	 */
+	public synchronized void recordFrame(FrameEnvelope frame, int cutPoint, double remoteComputeMs) {
+		int numEffects = effectCostMs.length;
+		if (frame.isLate() || cutPoint > numEffects || frame.getNumStages() != cutPoint + (cutPoint < numEffects ? 1 : 0)) {
+			// Skipped effects say nothing about their cost, and the frame may be from before the effects changed.
+			return;
+		}
+		for (int i = 0; i < cutPoint; i++) {
+			double ms = (frame.getStageEnd(i) - frame.getStageStart(i)) / 1e6;
+			effectCostMs[i] = average(effectCostMs[i], ms);
+			if (frame.getStageOutputBytes(i) >= 0) {
+				outputBytes[i] = average(outputBytes[i], frame.getStageOutputBytes(i));
+			}
+		}
+		if (cutPoint < numEffects) {
+			if (frame.getStageOutputBytes(cutPoint) >= 0) {
+				outputBytes[numEffects - 1] = average(outputBytes[numEffects - 1], frame.getStageOutputBytes(cutPoint));
+			}
+			double localMs = localCostMs(cutPoint, numEffects);
+			if (remoteComputeMs > 0 && localMs > 0) {
+				serverSpeedup = average(serverSpeedup, localMs / remoteComputeMs);
+			}
+		}
+	}
+
+	/**
+	 * Returns how long a frame is expected to take if the pipeline is cut at the given point.
+	 * @param cutPoint the number of effects applied on the device
+	 * @return the expected time in milliseconds, or infinity if the server
+	 *         is needed and the bandwidth is unknown
+	 */
+	public synchronized double estimateMs(int cutPoint) {
+		int numEffects = effectCostMs.length;
+		double ms = localCostMs(0, cutPoint);
+		if (cutPoint >= numEffects) {
+			return ms;
+		}
+		if (uplinkBytesPerMs <= 0 || downlinkBytesPerMs <= 0) {
+			return Double.POSITIVE_INFINITY;
+		}
+		double ratio = uploadRatio > 0 ? uploadRatio : 1;
+		double upBytes = bytesAfter(cutPoint - 1);
+		double downBytes = bytesAfter(numEffects - 1);
+		return ms + rttMs + upBytes * ratio / uplinkBytesPerMs + downBytes * ratio / downlinkBytesPerMs
+				+ localCostMs(cutPoint, numEffects) / serverSpeedup;
+	}
+
+	/**
+	 * Returns the cut point in use now, without deciding again.
+	 * @return the number of effects applied on the device
+	 */
+	public synchronized int getCutPoint() {
+		return cutPoint;
+	}
+
+	/**
+	 * Decides the cut point for the next frame. Switches only if another cut
+	 * point is expected to be faster by the margin and the current one has
+	 * been kept long enough, unless the server cannot be reached.
+	 * @param now the current time in milliseconds
+	 * @return the number of effects to apply on the device
+	 */
+	public synchronized int choose(long now) {
+		int numEffects = effectCostMs.length;
+		if (!cloudAvailable) {
+			cutPoint = numEffects;
+			return cutPoint;
+		}
+		if (now - lastSwitch < minDwellMs) {
+			return cutPoint;
+		}
+		int best = cutPoint;
+		double bestMs = estimateMs(cutPoint);
+		double currentMs = bestMs;
+		for (int i = 0; i <= numEffects; i++) {
+			double ms = estimateMs(i);
+			if (ms < bestMs) {
+				best = i;
+				bestMs = ms;
+			}
+		}
+		if (best != cutPoint && bestMs < currentMs * (1 - margin)) {
+			cutPoint = best;
+			lastSwitch = now;
+		}
+		return cutPoint;
+	}
+
+	/**
+	 * Returns the measured cost on the device of the effects from one index up to another.
+	 * Effects that have not been measured count as free.
+	 * @param from the index of the first effect
+	 * @param to one past the index of the last effect
+	 * @return the cost in milliseconds
+	 */
+	private double localCostMs(int from, int to) {
+		double ms = 0;
+		for (int i = from; i < to; i++) {
+			ms += Math.max(0, effectCostMs[i]);
+		}
+		return ms;
+	}
+
+	/**
+	 * Returns the size of a frame's pixels after the given effect, going
+	 * back to earlier effects and the input for the sizes not measured yet.
+	 * @param effect the index of the effect, or -1 for the input
+	 * @return the size in bytes
+	 */
+	private double bytesAfter(int effect) {
+		for (int i = effect; i >= 0; i--) {
+			if (outputBytes[i] >= 0) {
+				return outputBytes[i];
+			}
+		}
+		return Math.max(0, inputBytes);
+	}
+
+	private static double average(double average, double sample) {
+		return average < 0 ? sample : average + SMOOTHING * (sample - average);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public synchronized String toString() {
+		return "cut after " + cutPoint + " of " + effectCostMs.length + " effects ("
+				+ Math.round(estimateMs(cutPoint)) + " ms)";
+	}
+}
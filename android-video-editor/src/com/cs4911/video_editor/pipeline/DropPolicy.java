@@ -0,0 +1,30 @@
+package com.cs4911.video_editor.pipeline;
+
+/**
+ * What a BackpressurePolicy does with a frame when the queue it should
+ * go into is full.
+ */
+public enum DropPolicy {
+
+	/**
+	 * Waits for room, for at most the policy's timeout, and drops the
+	 * frame if none is made in time. Without a timeout no frame is lost,
+	 * but whoever hands frames on is held up by whoever takes them.
+	 */
+	BLOCK,
+
+	/**
+	 * Drops the frame being handed on and keeps the ones already queued.
+	 * Never waits, but what is queued gets older and older while the
+	 * queue stays full.
+	 */
+	DROP_NEWEST,
+
+	/**
+	 * Drops the oldest queued frame to make room for the one being handed
+	 * on. Never waits, and what is queued is always the most recent, which
+	 * is what a live preview wants to show. The queue must allow the thread
+	 * handing frames on to take from it.
+	 */
+	DROP_OLDEST
+}
@@ -0,0 +1,134 @@
+package com.cs4911.video_editor.pipeline;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs an EffectTask on a shared Executor instead of a thread of its own.
+ * The stage is scheduled whenever one of its queues signals that there
+ * may be work, processes the frames that are ready without blocking,
+ * and gives its worker back as soon as it has to wait. At most one run
+ * of a stage is scheduled at a time, so its frames stay in order.
+ */
+public class EffectStage implements Runnable {
+
+	// Frames processed before the stage lets other stages have the worker.
+	private static final int MAX_FRAMES_PER_RUN = 4;
+
+	private final EffectTask effectTask;
+	private final Executor executor;
+	private final AtomicBoolean scheduled = new AtomicBoolean(false);
+	private final CountDownLatch released = new CountDownLatch(1);
+	private volatile boolean running;
+
+	/**
+	 * Creates a new EffectStage that runs the given EffectTask on the given Executor.
+	 * @param effectTask the EffectTask to run, already connected to its queues
+	 * @param executor the Executor shared with other stages
+	 */
+	public EffectStage(EffectTask effectTask, Executor executor) {
+		this.effectTask = effectTask;
+		this.executor = executor;
+	}
+
+	/**
+	 * Returns the EffectTask this stage runs.
+	 * @return this stage's effectTask
+	 */
+	public EffectTask getEffectTask() {
+		return effectTask;
+	}
+
+	/**
+	 * Lets this stage be scheduled and schedules it if frames are already waiting.
+	 * A stage is started at most once.
+	 */
+	public void start() {
+		running = true;
+		signal();
+	}
+
+	/**
+	 * Stops this stage from being scheduled again. A run that is
+	 * in progress finishes the frame it is working on, then the
+	 * EffectTask's buffers are released.
+	 */
+	public void stop() {
+		running = false;
+		if (scheduled.compareAndSet(false, true)) {
+			release();
+		}
+	}
+
+	/**
+	 * Returns whether this stage has finished its last run, because it was
+	 * stopped or its EffectTask finished.
+	 * @return true if this stage no longer touches its queues
+	 */
+	public boolean isReleased() {
+		return released.getCount() == 0;
+	}
+
+	/**
+	 * Waits until a stopped stage has finished its last run, after which
+	 * it no longer touches its queues.
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public void awaitStopped() throws InterruptedException {
+		released.await();
+	}
+
+	/**
+	 * Returns whether this stage has been started and not stopped.
+	 * @return true if this stage may be scheduled
+	 */
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * Schedules this stage if it is running, has work,
+	 * and is not already scheduled.
+	 */
+	public void signal() {
+		if (running && effectTask.hasWork() && scheduled.compareAndSet(false, true)) {
+			executor.execute(this);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Runnable#run()
+	 */
+	@Override
+	public void run() {
+		for (int i = 0; i < MAX_FRAMES_PER_RUN && running; i++) {
+			try {
+				if (!effectTask.processNext()) {
+					break;
+				}
+			} catch (RuntimeException e) {
+				// Drop the frame rather than the stage.
+				e.printStackTrace();
+				effectTask.countDroppedFrame();
+			}
+		}
+		scheduled.set(false);
+		if (running && !effectTask.isFinished()) {
+			// Frames may have arrived after the last one was taken.
+			signal();
+		} else if (scheduled.compareAndSet(false, true)) {
+			// Stay marked as scheduled so that the stage is never run again.
+			release();
+		}
+	}
+
+	private void release() {
+		effectTask.release();
+		if (effectTask.outputQueue instanceof StageQueue) {
+			((StageQueue<FrameEnvelope>) effectTask.outputQueue).removeProducer(this);
+		}
+		released.countDown();
+	}
+}
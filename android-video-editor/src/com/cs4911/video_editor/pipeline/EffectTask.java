@@ -1,29 +1,56 @@
 package com.cs4911.video_editor.pipeline;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.BlockingQueue;
-
-import org.opencv.core.Mat;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.cs4911.video_editor.effects.Effect;
 
 /**
- * An Runnable that takes in Mats from an input queue,
+ * An Runnable that takes in frames from an input queue,
  * applies an Effect to them, and places them into an output queue.
  * The run method is left unimplemented to allow for varied implementations.
+ * An EffectTask is either run by a thread of its own, which blocks on the
+ * queues, or by an EffectStage, which calls processNext when there is work.
+ * When its pipeline's effects change, the task finishes the frames it
+ * already has and stops once END_OF_CHAIN reaches it.
+ *
+ * A frame a task cannot process is dropped but still handed on, so that
+ * every frame that enters a chain comes out of it and the frames of
+ * replicas can be put back in order. Tasks pass dropped frames through.
  */
 public abstract class EffectTask implements Runnable {
 
-	protected BlockingQueue<Mat> inputQueue, outputQueue;
+	/**
+	 * Put in the input queue of a chain of effect tasks, behind the last
+	 * frame it should process, when the chain is being replaced. Each task
+	 * hands it on and then finishes; the last task does not hand it on.
+	 */
+	protected static final FrameEnvelope END_OF_CHAIN = new FrameEnvelope(null, -1, 0);
+
+	protected BlockingQueue<FrameEnvelope> inputQueue, outputQueue;
 	protected Effect effect;
+	protected int pipelineEpoch;
+	protected boolean lastStage;
+	protected volatile BackpressurePolicy outputPolicy;
+	protected volatile EffectProfiler profiler;
+
+	private final AtomicLong droppedFrames = new AtomicLong();
+	private final AtomicLong skippedFrames = new AtomicLong();
+	private volatile boolean finished;
+	private final CountDownLatch finishedLatch = new CountDownLatch(1);
+	private volatile EffectStage finishListener;
 
 	/**
 	 * Creates a new EffectTask with the given effect, inputQueue, and outputQueue.
-	 * @param effect the Effect to apply to Mats
-	 * @param inputQueue the queue to pull unprocessed Mats from
-	 * @param outputQueue the queue to put processed Mats in
+	 * @param effect the Effect to apply to frames
+	 * @param inputQueue the queue to pull unprocessed frames from
+	 * @param outputQueue the queue to put processed frames in
 	 */
-	public EffectTask(Effect effect, BlockingQueue<Mat> inputQueue, BlockingQueue<Mat> outputQueue) {
+	public EffectTask(Effect effect, BlockingQueue<FrameEnvelope> inputQueue, BlockingQueue<FrameEnvelope> outputQueue) {
 		this.effect = effect;
 		this.inputQueue = inputQueue;
 		this.outputQueue = outputQueue;
@@ -31,14 +58,14 @@ public abstract class EffectTask implements Runnable {
 
 	/**
 	 * Creates a new EffectTask with the given effect.
-	 * @param effect the Effect to apply to Mats
+	 * @param effect the Effect to apply to frames
 	 */
 	public EffectTask(Effect effect) {
 		this(effect, null, null);
 	}
 
 	/**
-	 * Returns the Effect that this EffectTask applies to Mats.
+	 * Returns the Effect that this EffectTask applies to frames.
 	 * @return this EffectTask's effect
 	 */
 	public Effect getEffect() {
@@ -46,37 +73,296 @@ public abstract class EffectTask implements Runnable {
 	}
 
 	/**
-	 * Return the queue that this EffectTask pulls unprocessed Mats from.
+	 * Returns all Effects that this EffectTask applies to frames, in order.
+	 * Most tasks apply only their effect.
+	 * @return the effects applied by this task
+	 */
+	public List<Effect> getEffects() {
+		return Collections.singletonList(effect);
+	}
+
+	/**
+	 * Returns whether any effect this EffectTask applies keeps state from one
+	 * frame to the next, so that frames have to reach this task in order.
+	 * @return true if one of the effects is stateful
+	 */
+	public boolean isStateful() {
+		for (Effect effect : getEffects()) {
+			if (effect != null && effect.isStateful()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Return the queue that this EffectTask pulls unprocessed frames from.
 	 * @return this EffectTask's inputQueue
 	 */
-	public Queue<Mat> getInputQueue() {
+	public Queue<FrameEnvelope> getInputQueue() {
 		return inputQueue;
 	}
 
 	/**
-	 * Sets the queue that this EffectTask pulls unprocessed Mats from.
-	 * @param inputQueue a queue containing Mats to be processed
+	 * Sets the queue that this EffectTask pulls unprocessed frames from.
+	 * @param inputQueue a queue containing frames to be processed
 	 */
-	public void setInputQueue(BlockingQueue<Mat> inputQueue) {
+	public void setInputQueue(BlockingQueue<FrameEnvelope> inputQueue) {
 		this.inputQueue = inputQueue;
 	}
 
 	/**
-	 * Return the queue that this EffectTask puts processed Mats in.
+	 * Return the queue that this EffectTask puts processed frames in.
 	 * @return this EffectTask's outputQueue
 	 */
-	public Queue<Mat> getOutputQueue() {
+	public Queue<FrameEnvelope> getOutputQueue() {
 		return outputQueue;
 	}
 
 	/**
-	 * Sets the queue that this EffectTask puts processed Mats in.
-	 * @param outputQueue a queue to receive processed Mats
+	 * Sets the queue that this EffectTask puts processed frames in.
+	 * @param outputQueue a queue to receive processed frames
 	 */
-	public void setOutputQueue(BlockingQueue<Mat> outputQueue) {
+	public void setOutputQueue(BlockingQueue<FrameEnvelope> outputQueue) {
 		this.outputQueue = outputQueue;
 	}
-	
+
+	/**
+	 * Returns the epoch of the pipeline this EffectTask is part of.
+	 * @return the pipeline epoch stamped on frames this EffectTask processes
+	 */
+	public int getPipelineEpoch() {
+		return pipelineEpoch;
+	}
+
+	/**
+	 * Sets the epoch of the pipeline this EffectTask is part of.
+	 * @param pipelineEpoch the pipeline epoch to stamp on processed frames
+	 */
+	public void setPipelineEpoch(int pipelineEpoch) {
+		this.pipelineEpoch = pipelineEpoch;
+	}
+
+	/**
+	 * Returns whether this EffectTask puts frames in the output queue of
+	 * its pipeline, and so does not hand on END_OF_CHAIN.
+	 * @return true if this is the last task of its chain
+	 */
+	public boolean isLastStage() {
+		return lastStage;
+	}
+
+	/**
+	 * Sets whether this EffectTask puts frames in the output queue of its pipeline.
+	 * @param lastStage true if this is the last task of its chain
+	 */
+	public void setLastStage(boolean lastStage) {
+		this.lastStage = lastStage;
+	}
+
+	/**
+	 * Returns the policy for handing frames on when the output queue is full.
+	 * @return the output policy, or null if the task waits for room
+	 */
+	public BackpressurePolicy getOutputPolicy() {
+		return outputPolicy;
+	}
+
+	/**
+	 * Sets the policy for handing frames on when the output queue is full.
+	 * Only the last task of a chain should drop frames; the tasks after the
+	 * others expect every frame they hand on.
+	 * @param outputPolicy the output policy, or null to wait for room
+	 */
+	public void setOutputPolicy(BackpressurePolicy outputPolicy) {
+		this.outputPolicy = outputPolicy;
+	}
+
+	/**
+	 * Returns the EffectProfiler told what applying the effect costs.
+	 * @return the profiler, or null if the cost is not measured
+	 */
+	public EffectProfiler getProfiler() {
+		return profiler;
+	}
+
+	/**
+	 * Sets the EffectProfiler told what applying the effect costs, for
+	 * tasks that apply it here.
+	 * @param profiler the profiler, or null to not measure the cost
+	 */
+	public void setProfiler(EffectProfiler profiler) {
+		this.profiler = profiler;
+	}
+
+	/**
+	 * Returns the number of frames this EffectTask has lost because applying
+	 * its effect failed. Frames its output policy drops are counted by the policy.
+	 * @return the number of frames dropped by this task
+	 */
+	public long getDroppedFrames() {
+		return droppedFrames.get();
+	}
+
+	/**
+	 * Counts a frame that this EffectTask lost.
+	 */
+	protected void countDroppedFrame() {
+		droppedFrames.incrementAndGet();
+	}
+
+	/**
+	 * Drops a frame this EffectTask cannot process: counts it, gives its
+	 * matrix back and marks it as dropped. The caller still hands it on.
+	 * @param frame the frame to drop
+	 */
+	protected void dropFrame(FrameEnvelope frame) {
+		countDroppedFrame();
+		frame.markDropped();
+		frame.recycle();
+	}
+
+	/**
+	 * Returns the number of frames this EffectTask passed through without
+	 * applying its effect, because they had missed their deadline.
+	 * @return the number of frames skipped by this task
+	 */
+	public long getSkippedFrames() {
+		return skippedFrames.get();
+	}
+
+	/**
+	 * Counts a frame that this EffectTask passed through without applying its effect.
+	 */
+	protected void countSkippedFrame() {
+		skippedFrames.incrementAndGet();
+	}
+
+	/**
+	 * Hands a frame on to the output queue, waiting for room
+	 * unless the output policy says to drop a frame.
+	 * @param frame the frame to hand on
+	 * @return true if the frame was put in the output queue, false if it was dropped
+	 * @throws InterruptedException if interrupted while waiting for room
+	 */
+	protected boolean handOn(FrameEnvelope frame) throws InterruptedException {
+		BackpressurePolicy policy = outputPolicy;
+		if (policy == null || frame == END_OF_CHAIN) {
+			outputQueue.put(frame);
+			return true;
+		}
+		return policy.offer(outputQueue, frame);
+	}
+
+	/**
+	 * Hands a frame on to the output queue without waiting. If the queue
+	 * is full the output policy may drop a frame; otherwise the caller
+	 * keeps the frame until there is room.
+	 * @param frame the frame to hand on
+	 * @return true if the task is done with the frame, false if it has to keep it
+	 */
+	protected boolean tryHandOn(FrameEnvelope frame) {
+		BackpressurePolicy policy = outputPolicy;
+		if (policy == null || !policy.dropsWhenFull() || frame == END_OF_CHAIN) {
+			return outputQueue.offer(frame);
+		}
+		try {
+			policy.offer(outputQueue, frame);
+		} catch (InterruptedException e) {
+			// A policy that drops frames never waits.
+			Thread.currentThread().interrupt();
+		}
+		return true;
+	}
+
+	/**
+	 * Returns whether a frame could be handed on without waiting, because
+	 * the output queue has room or the output policy drops frames.
+	 * @return true if tryHandOn would be done with a frame
+	 */
+	protected boolean canHandOn() {
+		BackpressurePolicy policy = outputPolicy;
+		return outputQueue.remainingCapacity() > 0 || (policy != null && policy.dropsWhenFull());
+	}
+
+	/**
+	 * Returns whether this EffectTask has finished, after END_OF_CHAIN
+	 * reached it or it was stopped.
+	 * @return true if this EffectTask will not process any more frames
+	 */
+	public boolean isFinished() {
+		return finished;
+	}
+
+	/**
+	 * Waits until this EffectTask has finished.
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public void awaitFinished() throws InterruptedException {
+		finishedLatch.await();
+	}
+
+	/**
+	 * Sets the EffectStage to signal when this EffectTask finishes.
+	 * @param finishListener the stage waiting for this task, or null for none
+	 */
+	public void setFinishListener(EffectStage finishListener) {
+		this.finishListener = finishListener;
+	}
+
+	/**
+	 * Marks this EffectTask as finished and wakes whoever waits for it.
+	 */
+	protected void finish() {
+		finished = true;
+		finishedLatch.countDown();
+		EffectStage listener = finishListener;
+		if (listener != null) {
+			listener.signal();
+		}
+	}
+
+	/**
+	 * Returns whether processNext would make progress: a frame is waiting
+	 * to be processed or handed on, and there is room to hand it on.
+	 * @return true if this EffectTask has work it can do without blocking
+	 */
+	public abstract boolean hasWork();
+
+	/**
+	 * Processes the next waiting frame and hands it on without blocking,
+	 * so that the EffectTask can be run by an EffectStage on a shared
+	 * Executor instead of by a thread of its own.
+	 * @return true if a frame was processed or handed on, false if there was nothing to do
+	 */
+	public abstract boolean processNext();
+
+	/**
+	 * Frees the buffers this EffectTask keeps between frames.
+	 * Called once the task will not be run again.
+	 */
+	public void release() {
+	}
+
+	/**
+	 * Creates a new EffectTask of the same kind that applies a copy of this
+	 * EffectTask's effect. The new task is not connected to any queues.
+	 * @return an unconnected copy of this EffectTask
+	 */
+	public abstract EffectTask copy();
+
+	/**
+	 * Creates a new EffectTask of the same kind that applies this EffectTask's
+	 * own effect rather than a copy, so that an effect that keeps state from
+	 * one frame to the next goes on where it left off. The new task is not
+	 * connected to any queues and must not run before this one has finished.
+	 * By default it is a copy, for tasks whose effects keep no state here.
+	 * @return an unconnected EffectTask with the same effect
+	 */
+	public EffectTask carryOver() {
+		return copy();
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see java.lang.Object#toString()
@@ -0,0 +1,435 @@
+package com.cs4911.video_editor.pipeline;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import com.cs4911.video_editor.effects.Effect;
+
+/**
+ * A RemoteEndpoint that spreads frames over several servers. Every frame
+ * goes to the server with the fewest frames outstanding, and the results are
+ * given back in the order the frames were sent, whichever server they came
+ * from, as a RemoteEndpoint has to.
+ *
+ * A server that fails a request, or keeps a frame for more than FAILOVER_MS
+ * while another server could take it, is marked unhealthy and left alone for
+ * RETRY_MS. The frames it still had are sent again to the other servers, so
+ * that losing a server costs a little latency rather than the frames. A
+ * frame is only sent again once, and only while the RemoteEffectTask that
+ * sent it is sure to still be waiting for it.
+ *
+ * Every server has a thread of its own that fetches its results while it
+ * has frames outstanding. The effects given to setRemoteEffects are sent to
+ * each server before the next frame it is sent.
+ */
+public class EndpointPool implements RemoteEndpoint {
+
+	// The most results to fetch from a server at once, and how long it may wait for the first one.
+	private static final int MAX_FRAMES = 4;
+	private static final int RECEIVE_TIMEOUT_MS = 100;
+	// How long a server may keep a frame before it is given up on.
+	private static final long FAILOVER_MS = 250;
+	// How long an unhealthy server is left alone before it is tried again.
+	private static final long RETRY_MS = 5000;
+	// A RemoteEffectTask waits at least LOST_AFTER_MS for a frame before it
+	// recycles it, so only frames sent less than half that long ago are sent again.
+	private static final long REISSUE_MS = RemoteEffectTask.LOST_AFTER_MS / 2;
+
+	private final List<Member> members = new ArrayList<Member>();
+	// Frames outstanding on any server, in the order they were first sent.
+	private final ArrayDeque<Outstanding> order = new ArrayDeque<Outstanding>();
+
+	private List<Effect> effects;
+	// Advanced every time the effects change, so each server can tell whether it has them.
+	private int effectsVersion;
+
+	private long failovers, reissuedFrames;
+	private boolean closed;
+
+	/**
+	 * A frame sent to a server and not given back yet.
+	 */
+	private static class Outstanding {
+		final FrameEnvelope frame;
+		final long firstSent;
+		long sent;
+		FrameEnvelope result;
+		boolean reissued;
+
+		Outstanding(FrameEnvelope frame, long firstSent) {
+			this.frame = frame;
+			this.firstSent = firstSent;
+		}
+	}
+
+	/**
+	 * A server in the pool, together with the frames it has and the thread
+	 * that fetches its results.
+	 */
+	private class Member implements Runnable {
+		final RemoteEndpoint endpoint;
+		// Frames sent to this server, in the order they were sent to it.
+		final ArrayDeque<Outstanding> outstanding = new ArrayDeque<Outstanding>();
+		boolean healthy = true;
+		long retryAt;
+		int effectsVersion = -1;
+		Thread receiver;
+
+		Member(RemoteEndpoint endpoint) {
+			this.endpoint = endpoint;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.lang.Runnable#run()
+		 */
+		@Override
+		public void run() {
+			while (true) {
+				synchronized (EndpointPool.this) {
+					while (!closed && outstanding.isEmpty()) {
+						try {
+							EndpointPool.this.wait();
+						} catch (InterruptedException e) {
+							return;
+						}
+					}
+					if (closed) {
+						return;
+					}
+				}
+				List<FrameEnvelope> results;
+				try {
+					results = endpoint.receive(MAX_FRAMES, RECEIVE_TIMEOUT_MS);
+				} catch (IOException e) {
+					e.printStackTrace();
+					synchronized (EndpointPool.this) {
+						fail(this, System.currentTimeMillis());
+					}
+					continue;
+				}
+				synchronized (EndpointPool.this) {
+					for (FrameEnvelope result : results) {
+						deliver(this, result);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Creates an EndpointPool over the given servers.
+	 * @param endpoints the servers to spread frames over
+	 */
+	public EndpointPool(List<? extends RemoteEndpoint> endpoints) {
+		for (RemoteEndpoint endpoint : endpoints) {
+			members.add(new Member(endpoint));
+		}
+	}
+
+	/**
+	 * Returns the number of servers in the pool.
+	 * @return the number of servers
+	 */
+	public int getNumEndpoints() {
+		return members.size();
+	}
+
+	/**
+	 * Returns the number of servers that frames can be sent to now.
+	 * @return the number of healthy, connected servers
+	 */
+	public synchronized int getNumHealthy() {
+		int numHealthy = 0;
+		long now = System.currentTimeMillis();
+		for (Member member : members) {
+			if (isUsable(member, now)) {
+				numHealthy++;
+			}
+		}
+		return numHealthy;
+	}
+
+	/**
+	 * Returns the number of times a server was marked unhealthy.
+	 * @return the number of failovers
+	 */
+	public synchronized long getFailovers() {
+		return failovers;
+	}
+
+	/**
+	 * Returns the number of frames sent again to another server after the
+	 * one they were sent to failed.
+	 * @return the number of frames re-issued
+	 */
+	public synchronized long getReissuedFrames() {
+		return reissuedFrames;
+	}
+
+	/**
+	 * Stops the threads fetching results. Frames still outstanding are not given back.
+	 */
+	public synchronized void close() {
+		closed = true;
+		notifyAll();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.pipeline.RemoteEndpoint#isConnected()
+	 */
+	@Override
+	public synchronized boolean isConnected() {
+		return getNumHealthy() > 0;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.pipeline.RemoteEndpoint#setRemoteEffects(java.util.List)
+	 */
+	@Override
+	public synchronized void setRemoteEffects(List<Effect> effects) throws IOException {
+		this.effects = new ArrayList<Effect>(effects);
+		effectsVersion++;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.pipeline.RemoteEndpoint#send(com.cs4911.video_editor.pipeline.FrameEnvelope)
+	 */
+	@Override
+	public synchronized int send(FrameEnvelope frame) throws IOException {
+		long now = System.currentTimeMillis();
+		Outstanding entry = new Outstanding(frame, now);
+		int bytes = sendToLeastLoaded(entry, now);
+		order.add(entry);
+		return bytes;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.pipeline.RemoteEndpoint#receive(int, int)
+	 */
+	@Override
+	public synchronized List<FrameEnvelope> receive(int maxFrames, int timeoutMs) throws IOException {
+		List<FrameEnvelope> frames = new ArrayList<FrameEnvelope>();
+		long until = System.currentTimeMillis() + timeoutMs;
+		while (true) {
+			long now = System.currentTimeMillis();
+			failSlowMembers(now);
+			while (frames.size() < maxFrames && !order.isEmpty() && order.peek().result != null) {
+				frames.add(order.poll().result);
+			}
+			if (!frames.isEmpty() || now >= until) {
+				return frames;
+			}
+			try {
+				wait(Math.min(until - now, FAILOVER_MS));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.pipeline.RemoteEndpoint#getUploadBandwidth()
+	 */
+	@Override
+	public synchronized double getUploadBandwidth() {
+		double sum = 0;
+		int count = 0;
+		long now = System.currentTimeMillis();
+		for (Member member : members) {
+			double bandwidth = member.endpoint.getUploadBandwidth();
+			if (isUsable(member, now) && bandwidth > 0) {
+				sum += bandwidth;
+				count++;
+			}
+		}
+		return count > 0 ? sum / count : 0;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.pipeline.RemoteEndpoint#getDownloadBandwidth()
+	 */
+	@Override
+	public synchronized double getDownloadBandwidth() {
+		double sum = 0;
+		int count = 0;
+		long now = System.currentTimeMillis();
+		for (Member member : members) {
+			double bandwidth = member.endpoint.getDownloadBandwidth();
+			if (isUsable(member, now) && bandwidth > 0) {
+				sum += bandwidth;
+				count++;
+			}
+		}
+		return count > 0 ? sum / count : 0;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.pipeline.RemoteEndpoint#getRtt()
+	 */
+	@Override
+	public synchronized double getRtt() {
+		double sum = 0;
+		int count = 0;
+		long now = System.currentTimeMillis();
+		for (Member member : members) {
+			if (isUsable(member, now)) {
+				sum += member.endpoint.getRtt();
+				count++;
+			}
+		}
+		return count > 0 ? sum / count : 0;
+	}
+
+	/**
+	 * Returns whether frames can be sent to a server, giving an unhealthy
+	 * server another chance once it has been left alone for long enough.
+	 */
+	private boolean isUsable(Member member, long now) {
+		if (!member.healthy && now >= member.retryAt) {
+			member.healthy = true;
+		}
+		return member.healthy && member.endpoint.isConnected();
+	}
+
+	/**
+	 * Sends a frame to the usable server with the fewest frames outstanding,
+	 * moving on to the next one for as long as sending fails.
+	 * @param entry the frame to send
+	 * @param now the current time in milliseconds
+	 * @return the number of bytes sent
+	 * @throws IOException if no server could take the frame
+	 */
+	private int sendToLeastLoaded(Outstanding entry, long now) throws IOException {
+		while (true) {
+			Member best = null;
+			for (Member member : members) {
+				if (isUsable(member, now)
+						&& (best == null || member.outstanding.size() < best.outstanding.size())) {
+					best = member;
+				}
+			}
+			if (best == null) {
+				throw new IOException("No server is available");
+			}
+			try {
+				if (best.effectsVersion != effectsVersion) {
+					best.endpoint.setRemoteEffects(effects);
+					best.effectsVersion = effectsVersion;
+				}
+				int bytes = best.endpoint.send(entry.frame);
+				entry.sent = now;
+				best.outstanding.add(entry);
+				if (best.receiver == null) {
+					best.receiver = new Thread(best);
+					best.receiver.setDaemon(true);
+					best.receiver.start();
+				}
+				notifyAll();
+				return bytes;
+			} catch (IOException e) {
+				e.printStackTrace();
+				fail(best, now);
+			}
+		}
+	}
+
+	/**
+	 * Gives a result back to the frame it came from. Results come back from
+	 * a server in the order the frames were sent to it, so frames sent to it
+	 * before this one that are still outstanding were lost by it.
+	 */
+	private void deliver(Member member, FrameEnvelope result) {
+		Outstanding match = null;
+		for (Outstanding entry : member.outstanding) {
+			if (entry.frame.getSequenceNumber() == result.getSequenceNumber()) {
+				match = entry;
+				break;
+			}
+		}
+		if (match == null) {
+			// Sent again elsewhere, or given up on.
+			return;
+		}
+		Outstanding entry;
+		while ((entry = member.outstanding.poll()) != match) {
+			order.remove(entry);
+		}
+		match.result = result;
+		notifyAll();
+	}
+
+	/**
+	 * Fails the servers that have kept a frame for too long, as long as there
+	 * is another server to send their frames to.
+	 */
+	private void failSlowMembers(long now) {
+		for (Member member : members) {
+			Outstanding oldest = member.outstanding.peek();
+			if (oldest != null && member.healthy && now - oldest.sent > FAILOVER_MS && getNumHealthy() > 1) {
+				fail(member, now);
+			}
+		}
+	}
+
+	/**
+	 * Marks a server unhealthy and sends the frames it still had to the other servers.
+	 * Frames that cannot be sent again are given up on.
+	 */
+	private void fail(Member member, long now) {
+		if (!member.healthy) {
+			return;
+		}
+		member.healthy = false;
+		member.retryAt = now + RETRY_MS;
+		// A server that comes back may have lost its session.
+		member.effectsVersion = -1;
+		failovers++;
+		List<Outstanding> stranded = new ArrayList<Outstanding>(member.outstanding);
+		member.outstanding.clear();
+		for (Outstanding entry : stranded) {
+			if (entry.reissued || now - entry.firstSent >= REISSUE_MS) {
+				order.remove(entry);
+				continue;
+			}
+			entry.reissued = true;
+			try {
+				sendToLeastLoaded(entry, now);
+				reissuedFrames++;
+			} catch (IOException e) {
+				order.remove(entry);
+			}
+		}
+		notifyAll();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public synchronized String toString() {
+		StringBuilder builder = new StringBuilder("EndpointPool[");
+		for (Iterator<Member> iterator = members.iterator(); iterator.hasNext();) {
+			Member member = iterator.next();
+			builder.append(member.endpoint).append(member.healthy ? " " : " unhealthy ")
+					.append(member.outstanding.size()).append(" outstanding");
+			if (iterator.hasNext()) {
+				builder.append(", ");
+			}
+		}
+		return builder.append(']').toString();
+	}
+}
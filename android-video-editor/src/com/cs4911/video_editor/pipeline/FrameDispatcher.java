@@ -0,0 +1,88 @@
+package com.cs4911.video_editor.pipeline;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+
+/**
+ * A Runnable that hands frames from a shared input queue to a set of
+ * pipeline replicas. The sequence number of each frame is recorded before
+ * the frame is handed out, so that a FrameReorderer knows which frames
+ * are still on their way and can give the processed frames back in the
+ * order in which they were captured.
+ *
+ * While the effects include one that keeps state between frames, every
+ * frame goes to the first replica, since the copy of the effect in any
+ * other replica would only see some of the frames.
+ */
+public class FrameDispatcher implements Runnable {
+
+	private BlockingQueue<FrameEnvelope> unprocessedFrameQueue;
+	private List<BlockingQueue<FrameEnvelope>> replicaQueues;
+	private PriorityBlockingQueue<Long> dispatchedSequences;
+	private int nextReplica;
+	private volatile boolean pinned;
+
+	/**
+	 * Creates a new FrameDispatcher.
+	 * @param unprocessedFrameQueue the queue to pull unprocessed frames from
+	 * @param replicaQueues the input queues of the pipeline replicas
+	 * @param dispatchedSequences the heap to record the sequence number of each frame in
+	 */
+	public FrameDispatcher(BlockingQueue<FrameEnvelope> unprocessedFrameQueue, List<BlockingQueue<FrameEnvelope>> replicaQueues,
+			PriorityBlockingQueue<Long> dispatchedSequences) {
+		this.unprocessedFrameQueue = unprocessedFrameQueue;
+		this.replicaQueues = replicaQueues;
+		this.dispatchedSequences = dispatchedSequences;
+		nextReplica = 0;
+	}
+
+	/**
+	 * Sets whether every frame goes to the first replica. Frames already
+	 * handed to another replica are processed there.
+	 * @param pinned true to stop spreading frames over the replicas
+	 */
+	public void setPinned(boolean pinned) {
+		this.pinned = pinned;
+	}
+
+	/**
+	 * Picks the replica that should receive the next frame. Replicas are
+	 * tried in turn starting after the last one used, and the first one with
+	 * room in its input queue is chosen, so a replica that is busy with a
+	 * slow frame does not hold back the others.
+	 * @return the index of the chosen replica
+	 */
+	private int pickReplica() {
+		if (pinned) {
+			return 0;
+		}
+		int count = replicaQueues.size();
+		for (int i = 0; i < count; i++) {
+			int replica = (nextReplica + i) % count;
+			if (replicaQueues.get(replica).remainingCapacity() > 0) {
+				return replica;
+			}
+		}
+		return nextReplica;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Runnable#run()
+	 */
+	@Override
+	public void run() {
+		while (true) {
+			try {
+				FrameEnvelope frame = unprocessedFrameQueue.take();
+				int replica = pickReplica();
+				nextReplica = (replica + 1) % replicaQueues.size();
+				dispatchedSequences.add(frame.getSequenceNumber());
+				replicaQueues.get(replica).put(frame);
+			} catch (InterruptedException e) {
+				break;
+			}
+		}
+	}
+}
@@ -0,0 +1,302 @@
+package com.cs4911.video_editor.pipeline;
+
+import org.opencv.core.Mat;
+
+import com.cs4911.video_editor.trace.FrameTrace;
+
+/**
+ * Carries a frame through the pipelines together with what is known about it:
+ * its sequence number, when it was captured, by when it has to be processed,
+ * when each stage started and finished with it, and the epoch of the
+ * pipeline that processed it.
+ */
+public class FrameEnvelope {
+
+	private Mat mat;
+	private MatPool matPool;
+	private final long sequenceNumber;
+	private final long captureTimestamp;
+	private final long arrivalTime;
+	private long decodeNanos;
+	private int pipelineEpoch;
+	private long deadline;
+	private boolean late;
+	private volatile boolean dropped;
+	private FrameTrace trace;
+
+	// Start and end System.nanoTime() of every stage, two entries per stage.
+	private long[] stageTimestamps;
+	private int numStageTimestamps;
+	// Size of the frame each stage put out, one entry per stage.
+	private long[] stageOutputBytes;
+
+	/**
+	 * Creates a new FrameEnvelope for the given frame.
+	 * @param mat the frame
+	 * @param sequenceNumber the position of the frame in the stream it belongs to
+	 * @param captureTimestamp when the frame was captured, in milliseconds since the epoch
+	 */
+	public FrameEnvelope(Mat mat, long sequenceNumber, long captureTimestamp) {
+		this.mat = mat;
+		this.sequenceNumber = sequenceNumber;
+		this.captureTimestamp = captureTimestamp;
+		arrivalTime = System.nanoTime();
+		pipelineEpoch = -1;
+		stageTimestamps = new long[8];
+		stageOutputBytes = new long[4];
+		numStageTimestamps = 0;
+	}
+
+	/**
+	 * Returns the frame carried by this envelope.
+	 * @return the frame
+	 */
+	public Mat getMat() {
+		return mat;
+	}
+
+	/**
+	 * Replaces the frame carried by this envelope, for example with the
+	 * result of applying an effect to it.
+	 * @param mat the new frame
+	 */
+	public void setMat(Mat mat) {
+		setMat(mat, null);
+	}
+
+	/**
+	 * Replaces the frame carried by this envelope with one taken from a MatPool,
+	 * which it is given back to once the next stage is done with it.
+	 * @param mat the new frame
+	 * @param matPool the MatPool the frame was taken from, or null if it was not
+	 */
+	public void setMat(Mat mat, MatPool matPool) {
+		this.mat = mat;
+		this.matPool = matPool;
+	}
+
+	/**
+	 * Returns the MatPool the frame was taken from.
+	 * @return the frame's MatPool, or null if it was not taken from one
+	 */
+	public MatPool getMatPool() {
+		return matPool;
+	}
+
+	/**
+	 * Gives the frame back to the MatPool it was taken from, once
+	 * it is no longer needed. The envelope is left without a frame.
+	 */
+	public void recycle() {
+		if (matPool != null) {
+			matPool.give(mat);
+		}
+		mat = null;
+		matPool = null;
+	}
+
+	/**
+	 * Returns the position of the frame in the stream it belongs to.
+	 * @return the sequence number
+	 */
+	public long getSequenceNumber() {
+		return sequenceNumber;
+	}
+
+	/**
+	 * Returns when the frame was captured.
+	 * @return the capture time in milliseconds since the epoch
+	 */
+	public long getCaptureTimestamp() {
+		return captureTimestamp;
+	}
+
+	/**
+	 * Returns how long ago the frame was captured.
+	 * @return the age of the frame in milliseconds
+	 */
+	public long getAge() {
+		return System.currentTimeMillis() - captureTimestamp;
+	}
+
+	/**
+	 * Returns when this envelope was created, which for a frame received
+	 * from another device is when it arrived.
+	 * @return the System.nanoTime() at which the envelope was created
+	 */
+	public long getArrivalTime() {
+		return arrivalTime;
+	}
+
+	/**
+	 * Returns how long the frame took to decode when it arrived from
+	 * another device, which it finished doing just before it arrived.
+	 * @return the decode time in nanoseconds, or 0 if it was not decoded
+	 */
+	public long getDecodeNanos() {
+		return decodeNanos;
+	}
+
+	/**
+	 * Sets how long the frame took to decode when it arrived from another device.
+	 * @param decodeNanos the decode time in nanoseconds
+	 */
+	public void setDecodeNanos(long decodeNanos) {
+		this.decodeNanos = decodeNanos;
+	}
+
+	/**
+	 * Returns when the frame stops being worth processing.
+	 * @return the deadline in milliseconds since the epoch, or 0 if the frame has none
+	 */
+	public long getDeadline() {
+		return deadline;
+	}
+
+	/**
+	 * Sets when the frame stops being worth processing.
+	 * @param deadline the deadline in milliseconds since the epoch, or 0 for none
+	 */
+	public void setDeadline(long deadline) {
+		this.deadline = deadline;
+	}
+
+	/**
+	 * Returns whether the frame has a deadline and it has passed.
+	 * @return true if the frame is no longer worth processing
+	 */
+	public boolean hasMissedDeadline() {
+		return deadline != 0 && System.currentTimeMillis() > deadline;
+	}
+
+	/**
+	 * Returns whether a stage passed the frame through without applying
+	 * its effect because the frame had missed its deadline.
+	 * @return true if not every effect was applied to the frame
+	 */
+	public boolean isLate() {
+		return late;
+	}
+
+	/**
+	 * Records that a stage passed the frame through without applying its effect.
+	 */
+	public void markLate() {
+		late = true;
+	}
+
+	/**
+	 * Returns whether the frame was dropped on its way through the pipelines.
+	 * A dropped frame carries no matrix any more. It may still come out of
+	 * its pipeline, so that whoever puts frames back in order or waits for
+	 * them learns that it will not come, but it is never given out.
+	 * @return true if the frame will not be processed
+	 */
+	public boolean isDropped() {
+		return dropped;
+	}
+
+	/**
+	 * Records that the frame was dropped.
+	 */
+	public void markDropped() {
+		dropped = true;
+	}
+
+	/**
+	 * Returns the trace of what happened to the frame, if it is traced.
+	 * @return the trace, or null if the frame is not traced
+	 */
+	public FrameTrace getTrace() {
+		return trace;
+	}
+
+	/**
+	 * Sets the trace of what happens to the frame from now on.
+	 * @param trace the trace, or null to not trace the frame
+	 */
+	public void setTrace(FrameTrace trace) {
+		this.trace = trace;
+	}
+
+	/**
+	 * Returns the epoch of the pipeline that processed the frame,
+	 * or -1 if it has not been processed yet.
+	 * @return the pipeline epoch
+	 */
+	public int getPipelineEpoch() {
+		return pipelineEpoch;
+	}
+
+	/**
+	 * Sets the epoch of the pipeline that processed the frame.
+	 * @param pipelineEpoch the pipeline epoch
+	 */
+	public void setPipelineEpoch(int pipelineEpoch) {
+		this.pipelineEpoch = pipelineEpoch;
+	}
+
+	/**
+	 * Records that a stage processed the frame.
+	 * @param start the System.nanoTime() at which the stage started
+	 * @param end the System.nanoTime() at which the stage finished
+	 */
+	public void recordStage(long start, long end) {
+		recordStage(start, end, -1);
+	}
+
+	/**
+	 * Records that a stage processed the frame and how large its result was.
+	 * @param start the System.nanoTime() at which the stage started
+	 * @param end the System.nanoTime() at which the stage finished
+	 * @param outputBytes the size of the frame's pixels after the stage, or -1 if unknown
+	 */
+	public void recordStage(long start, long end, long outputBytes) {
+		if (numStageTimestamps + 2 > stageTimestamps.length) {
+			long[] timestamps = new long[stageTimestamps.length * 2];
+			System.arraycopy(stageTimestamps, 0, timestamps, 0, numStageTimestamps);
+			stageTimestamps = timestamps;
+			long[] outputs = new long[stageOutputBytes.length * 2];
+			System.arraycopy(stageOutputBytes, 0, outputs, 0, numStageTimestamps / 2);
+			stageOutputBytes = outputs;
+		}
+		stageOutputBytes[numStageTimestamps / 2] = outputBytes;
+		stageTimestamps[numStageTimestamps++] = start;
+		stageTimestamps[numStageTimestamps++] = end;
+	}
+
+	/**
+	 * Returns the number of stages that have processed the frame.
+	 * @return the number of recorded stages
+	 */
+	public int getNumStages() {
+		return numStageTimestamps / 2;
+	}
+
+	/**
+	 * Returns when the given stage started processing the frame.
+	 * @param stage the index of the stage, in processing order
+	 * @return the System.nanoTime() at which the stage started
+	 */
+	public long getStageStart(int stage) {
+		return stageTimestamps[2 * stage];
+	}
+
+	/**
+	 * Returns when the given stage finished processing the frame.
+	 * @param stage the index of the stage, in processing order
+	 * @return the System.nanoTime() at which the stage finished
+	 */
+	public long getStageEnd(int stage) {
+		return stageTimestamps[2 * stage + 1];
+	}
+
+	/**
+	 * Returns how large the frame was after the given stage.
+	 * @param stage the index of the stage, in processing order
+	 * @return the size of the frame's pixels in bytes, or -1 if unknown
+	 */
+	public long getStageOutputBytes(int stage) {
+		return stageOutputBytes[stage];
+	}
+}
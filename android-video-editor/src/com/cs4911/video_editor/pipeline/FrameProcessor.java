@@ -2,100 +2,727 @@ package com.cs4911.video_editor.pipeline;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.avro.AvroRemoteException;
 import org.apache.avro.ipc.Callback;
 import org.opencv.core.Mat;
-import org.opencv.core.MatOfByte;
-import org.opencv.highgui.Highgui;
 
 import android.util.Log;
 
 import com.cs4911.video_editor.android.CloudClient;
 import com.cs4911.video_editor.effects.*;
+import com.cs4911.video_editor.testproto.FrameData;
+import com.cs4911.video_editor.trace.FrameTrace;
+import com.cs4911.video_editor.trace.FrameTracer;
 /**
  * Manages the pipelines and provides an interface to offer frames
  * for processing and retrieve processed frames.
  */
-public class FrameProcessor implements Callback<List<ByteBuffer>> {
+public class FrameProcessor implements Callback<List<FrameData>> {
 
 	private static final String TAG = "FrameProcessor";
+	// A deadline to give frames with setDeadline: this many display
+	// intervals at the rate the camera preview is usually shown at.
+	public static final int DEFAULT_TARGET_FPS = 30;
+	public static final int DEFAULT_MAX_LATENCY_FRAMES = 3;
+	// How long a streamed frame counts as in flight if nothing comes back after it.
+	private static final long STREAMED_FRAME_TIMEOUT_MS = 1000;
+	// Most traces kept for frames on their way to the server; those of frames it dropped go first.
+	private static final int MAX_TRACES_IN_FLIGHT = 64;
 
-	private BlockingQueue<Mat> unprocessedFrameQueue, processedFrameQueue;
+	private BlockingQueue<FrameEnvelope> unprocessedFrameQueue, processedFrameQueue;
 
 	private HashSet<Pipeline> pipelines;
+
+	// Only used when frames are spread over more than one pipeline.
+	private ArrayList<BlockingQueue<FrameEnvelope>> replicaInputQueues;
+	// Shared by the replicas, so that the reorderer waits on a single queue.
+	private BlockingQueue<FrameEnvelope> replicaOutputQueue;
+	private PriorityBlockingQueue<Long> dispatchedSequences;
+	private Thread dispatcherThread, reordererThread;
+	private FrameDispatcher dispatcher;
+	// Whether the effects include one that keeps state between frames.
+	private boolean stateful;
+	private FrameReorderer reorderer;
+	// Frames discarded by reorderers that have been replaced.
+	private long reorderedStaleFrames;
+
+	// A live preview should show the most recent frames, so when the
+	// device falls behind it is the stale ones that are dropped.
+	private final BackpressurePolicy inputPolicy = BackpressurePolicy.dropOldest();
+	private final BackpressurePolicy outputPolicy = BackpressurePolicy.dropOldest();
+
+	// How long after its capture a frame stops being worth processing,
+	// or 0 for never, as it is until setDeadline is called.
+	private volatile long deadlineMs;
+	// Told what applying each effect costs, if set.
+	private EffectProfiler effectProfiler;
 	
 	Mat originalFrame;
 	CloudClient cloudClient;
-	private final int K = 1;
-	private List<ByteBuffer> frameBuffer;
+	private List<FrameEnvelope> frameBuffer;
+	// Sets how many frames are sent to the server at once and how many may be on their way.
+	private InFlightController inFlightController = new InFlightController();
+	private final AtomicInteger batchesInFlight = new AtomicInteger(0);
+	// Sequence numbers and send times of the frames streamed to the server and not back yet.
+	private final ArrayDeque<long[]> streamedFrames = new ArrayDeque<long[]>();
+	// Frames not sent to the server because too many were on their way already.
+	private final AtomicLong throttledFrames = new AtomicLong(0);
 	private AtomicInteger numFrames = new AtomicInteger(0);
+	private AtomicLong nextSequenceNumber = new AtomicLong(0);
 	public boolean useCloud = true;
+	// Whether frames are streamed to the server one at a time instead of sent in batches.
+	public boolean useStreaming = true;
+	private Thread receiverThread;
+	// Chooses between useCloud and the device for every frame, if set.
+	private OffloadDecider offloadDecider;
+	// Whether the effects changed since they were last sent to the server, if ever.
+	private boolean serverPipelineStale = true;
+	// Splits the effects between the device and the server, if set, in place of the OffloadDecider.
+	private CutPointOptimizer cutPointOptimizer;
+	private RemoteEndpoint remoteEndpoint;
+	// The task applying the effects after the cut point, or null if all are applied here.
+	private volatile RemoteEffectTask remoteTask;
+	private volatile int cutPoint;
+	// The pipeline epoch from which frames are processed with cutPoint.
+	private volatile int cutPointEpoch;
+	// Whether the CutPointOptimizer has been given the profiled costs of the current effects.
+	private volatile boolean expectedCostsSet;
+	// Writes a trace of every frame displayed, if set.
+	private volatile FrameTracer frameTracer;
+	// Traces of the frames sent to the server, by sequence number, until they come back.
+	private final Map<Long, FrameTrace> tracesInFlight = Collections.synchronizedMap(
+			new LinkedHashMap<Long, FrameTrace>() {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<Long, FrameTrace> eldest) {
+					return size() > MAX_TRACES_IN_FLIGHT;
+				}
+			});
 	
 	/**
 	 * Creates a new FrameProcessor with a pipeline with the given effects.
 	 * @param effects the effects that the pipelines in this FrameProcessor should apply
 	 */
 	public FrameProcessor(EffectTask[] effects) {
-		unprocessedFrameQueue = new LinkedBlockingQueue<Mat>(2);
-		processedFrameQueue = new LinkedBlockingQueue<Mat>(2);
+		this(effects, 1);
+	}
+
+	/**
+	 * Creates a new FrameProcessor with numPipelines pipelines with the given effects.
+	 * When there is more than one pipeline, frames are spread over them and
+	 * processed frames are given back in the order in which they were added.
+	 * @param effects the effects that the pipelines in this FrameProcessor should apply
+	 * @param numPipelines the number of pipelines that process frames in parallel
+	 */
+	public FrameProcessor(EffectTask[] effects, int numPipelines) {
+		// Processed frames also come from the FrameReceiver, so only the
+		// unprocessed frames have a single consumer.
+		unprocessedFrameQueue = new MpscRingBuffer<FrameEnvelope>(2);
+		processedFrameQueue = new LinkedBlockingQueue<FrameEnvelope>(2);
 		pipelines = new HashSet<Pipeline>();
+		stateful = isStateful(effects);
+		if (numPipelines > 1) {
+			replicaInputQueues = new ArrayList<BlockingQueue<FrameEnvelope>>();
+			replicaOutputQueue = new MpscRingBuffer<FrameEnvelope>(2 * numPipelines);
+			dispatchedSequences = new PriorityBlockingQueue<Long>();
+			createReplicaThreads();
+		}
 		addPipeline(effects);
+		for (int i = 1; i < numPipelines; i++) {
+			addPipeline();
+		}
 		
-		frameBuffer = new ArrayList<ByteBuffer>();
+		frameBuffer = new ArrayList<FrameEnvelope>();
 	}
 	
 	public Mat getMatFromByteBuffer(ByteBuffer pixels) 
 	{
-		byte[] raw_data = pixels.array();
-		System.out.println("Size of data received is " + raw_data.length);
-		MatOfByte m = new MatOfByte(pixels.array());
-		Mat frame = Highgui.imdecode(m, -1);
-		
-		return frame;
+		ByteBuffer buffer = pixels.duplicate();
+		byte[] raw_data = new byte[buffer.remaining()];
+		buffer.get(raw_data);
+		return cloudClient.getCodec().decode(raw_data);
 	}
 	
 	public ByteBuffer getByteBufferFromMat(Mat frame)
 	{
-		MatOfByte m = new MatOfByte();
-		Highgui.imencode(".png", frame, m);
-		return ByteBuffer.wrap(m.toArray());
+		return ByteBuffer.wrap(cloudClient.encodeFrame(frame));
 	}
 
 	/**
 	 * Adds a frame to be processed by one of the pipelines.
+	 * The frame is given the next sequence number and the current time as its capture time.
 	 * @param frame a frame to be processed
 	 */
 	public void addFrame(Mat frame) {
+		addFrame(new FrameEnvelope(frame, nextSequenceNumber.getAndIncrement(), System.currentTimeMillis()));
+	}
+
+	/**
+	 * Adds a frame to be processed by one of the pipelines.
+	 * @param frame a frame to be processed, with its sequence number and capture time
+	 */
+	public void addFrame(FrameEnvelope frame) {
 		Log.d("FrameProcessor", "unprocessedFrameQueue size: " + unprocessedFrameQueue.size());
-		originalFrame = frame;
+		originalFrame = frame.getMat();
 		numFrames.incrementAndGet();
+		stampDeadline(frame);
+		startTrace(frame);
+		if (cutPointOptimizer != null) {
+			chooseCutPoint(frame);
+		} else if (offloadDecider != null && cloudClient != null) {
+			decidePlacement(frame);
+		}
 		
 		if (useCloud && cloudClient != null) {
 			
-			ByteBuffer pixels = getByteBufferFromMat(frame);
+			inFlightController.recordFrameAdded(System.currentTimeMillis());
+			if (useStreaming && getStreamedFrames() >= inFlightController.getInFlightFrames()) {
+				// The server has enough frames to keep it busy until the next one would come back.
+				throttleFrame();
+				return;
+			}
+			
 			// perform the computation on the server
-			frameBuffer.add(pixels);
-			if (frameBuffer.size() > K) {
-				try {
-					cloudClient.addFrames(frameBuffer, this);
-					frameBuffer.clear();
-				} catch (IOException e) {
-					e.printStackTrace();
+			if (useStreaming) {
+				// the FrameReceiver picks up the result as soon as it is ready
+				FrameData data = encodeFrame(frame);
+				synchronized (streamedFrames) {
+					streamedFrames.add(new long[] {frame.getSequenceNumber(), System.nanoTime()});
+				}
+				traceSent(data, System.nanoTime());
+				cloudClient.sendFrame(data);
+				return;
+			}
+			
+			// Encoded only when sent, since with delta upload every frame
+			// encoded has to reach the server for the next to be decoded.
+			frameBuffer.add(frame);
+			int batchSize = inFlightController.getBatchSize();
+			if (frameBuffer.size() >= batchSize) {
+				if (batchesInFlight.get() < inFlightController.getBatchesInFlight()) {
+					sendBatch();
+				} else if (frameBuffer.size() > batchSize) {
+					// Keep the newest frames for when a batch comes back.
+					frameBuffer.remove(0);
+					throttleFrame();
 				}
 			}
 		} else {
 			// perform the computation on the mobile device
-			unprocessedFrameQueue.offer(frame);
+			try {
+				inputPolicy.offer(unprocessedFrameQueue, frame);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Sends the buffered frames to the server as one batch, and measures how
+	 * long they take to come back.
+	 */
+	private void sendBatch() {
+		final List<FrameData> batch = new ArrayList<FrameData>();
+		for (FrameEnvelope frame : frameBuffer) {
+			batch.add(encodeFrame(frame));
+		}
+		frameBuffer.clear();
+		final long start = System.nanoTime();
+		for (FrameData data : batch) {
+			traceSent(data, start);
+		}
+		batchesInFlight.incrementAndGet();
+		try {
+			cloudClient.addFrames(batch, new Callback<List<FrameData>>() {
+				@Override
+				public void handleResult(List<FrameData> result) {
+					batchesInFlight.decrementAndGet();
+					inFlightController.recordBatch(result.size(), (System.nanoTime() - start) / 1e6, serverMs(result));
+					FrameProcessor.this.handleResult(result);
+				}
+
+				@Override
+				public void handleError(Throwable error) {
+					batchesInFlight.decrementAndGet();
+					numFrames.addAndGet(-batch.size());
+					FrameProcessor.this.handleError(error);
+				}
+			});
+		} catch (IOException e) {
+			batchesInFlight.decrementAndGet();
+			numFrames.addAndGet(-batch.size());
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Encodes a frame to be sent to the server.
+	 * @param frame the frame to send
+	 * @return the encoded frame with its sequence number and timestamps
+	 */
+	private FrameData encodeFrame(FrameEnvelope frame) {
+		long encodeStart = System.nanoTime();
+		ByteBuffer pixels = getByteBufferFromMat(frame.getMat());
+		traceEncoded(frame, encodeStart, System.nanoTime());
+		if (offloadDecider != null) {
+			offloadDecider.recordUpload(pixels.remaining());
+		}
+		return FrameData.newBuilder()
+				.setSequenceNumber(frame.getSequenceNumber())
+				.setCaptureTimestamp(frame.getCaptureTimestamp())
+				.setPipelineEpoch(frame.getPipelineEpoch())
+				.setStageTimestamps(new ArrayList<Long>())
+				.setData(pixels)
+				.build();
+	}
+
+	/**
+	 * Returns how long the server spent on processed frames, from receiving
+	 * them until the last of them was done.
+	 * @param frames processed frames with their stage timestamps
+	 * @return the server time in milliseconds
+	 */
+	private static double serverMs(List<FrameData> frames) {
+		long end = 0;
+		for (FrameData data : frames) {
+			List<Long> timestamps = data.getStageTimestamps();
+			if (!timestamps.isEmpty()) {
+				end = Math.max(end, timestamps.get(timestamps.size() - 1));
+			}
+		}
+		return end / 1e6;
+	}
+
+	/**
+	 * Returns the number of frames streamed to the server that have not
+	 * come back yet. Frames the server dropped stop counting once a later
+	 * frame comes back, or after STREAMED_FRAME_TIMEOUT_MS.
+	 * @return the number of frames in flight
+	 */
+	private int getStreamedFrames() {
+		long oldest = System.nanoTime() - STREAMED_FRAME_TIMEOUT_MS * 1000000;
+		synchronized (streamedFrames) {
+			while (!streamedFrames.isEmpty() && streamedFrames.peek()[1] < oldest) {
+				streamedFrames.poll();
+			}
+			return streamedFrames.size();
+		}
+	}
+
+	/**
+	 * Gives up on a frame because too many frames are on their way to the server.
+	 */
+	private void throttleFrame() {
+		throttledFrames.incrementAndGet();
+		numFrames.decrementAndGet();
+	}
+
+	/**
+	 * Sets the InFlightController that decides how many frames are sent to
+	 * the server at once and how many may be on their way.
+	 * @param inFlightController the controller to use
+	 */
+	public void setInFlightController(InFlightController inFlightController) {
+		this.inFlightController = inFlightController;
+	}
+
+	/**
+	 * Returns the InFlightController that decides how many frames are sent to
+	 * the server at once and how many may be on their way.
+	 * @return the controller
+	 */
+	public InFlightController getInFlightController() {
+		return inFlightController;
+	}
+
+	/**
+	 * Sets the OffloadDecider that chooses, for every frame added, whether
+	 * it is processed on the device or by the server, in place of useCloud.
+	 * @param offloadDecider the decider to use, or null to leave useCloud as it is
+	 */
+	public void setOffloadDecider(OffloadDecider offloadDecider) {
+		this.offloadDecider = offloadDecider;
+	}
+
+	/**
+	 * Returns the OffloadDecider that chooses where frames are processed.
+	 * @return the decider, or null if useCloud is left as it is
+	 */
+	public OffloadDecider getOffloadDecider() {
+		return offloadDecider;
+	}
+
+	/**
+	 * Tells the OffloadDecider what is known about the connection and the
+	 * frame, and sets useCloud to where it decides the frame is processed.
+	 * @param frame the frame being added
+	 */
+	private void decidePlacement(FrameEnvelope frame) {
+		offloadDecider.setCloudAvailable(cloudClient.isConnected());
+		offloadDecider.setNetwork(cloudClient.getUploadBandwidth(), cloudClient.getDownloadBandwidth(),
+				cloudClient.getRtt());
+		Mat mat = frame.getMat();
+		offloadDecider.recordRawFrameSize(mat.total() * mat.elemSize());
+		boolean cloud = offloadDecider.decide(System.currentTimeMillis()) == OffloadDecider.Placement.CLOUD;
+		if (cloud != useCloud) {
+			Log.i(TAG, "Processing frames " + (cloud ? "on the server: " : "on the device: ") + offloadDecider);
+			useCloud = cloud;
+		}
+		if (useCloud) {
+			if (serverPipelineStale) {
+				sendPipeline();
+			}
+			startReceiver();
+		}
+	}
+
+	/**
+	 * Splits the effects between the device and a server: the effects up to
+	 * a cut point are applied here and the rest on the server, by a
+	 * RemoteEffectTask at the end of the pipeline. The CutPointOptimizer
+	 * picks the cut point for every frame added, starting with all effects
+	 * applied here while their costs are measured. Frames are no longer
+	 * sent whole to the server, so useCloud and the OffloadDecider are not
+	 * used while this is on. Only works with a single pipeline.
+	 * @param optimizer the optimizer that picks the cut point, or null to apply all effects here again
+	 * @param endpoint the server to apply the effects after the cut point on
+	 */
+	public void setSplitExecution(CutPointOptimizer optimizer, RemoteEndpoint endpoint) {
+		if (optimizer != null && pipelines.size() > 1) {
+			throw new IllegalStateException("Effects can only be split for a single pipeline");
+		}
+		if (remoteTask != null) {
+			applyCutPoint(getEffects().size());
+		}
+		cutPointOptimizer = optimizer;
+		remoteEndpoint = endpoint;
+		if (optimizer != null) {
+			useCloud = false;
+			// The RemoteEffectTask fetches its own results from the server.
+			if (receiverThread != null) {
+				receiverThread.interrupt();
+				receiverThread = null;
+			}
+			optimizer.effectsChanged(getEffects().size());
+			expectedCostsSet = false;
+			cutPoint = optimizer.getCutPoint();
+			cutPointEpoch = getEpoch();
+		}
+	}
+
+	/**
+	 * Returns the CutPointOptimizer that splits the effects between the device and a server.
+	 * @return the optimizer, or null if all effects are applied on the device or all on the server
+	 */
+	public CutPointOptimizer getCutPointOptimizer() {
+		return cutPointOptimizer;
+	}
+
+	/**
+	 * Tells the CutPointOptimizer what is known about the connection and the
+	 * frame, and moves the cut point of the pipeline to where it decides.
+	 * @param frame the frame being added
+	 */
+	private void chooseCutPoint(FrameEnvelope frame) {
+		cutPointOptimizer.setCloudAvailable(remoteEndpoint.isConnected());
+		cutPointOptimizer.setNetwork(remoteEndpoint.getUploadBandwidth(), remoteEndpoint.getDownloadBandwidth(),
+				remoteEndpoint.getRtt());
+		Mat mat = frame.getMat();
+		cutPointOptimizer.recordInputSize(mat.total() * mat.elemSize());
+		if (!expectedCostsSet) {
+			setExpectedCosts(mat.cols(), mat.rows());
+		}
+		int cut = cutPointOptimizer.choose(System.currentTimeMillis());
+		if (cut != cutPoint) {
+			Log.i(TAG, "Applying effects on the device and the server: " + cutPointOptimizer);
+			applyCutPoint(cut);
+		}
+	}
+
+	/**
+	 * Tells the CutPointOptimizer what the effects are expected to cost on
+	 * frames of the given size, as far as the EffectProfiler knows, so that
+	 * it does not have to measure them all on the device first.
+	 * @param width the width of the frames
+	 * @param height the height of the frames
+	 */
+	private void setExpectedCosts(int width, int height) {
+		expectedCostsSet = true;
+		EffectProfiler profiler = effectProfiler;
+		if (profiler == null) {
+			return;
+		}
+		List<Effect> effects = getEffects();
+		for (int i = 0; i < effects.size(); i++) {
+			cutPointOptimizer.setExpectedCost(i, profiler.estimateWallMs(effects.get(i).getName(), width, height));
+		}
+	}
+
+	/**
+	 * Rebuilds the pipeline so that the effects up to the cut point are
+	 * applied on the device and the rest by a RemoteEffectTask.
+	 * @param cut the number of effects to apply on the device
+	 */
+	private synchronized void applyCutPoint(int cut) {
+		List<Effect> effects = getEffects();
+		int numLocal = Math.min(cut, effects.size());
+		EffectTask[] tasks = new EffectTask[numLocal < effects.size() ? numLocal + 1 : numLocal];
+		for (int i = 0; i < numLocal; i++) {
+			tasks[i] = new LocalEffectTask(effects.get(i).copy());
+		}
+		RemoteEffectTask task = null;
+		if (numLocal < effects.size()) {
+			List<Effect> remoteEffects = new ArrayList<Effect>();
+			for (Effect effect : effects.subList(numLocal, effects.size())) {
+				remoteEffects.add(effect.copy());
+			}
+			task = new RemoteEffectTask(remoteEffects, remoteEndpoint);
+			task.setInFlightController(inFlightController);
+			tasks[numLocal] = task;
+		}
+		for (Pipeline pipeline : pipelines) {
+			pipeline.setEffects(tasks);
+		}
+		remoteTask = task;
+		cutPoint = numLocal;
+		cutPointEpoch = getEpoch();
+	}
+
+	/**
+	 * Tells the CutPointOptimizer what a frame cost, if it was processed
+	 * with the current cut point.
+	 * @param frame a processed frame
+	 */
+	private void recordSplitFrame(FrameEnvelope frame) {
+		if (frame.getPipelineEpoch() != cutPointEpoch) {
+			return;
+		}
+		RemoteEffectTask task = remoteTask;
+		if (task != null) {
+			cutPointOptimizer.recordUploadRatio(task.getUploadRatio());
+		}
+		cutPointOptimizer.recordFrame(frame, cutPoint, task != null ? task.getRemoteComputeMs() : -1);
+	}
+
+	/**
+	 * Gives every frame added from now on a deadline of maxLatencyFrames
+	 * display intervals at targetFps after it was captured. Once a frame has
+	 * missed its deadline, the effects it has not reached yet pass it through
+	 * without being applied, so that late frames do not hold up the ones
+	 * behind them. Until this is called, frames get no deadline.
+	 * @param targetFps the rate at which processed frames are shown, or 0 to give frames no deadline
+	 * @param maxLatencyFrames how many display intervals a frame may take to be processed
+	 */
+	public void setDeadline(int targetFps, int maxLatencyFrames) {
+		deadlineMs = targetFps > 0 ? maxLatencyFrames * 1000L / targetFps : 0;
+	}
+
+	/**
+	 * Returns how long after its capture a frame stops being worth processing.
+	 * @return the deadline of frames relative to their capture time in milliseconds, or 0 if they have none
+	 */
+	public long getDeadlineMs() {
+		return deadlineMs;
+	}
+
+	/**
+	 * Returns the number of times an effect was not applied to a frame because
+	 * the frame had missed its deadline. A frame is counted once for every
+	 * effect it skipped.
+	 * @return the number of effects skipped
+	 */
+	public long getSkippedFrames() {
+		long skippedFrames = 0;
+		for (Pipeline pipeline : pipelines) {
+			skippedFrames += pipeline.getSkippedFrames();
+		}
+		return skippedFrames;
+	}
+
+	/**
+	 * Gives the frame a deadline based on its capture time, unless deadlines
+	 * are turned off or it already has one.
+	 * @param frame the frame being added
+	 */
+	private void stampDeadline(FrameEnvelope frame) {
+		long deadline = deadlineMs;
+		if (deadline > 0 && frame.getDeadline() == 0) {
+			frame.setDeadline(frame.getCaptureTimestamp() + deadline);
+		}
+	}
+
+	/**
+	 * Returns the policy for frames added while too many frames are waiting to be processed.
+	 * @return the input policy
+	 */
+	public BackpressurePolicy getInputPolicy() {
+		return inputPolicy;
+	}
+
+	/**
+	 * Returns the policy for processed frames while too many are waiting to be taken.
+	 * @return the output policy
+	 */
+	public BackpressurePolicy getOutputPolicy() {
+		return outputPolicy;
+	}
+
+	/**
+	 * Returns the EffectProfiler told what the effects applied here cost.
+	 * @return the profiler, or null if the costs are not measured
+	 */
+	public EffectProfiler getEffectProfiler() {
+		return effectProfiler;
+	}
+
+	/**
+	 * Sets the EffectProfiler told what the effects applied here cost, for
+	 * every pipeline and every effect from now on.
+	 * @param effectProfiler the profiler, or null to not measure the costs
+	 */
+	public void setEffectProfiler(EffectProfiler effectProfiler) {
+		this.effectProfiler = effectProfiler;
+		for (Pipeline pipeline : pipelines) {
+			pipeline.setProfiler(effectProfiler);
+		}
+	}
+
+	/**
+	 * Returns the FrameTracer that writes a trace of every frame displayed.
+	 * @return the tracer, or null if frames are not traced
+	 */
+	public FrameTracer getFrameTracer() {
+		return frameTracer;
+	}
+
+	/**
+	 * Sets the FrameTracer that writes a trace of every frame added from now
+	 * on once it is displayed: when it was captured, encoded, sent, decoded,
+	 * processed by each stage and encoded on the server, received, decoded
+	 * and displayed. Frames that are dropped on the way are not written.
+	 * @param frameTracer the tracer, or null to not trace frames
+	 */
+	public void setFrameTracer(FrameTracer frameTracer) {
+		this.frameTracer = frameTracer;
+		if (frameTracer == null) {
+			tracesInFlight.clear();
+		}
+	}
+
+	/**
+	 * Starts a trace for a frame being added, if frames are traced and it has none.
+	 * @param frame the frame being added
+	 */
+	private void startTrace(FrameEnvelope frame) {
+		if (frameTracer != null && frame.getTrace() == null) {
+			FrameTrace trace = new FrameTrace(frame.getSequenceNumber(), frame.getCaptureTimestamp());
+			trace.mark(FrameTrace.Event.ADDED, System.nanoTime());
+			frame.setTrace(trace);
 		}
 	}
 
+	/**
+	 * Records that a frame was encoded to be sent to the server, and keeps
+	 * its trace until the result comes back.
+	 * @param frame the frame that was encoded
+	 * @param start the System.nanoTime() at which encoding started
+	 * @param end the System.nanoTime() at which encoding finished
+	 */
+	private void traceEncoded(FrameEnvelope frame, long start, long end) {
+		FrameTrace trace = frame.getTrace();
+		if (trace != null) {
+			trace.mark(FrameTrace.Event.ENCODE_START, start);
+			trace.mark(FrameTrace.Event.ENCODE_END, end);
+			tracesInFlight.put(frame.getSequenceNumber(), trace);
+		}
+	}
+
+	/**
+	 * Records that a frame was sent to the server.
+	 * @param data the frame that was sent
+	 * @param sent the System.nanoTime() at which it was sent
+	 */
+	private void traceSent(FrameData data, long sent) {
+		FrameTrace trace = tracesInFlight.get(data.getSequenceNumber());
+		if (trace != null) {
+			trace.mark(FrameTrace.Event.SENT, sent);
+		}
+	}
+
+	/**
+	 * Moves the trace of a frame sent to the server to its result, and
+	 * records what happened to it on the server and after it came back.
+	 * @param frame the result
+	 * @param data the result as it came from the server
+	 * @param received the System.nanoTime() at which the result came back
+	 * @param decodeStart the System.nanoTime() at which decoding the result started
+	 * @param decodeEnd the System.nanoTime() at which decoding the result finished
+	 */
+	private void traceReceived(FrameEnvelope frame, FrameData data, long received, long decodeStart, long decodeEnd) {
+		FrameTrace trace = tracesInFlight.remove(data.getSequenceNumber());
+		if (trace != null) {
+			trace.mark(FrameTrace.Event.RECEIVED, received);
+			trace.markServer(data.getCodecTimestamps(), data.getStageTimestamps());
+			trace.mark(FrameTrace.Event.DECODE_START, decodeStart);
+			trace.mark(FrameTrace.Event.DECODE_END, decodeEnd);
+			frame.setTrace(trace);
+		}
+	}
+
+	/**
+	 * Records the stages a frame went through on the device and that it is
+	 * being displayed, and hands its trace to the FrameTracer.
+	 * @param frame the frame being displayed
+	 */
+	private void finishTrace(FrameEnvelope frame) {
+		FrameTrace trace = frame.getTrace();
+		FrameTracer tracer = frameTracer;
+		if (trace == null || tracer == null) {
+			return;
+		}
+		for (int i = 0; i < frame.getNumStages(); i++) {
+			trace.mark(FrameTrace.Event.STAGE_START, i, frame.getStageStart(i));
+			trace.mark(FrameTrace.Event.STAGE_END, i, frame.getStageEnd(i));
+		}
+		trace.setLate(frame.isLate());
+		trace.mark(FrameTrace.Event.DISPLAYED, System.nanoTime());
+		frame.setTrace(null);
+		tracer.submit(trace);
+	}
+
+	/**
+	 * Returns the number of frames that were added but will never be
+	 * given back: dropped by the input or output policy, lost by an
+	 * effect that failed, come out of a replica too late to be given
+	 * back in order, or not sent to the server because too many frames
+	 * were on their way.
+	 * @return the number of frames dropped
+	 */
+	public long getDroppedFrames() {
+		long droppedFrames = inputPolicy.getDroppedFrames() + outputPolicy.getDroppedFrames() + throttledFrames.get();
+		for (Pipeline pipeline : pipelines) {
+			droppedFrames += pipeline.getDroppedFrames();
+		}
+		if (reorderer != null) {
+			droppedFrames += reorderedStaleFrames + reorderer.getStaleFrames();
+		}
+		return droppedFrames;
+	}
+
 	/**
 	 * Returns a processed frame if one is ready.
 	 * If no frame is ready, returns null.
@@ -109,7 +736,27 @@ public class FrameProcessor implements Callback<List<ByteBuffer>> {
 				return originalFrame;
 		
 			try {
-				return processedFrameQueue.take();
+				FrameEnvelope frame = processedFrameQueue.take();
+				while (frame.isDropped()) {
+					// Dropped on the way; show what there is rather than wait for the next one.
+					frame = processedFrameQueue.poll();
+					if (frame == null) {
+						return originalFrame;
+					}
+				}
+				if (cutPointOptimizer != null) {
+					recordSplitFrame(frame);
+				} else if (offloadDecider != null && frame.getNumStages() > 0) {
+					// Only frames processed on the device have stage timestamps.
+					offloadDecider.recordLocalFrame(frame);
+				}
+				if (Log.isLoggable(TAG, Log.DEBUG)) {
+					Log.d(TAG, "frame " + frame.getSequenceNumber() + " is "
+							+ frame.getAge() + " ms old, pipeline epoch " + frame.getPipelineEpoch()
+							+ (frame.isLate() ? ", late" : ""));
+				}
+				finishTrace(frame);
+				return frame.getMat();
 			} catch (InterruptedException e) {
 				// TODO Auto-generated catch block
 				e.printStackTrace();
@@ -118,6 +765,20 @@ public class FrameProcessor implements Callback<List<ByteBuffer>> {
 		return originalFrame;
 	}
 
+	/**
+	 * Returns the epoch of the pipelines, which is advanced
+	 * every time their list of effects changes.
+	 * If there are no pipelines, returns 0.
+	 * @return the current pipeline epoch
+	 */
+	public int getEpoch() {
+		if (!pipelines.isEmpty()) {
+			return pipelines.iterator().next().getEpoch();
+		} else {
+			return 0;
+		}
+	}
+
 	/**
 	 * Returns the list of effects that the pipelines apply.
 	 * If there are no pipelines, returns an empty list.
@@ -135,64 +796,91 @@ public class FrameProcessor implements Callback<List<ByteBuffer>> {
 	 * Adds a new effect to the end of all existing pipelines.
 	 * @param effect the effect to add to the pipelines
 	 */
-	public void addEffect(EffectTask effect) {
+	public synchronized void addEffect(EffectTask effect) {
+		setStateful(stateful || effect.isStateful());
+		EffectTask pipelineEffect = effect;
 		for (Pipeline pipeline : pipelines) {
-			pipeline.addEffect(effect);
+			pipeline.addEffect(pipelineEffect);
+			pipelineEffect = pipelineEffect.copy();
 		}
 		
-		if (useCloud && cloudClient != null) {
-			try {
-				if (effect.getEffect() instanceof BlurEffect) {
-					cloudClient.addBlurEffect();
-				} else if (effect.getEffect() instanceof ColorSaturationEffect) {
-					cloudClient.addColorSaturationEffect();
-				} else if (effect.getEffect() instanceof DrawingEffect) {
-					cloudClient.addDrawingEffect();
-				} else if (effect.getEffect() instanceof EdgeDetectionEffect) {
-					cloudClient.addEdgeDetectionEffect();
-				} else if (effect.getEffect() instanceof GradientMagnitudeEffect) {
-					cloudClient.addGradientMagnitudeEffect();
-				} else if (effect.getEffect() instanceof GrayscaleEffect) {
-					cloudClient.addGrayscaleEffect();
-				} else if (effect.getEffect() instanceof HorizontalFlipEffect) {
-					cloudClient.addHorizontalFlipEffect();
-				} else if (effect.getEffect() instanceof HoughCircleEffect) {
-					cloudClient.addHoughCircleEffect();
-				} else if (effect.getEffect() instanceof HoughLineEffect) {
-					cloudClient.addHoughLineEffect();
-				/*} else if (effect.getEffect() instanceof IdentityEffect) {
-					cloudClient.addIdentityEffect();*/
-				} else if (effect.getEffect() instanceof MotionHistoryEffect) {
-					cloudClient.addMotionHistoryEffect();
-				} else if (effect.getEffect() instanceof NegativeEffect) {
-					cloudClient.addNegativeEffect();
-				} else if (effect.getEffect() instanceof SeamCarveEffect) {
-					cloudClient.addSeamCarveEffect();
-				} else if (effect.getEffect() instanceof SepiaEffect) {
-					cloudClient.addSepiaEffect();
-				} else if (effect.getEffect() instanceof VerticalFlipEffect) {
-					cloudClient.addVerticalEffect();
-				} else if (effect.getEffect() instanceof XrayEffect) {
-					cloudClient.addXrayEffect();
-				}
-			} catch (Exception e) {
-				e.printStackTrace();
+		effectsChanged();
+	}
+
+	/**
+	 * Replaces the effects of all pipelines with the given effects in one step.
+	 * Every pipeline gets its own copy of the effect tasks.
+	 * @param effects the effects that the pipelines should apply
+	 */
+	public synchronized void setEffects(EffectTask[] effects) {
+		boolean statefulEffects = isStateful(effects);
+		if (statefulEffects) {
+			setStateful(true);
+		}
+		EffectTask[] pipelineEffects = effects;
+		for (Pipeline pipeline : pipelines) {
+			pipeline.setEffects(pipelineEffects);
+			pipelineEffects = new EffectTask[effects.length];
+			for (int i = 0; i < effects.length; i++) {
+				pipelineEffects[i] = effects[i].copy();
 			}
 		}
+		if (!statefulEffects) {
+			setStateful(false);
+		}
+		
+		effectsChanged();
 	}
 
 	/**
 	 * Resets all pipelines so that they do not apply
 	 * any effect to frames passing through them.
 	 */
-	public void clearEffects() {
+	public synchronized void clearEffects() {
 		for (Pipeline pipeline : pipelines) {
 			pipeline.clearEffects();
 		}
+		setStateful(false);
 		
-		if (useCloud && cloudClient != null) {
+		effectsChanged();
+	}
+
+	/**
+	 * Tells the OffloadDecider and the server that the effects have changed,
+	 * or, if the effects are split, applies them all on the device again
+	 * until the new ones have been measured or their profiled costs are known.
+	 */
+	private void effectsChanged() {
+		if (cutPointOptimizer != null) {
+			int numEffects = getEffects().size();
+			cutPointOptimizer.effectsChanged(numEffects);
+			expectedCostsSet = false;
+			if (remoteTask != null) {
+				applyCutPoint(numEffects);
+			} else {
+				cutPoint = numEffects;
+				cutPointEpoch = getEpoch();
+			}
+			return;
+		}
+		if (offloadDecider != null) {
+			offloadDecider.effectsChanged();
+		}
+		sendPipeline();
+	}
+
+	/**
+	 * Sends the current list of effects to the server,
+	 * which replaces its whole pipeline with them in one step.
+	 */
+	private void sendPipeline() {
+		serverPipelineStale = true;
+		// The server needs the effects even while frames are processed here,
+		// in case the OffloadDecider sends frames to it later.
+		if ((useCloud || offloadDecider != null) && cloudClient != null && cloudClient.isConnected()) {
 			try {
-				cloudClient.clearEffects();
+				cloudClient.setPipeline(CloudClient.describe(getEffects()));
+				serverPipelineStale = false;
 			} catch (AvroRemoteException e) {
 				e.printStackTrace();
 			}
@@ -206,6 +894,24 @@ public class FrameProcessor implements Callback<List<ByteBuffer>> {
 		for (Pipeline pipeline : pipelines) {
 			pipeline.start();
 		}
+		if (dispatcherThread != null && dispatcherThread.getState() == Thread.State.NEW) {
+			dispatcherThread.start();
+			reordererThread.start();
+		}
+		if (useCloud) {
+			startReceiver();
+		}
+	}
+
+	/**
+	 * Starts the FrameReceiver if frames are streamed to the server
+	 * and it is not running yet.
+	 */
+	private void startReceiver() {
+		if (useStreaming && cloudClient != null && receiverThread == null) {
+			receiverThread = new Thread(new FrameReceiver(cloudClient, this));
+			receiverThread.start();
+		}
 	}
 
 	/**
@@ -216,8 +922,33 @@ public class FrameProcessor implements Callback<List<ByteBuffer>> {
 		for (Pipeline pipeline : pipelines) {
 			pipeline.stop();
 		}
+		if (receiverThread != null) {
+			receiverThread.interrupt();
+			receiverThread = null;
+		}
+		if (dispatcherThread != null) {
+			dispatcherThread.interrupt();
+			reordererThread.interrupt();
+			// The ring buffers may only be cleared once nothing else takes from them.
+			try {
+				dispatcherThread.join();
+				reordererThread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			createReplicaThreads();
+			for (BlockingQueue<FrameEnvelope> queue : replicaInputQueues) {
+				queue.clear();
+			}
+			replicaOutputQueue.clear();
+			dispatchedSequences.clear();
+		}
 		unprocessedFrameQueue.clear();
 		processedFrameQueue.clear();
+		synchronized (streamedFrames) {
+			streamedFrames.clear();
+		}
+		tracesInFlight.clear();
 	}
 
 	/**
@@ -226,7 +957,12 @@ public class FrameProcessor implements Callback<List<ByteBuffer>> {
 	 */
 	private void addPipeline() {
 		if (!pipelines.isEmpty()) {
-			pipelines.add(new Pipeline(pipelines.iterator().next()));
+			Pipeline pipeline = pipelines.iterator().next();
+			if (replicaInputQueues != null) {
+				pipelines.add(new Pipeline(pipeline, addReplicaInputQueue(), replicaOutputQueue));
+			} else {
+				pipelines.add(new Pipeline(pipeline));
+			}
 		}
 	}
 
@@ -235,8 +971,69 @@ public class FrameProcessor implements Callback<List<ByteBuffer>> {
 	 * @param effects the effects that the new pipeline should apply to frames
 	 */
 	private void addPipeline(EffectTask[] effects) {
-		pipelines.add(new Pipeline(unprocessedFrameQueue, processedFrameQueue,
-				effects));
+		if (replicaInputQueues != null) {
+			pipelines.add(new Pipeline(addReplicaInputQueue(), replicaOutputQueue,
+					effects));
+		} else {
+			Pipeline pipeline = new Pipeline(unprocessedFrameQueue, processedFrameQueue,
+					effects);
+			pipeline.setOutputPolicy(outputPolicy);
+			pipelines.add(pipeline);
+		}
+	}
+
+	/**
+	 * Creates the input queue for a new pipeline replica.
+	 * @return the queue the dispatcher hands the replica's frames to
+	 */
+	private BlockingQueue<FrameEnvelope> addReplicaInputQueue() {
+		BlockingQueue<FrameEnvelope> queue = new SpscRingBuffer<FrameEnvelope>(2);
+		replicaInputQueues.add(queue);
+		return queue;
+	}
+
+	/**
+	 * Records whether the effects include one that keeps state between
+	 * frames. Every pipeline has its own copy of such an effect, so while
+	 * there is one, frames all go to the first replica instead of being
+	 * spread over them. Pinning is done before the effects are switched,
+	 * and undone after.
+	 * @param stateful true if an effect keeps state between frames
+	 */
+	private void setStateful(boolean stateful) {
+		this.stateful = stateful;
+		if (dispatcher != null) {
+			dispatcher.setPinned(stateful);
+		}
+	}
+
+	/**
+	 * Returns whether any of the given effects keeps state between frames.
+	 * @param effects the effects that the pipelines apply
+	 * @return true if one of them is stateful
+	 */
+	private static boolean isStateful(EffectTask[] effects) {
+		for (EffectTask effect : effects) {
+			if (effect.isStateful()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Creates the threads that spread frames over the pipeline replicas
+	 * and put the processed frames back in order.
+	 */
+	private void createReplicaThreads() {
+		dispatcher = new FrameDispatcher(unprocessedFrameQueue, replicaInputQueues, dispatchedSequences);
+		dispatcher.setPinned(stateful);
+		dispatcherThread = new Thread(dispatcher);
+		if (reorderer != null) {
+			reorderedStaleFrames += reorderer.getStaleFrames();
+		}
+		reorderer = new FrameReorderer(replicaOutputQueue, dispatchedSequences, processedFrameQueue, outputPolicy);
+		reordererThread = new Thread(reorderer);
 	}
 	
 	public void setCloudClient(CloudClient client) {
@@ -249,16 +1046,56 @@ public class FrameProcessor implements Callback<List<ByteBuffer>> {
 	}
 
 	@Override
-	public void handleResult(List<ByteBuffer> result) {
+	public void handleResult(List<FrameData> result) {
 		
 		Log.e("CloudClient", "Got a result frame " + result.size());
-		for (ByteBuffer buf: result) {
-			Mat resultMat = getMatFromByteBuffer(buf);
-			processedFrameQueue.offer(resultMat);
+		long received = System.nanoTime();
+		for (FrameData data: result) {
+			recordStreamedFrame(data);
+			if (!data.getData().hasRemaining()) {
+				// The server dropped the frame, so there is nothing to show.
+				tracesInFlight.remove(data.getSequenceNumber());
+				numFrames.decrementAndGet();
+				continue;
+			}
+			long decodeStart = System.nanoTime();
+			Mat resultMat = getMatFromByteBuffer(data.getData());
+			long decodeEnd = System.nanoTime();
+			FrameEnvelope frame = new FrameEnvelope(resultMat, data.getSequenceNumber(), data.getCaptureTimestamp());
+			frame.setPipelineEpoch(data.getPipelineEpoch());
+			frame.setDecodeNanos(decodeEnd - decodeStart);
+			traceReceived(frame, data, received, decodeStart, decodeEnd);
+			if (offloadDecider != null) {
+				offloadDecider.recordDownload(data.getData().remaining());
+				offloadDecider.recordCloudFrame(frame.getAge());
+			}
+			try {
+				outputPolicy.offer(processedFrameQueue, frame);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
 			numFrames.decrementAndGet();
 		}
 	}
 	
+	/**
+	 * Stops counting a streamed frame as in flight once it has come back,
+	 * together with any streamed before it, which the server dropped, and
+	 * tells the InFlightController how long it took.
+	 * @param data a processed frame
+	 */
+	private void recordStreamedFrame(FrameData data) {
+		long[] sent = null;
+		synchronized (streamedFrames) {
+			while (!streamedFrames.isEmpty() && streamedFrames.peek()[0] <= data.getSequenceNumber()) {
+				sent = streamedFrames.poll();
+			}
+		}
+		if (sent != null && sent[0] == data.getSequenceNumber()) {
+			inFlightController.recordBatch(1, (System.nanoTime() - sent[1]) / 1e6, serverMs(Collections.singletonList(data)));
+		}
+	}
+	
 	public void waitForCompletion() {
 		int v = numFrames.intValue();
 		while (v != 0) {
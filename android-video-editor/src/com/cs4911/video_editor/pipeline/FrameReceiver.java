@@ -0,0 +1,56 @@
+package com.cs4911.video_editor.pipeline;
+
+import java.util.List;
+
+import org.apache.avro.AvroRemoteException;
+
+import android.util.Log;
+
+import com.cs4911.video_editor.android.CloudClient;
+import com.cs4911.video_editor.testproto.FrameData;
+
+/**
+ * A Runnable that keeps fetching processed frames from the server while
+ * frames are being streamed to it, and hands them to a FrameProcessor as
+ * soon as they arrive.
+ */
+public class FrameReceiver implements Runnable {
+
+	private static final String TAG = "FrameReceiver";
+
+	// The most frames to fetch at once, and how long the server may wait for the first one.
+	private static final int MAX_FRAMES = 4;
+	private static final int TIMEOUT_MS = 100;
+
+	private CloudClient cloudClient;
+	private FrameProcessor frameProcessor;
+
+	/**
+	 * Creates a new FrameReceiver.
+	 * @param cloudClient the client to fetch processed frames through
+	 * @param frameProcessor the FrameProcessor to hand processed frames to
+	 */
+	public FrameReceiver(CloudClient cloudClient, FrameProcessor frameProcessor) {
+		this.cloudClient = cloudClient;
+		this.frameProcessor = frameProcessor;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Runnable#run()
+	 */
+	@Override
+	public void run() {
+		while (!Thread.interrupted()) {
+			try {
+				List<FrameData> frames = cloudClient.receiveFrames(MAX_FRAMES, TIMEOUT_MS);
+				if (!frames.isEmpty()) {
+					frameProcessor.handleResult(frames);
+				}
+			} catch (AvroRemoteException e) {
+				Log.e(TAG, "Could not receive frames", e);
+				break;
+			}
+		}
+	}
+}
@@ -0,0 +1,130 @@
+package com.cs4911.video_editor.pipeline;
+
+/**
+ * Decides how many frames may be on their way to and from the server at
+ * once, and how many of them are sent together in a batch, from the
+ * measured round trip time, the server's processing time and the rate at
+ * which frames come in.
+ *
+ * Keeping the server busy takes as many frames in flight as arrive during
+ * one round trip, which is the round trip time divided by the time between
+ * frames, or between the frames the server can finish if that is longer.
+ * So on a link with a long round trip many frames are in flight, and on a
+ * fast link only a couple. Frames are batched only as much as it takes to
+ * keep the number of batches in flight within a limit, and never more than
+ * can be filled within a short delay, so batches stay small on fast links.
+ * Until the first frame has come back, two frames are in flight, one at a
+ * time. Nothing here depends on Android, so it can be checked on any JVM.
+ */
+public class InFlightController {
+
+	// Weight of a new measurement in the running averages.
+	private static final double SMOOTHING = 0.2;
+
+	private final int maxInFlight;
+	private final int maxBatchesInFlight;
+	private final long maxBatchDelayMs;
+
+	// Running averages of what is measured; negative until the first measurement.
+	private double frameIntervalMs = -1;
+	private double networkMs = -1;
+	private double serverMsPerFrame = -1;
+	private long lastFrameAdded = -1;
+
+	/**
+	 * Creates an InFlightController that allows up to 16 frames in flight,
+	 * in up to 4 batches, and waits at most 50 ms to fill a batch.
+	 */
+	public InFlightController() {
+		this(16, 4, 50);
+	}
+
+	/**
+	 * Creates an InFlightController.
+	 * @param maxInFlight the most frames in flight at once
+	 * @param maxBatchesInFlight the most batches in flight at once
+	 * @param maxBatchDelayMs the longest the first frame of a batch should wait for the rest
+	 */
+	public InFlightController(int maxInFlight, int maxBatchesInFlight, long maxBatchDelayMs) {
+		this.maxInFlight = maxInFlight;
+		this.maxBatchesInFlight = maxBatchesInFlight;
+		this.maxBatchDelayMs = maxBatchDelayMs;
+	}
+
+	/**
+	 * Records that a frame came in to be sent to the server.
+	 * @param now the current time in milliseconds
+	 */
+	public synchronized void recordFrameAdded(long now) {
+		if (lastFrameAdded >= 0 && now > lastFrameAdded) {
+			frameIntervalMs = average(frameIntervalMs, now - lastFrameAdded);
+		}
+		lastFrameAdded = now;
+	}
+
+	/**
+	 * Records how long a batch of frames took to come back from the server.
+	 * @param numFrames the number of frames in the batch
+	 * @param roundTripMs the time from sending the batch until its results came back
+	 * @param serverMs how long the server spent on the batch, from receiving it until its last frame was done
+	 */
+	public synchronized void recordBatch(int numFrames, double roundTripMs, double serverMs) {
+		if (numFrames <= 0) {
+			return;
+		}
+		serverMs = Math.max(0, Math.min(serverMs, roundTripMs));
+		networkMs = average(networkMs, roundTripMs - serverMs);
+		serverMsPerFrame = average(serverMsPerFrame, serverMs / numFrames);
+	}
+
+	/**
+	 * Returns how many frames should be on their way to and from the server at once.
+	 * @return the number of frames in flight, at least 1
+	 */
+	public synchronized int getInFlightFrames() {
+		if (networkMs < 0) {
+			return Math.min(2, maxInFlight);
+		}
+		double latencyMs = networkMs + serverMsPerFrame;
+		double intervalMs = Math.max(Math.max(frameIntervalMs, serverMsPerFrame), 1);
+		// One more than strictly needed, so a little jitter does not leave the server idle.
+		int frames = (int) Math.ceil(latencyMs / intervalMs) + 1;
+		return Math.max(1, Math.min(frames, maxInFlight));
+	}
+
+	/**
+	 * Returns how many frames should be sent together.
+	 * @return the batch size, at least 1
+	 */
+	public synchronized int getBatchSize() {
+		int batchSize = (getInFlightFrames() + maxBatchesInFlight - 1) / maxBatchesInFlight;
+		if (frameIntervalMs > 0) {
+			batchSize = Math.min(batchSize, 1 + (int) (maxBatchDelayMs / frameIntervalMs));
+		}
+		return Math.max(1, batchSize);
+	}
+
+	/**
+	 * Returns how many batches may be waiting for their results at once.
+	 * @return the number of batches in flight, at least 1
+	 */
+	public synchronized int getBatchesInFlight() {
+		int batchSize = getBatchSize();
+		return Math.max(1, (getInFlightFrames() + batchSize - 1) / batchSize);
+	}
+
+	private static double average(double average, double sample) {
+		return average < 0 ? sample : average + SMOOTHING * (sample - average);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public synchronized String toString() {
+		return getInFlightFrames() + " frames in flight in batches of " + getBatchSize() + " (network "
+				+ Math.round(networkMs) + " ms, server " + Math.round(serverMsPerFrame) + " ms per frame, a frame every "
+				+ Math.round(frameIntervalMs) + " ms)";
+	}
+}
@@ -1,10 +1,11 @@
 package com.cs4911.video_editor.pipeline;
 
-import org.opencv.core.Mat;
-
 import android.util.Log;
 
+import org.opencv.core.Mat;
+
 import com.cs4911.video_editor.effects.Effect;
+import com.cs4911.video_editor.effects.ScratchBuffers;
 
 /**
  * Applies an effect to frames locally, on the device.
@@ -13,6 +14,16 @@ public class LocalEffectTask extends EffectTask {
 
 	private final String TAG = "Android Video Editor";
 
+	// Frames this task wrote that the next stage may still be reading,
+	// plus one it may be writing into.
+	private static final int NUM_OUTPUT_BUFFERS = 4;
+
+	private final MatPool outputPool = new MatPool(NUM_OUTPUT_BUFFERS);
+	private final ScratchBuffers scratch = new ScratchBuffers();
+
+	// A processed frame that could not be handed on yet when run by an EffectStage.
+	private volatile FrameEnvelope pendingFrame;
+
 	/**
 	 * Creates a LocalEffectTask that applies the given effect.
 	 * @param effect the effect to be applied
@@ -21,34 +32,181 @@ public class LocalEffectTask extends EffectTask {
 		super(effect);
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.pipeline.EffectTask#copy()
+	 */
+	@Override
+	public EffectTask copy() {
+		LocalEffectTask copy = new LocalEffectTask(effect.copy());
+		copy.setProfiler(profiler);
+		return copy;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.pipeline.EffectTask#carryOver()
+	 */
+	@Override
+	public EffectTask carryOver() {
+		LocalEffectTask carried = new LocalEffectTask(effect);
+		carried.setProfiler(profiler);
+		return carried;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see java.lang.Runnable#run()
 	 */
 	@Override
 	public void run() {
-		while (true) {
-			Mat frame;
-			try {
-				frame = inputQueue.take();
-			} catch (InterruptedException e) {
-				Log.w(TAG, "LocalEffectTask caught InterruptedException while trying to take from queue.");
-				break;
-			}
-			if (frame != null) {
-				Log.d("LocalEffectTask", effect.toString() + " - inputQueue size: " + inputQueue.size());
-				frame = effect.applyTo(frame);
-				if (Thread.interrupted()) {
+		// Only stopping the pipeline interrupts the thread; when its effects
+		// change, END_OF_CHAIN arrives behind the frames still to be processed.
+		try {
+			while (true) {
+				FrameEnvelope frame = inputQueue.take();
+				if (frame == END_OF_CHAIN) {
+					if (!lastStage) {
+						outputQueue.put(frame);
+					}
 					break;
 				}
+				Log.d("LocalEffectTask", effect.toString() + " - inputQueue size: " + inputQueue.size());
+				process(frame);
 
-				outputQueue.offer(frame);
 				Log.d("LocalEffectTask", effect.toString() + " - outputQueue size: " + outputQueue.size());
+				// Only the last stage may have an output policy that drops frames; the
+				// others block so that every frame taken by the chain comes out of it.
+				handOn(frame);
+			}
+		} catch (InterruptedException e) {
+			Log.w(TAG, "LocalEffectTask caught InterruptedException, stopping.");
+		}
+		release();
+		finish();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.pipeline.EffectTask#hasWork()
+	 */
+	@Override
+	public boolean hasWork() {
+		if (isFinished() || !canHandOn()) {
+			return false;
+		}
+		return pendingFrame != null || !inputQueue.isEmpty();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.pipeline.EffectTask#processNext()
+	 */
+	@Override
+	public boolean processNext() {
+		if (isFinished()) {
+			return false;
+		}
+		if (pendingFrame != null) {
+			FrameEnvelope frame = pendingFrame;
+			if (!tryHandOn(frame)) {
+				return false;
 			}
-			if (Thread.interrupted()) {
-				break;
+			pendingFrame = null;
+			if (frame == END_OF_CHAIN) {
+				finish();
+			}
+			return true;
+		}
+		if (!canHandOn()) {
+			return false;
+		}
+		FrameEnvelope frame = inputQueue.poll();
+		if (frame == null) {
+			return false;
+		}
+		if (frame == END_OF_CHAIN) {
+			if (lastStage || outputQueue.offer(frame)) {
+				finish();
+			} else {
+				pendingFrame = frame;
+			}
+			return true;
+		}
+		process(frame);
+		// Keep the frame rather than drop it if the output queue filled up meanwhile,
+		// as the output queue of the pipeline can when other threads put frames in it too,
+		// unless the output policy says to drop one.
+		if (!tryHandOn(frame)) {
+			pendingFrame = frame;
+		}
+		return true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.pipeline.EffectTask#release()
+	 */
+	@Override
+	public void release() {
+		scratch.release();
+		outputPool.clear();
+	}
+
+	/**
+	 * Applies the effect to the given frame, reusing this task's
+	 * output buffers, and stamps the frame with the time it took
+	 * and the pipeline epoch. The profiler, if any, is told the wall
+	 * and CPU time it took. A frame that has missed its deadline
+	 * is passed through as it is. A frame the effect fails on is
+	 * dropped rather than the task, as EffectStage does, and handed on
+	 * like one that was dropped before.
+	 * @param frame the frame to process
+	 */
+	private void process(FrameEnvelope frame) {
+		if (frame.isDropped()) {
+			return;
+		}
+		long start = System.nanoTime();
+		if (frame.hasMissedDeadline()) {
+			// Hand it on at once so that the frames behind it do not miss theirs too.
+			frame.markLate();
+			countSkippedFrame();
+			Mat mat = frame.getMat();
+			frame.recordStage(start, start, mat != null ? mat.total() * mat.elemSize() : -1);
+			frame.setPipelineEpoch(pipelineEpoch);
+			return;
+		}
+		Mat src = frame.getMat();
+		Mat dst = outputPool.take();
+		EffectProfiler profiler = this.profiler;
+		long cpuStart = profiler != null ? profiler.threadCpuTimeNanos() : -1;
+		Mat result;
+		try {
+			result = effect.applyTo(src, dst, scratch);
+		} catch (RuntimeException e) {
+			Log.e(TAG, "Could not apply " + effect + ", dropping the frame", e);
+			outputPool.give(dst);
+			dropFrame(frame);
+			return;
+		}
+		if (profiler != null) {
+			long cpuNanos = cpuStart >= 0 ? profiler.threadCpuTimeNanos() - cpuStart : -1;
+			profiler.record(effect.getName(), src.cols(), src.rows(), System.nanoTime() - start, cpuNanos);
+		}
+		if (result != src) {
+			// the previous stage's frame is no longer needed, so it can write into it again
+			MatPool srcPool = frame.getMatPool();
+			frame.setMat(result, result == dst ? outputPool : null);
+			if (srcPool != null) {
+				srcPool.give(src);
 			}
 		}
+		if (result != dst) {
+			outputPool.give(dst);
+		}
+		frame.recordStage(start, System.nanoTime(), result.total() * result.elemSize());
+		frame.setPipelineEpoch(pipelineEpoch);
 	}
 
 }
@@ -0,0 +1,54 @@
+package com.cs4911.video_editor.pipeline;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.opencv.core.Mat;
+
+/**
+ * Keeps a few matrices that are no longer in use so that they can be written
+ * into again instead of allocating new ones. A stage takes its output matrix
+ * from its own MatPool, and the next stage gives it back once it has written
+ * its own result, so the same few matrices go round and round.
+ */
+public class MatPool {
+
+	private final BlockingQueue<Mat> free;
+
+	/**
+	 * Creates a new MatPool.
+	 * @param capacity the most matrices to keep; extra ones are released
+	 */
+	public MatPool(int capacity) {
+		free = new ArrayBlockingQueue<Mat>(capacity);
+	}
+
+	/**
+	 * Takes a matrix that is no longer in use, or a new empty one if there is none.
+	 * @return a matrix to write into
+	 */
+	public Mat take() {
+		Mat mat = free.poll();
+		return mat != null ? mat : new Mat();
+	}
+
+	/**
+	 * Gives back a matrix taken from this MatPool once nothing uses it any more.
+	 * @param mat the matrix to reuse
+	 */
+	public void give(Mat mat) {
+		if (!free.offer(mat)) {
+			mat.release();
+		}
+	}
+
+	/**
+	 * Releases the native memory of the matrices kept in this MatPool.
+	 */
+	public void clear() {
+		Mat mat;
+		while ((mat = free.poll()) != null) {
+			mat.release();
+		}
+	}
+}
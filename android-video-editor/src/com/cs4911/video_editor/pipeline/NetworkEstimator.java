@@ -0,0 +1,191 @@
+package com.cs4911.video_editor.pipeline;
+
+/**
+ * Estimates the bandwidth to and from the server, the round trip time and
+ * the server's processing time from the frames that are sent to it anyway,
+ * so that the estimates follow the network as it changes.
+ *
+ * Every round trip is split into the time the server spent on it, which it
+ * reports, and the time on the network. The time on the network is fitted
+ * as the round trip time plus a time per byte, by a linear regression over
+ * the round trips seen so far in which the recent ones weigh the most. The
+ * sizes of the frames vary a lot, from a few changed tiles to whole
+ * keyframes, which is what lets the two be told apart. A single round trip
+ * cannot tell the upload from the download, so their ratio is taken from
+ * the prior, such as a bandwidth test, or assumed to be even.
+ *
+ * Until MIN_SAMPLES round trips have been seen, the prior is returned.
+ * Nothing here depends on Android, so it can be checked on any JVM.
+ */
+public class NetworkEstimator {
+
+	private static final int MIN_SAMPLES = 5;
+	// The spread of the sizes, relative to their mean, below which the regression is not trusted.
+	private static final double MIN_RELATIVE_SPREAD = 0.1;
+
+	// Weight of a new round trip.
+	private final double smoothing;
+
+	private double priorUplinkBytesPerSecond, priorDownlinkBytesPerSecond, priorRttMs;
+
+	// Weighted means of the bytes transferred, the network time, their squares and product.
+	private double meanBytes, meanMs, meanBytesSquared, meanBytesMs;
+	private double serverMsPerFrame = -1;
+	private long numSamples;
+
+	// The fit: network time = rttMs + bytes * msPerByte.
+	private double rttMs = -1;
+	private double msPerByte = -1;
+
+	/**
+	 * Creates a NetworkEstimator that gives each new round trip a weight of 0.1.
+	 */
+	public NetworkEstimator() {
+		this(0.1);
+	}
+
+	/**
+	 * Creates a NetworkEstimator.
+	 * @param smoothing the weight of a new round trip, between 0 and 1
+	 */
+	public NetworkEstimator(double smoothing) {
+		this.smoothing = smoothing;
+	}
+
+	/**
+	 * Sets what is known about the network before any frame has been sent,
+	 * such as the results of a bandwidth test.
+	 * @param uplinkBytesPerSecond the bandwidth towards the server, or 0 if unknown
+	 * @param downlinkBytesPerSecond the bandwidth from the server, or 0 if unknown
+	 * @param rttMs the round trip time to the server, or 0 if unknown
+	 */
+	public synchronized void setPrior(double uplinkBytesPerSecond, double downlinkBytesPerSecond, double rttMs) {
+		priorUplinkBytesPerSecond = uplinkBytesPerSecond;
+		priorDownlinkBytesPerSecond = downlinkBytesPerSecond;
+		priorRttMs = rttMs;
+	}
+
+	/**
+	 * Records a request to the server and its answer.
+	 * @param numFrames the number of frames processed by the server in the request
+	 * @param bytesUp the number of bytes sent
+	 * @param bytesDown the number of bytes received
+	 * @param roundTripMs the time from sending the request until the answer was received
+	 * @param serverMs how long the server took from receiving the request until it was done with it
+	 */
+	public synchronized void recordRoundTrip(int numFrames, long bytesUp, long bytesDown, double roundTripMs, double serverMs) {
+		serverMs = Math.max(0, Math.min(serverMs, roundTripMs));
+		if (numFrames > 0) {
+			serverMsPerFrame = serverMsPerFrame < 0 ? serverMs / numFrames
+					: serverMsPerFrame + smoothing * (serverMs / numFrames - serverMsPerFrame);
+		}
+		// In upload bytes: downloading a byte takes as long as uploading uplink / downlink bytes.
+		double bytes = bytesUp + bytesDown * downlinkCost();
+		double ms = roundTripMs - serverMs;
+		double weight = numSamples == 0 ? 1 : smoothing;
+		meanBytes += weight * (bytes - meanBytes);
+		meanMs += weight * (ms - meanMs);
+		meanBytesSquared += weight * (bytes * bytes - meanBytesSquared);
+		meanBytesMs += weight * (bytes * ms - meanBytesMs);
+		numSamples++;
+		fit();
+	}
+
+	/**
+	 * Returns the number of round trips recorded.
+	 * @return the number of samples
+	 */
+	public synchronized long getNumSamples() {
+		return numSamples;
+	}
+
+	/**
+	 * Returns the estimated bandwidth towards the server.
+	 * @return the upload bandwidth in bytes per second, or 0 if unknown
+	 */
+	public synchronized double getUploadBandwidth() {
+		if (numSamples < MIN_SAMPLES || msPerByte <= 0) {
+			return priorUplinkBytesPerSecond;
+		}
+		return 1000 / msPerByte;
+	}
+
+	/**
+	 * Returns the estimated bandwidth from the server.
+	 * @return the download bandwidth in bytes per second, or 0 if unknown
+	 */
+	public synchronized double getDownloadBandwidth() {
+		if (numSamples < MIN_SAMPLES || msPerByte <= 0) {
+			return priorDownlinkBytesPerSecond;
+		}
+		return 1000 / (msPerByte * downlinkCost());
+	}
+
+	/**
+	 * Returns the estimated round trip time to the server, without the time
+	 * to transfer any data.
+	 * @return the round trip time in milliseconds, or 0 if unknown
+	 */
+	public synchronized double getRtt() {
+		if (numSamples < MIN_SAMPLES || rttMs < 0) {
+			return priorRttMs;
+		}
+		return rttMs;
+	}
+
+	/**
+	 * Returns how long the server takes to process a frame, including the
+	 * time the frame waited there behind others.
+	 * @return the server time per frame in milliseconds, or -1 if unknown
+	 */
+	public synchronized double getServerMs() {
+		return serverMsPerFrame;
+	}
+
+	/**
+	 * Fits the network time to the bytes transferred. If the sizes have been
+	 * too alike to tell the round trip time from the time per byte, the
+	 * round trip time is kept and the rest is put down to the bytes.
+	 */
+	private void fit() {
+		double variance = meanBytesSquared - meanBytes * meanBytes;
+		double covariance = meanBytesMs - meanBytes * meanMs;
+		double spread = MIN_RELATIVE_SPREAD * meanBytes;
+		double slope = -1;
+		if (variance > spread * spread) {
+			slope = covariance / variance;
+		}
+		if (slope > 0 && meanMs - slope * meanBytes >= 0) {
+			msPerByte = slope;
+			rttMs = meanMs - slope * meanBytes;
+			return;
+		}
+		double rtt = rttMs >= 0 ? rttMs : priorRttMs;
+		rtt = Math.min(rtt, meanMs);
+		if (meanBytes > 0 && meanMs > rtt) {
+			msPerByte = (meanMs - rtt) / meanBytes;
+		}
+		rttMs = rtt;
+	}
+
+	/**
+	 * Returns how many upload bytes a downloaded byte is worth in time.
+	 * @return the ratio of the uplink to the downlink bandwidth, or 1 if not known
+	 */
+	private double downlinkCost() {
+		if (priorUplinkBytesPerSecond > 0 && priorDownlinkBytesPerSecond > 0) {
+			return priorUplinkBytesPerSecond / priorDownlinkBytesPerSecond;
+		}
+		return 1;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public synchronized String toString() {
+		return String.format("up %.0f kB/s, down %.0f kB/s, rtt %.0f ms, server %.0f ms (%d samples)",
+				getUploadBandwidth() / 1000, getDownloadBandwidth() / 1000, getRtt(), getServerMs(), numSamples);
+	}
+}
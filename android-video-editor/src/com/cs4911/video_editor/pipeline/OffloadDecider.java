@@ -0,0 +1,247 @@
+package com.cs4911.video_editor.pipeline;
+
+/**
+ * Decides whether frames are processed on the device or by the server,
+ * by estimating how long a frame takes either way and picking the faster.
+ * On the device that is the measured cost of each effect. On the server it
+ * is the round trip time, the time to upload the frame and download the
+ * result at the measured bandwidth, and the server's compute time, which
+ * is measured once frames come back from it and guessed from the cost of
+ * the effects on the device until then.
+ *
+ * To keep from flapping between the two when the estimates are close,
+ * the other placement has to be faster by a margin, and the placement is
+ * kept for a while after every switch. Nothing here depends on Android,
+ * so the decisions can be checked on any JVM.
+ */
+public class OffloadDecider {
+
+	/**
+	 * Where frames are processed.
+	 */
+	public enum Placement {
+		LOCAL,
+		CLOUD
+	}
+
+	// Weight of a new measurement in the running averages.
+	private static final double SMOOTHING = 0.2;
+
+	private final double margin;
+	private final long minDwellMs;
+	private final double serverSpeedup;
+
+	private boolean cloudAvailable;
+	private double uplinkBytesPerMs, downlinkBytesPerMs, rttMs;
+
+	// Running averages of what is measured; negative until the first measurement.
+	private double[] effectCostMs = new double[0];
+	private double remoteComputeMs = -1;
+	private double uploadBytes = -1, downloadBytes = -1;
+	private long rawFrameBytes;
+
+	private Placement placement = Placement.LOCAL;
+	private long lastSwitch = Long.MIN_VALUE / 2;
+
+	/**
+	 * Creates an OffloadDecider that switches when the other placement is
+	 * 25% faster, at most every 2 seconds, and assumes until it has measured
+	 * it that the server applies the effects 4 times as fast as the device.
+	 */
+	public OffloadDecider() {
+		this(0.25, 2000, 4.0);
+	}
+
+	/**
+	 * Creates an OffloadDecider.
+	 * @param margin the fraction by which the other placement has to be faster to switch to it
+	 * @param minDwellMs how long to keep a placement after switching to it
+	 * @param serverSpeedup how many times as fast as the device the server is assumed to apply effects, until measured
+	 */
+	public OffloadDecider(double margin, long minDwellMs, double serverSpeedup) {
+		this.margin = margin;
+		this.minDwellMs = minDwellMs;
+		this.serverSpeedup = serverSpeedup;
+	}
+
+	/**
+	 * Sets whether frames can be sent to the server at all. While they
+	 * cannot, frames are processed on the device.
+	 * @param cloudAvailable true if connected to a server
+	 */
+	public synchronized void setCloudAvailable(boolean cloudAvailable) {
+		this.cloudAvailable = cloudAvailable;
+	}
+
+	/**
+	 * Updates the measured network conditions.
+	 * @param uplinkBytesPerSecond the bandwidth towards the server, or 0 if unknown
+	 * @param downlinkBytesPerSecond the bandwidth from the server, or 0 if unknown
+	 * @param rttMs the round trip time to the server
+	 */
+	public synchronized void setNetwork(double uplinkBytesPerSecond, double downlinkBytesPerSecond, double rttMs) {
+		uplinkBytesPerMs = uplinkBytesPerSecond / 1000;
+		downlinkBytesPerMs = downlinkBytesPerSecond / 1000;
+		this.rttMs = rttMs;
+	}
+
+	/**
+	 * Forgets the compute costs, after the effects have changed. Until the
+	 * new effects have been measured on the device they count as free there,
+	 * so frames go back to the device for a while to measure them.
+	 */
+	public synchronized void effectsChanged() {
+		effectCostMs = new double[0];
+		remoteComputeMs = -1;
+	}
+
+	/**
+	 * Records the size of an unencoded frame, which is what the upload is
+	 * assumed to cost until a frame has been encoded and sent.
+	 * @param bytes the size of the frame's pixels
+	 */
+	public synchronized void recordRawFrameSize(long bytes) {
+		rawFrameBytes = bytes;
+	}
+
+	/**
+	 * Records the size of an encoded frame sent to the server.
+	 * @param bytes the size of the encoded frame
+	 */
+	public synchronized void recordUpload(int bytes) {
+		uploadBytes = average(uploadBytes, bytes);
+	}
+
+	/**
+	 * Records the size of an encoded frame received from the server.
+	 * @param bytes the size of the encoded frame
+	 */
+	public synchronized void recordDownload(int bytes) {
+		downloadBytes = average(downloadBytes, bytes);
+	}
+
+	/**
+	 * Records how long each effect took on a frame processed on the device.
+	 * @param frame a frame processed by a local pipeline, with its stage timestamps
+	 */
+	public synchronized void recordLocalFrame(FrameEnvelope frame) {
+		if (frame.isLate()) {
+			// Its effects were skipped, so the stage times say nothing about their cost.
+			return;
+		}
+		int numStages = frame.getNumStages();
+		if (effectCostMs.length != numStages) {
+			effectCostMs = new double[numStages];
+			for (int i = 0; i < numStages; i++) {
+				effectCostMs[i] = -1;
+			}
+		}
+		for (int i = 0; i < numStages; i++) {
+			double ms = (frame.getStageEnd(i) - frame.getStageStart(i)) / 1e6;
+			effectCostMs[i] = average(effectCostMs[i], ms);
+		}
+	}
+
+	/**
+	 * Records how long a frame processed by the server took from its capture
+	 * until it came back, from which the server's compute time is worked out.
+	 * @param latencyMs the time between capturing the frame and receiving the result
+	 */
+	public synchronized void recordCloudFrame(long latencyMs) {
+		double computeMs = latencyMs - rttMs - transferMs();
+		remoteComputeMs = average(remoteComputeMs, Math.max(0, computeMs));
+	}
+
+	/**
+	 * Returns how long a frame is expected to take on the device.
+	 * @return the sum of the measured effect costs, or 0 if not measured yet
+	 */
+	public synchronized double getLocalEstimateMs() {
+		double ms = 0;
+		for (double cost : effectCostMs) {
+			ms += Math.max(0, cost);
+		}
+		return ms;
+	}
+
+	/**
+	 * Returns how long a frame is expected to take by way of the server.
+	 * @return the expected round trip, or infinity while the bandwidth is unknown
+	 */
+	public synchronized double getCloudEstimateMs() {
+		if (uplinkBytesPerMs <= 0 || downlinkBytesPerMs <= 0) {
+			return Double.POSITIVE_INFINITY;
+		}
+		double computeMs = remoteComputeMs >= 0 ? remoteComputeMs : getLocalEstimateMs() / serverSpeedup;
+		return rttMs + transferMs() + computeMs;
+	}
+
+	/**
+	 * Returns where frames are processed now, without deciding again.
+	 * @return the current placement
+	 */
+	public synchronized Placement getPlacement() {
+		return placement;
+	}
+
+	/**
+	 * Decides where the next frame is processed. Switches only if the other
+	 * placement is expected to be faster by the margin and the current one
+	 * has been kept long enough, unless the server cannot be reached.
+	 * @param now the current time in milliseconds
+	 * @return where the next frame should be processed
+	 */
+	public synchronized Placement decide(long now) {
+		if (!cloudAvailable) {
+			placement = Placement.LOCAL;
+			return placement;
+		}
+		if (now - lastSwitch < minDwellMs) {
+			return placement;
+		}
+		double localMs = getLocalEstimateMs();
+		double cloudMs = getCloudEstimateMs();
+		Placement better = placement;
+		if (placement == Placement.LOCAL && cloudMs < localMs * (1 - margin)) {
+			better = Placement.CLOUD;
+		} else if (placement == Placement.CLOUD && localMs < cloudMs * (1 - margin)) {
+			better = Placement.LOCAL;
+		}
+		if (better != placement) {
+			placement = better;
+			lastSwitch = now;
+		}
+		return placement;
+	}
+
+	/**
+	 * Returns the time to upload a frame and download the result.
+	 * @return the expected transfer time in milliseconds
+	 */
+	private double transferMs() {
+		double up = uploadBytes >= 0 ? uploadBytes : rawFrameBytes;
+		double down = downloadBytes >= 0 ? downloadBytes : up;
+		double ms = 0;
+		if (uplinkBytesPerMs > 0) {
+			ms += up / uplinkBytesPerMs;
+		}
+		if (downlinkBytesPerMs > 0) {
+			ms += down / downlinkBytesPerMs;
+		}
+		return ms;
+	}
+
+	private static double average(double average, double sample) {
+		return average < 0 ? sample : average + SMOOTHING * (sample - average);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public synchronized String toString() {
+		return placement + " (local " + Math.round(getLocalEstimateMs()) + " ms, cloud "
+				+ Math.round(getCloudEstimateMs()) + " ms)";
+	}
+}
@@ -2,9 +2,7 @@ package com.cs4911.video_editor.pipeline;
 
 import java.util.ArrayList;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
-
-import org.opencv.core.Mat;
+import java.util.concurrent.Executor;
 
 import android.util.Log;
 
@@ -15,17 +13,42 @@ import com.cs4911.video_editor.effects.IdentityEffect;
  * Pulls frames from the input queue, processes them by applying
  * a list of effects in order, and deposits the processed frames
  * into the output queue. Runs all effects as separate threads
- * to prevent waiting for offloaded effects to complete.
+ * to prevent waiting for offloaded effects to complete, or, when
+ * given an Executor, as EffectStages that share its workers with
+ * every other pipeline.
+ *
+ * Frames enter the effects through an EpochGate. When the effects change,
+ * the old effect tasks finish the frames they already have while the gate
+ * holds new frames back, and new frames go through the new effect tasks.
+ *
+ * The effects may be changed by one thread while others read how many
+ * frames were dropped or skipped, so the effect tasks, threads and stages
+ * are only touched while holding the lock of the Pipeline.
  */
 public class Pipeline {
 	private static final String TAG = "Pipeline";
 
-	private BlockingQueue<Mat> unprocessedFrameQueue, processedFrameQueue;
+	private BlockingQueue<FrameEnvelope> unprocessedFrameQueue, processedFrameQueue;
 
 	private boolean running;
+	private int epoch;
 
+	private Executor executor;
+	private EpochGate gate;
+	private Thread gateThread;
+	private EffectStage gateStage;
 	private ArrayList<Thread> effectThreads;
+	private ArrayList<EffectStage> effectStages;
 	private ArrayList <EffectTask> effectTasks;
+	private BackpressurePolicy outputPolicy;
+	private EffectProfiler profiler;
+
+	// Threads, stages and tasks of replaced effects that are finishing their frames.
+	private ArrayList<Thread> retiringThreads;
+	private ArrayList<EffectStage> retiringStages;
+	private ArrayList<EffectTask> retiringTasks;
+	// Frames dropped and skipped by replaced effect tasks that have finished.
+	private long retiredDroppedFrames, retiredSkippedFrames;
 
 	/**
 	 * Creates a new pipeline that pulls frames from the unprocessedFrameQueue,
@@ -35,27 +58,50 @@ public class Pipeline {
 	 * @param processedFrameQueue the queue that processed frames should be put into
 	 * @param effects the effects to apply to each frame
 	 */
-	public Pipeline(BlockingQueue<Mat> unprocessedFrameQueue, BlockingQueue<Mat> processedFrameQueue, EffectTask[] effects) {
+	public Pipeline(BlockingQueue<FrameEnvelope> unprocessedFrameQueue, BlockingQueue<FrameEnvelope> processedFrameQueue, EffectTask[] effects) {
+		this(unprocessedFrameQueue, processedFrameQueue, effects, null);
+	}
+
+	/**
+	 * Creates a new pipeline that pulls frames from the unprocessedFrameQueue,
+	 * processes them by applying the given list of effects, and deposits them
+	 * into the processedFrameQueue. If an Executor is given, the effects run
+	 * on it as EffectStages instead of on threads of their own, and both
+	 * queues must be StageQueues so that the stages learn when to run.
+	 * @param unprocessedFrameQueue the queue containing frames to be processed
+	 * @param processedFrameQueue the queue that processed frames should be put into
+	 * @param effects the effects to apply to each frame
+	 * @param executor the Executor shared with other pipelines, or null to use a thread per effect
+	 */
+	public Pipeline(BlockingQueue<FrameEnvelope> unprocessedFrameQueue, BlockingQueue<FrameEnvelope> processedFrameQueue, EffectTask[] effects, Executor executor) {
+		if (executor != null && !(unprocessedFrameQueue instanceof StageQueue && processedFrameQueue instanceof StageQueue)) {
+			throw new IllegalArgumentException("A pipeline run on an Executor needs StageQueues");
+		}
 		this.unprocessedFrameQueue = unprocessedFrameQueue;
 		this.processedFrameQueue = processedFrameQueue;
+		this.executor = executor;
 		effectThreads = new ArrayList<Thread>();
+		effectStages = new ArrayList<EffectStage>();
 		effectTasks = new ArrayList<EffectTask>();
+		retiringThreads = new ArrayList<Thread>();
+		retiringStages = new ArrayList<EffectStage>();
+		retiringTasks = new ArrayList<EffectTask>();
 		running = false;
+		epoch = 0;
+
+		gate = new EpochGate(unprocessedFrameQueue);
+		if (executor != null) {
+			gateStage = new EffectStage(gate, executor);
+			((StageQueue<FrameEnvelope>) unprocessedFrameQueue).setConsumer(gateStage);
+		} else {
+			gateThread = new Thread(gate);
+		}
 
 		if (effects != null && effects.length >= 1) {
-			BlockingQueue<Mat> queue = unprocessedFrameQueue;
-			for (int i = 0; i < effects.length - 1; i++) {
-				EffectTask effect = effects[i];
-				effect.setInputQueue(queue);
-				queue = new LinkedBlockingQueue<Mat>(2);
-				effect.setOutputQueue(queue);
+			for (EffectTask effect : effects) {
 				effectTasks.add(effect);
 			}
-			EffectTask effect = effects[effects.length - 1];
-			effect.setInputQueue(queue);
-			effect.setOutputQueue(processedFrameQueue);
-			effectTasks.add(effect);
-			createThreads();
+			switchEffects();
 		}
 	}
 
@@ -65,44 +111,183 @@ public class Pipeline {
 	 * @param pipeline the pipeline that the new pipeline should copy
 	 */
 	public Pipeline(Pipeline pipeline) {
-		this(pipeline.unprocessedFrameQueue, pipeline.processedFrameQueue, pipeline.effectTasks.toArray(new EffectTask[0]));
+		this(pipeline, pipeline.unprocessedFrameQueue, pipeline.processedFrameQueue);
+		setOutputPolicy(pipeline.getOutputPolicy());
+	}
+
+	/**
+	 * Creates a new pipeline with the same effects as the given pipeline
+	 * that pulls frames from the unprocessedFrameQueue and deposits them
+	 * into the processedFrameQueue. Each effect task is copied so that
+	 * the two pipelines do not share threads or queues. The new pipeline
+	 * runs its effects on the same Executor, if any.
+	 * @param pipeline the pipeline whose effects the new pipeline should apply
+	 * @param unprocessedFrameQueue the queue containing frames to be processed
+	 * @param processedFrameQueue the queue that processed frames should be put into
+	 */
+	public Pipeline(Pipeline pipeline, BlockingQueue<FrameEnvelope> unprocessedFrameQueue, BlockingQueue<FrameEnvelope> processedFrameQueue) {
+		this(unprocessedFrameQueue, processedFrameQueue, copyEffectTasks(pipeline), pipeline.executor);
+		setProfiler(pipeline.getProfiler());
 	}
 
 	/**
 	 * Returns the list of effects that are applied by this pipeline.
 	 * @return the effects that this pipeline applies
 	 */
-	public ArrayList<Effect> getEffects() {
+	public synchronized ArrayList<Effect> getEffects() {
 		ArrayList<Effect> effects = new ArrayList<Effect>();
 		for(EffectTask et : effectTasks) {
-			if(!(et.getEffect() instanceof IdentityEffect)) {
-				effects.add(et.getEffect());
+			for(Effect effect : et.getEffects()) {
+				if(!(effect instanceof IdentityEffect)) {
+					effects.add(effect);
+				}
 			}
 		}
 		return effects;
 	}
 
 	/**
-	 * Starts all effect threads that have not yet been started.
+	 * Returns the epoch of this pipeline, which is advanced
+	 * every time its list of effects changes.
+	 * @return the current epoch
+	 */
+	public synchronized int getEpoch() {
+		return epoch;
+	}
+
+	/**
+	 * Returns the policy the last effect task follows when the processedFrameQueue is full.
+	 * @return the output policy, or null if the last effect task waits for room
+	 */
+	public synchronized BackpressurePolicy getOutputPolicy() {
+		return outputPolicy;
+	}
+
+	/**
+	 * Sets the policy the last effect task follows when the processedFrameQueue
+	 * is full. The effect tasks before it always wait for room, so every
+	 * frame that enters the pipeline reaches the last one.
+	 * @param outputPolicy the output policy, or null to wait for room
+	 */
+	public synchronized void setOutputPolicy(BackpressurePolicy outputPolicy) {
+		this.outputPolicy = outputPolicy;
+		if (!effectTasks.isEmpty()) {
+			effectTasks.get(effectTasks.size() - 1).setOutputPolicy(outputPolicy);
+		}
+	}
+
+	/**
+	 * Returns the EffectProfiler told what the effects of this pipeline cost.
+	 * @return the profiler, or null if the costs are not measured
+	 */
+	public synchronized EffectProfiler getProfiler() {
+		return profiler;
+	}
+
+	/**
+	 * Sets the EffectProfiler told what the effects of this pipeline cost,
+	 * for these effects and the ones that replace them.
+	 * @param profiler the profiler, or null to not measure the costs
+	 */
+	public synchronized void setProfiler(EffectProfiler profiler) {
+		this.profiler = profiler;
+		for (EffectTask effectTask : effectTasks) {
+			effectTask.setProfiler(profiler);
+		}
+	}
+
+	/**
+	 * Returns the number of frames the effect tasks of this pipeline have
+	 * dropped, including effect tasks that have since been replaced.
+	 * @return the number of frames dropped inside this pipeline
 	 */
-	public void start() {
+	public synchronized long getDroppedFrames() {
+		long droppedFrames = retiredDroppedFrames;
+		for (EffectTask effectTask : retiringTasks) {
+			droppedFrames += effectTask.getDroppedFrames();
+		}
+		for (EffectTask effectTask : effectTasks) {
+			droppedFrames += effectTask.getDroppedFrames();
+		}
+		return droppedFrames;
+	}
+
+	/**
+	 * Returns the number of times an effect task of this pipeline passed a
+	 * frame through because it had missed its deadline, including effect
+	 * tasks that have since been replaced. A frame is counted once for
+	 * every effect it skipped.
+	 * @return the number of effects skipped inside this pipeline
+	 */
+	public synchronized long getSkippedFrames() {
+		long skippedFrames = retiredSkippedFrames;
+		for (EffectTask effectTask : retiringTasks) {
+			skippedFrames += effectTask.getSkippedFrames();
+		}
+		for (EffectTask effectTask : effectTasks) {
+			skippedFrames += effectTask.getSkippedFrames();
+		}
+		return skippedFrames;
+	}
+
+	/**
+	 * Starts the gate and all effect threads or stages that have not yet been started.
+	 */
+	public synchronized void start() {
 		Log.d(TAG, "start()");
-		for (Thread thread : effectThreads) {
-			if (thread.getState() == Thread.State.NEW) {
-				thread.start();
-			}
+		if (gateThread != null && gateThread.getState() == Thread.State.NEW) {
+			gateThread.start();
 		}
+		if (gateStage != null && !gateStage.isRunning()) {
+			gateStage.start();
+		}
+		// Replaced effects that never ran still need to see END_OF_CHAIN to finish.
+		startThreads(retiringThreads);
+		startThreads(effectThreads);
+		startStages(retiringStages);
+		startStages(effectStages);
 		running = true;
 	}
 
 	/**
-	 * Stops all effect threads.
+	 * Stops the gate and all effect threads or stages, including those still
+	 * finishing frames for replaced effects, and waits for them to finish
+	 * the frames they are working on, so that afterwards none of them
+	 * uses the queues any more. Frames still queued are not processed.
+	 * None of them takes the lock of the Pipeline, so it is held meanwhile.
 	 */
-	public void stop() {
+	public synchronized void stop() {
 		Log.d(TAG, "stop()");
-		for (Thread thread : effectThreads) {
+		ArrayList<Thread> threads = new ArrayList<Thread>();
+		ArrayList<EffectStage> stages = new ArrayList<EffectStage>();
+		if (gateThread != null) {
+			threads.add(gateThread);
+		}
+		if (gateStage != null) {
+			stages.add(gateStage);
+		}
+		threads.addAll(retiringThreads);
+		threads.addAll(effectThreads);
+		stages.addAll(retiringStages);
+		stages.addAll(effectStages);
+
+		gate.stop();
+		for (Thread thread : threads) {
 			thread.interrupt();
 		}
+		for (EffectStage stage : stages) {
+			stage.stop();
+		}
+		try {
+			for (Thread thread : threads) {
+				thread.join();
+			}
+			for (EffectStage stage : stages) {
+				stage.awaitStopped();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
 		running = false;
 	}
 
@@ -110,25 +295,9 @@ public class Pipeline {
 	 * Adds the given effect at the end of the pipeline.
 	 * @param effect the effect to add to the pipeline
 	 */
-	public void addEffect(EffectTask effect) {
+	public synchronized void addEffect(EffectTask effect) {
 		Log.d(TAG, "addEffect(" + effect + ")");
-		effect.setOutputQueue(processedFrameQueue);
-		if (!effectTasks.isEmpty()) {
-			Thread oldEffectThread = effectThreads.remove(effectThreads.size() - 1);
-			oldEffectThread.interrupt();
-			EffectTask oldEffectTask = effectTasks.get(effectTasks.size() - 1);
-			BlockingQueue<Mat> queue = new LinkedBlockingQueue<Mat>(2);
-			oldEffectTask.setOutputQueue(queue);
-			effectThreads.add(new Thread(oldEffectTask));
-			effect.setInputQueue(queue);
-		} else {
-			effect.setInputQueue(unprocessedFrameQueue);
-		}
-		effectTasks.add(effect);
-		effectThreads.add(new Thread(effect));
-		if (running) {
-			start();
-		}
+		addEffect(effectTasks.size(), effect);
 	}
 
 	/**
@@ -136,73 +305,25 @@ public class Pipeline {
 	 * @param index the desired index of the new effect
 	 * @param effect the effect to add to the pipeline
 	 */
-	public void addEffect(int index, EffectTask effect) {
-		if (index >= effectTasks.size()) {
-			addEffect(effect);
-		} else if (index == 0) {
-			EffectTask nextEffectTask = effectTasks.get(index);
-			effect.inputQueue = nextEffectTask.inputQueue;
-			BlockingQueue<Mat> queue = new LinkedBlockingQueue<Mat>(2);
-			effect.outputQueue = queue;
-			nextEffectTask.inputQueue = queue;
-			effectTasks.add(index, effect);
-			Thread effectThread = new Thread(effect);
-			effectThreads.add(index, effectThread);
-			Thread nextEffectThread = effectThreads.remove(index + 1);
-			nextEffectThread.interrupt();
-			nextEffectThread = new Thread(nextEffectTask);
-			effectThreads.add(index + 1, nextEffectThread);
-		} else {
-			EffectTask nextEffectTask = effectTasks.get(index);
-			EffectTask previousEffectTask = effectTasks.get(index - 1);
-			effect.inputQueue = previousEffectTask.outputQueue;
-			BlockingQueue<Mat> queue = new LinkedBlockingQueue<Mat>(2);
-			effect.outputQueue = queue;
-			nextEffectTask.inputQueue = queue;
-			effectTasks.add(index, effect);
-			Thread previousEffectThread = effectThreads.remove(index - 1);
-			Thread nextEffectThread = effectThreads.remove(index - 1);
-			Thread effectThread = new Thread(effect);
-			previousEffectThread = new Thread(previousEffectTask);
-			nextEffectThread = new Thread(nextEffectTask);
-			effectThreads.add(index - 1, previousEffectThread);
-			effectThreads.add(index, effectThread);
-			effectThreads.add(index + 1, nextEffectThread);
-		}
-		if (running) {
-			start();
-		}
+	public synchronized void addEffect(int index, EffectTask effect) {
+		ArrayList<EffectTask> tasks = carryOverEffectTasks();
+		tasks.add(Math.min(Math.max(index, 0), tasks.size()), effect);
+		replaceEffectTasks(tasks);
 	}
 
 	/**
 	 * Removes the effect at the given index.
 	 * @param index the index of the effect to be removed
 	 */
-	public void removeEffect(int index) {
+	public synchronized void removeEffect(int index) {
 		if (index < effectTasks.size() && index >= 0) {
-			Thread effectThread = effectThreads.remove(index);
-			EffectTask effectTask = effectTasks.remove(index);
-			effectThread.interrupt();
-			if (index < effectTasks.size()) {
-				Thread nextEffectThread = effectThreads.remove(index);
-				EffectTask nextEffectTask = effectTasks.get(index);
-				nextEffectTask.inputQueue = effectTask.inputQueue;
-				nextEffectThread.interrupt();
-				nextEffectThread = new Thread(nextEffectTask);
-				effectThreads.add(index, nextEffectThread);
-			} else if (effectTasks.size() == 0) {
+			if (effectTasks.size() == 1) {
 				clearEffects();
-			} else {
-				Thread previousEffectThread = effectThreads.remove(index - 1);
-				EffectTask previousEffectTask = effectTasks.get(index - 1);
-				previousEffectTask.outputQueue = effectTask.outputQueue;
-				previousEffectThread.interrupt();
-				previousEffectThread = new Thread(previousEffectTask);
-				effectThreads.add(index - 1, previousEffectThread);
-			}
-			if (running) {
-				start();
+				return;
 			}
+			ArrayList<EffectTask> tasks = carryOverEffectTasks();
+			tasks.remove(index);
+			replaceEffectTasks(tasks);
 		}
 	}
 
@@ -211,41 +332,208 @@ public class Pipeline {
 	 * @param startIndex the current location of the effect
 	 * @param endIndex the desired location of the effect
 	 */
-	public void moveEffect(int startIndex, int endIndex) {
-		EffectTask effect = effectTasks.get(startIndex);
-		removeEffect(startIndex);
-		addEffect(endIndex, effect);
+	public synchronized void moveEffect(int startIndex, int endIndex) {
+		ArrayList<EffectTask> tasks = carryOverEffectTasks();
+		EffectTask effect = tasks.remove(startIndex);
+		tasks.add(Math.min(Math.max(endIndex, 0), tasks.size()), effect);
+		replaceEffectTasks(tasks);
 	}
 
 	/**
-	 * Stops all threads and removes all effect tasks.
+	 * Replaces all effects with the given effects in one step. Frames that
+	 * the old effects have started on are finished by them, and frames after
+	 * those go through the new effects, so a frame is processed either by
+	 * the old effects or by the new ones, never by a mix of both.
+	 * If no effects are given, the pipeline is cleared.
+	 * @param effects the effects to apply to each frame
+	 */
+	public synchronized void setEffects(EffectTask[] effects) {
+		if (effects == null || effects.length == 0) {
+			clearEffects();
+			return;
+		}
+		ArrayList<EffectTask> tasks = new ArrayList<EffectTask>();
+		for (EffectTask effect : effects) {
+			tasks.add(effect);
+		}
+		replaceEffectTasks(tasks);
+	}
+
+	/**
+	 * Removes all effect tasks, letting them finish the frames they have.
 	 * Adds IdentityEffect task to process frames.
 	 */
-	public void clearEffects() {
+	public synchronized void clearEffects() {
 		Log.d(TAG, "clearEffects()");
-		effectTasks.clear();
+		ArrayList<EffectTask> tasks = new ArrayList<EffectTask>();
+		tasks.add(new LocalEffectTask(new IdentityEffect()));
+		replaceEffectTasks(tasks);
+	}
 
-		EffectTask effectTask = new LocalEffectTask(new IdentityEffect());
-		effectTask.setInputQueue(unprocessedFrameQueue);
-		effectTask.setOutputQueue(processedFrameQueue);
+	/**
+	 * Makes the given effect tasks the effects of this pipeline
+	 * and advances the epoch.
+	 * @param tasks the new effect tasks, none of which may be running already
+	 */
+	private void replaceEffectTasks(ArrayList<EffectTask> tasks) {
+		retiringTasks.addAll(effectTasks);
+		effectTasks = tasks;
+		advanceEpoch();
+		switchEffects();
+	}
+
+	/**
+	 * Connects the effect tasks in order, with a new ring buffer before each,
+	 * the last one putting frames into the processedFrameQueue.
+	 * Each ring buffer has exactly one task on either side of it,
+	 * the gate or an effect task, so it never has a second producer
+	 * or consumer.
+	 * @return the ring buffer the gate should put frames into
+	 */
+	private BlockingQueue<FrameEnvelope> connectEffectTasks() {
+		BlockingQueue<FrameEnvelope> firstQueue = new SpscRingBuffer<FrameEnvelope>(2);
+		BlockingQueue<FrameEnvelope> queue = firstQueue;
+		for (int i = 0; i < effectTasks.size() - 1; i++) {
+			EffectTask effect = effectTasks.get(i);
+			effect.setInputQueue(queue);
+			queue = new SpscRingBuffer<FrameEnvelope>(2);
+			effect.setOutputQueue(queue);
+			effect.setLastStage(false);
+			effect.setOutputPolicy(null);
+		}
+		for (EffectTask effectTask : effectTasks) {
+			effectTask.setProfiler(profiler);
+		}
+		EffectTask effect = effectTasks.get(effectTasks.size() - 1);
+		effect.setInputQueue(queue);
+		effect.setOutputQueue(processedFrameQueue);
+		effect.setLastStage(true);
+		effect.setOutputPolicy(outputPolicy);
+		return firstQueue;
+	}
 
-		effectTasks.add(effectTask);
-		createThreads();
+	/**
+	 * Advances the epoch after the list of effects has changed
+	 * and tells every effect task about it.
+	 */
+	private void advanceEpoch() {
+		epoch++;
+		for (EffectTask effectTask : effectTasks) {
+			effectTask.setPipelineEpoch(epoch);
+		}
 	}
 
 	/**
-	 * Stops all currently running threads and creates and runs
-	 * new threads using the current effect tasks.
+	 * Returns unconnected effect tasks for the current effects, in the same
+	 * order, since the current tasks keep running until they have finished.
+	 * The new tasks apply the same effects, not copies, so that effects that
+	 * keep state go on where they left off; the gate lets no frame reach
+	 * them before the current tasks have finished.
+	 * @return the new effect tasks
 	 */
-	private void createThreads() {
-		boolean wasRunning = running;
-		stop();
-		effectThreads.clear();
+	private ArrayList<EffectTask> carryOverEffectTasks() {
+		ArrayList<EffectTask> tasks = new ArrayList<EffectTask>();
 		for (EffectTask effectTask : effectTasks) {
-			effectThreads.add(new Thread(effectTask));
+			tasks.add(effectTask.carryOver());
 		}
-		if (wasRunning) {
-			start();
+		return tasks;
+	}
+
+	/**
+	 * Returns unconnected copies of the effect tasks of the given pipeline, in the same order.
+	 * @param pipeline the pipeline whose effect tasks to copy
+	 * @return the copied effect tasks
+	 */
+	private static EffectTask[] copyEffectTasks(Pipeline pipeline) {
+		synchronized (pipeline) {
+			EffectTask[] copies = new EffectTask[pipeline.effectTasks.size()];
+			for (int i = 0; i < copies.length; i++) {
+				copies[i] = pipeline.effectTasks.get(i).copy();
+			}
+			return copies;
+		}
+	}
+
+	/**
+	 * Connects the current effect tasks, creates threads or stages for them,
+	 * and tells the gate to switch to them once the effect tasks before them
+	 * have finished. The threads or stages of those are kept until they have.
+	 */
+	private void switchEffects() {
+		pruneRetired();
+		retiringThreads.addAll(effectThreads);
+		retiringStages.addAll(effectStages);
+		effectThreads = new ArrayList<Thread>();
+		effectStages = new ArrayList<EffectStage>();
+
+		BlockingQueue<FrameEnvelope> firstQueue = connectEffectTasks();
+		EffectTask lastTask = effectTasks.get(effectTasks.size() - 1);
+		if (executor != null) {
+			EffectStage upstream = gateStage;
+			for (EffectTask effectTask : effectTasks) {
+				EffectStage stage = new EffectStage(effectTask, executor);
+				((StageQueue<FrameEnvelope>) effectTask.inputQueue).setConsumer(stage);
+				((StageQueue<FrameEnvelope>) effectTask.inputQueue).addProducer(upstream);
+				effectStages.add(stage);
+				upstream = stage;
+			}
+			((StageQueue<FrameEnvelope>) processedFrameQueue).addProducer(upstream);
+			lastTask.setFinishListener(gateStage);
+		} else {
+			for (EffectTask effectTask : effectTasks) {
+				effectThreads.add(new Thread(effectTask));
+			}
+		}
+		if (running) {
+			startThreads(effectThreads);
+			startStages(effectStages);
+		}
+
+		gate.switchTo(firstQueue, lastTask);
+		if (gateThread != null) {
+			// Wakes the gate if it is waiting for a frame or for room.
+			gateThread.interrupt();
+		} else {
+			gateStage.signal();
+		}
+	}
+
+	/**
+	 * Forgets the threads, stages and tasks of replaced effects that have finished.
+	 */
+	private void pruneRetired() {
+		for (int i = retiringThreads.size() - 1; i >= 0; i--) {
+			if (retiringThreads.get(i).getState() == Thread.State.TERMINATED) {
+				retiringThreads.remove(i);
+			}
+		}
+		for (int i = retiringStages.size() - 1; i >= 0; i--) {
+			if (retiringStages.get(i).isReleased()) {
+				retiringStages.remove(i);
+			}
+		}
+		for (int i = retiringTasks.size() - 1; i >= 0; i--) {
+			if (retiringTasks.get(i).isFinished()) {
+				EffectTask effectTask = retiringTasks.remove(i);
+				retiredDroppedFrames += effectTask.getDroppedFrames();
+				retiredSkippedFrames += effectTask.getSkippedFrames();
+			}
+		}
+	}
+
+	private static void startThreads(ArrayList<Thread> threads) {
+		for (Thread thread : threads) {
+			if (thread.getState() == Thread.State.NEW) {
+				thread.start();
+			}
+		}
+	}
+
+	private static void startStages(ArrayList<EffectStage> stages) {
+		for (EffectStage stage : stages) {
+			if (!stage.isRunning()) {
+				stage.start();
+			}
 		}
 	}
 }
@@ -0,0 +1,462 @@
+package com.cs4911.video_editor.pipeline;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.opencv.core.Mat;
+
+import com.cs4911.video_editor.effects.Effect;
+
+/**
+ * Applies a list of effects to frames on a server instead of on the device,
+ * so that a pipeline can apply its first effects locally and the rest
+ * remotely. Up to a window of frames is sent before waiting for the first
+ * result, which an InFlightController can size from the measured round trip. Results are matched to the frames they came from by sequence
+ * number and handed on in the order the frames came in.
+ *
+ * A frame the server does not give back is dropped, and handed on as such,
+ * once a later frame comes back or after LOST_AFTER_MS without any result.
+ * Only one RemoteEffectTask
+ * may use an endpoint at a time; the chains of a pipeline take turns, since
+ * its gate holds frames back from a new chain until the old one has finished.
+ * The task waits for results in processNext as well, so it is best run by a
+ * thread of its own.
+ */
+public class RemoteEffectTask extends EffectTask {
+
+	private static final int DEFAULT_WINDOW = 2;
+	private static final int RECEIVE_TIMEOUT_MS = 100;
+	static final long LOST_AFTER_MS = 1000;
+	// Weight of a new measurement in the running averages.
+	private static final double SMOOTHING = 0.2;
+
+	private final List<Effect> effects;
+	private final RemoteEndpoint endpoint;
+	private final int window;
+	// Sets the window from the measured round trip, if set.
+	private volatile InFlightController inFlightController;
+
+	// Frames sent, and late frames waiting behind them, oldest first.
+	private final ArrayDeque<InFlightFrame> inFlight = new ArrayDeque<InFlightFrame>();
+	// Frames that are done but could not be handed on yet.
+	private final ArrayDeque<FrameEnvelope> ready = new ArrayDeque<FrameEnvelope>();
+	// Sizes of the two queues, for hasWork, which other threads call.
+	private volatile int numInFlight, numReady;
+	private volatile boolean ending;
+	private boolean effectsSent;
+	private long lastProgress;
+
+	// Running averages; negative until the first measurement.
+	private volatile double uploadRatio = -1;
+	private volatile double remoteComputeMs = -1;
+
+	/**
+	 * A frame handed to the server, or passed through behind those that were.
+	 */
+	private static class InFlightFrame {
+		final FrameEnvelope frame;
+		// System.nanoTime() at which the frame was sent, or 0 if it was late and not sent.
+		final long sent;
+		FrameEnvelope result;
+		boolean lost;
+
+		InFlightFrame(FrameEnvelope frame, long sent) {
+			this.frame = frame;
+			this.sent = sent;
+		}
+
+		boolean isDone() {
+			return sent == 0 || result != null || lost;
+		}
+	}
+
+	/**
+	 * Creates a RemoteEffectTask that applies the given effects on the server
+	 * behind the given endpoint, with at most two frames on their way at once.
+	 * @param effects the effects to apply, in order; there has to be at least one
+	 * @param endpoint the server to apply them on
+	 */
+	public RemoteEffectTask(List<Effect> effects, RemoteEndpoint endpoint) {
+		this(effects, endpoint, DEFAULT_WINDOW);
+	}
+
+	/**
+	 * Creates a RemoteEffectTask that applies the given effects on the server
+	 * behind the given endpoint.
+	 * @param effects the effects to apply, in order; there has to be at least one
+	 * @param endpoint the server to apply them on
+	 * @param window the most frames sent that have not come back yet
+	 */
+	public RemoteEffectTask(List<Effect> effects, RemoteEndpoint endpoint, int window) {
+		super(effects.isEmpty() ? null : effects.get(0));
+		if (effects.isEmpty()) {
+			throw new IllegalArgumentException("A RemoteEffectTask needs at least one effect");
+		}
+		this.effects = new ArrayList<Effect>(effects);
+		this.endpoint = endpoint;
+		this.window = window;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.pipeline.EffectTask#getEffects()
+	 */
+	@Override
+	public List<Effect> getEffects() {
+		return Collections.unmodifiableList(effects);
+	}
+
+	/**
+	 * Returns the server this task applies its effects on.
+	 * @return the endpoint
+	 */
+	public RemoteEndpoint getEndpoint() {
+		return endpoint;
+	}
+
+	/**
+	 * Sets the InFlightController that decides how many frames are sent
+	 * before waiting for the first result, in place of the fixed window.
+	 * It is told how long every frame took to come back.
+	 * @param inFlightController the controller to use, or null to use the fixed window
+	 */
+	public void setInFlightController(InFlightController inFlightController) {
+		this.inFlightController = inFlightController;
+	}
+
+	/**
+	 * Returns the InFlightController that decides how many frames are sent
+	 * before waiting for the first result.
+	 * @return the controller, or null if the window is fixed
+	 */
+	public InFlightController getInFlightController() {
+		return inFlightController;
+	}
+
+	/**
+	 * Returns the size of a frame as sent, relative to the size of its pixels.
+	 * @return the average ratio of encoded to raw bytes, or -1 if no frame was sent yet
+	 */
+	public double getUploadRatio() {
+		return uploadRatio;
+	}
+
+	/**
+	 * Returns how long the server took to apply the effects to a frame,
+	 * as reported by the server, without the time spent on the network.
+	 * @return the average compute time in milliseconds, or -1 if no frame came back yet
+	 */
+	public double getRemoteComputeMs() {
+		return remoteComputeMs;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.pipeline.EffectTask#copy()
+	 */
+	@Override
+	public EffectTask copy() {
+		List<Effect> copies = new ArrayList<Effect>();
+		for (Effect effect : effects) {
+			copies.add(effect.copy());
+		}
+		RemoteEffectTask task = new RemoteEffectTask(copies, endpoint, window);
+		task.setInFlightController(inFlightController);
+		return task;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Runnable#run()
+	 */
+	@Override
+	public void run() {
+		try {
+			while (true) {
+				FrameEnvelope frame;
+				while ((frame = ready.poll()) != null) {
+					handOn(frame);
+				}
+				numReady = 0;
+				if (!ending && inFlight.size() < getWindow()) {
+					frame = inFlight.isEmpty() ? inputQueue.take() : inputQueue.poll();
+					if (frame == END_OF_CHAIN) {
+						ending = true;
+					} else if (frame != null) {
+						send(frame);
+						continue;
+					}
+				}
+				if (inFlight.isEmpty()) {
+					if (ending) {
+						break;
+					}
+					continue;
+				}
+				receive();
+			}
+			if (!lastStage) {
+				outputQueue.put(END_OF_CHAIN);
+			}
+		} catch (InterruptedException e) {
+			// stopped
+		}
+		release();
+		finish();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.pipeline.EffectTask#hasWork()
+	 */
+	@Override
+	public boolean hasWork() {
+		if (isFinished()) {
+			return false;
+		}
+		if (numReady > 0) {
+			return canHandOn();
+		}
+		return numInFlight > 0 || ending || !inputQueue.isEmpty();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.pipeline.EffectTask#processNext()
+	 */
+	@Override
+	public boolean processNext() {
+		if (isFinished()) {
+			return false;
+		}
+		FrameEnvelope frame = ready.peek();
+		if (frame != null) {
+			if (!tryHandOn(frame)) {
+				return false;
+			}
+			ready.poll();
+			numReady = ready.size();
+			return true;
+		}
+		if (ending && inFlight.isEmpty()) {
+			if (lastStage || outputQueue.offer(END_OF_CHAIN)) {
+				finish();
+				return true;
+			}
+			return false;
+		}
+		if (!ending && inFlight.size() < getWindow()) {
+			frame = inputQueue.poll();
+			if (frame == END_OF_CHAIN) {
+				ending = true;
+				return true;
+			} else if (frame != null) {
+				send(frame);
+				return true;
+			}
+		}
+		if (inFlight.isEmpty()) {
+			return false;
+		}
+		receive();
+		return numReady > 0;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.pipeline.EffectTask#release()
+	 */
+	@Override
+	public void release() {
+		for (InFlightFrame entry : inFlight) {
+			entry.frame.recycle();
+		}
+		inFlight.clear();
+		for (FrameEnvelope frame : ready) {
+			frame.recycle();
+		}
+		ready.clear();
+		numInFlight = 0;
+		numReady = 0;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.pipeline.EffectTask#toString()
+	 */
+	@Override
+	public String toString() {
+		return "Remote" + effects;
+	}
+
+	/**
+	 * Sends a frame to the server, telling it the effects first if this is
+	 * the first frame. A frame that has missed its deadline, was dropped
+	 * already or cannot be sent is not sent but waits behind the frames
+	 * that were, and is then passed through.
+	 * @param frame the frame to send
+	 */
+	private void send(FrameEnvelope frame) {
+		InFlightController controller = inFlightController;
+		if (controller != null) {
+			controller.recordFrameAdded(System.currentTimeMillis());
+		}
+		if (inFlight.isEmpty()) {
+			lastProgress = System.currentTimeMillis();
+		}
+		if (frame.isDropped()) {
+			inFlight.add(new InFlightFrame(frame, 0));
+		} else if (frame.hasMissedDeadline()) {
+			frame.markLate();
+			countSkippedFrame();
+			inFlight.add(new InFlightFrame(frame, 0));
+		} else {
+			try {
+				if (!effectsSent) {
+					endpoint.setRemoteEffects(effects);
+					effectsSent = true;
+				}
+				long start = System.nanoTime();
+				int bytes = endpoint.send(frame);
+				Mat mat = frame.getMat();
+				uploadRatio = average(uploadRatio, bytes / (double) (mat.total() * mat.elemSize()));
+				inFlight.add(new InFlightFrame(frame, start));
+			} catch (IOException e) {
+				e.printStackTrace();
+				dropFrame(frame);
+				inFlight.add(new InFlightFrame(frame, 0));
+			}
+		}
+		advance();
+	}
+
+	/**
+	 * Waits for processed frames and matches them to the frames they came from.
+	 * Frames sent before one that came back, and the oldest frame once nothing
+	 * has come back for too long, are given up on.
+	 */
+	private void receive() {
+		List<FrameEnvelope> results;
+		try {
+			results = endpoint.receive(getWindow(), RECEIVE_TIMEOUT_MS);
+		} catch (IOException e) {
+			e.printStackTrace();
+			results = Collections.emptyList();
+			for (InFlightFrame entry : inFlight) {
+				entry.lost = entry.result == null;
+			}
+		}
+		for (FrameEnvelope result : results) {
+			match(result);
+		}
+		if (System.currentTimeMillis() - lastProgress > LOST_AFTER_MS) {
+			for (InFlightFrame entry : inFlight) {
+				if (!entry.isDone()) {
+					entry.lost = true;
+					break;
+				}
+			}
+		}
+		advance();
+	}
+
+	/**
+	 * Finds the frame a result came from. Results come back in the order
+	 * the frames were sent, so frames before it that are still waiting
+	 * were lost by the server.
+	 * @param result a processed frame from the server
+	 */
+	private void match(FrameEnvelope result) {
+		InFlightFrame match = null;
+		for (InFlightFrame entry : inFlight) {
+			if (entry.sent != 0 && entry.result == null && entry.frame.getSequenceNumber() == result.getSequenceNumber()) {
+				match = entry;
+				break;
+			}
+		}
+		if (match == null) {
+			// Given up on already.
+			return;
+		}
+		match.result = result;
+		for (InFlightFrame entry : inFlight) {
+			if (entry == match) {
+				break;
+			}
+			if (!entry.isDone()) {
+				entry.lost = true;
+			}
+		}
+	}
+
+	/**
+	 * Moves the frames at the front that are done to the frames ready to be handed on.
+	 */
+	private void advance() {
+		Iterator<InFlightFrame> iterator = inFlight.iterator();
+		while (iterator.hasNext()) {
+			InFlightFrame entry = iterator.next();
+			if (!entry.isDone()) {
+				break;
+			}
+			iterator.remove();
+			lastProgress = System.currentTimeMillis();
+			if (entry.lost) {
+				dropFrame(entry.frame);
+			} else if (!entry.frame.isDropped()) {
+				complete(entry);
+			}
+			ready.add(entry.frame);
+		}
+		numInFlight = inFlight.size();
+		numReady = ready.size();
+	}
+
+	/**
+	 * Puts the result of the server into the envelope of the frame it came
+	 * from, and records the time the frame spent away as this task's stage.
+	 * @param entry a frame that came back or was passed through
+	 */
+	private void complete(InFlightFrame entry) {
+		FrameEnvelope frame = entry.frame;
+		long end = System.nanoTime();
+		if (entry.result != null) {
+			FrameEnvelope result = entry.result;
+			double computeMs = 0;
+			for (int i = 0; i < result.getNumStages(); i++) {
+				computeMs += (result.getStageEnd(i) - result.getStageStart(i)) / 1e6;
+			}
+			remoteComputeMs = average(remoteComputeMs, computeMs);
+			InFlightController controller = inFlightController;
+			if (controller != null) {
+				controller.recordBatch(1, (end - entry.sent) / 1e6, computeMs);
+			}
+			Mat src = frame.getMat();
+			MatPool srcPool = frame.getMatPool();
+			frame.setMat(result.getMat());
+			if (srcPool != null) {
+				srcPool.give(src);
+			}
+		}
+		Mat mat = frame.getMat();
+		frame.recordStage(entry.sent != 0 ? entry.sent : end, end, mat != null ? mat.total() * mat.elemSize() : -1);
+		frame.setPipelineEpoch(pipelineEpoch);
+	}
+
+	/**
+	 * Returns the most frames to send before waiting for the first result.
+	 * @return the window
+	 */
+	private int getWindow() {
+		InFlightController controller = inFlightController;
+		return controller != null ? controller.getInFlightFrames() : window;
+	}
+
+	private static double average(double average, double sample) {
+		return average < 0 ? sample : average + SMOOTHING * (sample - average);
+	}
+}
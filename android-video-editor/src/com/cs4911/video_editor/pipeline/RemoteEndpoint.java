@@ -0,0 +1,65 @@
+package com.cs4911.video_editor.pipeline;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.cs4911.video_editor.effects.Effect;
+
+/**
+ * A server that a RemoteEffectTask hands frames to. The server applies
+ * the effects it was last given to every frame it is sent, in the order
+ * the frames were sent, and gives the results back with the sequence
+ * numbers of the frames they came from.
+ */
+public interface RemoteEndpoint {
+
+	/**
+	 * Returns whether frames can be sent to the server.
+	 * @return true if connected
+	 */
+	public boolean isConnected();
+
+	/**
+	 * Replaces the effects the server applies to frames.
+	 * @param effects the effects to apply, in order
+	 * @throws IOException if the server could not be told
+	 */
+	public void setRemoteEffects(List<Effect> effects) throws IOException;
+
+	/**
+	 * Sends a frame to the server without waiting for the result.
+	 * @param frame the frame to process
+	 * @return the number of bytes sent
+	 * @throws IOException if the frame could not be sent
+	 */
+	public int send(FrameEnvelope frame) throws IOException;
+
+	/**
+	 * Fetches processed frames, waiting until at least one is ready or the timeout passes.
+	 * Each result carries the sequence number of the frame it came from, and the
+	 * start and end of every stage the server ran, which only tell how long they took.
+	 * @param maxFrames the most frames to fetch
+	 * @param timeoutMs how long to wait for the first frame
+	 * @return the processed frames in the order they were sent, possibly none
+	 * @throws IOException if the frames could not be fetched
+	 */
+	public List<FrameEnvelope> receive(int maxFrames, int timeoutMs) throws IOException;
+
+	/**
+	 * Returns the measured bandwidth towards the server.
+	 * @return the upload bandwidth in bytes per second, or 0 if unknown
+	 */
+	public double getUploadBandwidth();
+
+	/**
+	 * Returns the measured bandwidth from the server.
+	 * @return the download bandwidth in bytes per second, or 0 if unknown
+	 */
+	public double getDownloadBandwidth();
+
+	/**
+	 * Returns the measured round trip time to the server.
+	 * @return the round trip time in milliseconds
+	 */
+	public double getRtt();
+}
@@ -0,0 +1,177 @@
+package com.cs4911.video_editor.pipeline;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A StageQueue backed by a LinkedBlockingQueue, for queues that any
+ * number of threads may put to and take from at the same time.
+ * Without stages attached it behaves like a plain LinkedBlockingQueue.
+ */
+public class SignalingQueue<E> extends LinkedBlockingQueue<E> implements StageQueue<E> {
+
+	private static final long serialVersionUID = 1L;
+
+	private transient volatile EffectStage consumer;
+	private final transient List<EffectStage> producers = new CopyOnWriteArrayList<EffectStage>();
+
+	/**
+	 * Creates a new SignalingQueue with the given capacity.
+	 * @param capacity the number of elements the queue can hold
+	 */
+	public SignalingQueue(int capacity) {
+		super(capacity);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.pipeline.StageQueue#setConsumer(com.cs4911.video_editor.pipeline.EffectStage)
+	 */
+	@Override
+	public void setConsumer(EffectStage consumer) {
+		this.consumer = consumer;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.pipeline.StageQueue#addProducer(com.cs4911.video_editor.pipeline.EffectStage)
+	 */
+	@Override
+	public void addProducer(EffectStage producer) {
+		producers.add(producer);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.cs4911.video_editor.pipeline.StageQueue#removeProducer(com.cs4911.video_editor.pipeline.EffectStage)
+	 */
+	@Override
+	public void removeProducer(EffectStage producer) {
+		producers.remove(producer);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.concurrent.LinkedBlockingQueue#offer(java.lang.Object)
+	 */
+	@Override
+	public boolean offer(E e) {
+		boolean added = super.offer(e);
+		if (added) {
+			signalConsumer();
+		}
+		return added;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.concurrent.LinkedBlockingQueue#offer(java.lang.Object, long, java.util.concurrent.TimeUnit)
+	 */
+	@Override
+	public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+		boolean added = super.offer(e, timeout, unit);
+		if (added) {
+			signalConsumer();
+		}
+		return added;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.concurrent.LinkedBlockingQueue#put(java.lang.Object)
+	 */
+	@Override
+	public void put(E e) throws InterruptedException {
+		super.put(e);
+		signalConsumer();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.concurrent.LinkedBlockingQueue#poll()
+	 */
+	@Override
+	public E poll() {
+		E e = super.poll();
+		if (e != null) {
+			signalProducer();
+		}
+		return e;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.concurrent.LinkedBlockingQueue#poll(long, java.util.concurrent.TimeUnit)
+	 */
+	@Override
+	public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+		E e = super.poll(timeout, unit);
+		if (e != null) {
+			signalProducer();
+		}
+		return e;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.concurrent.LinkedBlockingQueue#take()
+	 */
+	@Override
+	public E take() throws InterruptedException {
+		E e = super.take();
+		signalProducer();
+		return e;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.concurrent.LinkedBlockingQueue#remove(java.lang.Object)
+	 */
+	@Override
+	public boolean remove(Object o) {
+		boolean removed = super.remove(o);
+		if (removed) {
+			signalProducer();
+		}
+		return removed;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.concurrent.LinkedBlockingQueue#drainTo(java.util.Collection, int)
+	 */
+	@Override
+	public int drainTo(Collection<? super E> c, int maxElements) {
+		int drained = super.drainTo(c, maxElements);
+		if (drained > 0) {
+			signalProducer();
+		}
+		return drained;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.concurrent.LinkedBlockingQueue#clear()
+	 */
+	@Override
+	public void clear() {
+		super.clear();
+		signalProducer();
+	}
+
+	private void signalConsumer() {
+		EffectStage stage = consumer;
+		if (stage != null) {
+			stage.signal();
+		}
+	}
+
+	private void signalProducer() {
+		for (EffectStage stage : producers) {
+			stage.signal();
+		}
+	}
+}
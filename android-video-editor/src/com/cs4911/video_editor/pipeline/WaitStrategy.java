@@ -0,0 +1,61 @@
+package com.cs4911.video_editor.pipeline;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * How a thread waits on a RingBuffer that is empty when it wants to take
+ * or full when it wants to put. Stages run on an Executor never wait, so
+ * this only matters for the threads that block on a ring buffer.
+ */
+public enum WaitStrategy {
+
+	/**
+	 * Keeps checking without giving up the CPU. Hands frames on soonest,
+	 * but keeps a core busy for as long as it waits.
+	 */
+	BUSY_SPIN {
+		@Override
+		void idle(int attempt, long nanosLeft) {
+		}
+	},
+
+	/**
+	 * Gives up the CPU to other threads between checks.
+	 */
+	YIELDING {
+		@Override
+		void idle(int attempt, long nanosLeft) {
+			Thread.yield();
+		}
+	},
+
+	/**
+	 * Spins for a moment, then yields for a moment, then sleeps until
+	 * the other side of the ring buffer wakes it. Uses no CPU while a
+	 * stage waits for a slow neighbour.
+	 */
+	PARKING {
+		@Override
+		void idle(int attempt, long nanosLeft) {
+			if (attempt < SPIN_TRIES) {
+				return;
+			} else if (attempt < SPIN_TRIES + YIELD_TRIES) {
+				Thread.yield();
+			} else {
+				// Bounded, in case the wake-up went to another waiting producer.
+				LockSupport.parkNanos(this, Math.min(nanosLeft, MAX_PARK_NANOS));
+			}
+		}
+	};
+
+	private static final int SPIN_TRIES = 100;
+	private static final int YIELD_TRIES = 100;
+	private static final long MAX_PARK_NANOS = 1000000;
+
+	/**
+	 * Waits once before the caller checks the ring buffer again.
+	 * @param attempt how many times the caller has waited already
+	 * @param nanosLeft how long the caller may still wait, in nanoseconds
+	 */
+	abstract void idle(int attempt, long nanosLeft);
+}
@@ -0,0 +1,272 @@
+package com.cs4911.video_editor.trace;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * What happened to one frame between being captured and being displayed,
+ * as a list of events and the times at which they happened. The times are
+ * kept in microseconds since the frame was captured, on the clock of the
+ * device, so that a trace takes a few bytes per event once written.
+ *
+ * Times from the server are on the server's clock, which does not agree
+ * with the device's, so they are only known relative to each other. They
+ * are placed in the middle of the time between sending the frame and
+ * receiving the result, as if it took as long to go as to come back.
+ */
+public class FrameTrace {
+
+	/**
+	 * The things that happen to a frame, in the order they happen. Stage
+	 * events come with the index of the stage, in processing order. Events
+	 * are written as their position here, so new ones go at the end.
+	 */
+	public enum Event {
+		CAPTURED,
+		ADDED,
+		STAGE_START,
+		STAGE_END,
+		ENCODE_START,
+		ENCODE_END,
+		SENT,
+		SERVER_DECODE_START,
+		SERVER_DECODE_END,
+		SERVER_STAGE_START,
+		SERVER_STAGE_END,
+		SERVER_ENCODE_START,
+		SERVER_ENCODE_END,
+		RECEIVED,
+		DECODE_START,
+		DECODE_END,
+		DISPLAYED
+	}
+
+	private static final Event[] EVENTS = Event.values();
+
+	private final long sequenceNumber;
+	private final long captureTimestamp;
+	// The System.nanoTime() at which the frame was captured, as far as can be told.
+	private final long captureNanos;
+	private boolean late;
+
+	private byte[] events;
+	private byte[] stages;
+	private int[] micros;
+	private int numEvents;
+
+	/**
+	 * Creates a FrameTrace for a frame captured at the given time, and
+	 * records that it was captured.
+	 * @param sequenceNumber the position of the frame in the stream it belongs to
+	 * @param captureTimestamp when the frame was captured, in milliseconds since the epoch
+	 */
+	public FrameTrace(long sequenceNumber, long captureTimestamp) {
+		this(sequenceNumber, captureTimestamp,
+				System.nanoTime() - (System.currentTimeMillis() - captureTimestamp) * 1000000, 16);
+		mark(Event.CAPTURED, captureNanos);
+	}
+
+	private FrameTrace(long sequenceNumber, long captureTimestamp, long captureNanos, int capacity) {
+		this.sequenceNumber = sequenceNumber;
+		this.captureTimestamp = captureTimestamp;
+		this.captureNanos = captureNanos;
+		events = new byte[capacity];
+		stages = new byte[capacity];
+		micros = new int[capacity];
+	}
+
+	/**
+	 * Returns the position of the frame in the stream it belongs to.
+	 * @return the sequence number
+	 */
+	public long getSequenceNumber() {
+		return sequenceNumber;
+	}
+
+	/**
+	 * Returns when the frame was captured.
+	 * @return the capture time in milliseconds since the epoch
+	 */
+	public long getCaptureTimestamp() {
+		return captureTimestamp;
+	}
+
+	/**
+	 * Returns whether a stage passed the frame through without applying
+	 * its effect because the frame had missed its deadline.
+	 * @return true if not every effect was applied to the frame
+	 */
+	public boolean isLate() {
+		return late;
+	}
+
+	/**
+	 * Sets whether a stage passed the frame through without applying its effect.
+	 * @param late true if not every effect was applied to the frame
+	 */
+	public void setLate(boolean late) {
+		this.late = late;
+	}
+
+	/**
+	 * Records that something happened to the frame.
+	 * @param event what happened
+	 * @param nanos the System.nanoTime() at which it happened
+	 */
+	public void mark(Event event, long nanos) {
+		mark(event, 0, nanos);
+	}
+
+	/**
+	 * Records that something happened to the frame in a stage.
+	 * @param event what happened
+	 * @param stage the index of the stage, in processing order
+	 * @param nanos the System.nanoTime() at which it happened
+	 */
+	public void mark(Event event, int stage, long nanos) {
+		add(event, stage, (int) ((nanos - captureNanos) / 1000));
+	}
+
+	/**
+	 * Records what happened to the frame on the server, from the times the
+	 * server sent back with the result. The frame must have been marked
+	 * SENT and RECEIVED already.
+	 * @param codecTimestamps when the server started and finished decoding the
+	 * frame and encoding the result, in nanoseconds since the frame arrived
+	 * @param stageTimestamps the start and end of every stage on the server,
+	 * in nanoseconds since the frame arrived
+	 */
+	public void markServer(List<Long> codecTimestamps, List<Long> stageTimestamps) {
+		int sent = find(Event.SENT);
+		int received = find(Event.RECEIVED);
+		if (codecTimestamps.size() < 4 || sent < 0 || received < 0) {
+			// From a server that does not say when it decoded and encoded the frame.
+			return;
+		}
+		long serverStart = codecTimestamps.get(0);
+		long serverNanos = codecTimestamps.get(3) - serverStart;
+		long networkNanos = Math.max(0, (received - sent) * 1000L - serverNanos);
+		long offset = captureNanos + sent * 1000L + networkNanos / 2 - serverStart;
+		mark(Event.SERVER_DECODE_START, codecTimestamps.get(0) + offset);
+		mark(Event.SERVER_DECODE_END, codecTimestamps.get(1) + offset);
+		for (int i = 0; i + 1 < stageTimestamps.size(); i += 2) {
+			mark(Event.SERVER_STAGE_START, i / 2, stageTimestamps.get(i) + offset);
+			mark(Event.SERVER_STAGE_END, i / 2, stageTimestamps.get(i + 1) + offset);
+		}
+		mark(Event.SERVER_ENCODE_START, codecTimestamps.get(2) + offset);
+		mark(Event.SERVER_ENCODE_END, codecTimestamps.get(3) + offset);
+	}
+
+	/**
+	 * Returns the number of events recorded.
+	 * @return the number of events
+	 */
+	public int getNumEvents() {
+		return numEvents;
+	}
+
+	/**
+	 * Returns what happened in the given event.
+	 * @param i the index of the event, in the order they were recorded
+	 * @return what happened
+	 */
+	public Event getEvent(int i) {
+		return EVENTS[events[i]];
+	}
+
+	/**
+	 * Returns the stage the given event happened in.
+	 * @param i the index of the event, in the order they were recorded
+	 * @return the index of the stage, or 0 for events that are not in a stage
+	 */
+	public int getStage(int i) {
+		return stages[i] & 0xff;
+	}
+
+	/**
+	 * Returns when the given event happened.
+	 * @param i the index of the event, in the order they were recorded
+	 * @return the time in microseconds since the frame was captured
+	 */
+	public int getMicros(int i) {
+		return micros[i];
+	}
+
+	/**
+	 * Returns when the first event of the given kind happened.
+	 * @param event what happened
+	 * @return the time in microseconds since the frame was captured, or -1 if it did not happen
+	 */
+	public int find(Event event) {
+		for (int i = 0; i < numEvents; i++) {
+			if (events[i] == event.ordinal()) {
+				return micros[i];
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Writes this trace: the sequence number, the capture time, whether
+	 * the frame was late and the number of events, then for every event
+	 * a byte for what happened, a byte for the stage and an int for the
+	 * time, 6 bytes in all.
+	 * @param out where to write the trace
+	 * @throws IOException if the trace could not be written
+	 */
+	public void write(DataOutput out) throws IOException {
+		out.writeLong(sequenceNumber);
+		out.writeLong(captureTimestamp);
+		out.writeBoolean(late);
+		out.writeShort(numEvents);
+		for (int i = 0; i < numEvents; i++) {
+			out.writeByte(events[i]);
+			out.writeByte(stages[i]);
+			out.writeInt(micros[i]);
+		}
+	}
+
+	/**
+	 * Reads a trace written by write().
+	 * @param in where to read the trace from
+	 * @return the trace
+	 * @throws IOException if the trace could not be read
+	 */
+	public static FrameTrace read(DataInput in) throws IOException {
+		long sequenceNumber = in.readLong();
+		long captureTimestamp = in.readLong();
+		boolean late = in.readBoolean();
+		int numEvents = in.readUnsignedShort();
+		FrameTrace trace = new FrameTrace(sequenceNumber, captureTimestamp, 0, Math.max(numEvents, 1));
+		trace.late = late;
+		for (int i = 0; i < numEvents; i++) {
+			int event = in.readUnsignedByte();
+			if (event >= EVENTS.length) {
+				throw new IOException("Unknown trace event " + event);
+			}
+			int stage = in.readUnsignedByte();
+			trace.add(EVENTS[event], stage, in.readInt());
+		}
+		return trace;
+	}
+
+	private void add(Event event, int stage, int eventMicros) {
+		if (numEvents == events.length) {
+			byte[] newEvents = new byte[numEvents * 2];
+			System.arraycopy(events, 0, newEvents, 0, numEvents);
+			events = newEvents;
+			byte[] newStages = new byte[numEvents * 2];
+			System.arraycopy(stages, 0, newStages, 0, numEvents);
+			stages = newStages;
+			int[] newMicros = new int[numEvents * 2];
+			System.arraycopy(micros, 0, newMicros, 0, numEvents);
+			micros = newMicros;
+		}
+		events[numEvents] = (byte) event.ordinal();
+		stages[numEvents] = (byte) stage;
+		micros[numEvents] = eventMicros;
+		numEvents++;
+	}
+}
@@ -0,0 +1,120 @@
+package com.cs4911.video_editor.trace;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes the traces of displayed frames to a file, on a thread of its own
+ * so that the thread displaying them never waits for the disk. Traces are
+ * added to the end of the file, which starts with MAGIC and VERSION, and
+ * can be summarized with TraceSummary.
+ *
+ * Traces that come faster than they can be written are dropped rather
+ * than held up, once MAX_PENDING are waiting.
+ */
+public class FrameTracer {
+
+	static final int MAGIC = 0x46545243;
+	static final int VERSION = 1;
+
+	private static final int MAX_PENDING = 1024;
+	// How long the writer waits for a trace before flushing what it has written.
+	private static final long FLUSH_MS = 1000;
+
+	private final BlockingQueue<FrameTrace> pending = new LinkedBlockingQueue<FrameTrace>(MAX_PENDING);
+	private final AtomicLong droppedTraces = new AtomicLong(0);
+	private final DataOutputStream out;
+	private final Thread writerThread;
+	private volatile boolean closed;
+
+	/**
+	 * Creates a FrameTracer that adds traces to the given file, and starts writing.
+	 * @param file the file to add traces to
+	 * @throws IOException if the file could not be opened
+	 */
+	public FrameTracer(File file) throws IOException {
+		boolean empty = file.length() == 0;
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+		if (empty) {
+			out.writeInt(MAGIC);
+			out.writeShort(VERSION);
+		}
+		writerThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				writeTraces();
+			}
+		}, "FrameTracer");
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+
+	/**
+	 * Writes the trace of a frame that is done with.
+	 * @param trace the trace of the frame
+	 */
+	public void submit(FrameTrace trace) {
+		if (closed || !pending.offer(trace)) {
+			droppedTraces.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Returns the number of traces not written because too many were waiting.
+	 * @return the number of traces dropped
+	 */
+	public long getDroppedTraces() {
+		return droppedTraces.get();
+	}
+
+	/**
+	 * Writes the traces still waiting and closes the file.
+	 */
+	public void close() {
+		closed = true;
+		writerThread.interrupt();
+		try {
+			writerThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void writeTraces() {
+		try {
+			try {
+				while (true) {
+					FrameTrace trace = pending.poll(FLUSH_MS, TimeUnit.MILLISECONDS);
+					if (trace != null) {
+						trace.write(out);
+					} else {
+						out.flush();
+					}
+				}
+			} catch (InterruptedException e) {
+				// closed
+			}
+			FrameTrace trace = pending.poll();
+			while (trace != null) {
+				trace.write(out);
+				trace = pending.poll();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			closed = true;
+		} finally {
+			try {
+				out.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+}
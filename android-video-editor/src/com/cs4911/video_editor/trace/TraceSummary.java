@@ -0,0 +1,312 @@
+package com.cs4911.video_editor.trace;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.cs4911.video_editor.trace.FrameTrace.Event;
+
+/**
+ * Summarizes trace files written by a FrameTracer. For every part of a
+ * frame's way from capture to display (the effects on the device, the
+ * codecs, the network, the effects on the server and the wait to be
+ * displayed) it prints how long it took, and for every stutter, where
+ * the time between two displayed frames was much longer than usual, the
+ * part that took much longer than usual. It only needs plain Java, so a
+ * trace can be pulled off the device and summarized anywhere:
+ *
+ *   adb pull /data/data/com.cs4911.video_editor/files/frame-trace.bin
+ *   java com.cs4911.video_editor.trace.TraceSummary frame-trace.bin
+ *
+ * The network time is the round trip less the time the frame spent on
+ * the server, so it is the time there and back, including time spent
+ * waiting in the server's request queue.
+ */
+public class TraceSummary {
+
+	// A frame shown this many times the usual display interval after the one before is a stutter.
+	private static final double STUTTER_FACTOR = 2;
+	// Frames shown further apart than this belong to different runs, not a stutter.
+	private static final double RUN_GAP_MS = 1000;
+	private static final int MAX_STUTTERS_LISTED = 20;
+
+	private static final String TOTAL = "total";
+
+	private final List<FrameTrace> traces = new ArrayList<FrameTrace>();
+
+	/**
+	 * Reads the traces in the given file.
+	 * @param fileName the name of a file written by a FrameTracer
+	 * @throws IOException if the file could not be read or was not written by a FrameTracer
+	 */
+	public void read(String fileName) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName)));
+		try {
+			if (in.readInt() != FrameTracer.MAGIC) {
+				throw new IOException(fileName + " is not a frame trace");
+			}
+			int version = in.readUnsignedShort();
+			if (version != FrameTracer.VERSION) {
+				throw new IOException(fileName + " is a version " + version + " frame trace");
+			}
+			while (true) {
+				try {
+					traces.add(FrameTrace.read(in));
+				} catch (EOFException e) {
+					// The last trace may have been cut short if the app was killed.
+					break;
+				}
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Returns how long each part of the frame's way took, in the order the
+	 * frame went through them. Parts the frame did not go through are left out.
+	 * @param trace the trace of a frame
+	 * @return the duration of every part in milliseconds, by name, and the total
+	 */
+	public static Map<String, Double> getParts(FrameTrace trace) {
+		Map<String, Double> parts = new LinkedHashMap<String, Double>();
+		Map<String, Double> deviceStages = new LinkedHashMap<String, Double>();
+		Map<String, Double> serverStages = new LinkedHashMap<String, Double>();
+		int[] stageStarts = new int[trace.getNumEvents()];
+		int[] serverStageStarts = new int[trace.getNumEvents()];
+		int lastEnd = trace.find(Event.ADDED);
+		int firstServerStage = -1;
+		for (int i = 0; i < trace.getNumEvents(); i++) {
+			int stage = trace.getStage(i);
+			switch (trace.getEvent(i)) {
+			case STAGE_START:
+				stageStarts[stage] = trace.getMicros(i);
+				break;
+			case STAGE_END:
+				deviceStages.put("device stage " + stage, (trace.getMicros(i) - stageStarts[stage]) / 1e3);
+				lastEnd = trace.getMicros(i);
+				break;
+			case SERVER_STAGE_START:
+				serverStageStarts[stage] = trace.getMicros(i);
+				if (firstServerStage < 0) {
+					firstServerStage = trace.getMicros(i);
+				}
+				break;
+			case SERVER_STAGE_END:
+				serverStages.put("server stage " + stage, (trace.getMicros(i) - serverStageStarts[stage]) / 1e3);
+				break;
+			default:
+				break;
+			}
+		}
+		put(parts, "capture to add", trace, Event.CAPTURED, Event.ADDED);
+		parts.putAll(deviceStages);
+		put(parts, "encode", trace, Event.ENCODE_START, Event.ENCODE_END);
+		int sent = trace.find(Event.SENT);
+		int received = trace.find(Event.RECEIVED);
+		int serverStart = trace.find(Event.SERVER_DECODE_START);
+		int serverEnd = trace.find(Event.SERVER_ENCODE_END);
+		if (sent >= 0 && received >= 0) {
+			int serverMicros = serverStart >= 0 && serverEnd >= 0 ? serverEnd - serverStart : 0;
+			parts.put("network", (received - sent - serverMicros) / 1e3);
+		}
+		put(parts, "server decode", trace, Event.SERVER_DECODE_START, Event.SERVER_DECODE_END);
+		int serverDecodeEnd = trace.find(Event.SERVER_DECODE_END);
+		int serverEncodeStart = trace.find(Event.SERVER_ENCODE_START);
+		if (serverDecodeEnd >= 0 && serverEncodeStart >= 0) {
+			int queued = (firstServerStage >= 0 ? firstServerStage : serverEncodeStart) - serverDecodeEnd;
+			parts.put("server queue", queued / 1e3);
+		}
+		parts.putAll(serverStages);
+		put(parts, "server encode", trace, Event.SERVER_ENCODE_START, Event.SERVER_ENCODE_END);
+		put(parts, "decode", trace, Event.DECODE_START, Event.DECODE_END);
+		int decoded = trace.find(Event.DECODE_END);
+		int displayed = trace.find(Event.DISPLAYED);
+		if (displayed >= 0) {
+			int ready = decoded >= 0 ? decoded : lastEnd;
+			if (ready >= 0) {
+				parts.put("display wait", (displayed - ready) / 1e3);
+			}
+			parts.put(TOTAL, (displayed - trace.find(Event.CAPTURED)) / 1e3);
+		}
+		return parts;
+	}
+
+	private static void put(Map<String, Double> parts, String name, FrameTrace trace, Event start, Event end) {
+		int startMicros = trace.find(start);
+		int endMicros = trace.find(end);
+		if (startMicros >= 0 && endMicros >= 0) {
+			parts.put(name, (endMicros - startMicros) / 1e3);
+		}
+	}
+
+	/**
+	 * Prints how long every part took over all frames, and the stutters.
+	 */
+	public void print() {
+		List<Map<String, Double>> frameParts = new ArrayList<Map<String, Double>>();
+		Map<String, List<Double>> durations = new LinkedHashMap<String, List<Double>>();
+		int numLate = 0;
+		for (FrameTrace trace : traces) {
+			Map<String, Double> parts = getParts(trace);
+			frameParts.add(parts);
+			for (Map.Entry<String, Double> part : parts.entrySet()) {
+				List<Double> values = durations.get(part.getKey());
+				if (values == null) {
+					values = new ArrayList<Double>();
+					durations.put(part.getKey(), values);
+				}
+				values.add(part.getValue());
+			}
+			if (trace.isLate()) {
+				numLate++;
+			}
+		}
+		System.out.println(traces.size() + " frames traced, " + numLate + " late");
+		System.out.println();
+		System.out.println(String.format("%-18s %7s %9s %9s %9s %9s %9s", "part (ms)", "frames", "mean", "p50", "p95", "p99", "max"));
+		Map<String, Double> medians = new LinkedHashMap<String, Double>();
+		for (Map.Entry<String, List<Double>> entry : durations.entrySet()) {
+			double[] values = sorted(entry.getValue());
+			double sum = 0;
+			for (double value : values) {
+				sum += value;
+			}
+			medians.put(entry.getKey(), percentile(values, 0.5));
+			System.out.println(String.format("%-18s %7d %9.2f %9.2f %9.2f %9.2f %9.2f", entry.getKey(), values.length,
+					sum / values.length, percentile(values, 0.5), percentile(values, 0.95), percentile(values, 0.99),
+					values[values.length - 1]));
+		}
+		printStutters(frameParts, medians);
+	}
+
+	/**
+	 * Finds the frames shown much later than the one before, and blames each
+	 * on the part of its way that took the most longer than usual.
+	 */
+	private void printStutters(List<Map<String, Double>> frameParts, Map<String, Double> medians) {
+		List<Integer> displayed = new ArrayList<Integer>();
+		for (int i = 0; i < traces.size(); i++) {
+			if (traces.get(i).find(Event.DISPLAYED) >= 0) {
+				displayed.add(i);
+			}
+		}
+		Collections.sort(displayed, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return Double.compare(displayTimeMs(traces.get(a)), displayTimeMs(traces.get(b)));
+			}
+		});
+		List<Double> intervals = new ArrayList<Double>();
+		for (int i = 1; i < displayed.size(); i++) {
+			double interval = displayTimeMs(traces.get(displayed.get(i))) - displayTimeMs(traces.get(displayed.get(i - 1)));
+			if (interval < RUN_GAP_MS) {
+				intervals.add(interval);
+			}
+		}
+		if (intervals.isEmpty()) {
+			return;
+		}
+		double usualInterval = percentile(sorted(intervals), 0.5);
+		Map<String, Integer> blamed = new LinkedHashMap<String, Integer>();
+		List<String> listed = new ArrayList<String>();
+		long numSkipped = 0;
+		int numStutters = 0;
+		// The frames of a run are numbered from its first to its last frame, so the missing numbers were dropped.
+		long runFirst = traces.get(displayed.get(0)).getSequenceNumber();
+		long runLast = runFirst;
+		int runFrames = 1;
+		for (int i = 1; i < displayed.size(); i++) {
+			FrameTrace previous = traces.get(displayed.get(i - 1));
+			FrameTrace trace = traces.get(displayed.get(i));
+			double interval = displayTimeMs(trace) - displayTimeMs(previous);
+			if (interval >= RUN_GAP_MS) {
+				numSkipped += Math.max(0, runLast - runFirst + 1 - runFrames);
+				runFirst = trace.getSequenceNumber();
+				runLast = runFirst;
+				runFrames = 1;
+				continue;
+			}
+			runFirst = Math.min(runFirst, trace.getSequenceNumber());
+			runLast = Math.max(runLast, trace.getSequenceNumber());
+			runFrames++;
+			if (interval <= STUTTER_FACTOR * usualInterval) {
+				continue;
+			}
+			numStutters++;
+			long skipped = Math.max(0, trace.getSequenceNumber() - previous.getSequenceNumber() - 1);
+			String blame = skipped > 0 ? "dropped frames" : "unknown";
+			double excess = 0;
+			for (Map.Entry<String, Double> part : frameParts.get(displayed.get(i)).entrySet()) {
+				if (part.getKey().equals(TOTAL)) {
+					continue;
+				}
+				double partExcess = part.getValue() - medians.get(part.getKey());
+				if (partExcess > excess) {
+					excess = partExcess;
+					blame = part.getKey();
+				}
+			}
+			Integer count = blamed.get(blame);
+			blamed.put(blame, count != null ? count + 1 : 1);
+			if (listed.size() < MAX_STUTTERS_LISTED) {
+				listed.add(String.format("%8d %12.1f %8d  %s +%.1f ms", trace.getSequenceNumber(), interval, skipped,
+						blame, excess));
+			}
+		}
+		numSkipped += Math.max(0, runLast - runFirst + 1 - runFrames);
+		System.out.println();
+		System.out.println(String.format("Usual display interval %.1f ms, %d frames not displayed, %d stutters",
+				usualInterval, numSkipped, numStutters));
+		if (numStutters == 0) {
+			return;
+		}
+		for (Map.Entry<String, Integer> entry : blamed.entrySet()) {
+			System.out.println(String.format("  %-18s %d", entry.getKey(), entry.getValue()));
+		}
+		System.out.println();
+		System.out.println(String.format("%8s %12s %8s  %s", "frame", "interval ms", "skipped", "slowest part"));
+		for (String line : listed) {
+			System.out.println(line);
+		}
+	}
+
+	private static double displayTimeMs(FrameTrace trace) {
+		return trace.getCaptureTimestamp() + trace.find(Event.DISPLAYED) / 1e3;
+	}
+
+	private static double[] sorted(List<Double> values) {
+		double[] array = new double[values.size()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = values.get(i);
+		}
+		Arrays.sort(array);
+		return array;
+	}
+
+	private static double percentile(double[] sorted, double fraction) {
+		int index = (int) Math.ceil(fraction * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			System.err.println("Usage: TraceSummary <trace file>...");
+			System.exit(1);
+		}
+		TraceSummary summary = new TraceSummary();
+		for (String fileName : args) {
+			summary.read(fileName);
+		}
+		summary.print();
+	}
+}
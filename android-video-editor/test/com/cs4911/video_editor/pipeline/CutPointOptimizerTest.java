@@ -0,0 +1,144 @@
+package com.cs4911.video_editor.pipeline;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks the cost model of a CutPointOptimizer, and that it moves the cut
+ * point only when another one is faster by its margin, keeps it for its
+ * dwell time and applies every effect on the device while the server
+ * cannot be reached.
+ */
+public class CutPointOptimizerTest {
+
+	private static final double DELTA = 1e-6;
+
+	private CutPointOptimizer optimizer;
+
+	@Before
+	public void setUp() {
+		// Switches when 25% faster, at most every second; the server is 4 times as fast.
+		optimizer = new CutPointOptimizer(0.25, 1000, 4.0);
+		optimizer.effectsChanged(3);
+		optimizer.setCloudAvailable(true);
+		optimizer.recordInputSize(1000000);
+		// Like grayscale, the first effect makes frames 4 times smaller.
+		optimizer.recordFrame(frame(10, 250000, 40, 250000, 50, 250000), 3, -1);
+		// 10 kB per ms each way.
+		optimizer.setNetwork(1e7, 1e7, 10);
+	}
+
+	@Test
+	public void estimatesEveryCutPoint() {
+		// Upload of the input, download of the result, all effects on the server.
+		assertEquals(10 + 100 + 25 + 100 / 4.0, optimizer.estimateMs(0), DELTA);
+		// The first effect on the device, its smaller output up and back.
+		assertEquals(10 + 10 + 25 + 25 + 90 / 4.0, optimizer.estimateMs(1), DELTA);
+		assertEquals(50 + 10 + 25 + 25 + 50 / 4.0, optimizer.estimateMs(2), DELTA);
+		assertEquals(100, optimizer.estimateMs(3), DELTA);
+	}
+
+	@Test
+	public void scalesTransferByUploadRatio() {
+		optimizer.recordUploadRatio(0.5);
+		assertEquals(10 + 10 + 12.5 + 12.5 + 90 / 4.0, optimizer.estimateMs(1), DELTA);
+		assertEquals(100, optimizer.estimateMs(3), DELTA);
+	}
+
+	@Test
+	public void cutsAfterEffectThatShrinksFrames() {
+		assertEquals(3, optimizer.getCutPoint());
+		// 92.5 ms is faster than 100 ms, but not by 25%.
+		assertEquals(3, optimizer.choose(10000));
+
+		optimizer.recordUploadRatio(0.5);
+		assertEquals(1, optimizer.choose(20000));
+	}
+
+	@Test
+	public void keepsCutPointForMinimumDwell() {
+		optimizer.recordUploadRatio(0.5);
+		assertEquals(1, optimizer.choose(10000));
+
+		optimizer.setNetwork(1e6, 1e6, 10);
+		assertEquals(1, optimizer.choose(10500));
+		assertEquals(1, optimizer.choose(10999));
+		assertEquals(3, optimizer.choose(11000));
+	}
+
+	@Test
+	public void appliesEveryEffectOnDeviceWhileCloudUnavailable() {
+		optimizer.recordUploadRatio(0.5);
+		optimizer.setCloudAvailable(false);
+		assertEquals(3, optimizer.choose(10000));
+
+		optimizer.setCloudAvailable(true);
+		assertEquals(1, optimizer.choose(10000));
+
+		// Falls back at once, however recently it switched.
+		optimizer.setCloudAvailable(false);
+		assertEquals(3, optimizer.choose(10001));
+	}
+
+	@Test
+	public void countsServerAsInfinitelySlowWhileBandwidthUnknown() {
+		optimizer.recordUploadRatio(0.5);
+		optimizer.setNetwork(0, 1e7, 10);
+		for (int i = 0; i < 3; i++) {
+			assertEquals(Double.POSITIVE_INFINITY, optimizer.estimateMs(i), 0);
+		}
+		assertEquals(100, optimizer.estimateMs(3), DELTA);
+		assertEquals(3, optimizer.choose(10000));
+	}
+
+	@Test
+	public void measuresServerSpeedupFromCutFrames() {
+		// The server took 10 ms for the 90 ms the last two effects take on the device.
+		optimizer.recordFrame(frame(10, 250000, 0, 250000), 1, 10);
+		double speedup = 4 + 0.2 * (9 - 4);
+		assertEquals(10 + 10 + 25 + 25 + 90 / speedup, optimizer.estimateMs(1), DELTA);
+	}
+
+	@Test
+	public void ignoresLateFramesAndFramesOfOtherEffects() {
+		FrameEnvelope late = frame(1, 1, 1, 1, 1, 1);
+		late.markLate();
+		optimizer.recordFrame(late, 3, -1);
+		// One stage too many for the cut point, as if from before the effects changed.
+		optimizer.recordFrame(frame(1, 1, 1, 1, 1, 1, 1, 1), 3, -1);
+		assertEquals(100, optimizer.estimateMs(3), DELTA);
+		assertEquals(10 + 10 + 25 + 25 + 90 / 4.0, optimizer.estimateMs(1), DELTA);
+	}
+
+	@Test
+	public void startsFromExpectedCostsAfterEffectsChange() {
+		optimizer.effectsChanged(2);
+		assertEquals(2, optimizer.getCutPoint());
+		assertEquals(0, optimizer.estimateMs(2), DELTA);
+
+		optimizer.setExpectedCost(0, 30);
+		optimizer.setExpectedCost(1, 20);
+		assertEquals(50, optimizer.estimateMs(2), DELTA);
+
+		// Measurements are averaged in from the expected costs, which are set only once.
+		optimizer.recordFrame(frame(40, -1, 20, -1), 2, -1);
+		optimizer.setExpectedCost(0, 500);
+		assertEquals(30 + 0.2 * (40 - 30) + 20, optimizer.estimateMs(2), DELTA);
+	}
+
+	/**
+	 * Returns a frame processed by stages that took the given times and put
+	 * out frames of the given sizes, given as pairs of milliseconds and bytes.
+	 */
+	private static FrameEnvelope frame(long... msAndBytes) {
+		FrameEnvelope frame = new FrameEnvelope(null, 0, 0);
+		long now = 0;
+		for (int i = 0; i < msAndBytes.length; i += 2) {
+			frame.recordStage(now, now + msAndBytes[i] * 1000000, msAndBytes[i + 1]);
+			now += msAndBytes[i] * 1000000;
+		}
+		return frame;
+	}
+}
@@ -0,0 +1,100 @@
+package com.cs4911.video_editor.pipeline;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that an InFlightController keeps as many frames in flight as
+ * arrive during one round trip, within its limits, and batches them only
+ * as much as its limits on batches and on the batch delay allow.
+ */
+public class InFlightControllerTest {
+
+	private InFlightController controller;
+
+	@Before
+	public void setUp() {
+		// Up to 16 frames in up to 4 batches, waiting at most 50 ms to fill a batch.
+		controller = new InFlightController(16, 4, 50);
+	}
+
+	@Test
+	public void startsWithTwoFramesOneAtATime() {
+		assertWindow(2, 1, 2);
+		controller.recordBatch(0, 100, 10);
+		assertWindow(2, 1, 2);
+	}
+
+	@Test
+	public void keepsFramesOfOneRoundTripInFlight() {
+		addFrames(33);
+		// 200 ms a round trip at a frame every 33 ms, and one more.
+		controller.recordBatch(1, 200, 10);
+		assertWindow(8, 2, 4);
+	}
+
+	@Test
+	public void keepsFewFramesInFlightOnFastLink() {
+		addFrames(33);
+		controller.recordBatch(1, 20, 10);
+		assertWindow(2, 1, 2);
+	}
+
+	@Test
+	public void pacesFramesToServerWhenItIsSlowerThanCamera() {
+		addFrames(33);
+		// A frame every 100 ms is all the server can finish.
+		controller.recordBatch(2, 300, 200);
+		assertWindow(3, 1, 3);
+	}
+
+	@Test
+	public void limitsFramesAndBatchDelay() {
+		addFrames(33);
+		controller.recordBatch(1, 2000, 10);
+		// 4 frames a batch would keep the first waiting 99 ms.
+		assertWindow(16, 2, 8);
+
+		controller = new InFlightController(16, 4, 50);
+		addFrames(5);
+		controller.recordBatch(1, 2000, 10);
+		assertWindow(16, 4, 4);
+	}
+
+	@Test
+	public void followsChangingRoundTrip() {
+		addFrames(33);
+		controller.recordBatch(1, 200, 10);
+		assertWindow(8, 2, 4);
+		for (int i = 0; i < 50; i++) {
+			controller.recordBatch(1, 40, 10);
+		}
+		assertWindow(3, 1, 3);
+	}
+
+	@Test
+	public void countsServerTimeOnlyUpToRoundTrip() {
+		addFrames(33);
+		controller.recordBatch(1, 200, 10);
+		// Taken as 100 ms on the server and none on the network.
+		controller.recordBatch(1, 100, 500);
+		assertWindow(7, 2, 4);
+	}
+
+	/**
+	 * Adds frames at the given interval.
+	 */
+	private void addFrames(long intervalMs) {
+		for (int i = 0; i < 10; i++) {
+			controller.recordFrameAdded(1000 + i * intervalMs);
+		}
+	}
+
+	private void assertWindow(int inFlightFrames, int batchSize, int batchesInFlight) {
+		assertEquals(inFlightFrames, controller.getInFlightFrames());
+		assertEquals(batchSize, controller.getBatchSize());
+		assertEquals(batchesInFlight, controller.getBatchesInFlight());
+	}
+}
@@ -0,0 +1,108 @@
+package com.cs4911.video_editor.pipeline;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that a NetworkEstimator tells the round trip time from the
+ * bandwidth by the sizes of the frames sent, follows them as they change,
+ * splits the bandwidth between upload and download like its prior, and
+ * keeps to the prior until it has seen enough round trips.
+ */
+public class NetworkEstimatorTest {
+
+	// Sizes of the frames sent, from a few changed tiles to whole keyframes.
+	private static final long[] SIZES = {8000, 60000, 15000, 200000, 30000, 120000, 5000, 90000};
+
+	private NetworkEstimator estimator;
+
+	@Before
+	public void setUp() {
+		estimator = new NetworkEstimator(0.1);
+	}
+
+	@Test
+	public void keepsToPriorUntilEnoughRoundTrips() {
+		estimator.setPrior(2e6, 2e6, 50);
+		assertEquals(-1, estimator.getServerMs(), 0);
+		// Really 1 MB/s each way with a 20 ms round trip.
+		for (int i = 0; i < 4; i++) {
+			roundTrip(SIZES[i], 10000, 20, 1e6, 1e6);
+		}
+		assertEquals(4, estimator.getNumSamples());
+		assertEquals(2e6, estimator.getUploadBandwidth(), 0);
+		assertEquals(2e6, estimator.getDownloadBandwidth(), 0);
+		assertEquals(50, estimator.getRtt(), 0);
+
+		roundTrip(SIZES[4], 10000, 20, 1e6, 1e6);
+		assertEquals(20, estimator.getRtt(), 1e-3);
+		assertEquals(1e6, estimator.getUploadBandwidth(), 1);
+	}
+
+	@Test
+	public void fitsRttAndBandwidthFromFrameSizes() {
+		for (long bytes : SIZES) {
+			roundTrip(bytes, 10000, 20, 1e6, 1e6);
+		}
+		assertEquals(20, estimator.getRtt(), 1e-3);
+		assertEquals(1e6, estimator.getUploadBandwidth(), 1);
+		assertEquals(1e6, estimator.getDownloadBandwidth(), 1);
+	}
+
+	@Test
+	public void splitsBandwidthLikePrior() {
+		estimator.setPrior(1e6, 4e6, 0);
+		for (long bytes : SIZES) {
+			roundTrip(bytes, bytes / 2, 20, 1e6, 4e6);
+		}
+		assertEquals(20, estimator.getRtt(), 1e-3);
+		assertEquals(1e6, estimator.getUploadBandwidth(), 1);
+		assertEquals(4e6, estimator.getDownloadBandwidth(), 4);
+	}
+
+	@Test
+	public void followsChangingNetwork() {
+		for (long bytes : SIZES) {
+			roundTrip(bytes, 10000, 20, 1e6, 1e6);
+		}
+		for (int i = 0; i < 200; i++) {
+			roundTrip(SIZES[i % SIZES.length], 10000, 80, 5e5, 5e5);
+		}
+		assertEquals(80, estimator.getRtt(), 0.1);
+		assertEquals(5e5, estimator.getUploadBandwidth(), 5e2);
+	}
+
+	@Test
+	public void keepsRttWhenSizesAreAlike() {
+		estimator.setPrior(0, 0, 20);
+		for (int i = 0; i < 10; i++) {
+			roundTrip(90000, 10000, 20, 1e6, 1e6);
+		}
+		assertEquals(20, estimator.getRtt(), 1e-9);
+		assertEquals(1e6, estimator.getUploadBandwidth(), 1e-3);
+	}
+
+	@Test
+	public void averagesServerTimePerFrame() {
+		estimator.recordRoundTrip(4, 1000, 1000, 100, 40);
+		assertEquals(10, estimator.getServerMs(), 1e-9);
+		estimator.recordRoundTrip(2, 1000, 1000, 100, 40);
+		assertEquals(10 + 0.1 * (20 - 10), estimator.getServerMs(), 1e-9);
+
+		// The server cannot have taken longer than the round trip.
+		estimator.recordRoundTrip(1, 1000, 1000, 100, 500);
+		assertEquals(11 + 0.1 * (100 - 11), estimator.getServerMs(), 1e-9);
+	}
+
+	/**
+	 * Records a round trip of a frame over a network with the given round
+	 * trip time and bandwidths, on which the server spent 5 ms.
+	 */
+	private void roundTrip(long bytesUp, long bytesDown, double rttMs, double uplinkBytesPerSecond,
+			double downlinkBytesPerSecond) {
+		double ms = rttMs + 1000 * bytesUp / uplinkBytesPerSecond + 1000 * bytesDown / downlinkBytesPerSecond;
+		estimator.recordRoundTrip(1, bytesUp, bytesDown, ms + 5, 5);
+	}
+}
@@ -0,0 +1,141 @@
+package com.cs4911.video_editor.pipeline;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.cs4911.video_editor.pipeline.OffloadDecider.Placement;
+
+/**
+ * Checks that an OffloadDecider sends frames to the server only when that
+ * is faster by its margin, keeps a placement for its dwell time, keeps
+ * frames on the device while the server cannot be reached or the
+ * bandwidth is unknown, and leaves late frames out of its estimates.
+ */
+public class OffloadDeciderTest {
+
+	private static final double DELTA = 1e-6;
+
+	private OffloadDecider decider;
+
+	@Before
+	public void setUp() {
+		// Switches when 25% faster, at most every second; the server is 4 times as fast.
+		decider = new OffloadDecider(0.25, 1000, 4.0);
+		decider.setCloudAvailable(true);
+		decider.recordLocalFrame(frame(60, 40));
+	}
+
+	@Test
+	public void switchesOnlyWhenFasterByMargin() {
+		assertEquals(100, decider.getLocalEstimateMs(), DELTA);
+
+		// 60 ms + 100 ms / 4 = 85 ms, faster than 100 ms but not by 25%.
+		decider.setNetwork(1e6, 1e6, 60);
+		assertEquals(85, decider.getCloudEstimateMs(), DELTA);
+		assertEquals(Placement.LOCAL, decider.decide(10000));
+
+		decider.setNetwork(1e6, 1e6, 40);
+		assertEquals(Placement.CLOUD, decider.decide(20000));
+
+		// 125 ms is slower than the device, but not by enough to switch back.
+		decider.setNetwork(1e6, 1e6, 100);
+		assertEquals(Placement.CLOUD, decider.decide(30000));
+
+		decider.setNetwork(1e6, 1e6, 120);
+		assertEquals(Placement.LOCAL, decider.decide(40000));
+	}
+
+	@Test
+	public void keepsPlacementForMinimumDwell() {
+		decider.setNetwork(1e6, 1e6, 10);
+		assertEquals(Placement.CLOUD, decider.decide(10000));
+
+		decider.setNetwork(1e6, 1e6, 1000);
+		assertEquals(Placement.CLOUD, decider.decide(10500));
+		assertEquals(Placement.CLOUD, decider.decide(10999));
+		assertEquals(Placement.LOCAL, decider.decide(11000));
+
+		// Switching back starts the dwell time again.
+		decider.setNetwork(1e6, 1e6, 10);
+		assertEquals(Placement.LOCAL, decider.decide(11500));
+		assertEquals(Placement.CLOUD, decider.decide(12000));
+	}
+
+	@Test
+	public void staysLocalWhileCloudUnavailable() {
+		decider.setNetwork(1e6, 1e6, 10);
+		decider.setCloudAvailable(false);
+		assertEquals(Placement.LOCAL, decider.decide(10000));
+
+		decider.setCloudAvailable(true);
+		assertEquals(Placement.CLOUD, decider.decide(10000));
+
+		// Falls back at once, however recently it switched.
+		decider.setCloudAvailable(false);
+		assertEquals(Placement.LOCAL, decider.decide(10001));
+	}
+
+	@Test
+	public void cloudCountsAsInfinitelySlowWhileBandwidthUnknown() {
+		decider.setNetwork(0, 1e6, 10);
+		assertEquals(Double.POSITIVE_INFINITY, decider.getCloudEstimateMs(), 0);
+		assertEquals(Placement.LOCAL, decider.decide(10000));
+
+		decider.setNetwork(1e6, 0, 10);
+		assertEquals(Double.POSITIVE_INFINITY, decider.getCloudEstimateMs(), 0);
+		assertEquals(Placement.LOCAL, decider.decide(20000));
+
+		decider.setNetwork(1e6, 1e6, 10);
+		assertEquals(Placement.CLOUD, decider.decide(30000));
+	}
+
+	@Test
+	public void countsTransferAndMeasuredServerTime() {
+		// 100 kB each way at 1 MB/s.
+		decider.recordRawFrameSize(100000);
+		decider.setNetwork(1e6, 1e6, 10);
+		assertEquals(10 + 200 + 25, decider.getCloudEstimateMs(), DELTA);
+
+		decider.recordUpload(20000);
+		decider.recordDownload(30000);
+		assertEquals(10 + 50 + 25, decider.getCloudEstimateMs(), DELTA);
+
+		decider.recordCloudFrame(10 + 50 + 5);
+		assertEquals(10 + 50 + 5, decider.getCloudEstimateMs(), DELTA);
+	}
+
+	@Test
+	public void ignoresLateFrames() {
+		FrameEnvelope late = frame(1, 1);
+		late.markLate();
+		decider.recordLocalFrame(late);
+		assertEquals(100, decider.getLocalEstimateMs(), DELTA);
+
+		decider.recordLocalFrame(frame(10, 40));
+		assertEquals(100 + 0.2 * (10 - 60), decider.getLocalEstimateMs(), DELTA);
+	}
+
+	@Test
+	public void forgetsCostsWhenEffectsChange() {
+		decider.effectsChanged();
+		assertEquals(0, decider.getLocalEstimateMs(), DELTA);
+
+		decider.recordLocalFrame(frame(30));
+		assertEquals(30, decider.getLocalEstimateMs(), DELTA);
+	}
+
+	/**
+	 * Returns a frame processed on the device by stages that took the given times.
+	 */
+	private static FrameEnvelope frame(long... stageMs) {
+		FrameEnvelope frame = new FrameEnvelope(null, 0, 0);
+		long now = 0;
+		for (long ms : stageMs) {
+			frame.recordStage(now, now + ms * 1000000);
+			now += ms * 1000000;
+		}
+		return frame;
+	}
+}